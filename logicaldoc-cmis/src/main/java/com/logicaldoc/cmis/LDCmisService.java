@@ -1,8 +1,6 @@
 package com.logicaldoc.cmis;
 
 import java.math.BigInteger;
-import java.sql.Date;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -41,11 +39,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.PersistenceException;
-import com.logicaldoc.core.document.DocumentEvent;
-import com.logicaldoc.core.document.dao.DocumentHistoryDAO;
+import com.logicaldoc.core.changelog.ChangeDAO;
 import com.logicaldoc.core.folder.Folder;
 import com.logicaldoc.core.folder.FolderDAO;
-import com.logicaldoc.core.folder.FolderEvent;
 import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.security.SessionManager;
 import com.logicaldoc.util.Context;
@@ -70,7 +66,7 @@ public class LDCmisService extends AbstractCmisService {
 
 	private String sid = null;
 
-	private DocumentHistoryDAO historyDao = null;
+	private ChangeDAO changeDao = null;
 
 	/* To avoid refetching it several times per session. */
 	protected String cachedChangeLogToken;
@@ -86,7 +82,7 @@ public class LDCmisService extends AbstractCmisService {
 		this.sid = sid;
 
 		try {
-			historyDao = (DocumentHistoryDAO) Context.get().getBean(DocumentHistoryDAO.class);
+			changeDao = (ChangeDAO) Context.get().getBean(ChangeDAO.class);
 
 			FolderDAO fdao = (FolderDAO) Context.get().getBean(FolderDAO.class);
 			Session session = SessionManager.get().get(sid);
@@ -151,12 +147,13 @@ public class LDCmisService extends AbstractCmisService {
 	}
 
 	/**
-	 * Return the most recent events regarding a document
+	 * Return the number of the most recent change in the change log
 	 * 
-	 * @param repositoryId
-	 * @return The getTime() of the latest date
+	 * @param repositoryId identifier of the repository
 	 * 
-	 * @throws PersistenceException error in the datbae
+	 * @return The number of the latest change
+	 * 
+	 * @throws PersistenceException error in the database
 	 */
 	protected String getLatestChangeLogToken(String repositoryId) throws PersistenceException {
 		log.debug("** getLatestChangeLogToken: {}", repositoryId);
@@ -167,61 +164,9 @@ public class LDCmisService extends AbstractCmisService {
 		}
 
 		LDRepository repo = repositories.get(repositoryId);
-
-		String tenantIdStr = Long.toString(repo.getRoot().getTenantId());
-
-		StringBuilder query = new StringBuilder(
-				"SELECT MAX(ld_date) FROM ld_history WHERE ld_deleted=0 AND ld_tenantid=");
-		query.append(tenantIdStr);
-		query.append(" AND ld_event IN ('");
-		query.append(DocumentEvent.STORED);
-		query.append("','");
-		query.append(DocumentEvent.CHECKEDIN);
-		query.append("','");
-		query.append(DocumentEvent.MOVED);
-		query.append("','");
-		query.append(DocumentEvent.RENAMED);
-		query.append("','");
-		query.append(DocumentEvent.DELETED);
-		query.append("')");
-
-		Timestamp latestDate = (Timestamp) historyDao.queryForObject(query.toString(), Timestamp.class);
-
-		StringBuilder query2 = new StringBuilder(
-				"SELECT MAX(ld_date) FROM ld_folder_history WHERE ld_deleted=0 AND ld_tenantid=");
-		query2.append(tenantIdStr);
-		query2.append(" AND ld_event IN ('");
-		query2.append(FolderEvent.CREATED);
-		query2.append("','");
-		query2.append(FolderEvent.RENAMED);
-		query2.append("','");
-		query2.append(FolderEvent.MOVED);
-		query2.append("','");
-		query2.append(FolderEvent.DELETED);
-		query2.append("')");
-
-		Timestamp latestFolderDate = (Timestamp) historyDao.queryForObject(query2.toString(), Timestamp.class);
-
-		if (latestDate == null && latestFolderDate == null) {
-			return "0";
-		} else {
-			log.debug("latestDate.getTime(): {}", latestDate != null ? latestDate.getTime() : "");
-			log.debug("latestFolderDate.getTime(): {}", latestDate != null ? latestFolderDate.getTime() : "");
-			Timestamp myDate = getLatestTimestamp(latestDate, latestFolderDate);
-
-			log.debug("myDate.getTime(): {}", myDate.getTime());
-			return Long.toString(myDate.getTime());
-		}
-	}
-
-	private Timestamp getLatestTimestamp(Timestamp date1, Timestamp date2) {
-		if (date1 != null && date2 == null)
-			return date1;
-		if (date1 == null && date2 != null)
-			return date2;
-		if (date1 != null && date1.after(date2))
-			return date1;
-		return date2;
+		long latestNumber = changeDao.getLatestNumber(repo.getRoot().getTenantId());
+		log.debug("latestNumber: {}", latestNumber);
+		return Long.toString(latestNumber);
 	}
 
 	@Override
@@ -508,8 +453,7 @@ public class LDCmisService extends AbstractCmisService {
 	public ObjectList getContentChanges(String repositoryId, Holder<String> changeLogToken, Boolean includeProperties,
 			String filter, Boolean includePolicyIds, Boolean includeAcl, BigInteger maxItems,
 			ExtensionsData extension) {
-		log.debug("getContentChanges " + changeLogToken.getValue() + "|" + filter + " | "
-				+ new Date(Long.parseLong(changeLogToken.getValue())));
+		log.debug("getContentChanges {} | {}", changeLogToken.getValue(), filter);
 
 		validateSession();
 
@@ -109,7 +109,8 @@ import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.PersistentObject;
-import com.logicaldoc.core.PersistentObjectDAO;
+import com.logicaldoc.core.changelog.Change;
+import com.logicaldoc.core.changelog.ChangeDAO;
 import com.logicaldoc.core.document.AbstractDocument;
 import com.logicaldoc.core.document.Document;
 import com.logicaldoc.core.document.DocumentEvent;
@@ -123,7 +124,6 @@ import com.logicaldoc.core.folder.Folder;
 import com.logicaldoc.core.folder.FolderDAO;
 import com.logicaldoc.core.folder.FolderEvent;
 import com.logicaldoc.core.folder.FolderHistory;
-import com.logicaldoc.core.folder.FolderHistoryDAO;
 import com.logicaldoc.core.i18n.Language;
 import com.logicaldoc.core.i18n.LanguageManager;
 import com.logicaldoc.core.metadata.Attribute;
@@ -137,6 +137,7 @@ import com.logicaldoc.core.security.Group;
 import com.logicaldoc.core.security.Permission;
 import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.security.SessionManager;
+import com.logicaldoc.core.security.SessionPrincipal;
 import com.logicaldoc.core.security.User;
 import com.logicaldoc.core.security.authorization.PermissionException;
 import com.logicaldoc.core.security.dao.UserDAO;
@@ -202,7 +203,7 @@ public class LDRepository {
 
 	private DocumentHistoryDAO historyDao;
 
-	private FolderHistoryDAO folderHistoryDao;
+	private ChangeDAO changeDao;
 
 	private TemplateDAO templateDao;
 
@@ -230,7 +231,7 @@ public class LDRepository {
 		templateDao = (TemplateDAO) Context.get().getBean(TemplateDAO.class);
 		versionDao = (VersionDAO) Context.get().getBean(VersionDAO.class);
 		historyDao = (DocumentHistoryDAO) Context.get().getBean(DocumentHistoryDAO.class);
-		folderHistoryDao = (FolderHistoryDAO) Context.get().getBean(FolderHistoryDAO.class);
+		changeDao = (ChangeDAO) Context.get().getBean(ChangeDAO.class);
 
 		ContextProperties config = Context.get().getProperties();
 
@@ -2646,7 +2647,10 @@ public class LDRepository {
 			if (SessionManager.get().getStatus(sid) != Session.STATUS_OPEN)
 				throw new CmisPermissionDeniedException("Invalid session");
 			try {
-				return userDao.findById(SessionManager.get().get(sid).getUserId());
+				SessionPrincipal principal = SessionManager.get().getPrincipal(sid);
+				if (principal == null)
+					throw new CmisPermissionDeniedException("User not found");
+				return principal.getUser();
 			} catch (PersistenceException e) {
 				log.warn(e.getMessage(), e);
 				throw new CmisPermissionDeniedException("User not found");
@@ -2785,6 +2789,20 @@ public class LDRepository {
 		this.templateDao = templateDao;
 	}
 
+	/**
+	 * Gets the changes recorded in the change log after the given token. The
+	 * token is the number of the last change already known by the client and
+	 * on return it is updated with the number of the last change returned.
+	 * The tokens given by the older versions, that were dates in
+	 * milliseconds, are still accepted.
+	 * 
+	 * @param changeLogToken holder of the change log token
+	 * @param max maximum number of changes to return
+	 * 
+	 * @return the list of changes
+	 * 
+	 * @throws CmisPermissionDeniedException the user cannot access the changes
+	 */
 	public ObjectList getContentChanges(Holder<String> changeLogToken, int max) throws CmisPermissionDeniedException {
 
 		log.debug("getContentChanges {}", changeLogToken);
@@ -2792,179 +2810,89 @@ public class LDRepository {
 		if (changeLogToken == null)
 			throw new CmisInvalidArgumentException("Missing change log token holder");
 
-		long minDate;
+		long lastNumber;
 
 		try {
-			minDate = Long.parseLong(changeLogToken.getValue());
+			lastNumber = StringUtils.isEmpty(changeLogToken.getValue()) ? 0L
+					: Long.parseLong(changeLogToken.getValue());
 		} catch (NumberFormatException e) {
 			throw new CmisInvalidArgumentException("Invalid change log token");
 		}
 
-		ObjectListImpl ol = new ObjectListImpl();
-
-		List<ObjectData> odsDocs = getDocumentLastChanges(minDate, max);
-		List<ObjectData> odsFolders = getFolderLastChanges(minDate, max);
+		// Fetch one more change to know if there are other items
+		List<Change> changes = new ArrayList<>();
+		try {
+			long tenantId = getRoot().getTenantId();
 
-		// put together the 2 lists
-		List<ObjectData> complex = new ArrayList<>();
-		complex.addAll(odsDocs);
-		complex.addAll(odsFolders);
+			/*
+			 * The clients of the older versions hold the date of the last
+			 * change in milliseconds, that is far beyond the numbers in the
+			 * log, so it is converted to the position of that date
+			 */
+			if (lastNumber > changeDao.getLatestNumber(tenantId))
+				lastNumber = changeDao.findNumberBefore(tenantId, new Date(lastNumber));
 
-		// sort the content of list complex by date
-		Collections.sort(complex, (o1, o2) -> o1.getChangeEventInfo().getChangeTime().getTime()
-				.compareTo(o2.getChangeEventInfo().getChangeTime().getTime()));
+			changes = changeDao.findAfter(tenantId, lastNumber, max + 1);
+		} catch (PersistenceException e) {
+			log.error(e.getMessage(), e);
+		}
 
-		boolean hasMoreItems = complex.size() > max;
+		boolean hasMoreItems = changes.size() > max;
 		if (hasMoreItems)
-			complex = complex.subList(0, max);
+			changes = changes.subList(0, max);
+
+		List<ObjectData> ods = new ArrayList<>(changes.size());
+		for (Change change : changes)
+			ods.add(toObjectData(change));
 
-		ol.setObjects(complex);
+		ObjectListImpl ol = new ObjectListImpl();
+		ol.setObjects(ods);
 
-		Date date = null;
-		if (!complex.isEmpty()) {
+		String latestChangeLogToken = null;
+		if (!changes.isEmpty()) {
 			ol.setNumItems(BigInteger.valueOf(-1));
 			ol.setHasMoreItems(Boolean.valueOf(hasMoreItems));
-			date = complex.get(complex.size() - 1).getChangeEventInfo().getChangeTime().getTime();
+			latestChangeLogToken = Long.toString(changes.get(changes.size() - 1).getNumber());
 		} else {
 			ol.setHasMoreItems(Boolean.valueOf(false));
 			ol.setNumItems(BigInteger.ZERO);
 		}
 
-		String latestChangeLogToken = date == null ? null : String.valueOf(date.getTime());
 		log.debug("latestChangeLogToken {}", latestChangeLogToken);
 		changeLogToken.setValue(latestChangeLogToken);
 
 		return ol;
 	}
 
-	public List<ObjectData> getDocumentLastChanges(long minDate, int max) {
-		StringBuilder query = new StringBuilder(" " + PersistentObjectDAO.ENTITY + ".tenantId = :tenantId and "
-				+ PersistentObjectDAO.ENTITY + ".date >= :minDate ");
-		query.append(" and " + PersistentObjectDAO.ENTITY + ".event in ('");
-		query.append(DocumentEvent.STORED);
-		query.append("','");
-		query.append(DocumentEvent.CHECKEDIN);
-		query.append("','");
-		query.append(DocumentEvent.MOVED);
-		query.append("','");
-		query.append(DocumentEvent.RENAMED);
-		query.append("','");
-		query.append(DocumentEvent.DELETED);
-		query.append("')");
-
-		List<DocumentHistory> entries = new ArrayList<>();
-
-		try {
-			Map<String, Object> params = new HashMap<>();
-			params.put("tenantId", getRoot().getTenantId());
-			params.put("minDate", new Date(minDate));
-
-			entries = historyDao.findByWhere(query.toString(), params,
-					"order by " + PersistentObjectDAO.ENTITY + ".date", max);
-		} catch (PersistenceException e) {
-			log.error(e.getMessage(), e);
-		}
+	private ObjectData toObjectData(Change change) {
+		ObjectDataImpl od = new ObjectDataImpl();
+		ChangeEventInfoDataImpl cei = new ChangeEventInfoDataImpl();
 
-		List<ObjectData> ods = new ArrayList<>(entries.size());
-		Date date = null;
-		for (DocumentHistory logEntry : entries) {
-			ObjectDataImpl od = new ObjectDataImpl();
-			ChangeEventInfoDataImpl cei = new ChangeEventInfoDataImpl();
-
-			// change type
-			String eventId = logEntry.getEvent();
-			ChangeType changeType;
-			if (DocumentEvent.STORED.toString().equals(eventId)) {
-				changeType = ChangeType.CREATED;
-			} else if (DocumentEvent.CHECKEDIN.toString().equals(eventId)
-					|| DocumentEvent.RENAMED.toString().equals(eventId)
-					|| DocumentEvent.MOVED.toString().equals(eventId)) {
-				changeType = ChangeType.UPDATED;
-			} else if (DocumentEvent.DELETED.toString().equals(eventId)) {
-				changeType = ChangeType.DELETED;
-			} else {
-				continue;
-			}
-			cei.setChangeType(changeType);
-
-			// change time
-			GregorianCalendar changeTime = (GregorianCalendar) Calendar.getInstance();
-			date = logEntry.getDate();
-			changeTime.setTime(date);
-			cei.setChangeTime(changeTime);
-			od.setChangeEventInfo(cei);
-
-			// properties: id, doc type
-			PropertiesImpl properties = new PropertiesImpl();
-			properties.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_ID, ID_PREFIX_DOC + logEntry.getDocId()));
-			properties.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_TYPE_ID, BaseTypeId.CMIS_DOCUMENT.value()));
-			od.setProperties(properties);
-			ods.add(od);
-		}
-		return ods;
-	}
-
-	public List<ObjectData> getFolderLastChanges(long minDate, int max) {
-
-		StringBuilder query = new StringBuilder(" " + PersistentObjectDAO.ENTITY + ".tenantId = :tenantId and "
-				+ PersistentObjectDAO.ENTITY + ".date >= :minDate ");
-		query.append(" and " + PersistentObjectDAO.ENTITY + ".event in ('");
-		query.append(FolderEvent.CREATED);
-		query.append("','");
-		query.append(FolderEvent.RENAMED);
-		query.append("','");
-		query.append(FolderEvent.MOVED);
-		query.append("','");
-		query.append(FolderEvent.DELETED);
-		query.append("')");
-
-		List<FolderHistory> entries = new ArrayList<>();
-
-		try {
-			Map<String, Object> params = new HashMap<>();
-			params.put("tenantId", getRoot().getTenantId());
-			params.put("minDate", new Date(minDate));
-			entries = folderHistoryDao.findByWhere(query.toString(), params,
-					"order by " + PersistentObjectDAO.ENTITY + ".date", max);
-		} catch (PersistenceException e) {
-			log.error(e.getMessage(), e);
-		}
-
-		List<ObjectData> ods = new ArrayList<>(entries.size());
-		Date date = null;
-		for (FolderHistory logEntry : entries) {
-			ObjectDataImpl od = new ObjectDataImpl();
-			ChangeEventInfoDataImpl cei = new ChangeEventInfoDataImpl();
-
-			// change type
-			String eventId = logEntry.getEvent();
-			ChangeType changeType;
-			if (FolderEvent.CREATED.toString().equals(eventId)) {
-				changeType = ChangeType.CREATED;
-			} else if (FolderEvent.RENAMED.toString().equals(eventId) || FolderEvent.MOVED.toString().equals(eventId)) {
-				changeType = ChangeType.UPDATED;
-			} else if (FolderEvent.DELETED.toString().equals(eventId)) {
-				changeType = ChangeType.DELETED;
-			} else {
-				continue;
-			}
-			cei.setChangeType(changeType);
-
-			// change time
-			GregorianCalendar changeTime = (GregorianCalendar) Calendar.getInstance();
-			date = logEntry.getDate();
-			changeTime.setTime(date);
-			cei.setChangeTime(changeTime);
-			od.setChangeEventInfo(cei);
-
-			// properties: id, doc type
-			PropertiesImpl properties = new PropertiesImpl();
-			properties.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_ID, ID_PREFIX_FLD + logEntry.getFolderId()));
+		// change type
+		if (change.getChangeType() == Change.CHANGE_CREATED)
+			cei.setChangeType(ChangeType.CREATED);
+		else if (change.getChangeType() == Change.CHANGE_DELETED)
+			cei.setChangeType(ChangeType.DELETED);
+		else
+			cei.setChangeType(ChangeType.UPDATED);
+
+		// change time
+		GregorianCalendar changeTime = (GregorianCalendar) Calendar.getInstance();
+		changeTime.setTime(change.getDate());
+		cei.setChangeTime(changeTime);
+		od.setChangeEventInfo(cei);
+
+		// properties: id, object type
+		PropertiesImpl properties = new PropertiesImpl();
+		if (change.getObjectType() == Change.TYPE_FOLDER) {
+			properties.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_ID, ID_PREFIX_FLD + change.getObjectId()));
 			properties.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_TYPE_ID, BaseTypeId.CMIS_FOLDER.value()));
-			od.setProperties(properties);
-			ods.add(od);
+		} else {
+			properties.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_ID, ID_PREFIX_DOC + change.getObjectId()));
+			properties.addProperty(new PropertyIdImpl(PropertyIds.OBJECT_TYPE_ID, BaseTypeId.CMIS_DOCUMENT.value()));
 		}
-		return ods;
+		od.setProperties(properties);
+		return od;
 	}
 
 	public Folder getRoot() {
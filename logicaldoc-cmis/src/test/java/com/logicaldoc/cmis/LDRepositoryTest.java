@@ -125,6 +125,7 @@ public class LDRepositoryTest extends AbstractCmisTCase {
 		document.addTag("numbered");		
 		engine.addHit(document,
 				"12, 81390264001300, FLEXSPACE NO 1 LLP, T/A FLEXSPACE, UNIT 13 EVANS BUSINESS CENTRE, VINCENT CAREY ROAD, ROTHERWAS INDUSTRIAL ESTATE, HEREFORD, HR2");
+		engine.flush();
 	}	
 
 	@Test
@@ -1,6 +1,8 @@
 package com.logicaldoc.core;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -20,8 +22,11 @@ import org.hibernate.query.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 
 import com.logicaldoc.core.metadata.Attribute;
@@ -243,6 +248,21 @@ public abstract class HibernatePersistentObjectDAO<T extends PersistentObject> i
 		}
 	}
 
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public List findByQuery(String query, Map<String, Object> parameters, int first, Integer max)
+			throws PersistenceException {
+		try {
+			logQuery(query);
+			Query queryObject = prepareQuery(query, parameters, max);
+			if (first > 0)
+				queryObject.setFirstResult(first);
+			return (List<Object>) queryObject.list();
+		} catch (Throwable e) {
+			throw new PersistenceException(e);
+		}
+	}
+
 	@Override
 	public List<Long> findIdsByWhere(String where, String order, Integer max) throws PersistenceException {
 		return findIdsByWhere(where, new Object[0], order, max);
@@ -781,6 +801,82 @@ public abstract class HibernatePersistentObjectDAO<T extends PersistentObject> i
 		}
 	}
 
+	@Override
+	public int[] jdbcBatchUpdate(String statement, List<Object[]> args) throws PersistenceException {
+		if (!checkStoringAspect() || args.isEmpty())
+			return new int[0];
+
+		DataSource dataSource = (DataSource) Context.get().getBean(DATA_SOURCE);
+		try {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			return jdbcTemplate.batchUpdate(statement, args);
+		} catch (Throwable e) {
+			throw new PersistenceException(e);
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public List queryWithIds(String sql, Object[] args, List<? extends Collection<Long>> idSets,
+			RowMapper rowMapper, Integer maxRows) throws PersistenceException {
+		try {
+			DataSource dataSource = (DataSource) Context.get().getBean(DATA_SOURCE);
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+			// All the statements must run on the same connection
+			return jdbcTemplate.execute((ConnectionCallback<List>) con -> {
+				IdsBinder binder = new IdsBinder(getDbms());
+				try {
+					binder.bind(con, sql, args != null ? args : new Object[0], idSets);
+					try (PreparedStatement stmt = con.prepareStatement(insertTopClause(binder.getSql(), maxRows))) {
+						if (maxRows != null)
+							stmt.setMaxRows(maxRows);
+						new ArgumentPreparedStatementSetter(binder.getArgs()).setValues(stmt);
+						try (ResultSet rs = stmt.executeQuery()) {
+							return new RowMapperResultSetExtractor(rowMapper).extractData(rs);
+						}
+					}
+				} finally {
+					binder.release(con);
+				}
+			});
+		} catch (Throwable e) {
+			throw new PersistenceException(e);
+		}
+	}
+
+	@Override
+	public int jdbcUpdateWithIds(String statement, Object[] args, List<? extends Collection<Long>> idSets)
+			throws PersistenceException {
+		if (!checkStoringAspect())
+			return 0;
+
+		try {
+			DataSource dataSource = (DataSource) Context.get().getBean(DATA_SOURCE);
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			int count = jdbcTemplate.execute((ConnectionCallback<Integer>) con -> {
+				IdsBinder binder = new IdsBinder(getDbms());
+				try {
+					binder.bind(con, statement, args != null ? args : new Object[0], idSets);
+					try (PreparedStatement stmt = con.prepareStatement(binder.getSql())) {
+						new ArgumentPreparedStatementSetter(binder.getArgs()).setValues(stmt);
+						return stmt.executeUpdate();
+					}
+				} finally {
+					binder.release(con);
+				}
+			});
+
+			// Like a bulk update, do not leave stale entities in the cache
+			if (sessionFactory != null && sessionFactory.getCache() != null)
+				sessionFactory.getCache().evictEntityData(entityClass);
+
+			return count;
+		} catch (Throwable e) {
+			throw new PersistenceException(e);
+		}
+	}
+
 	protected Connection getConnection() throws SQLException {
 		DataSource dataSource = (DataSource) Context.get().getBean(DATA_SOURCE);
 		return dataSource.getConnection();
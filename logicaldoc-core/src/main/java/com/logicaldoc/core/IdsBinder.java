@@ -0,0 +1,277 @@
+package com.logicaldoc.core;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+/**
+ * Rewrites a SQL statement replacing the placeholders <b>{ids0}</b>,
+ * <b>{ids1}</b>... with expressions that produce the identifiers of the
+ * corresponding sets, so that the text of the statement does not depend on
+ * the identifiers and the database can reuse the same execution plan:
+ * <ul>
+ * <li>small sets are bound as a list of parameters, padded to a few fixed
+ * lengths</li>
+ * <li>on the databases that support it (PostgreSQL, HSQLDB) larger sets are
+ * bound as a single array parameter</li>
+ * <li>otherwise larger sets are written in the table <b>ld_tmpids</b> and
+ * replaced by a subquery on that table</li>
+ * </ul>
+ * The placeholders must be used where a subquery is allowed, typically
+ * <code>ld_id in ({ids0})</code>. All the work must be done on the same
+ * connection and {@link #release(Connection)} must be invoked at the end.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+class IdsBinder {
+
+	protected static Logger log = LoggerFactory.getLogger(IdsBinder.class);
+
+	private static final Pattern PLACEHOLDERS = Pattern.compile("\\{ids(\\d+)\\}|\\?");
+
+	/**
+	 * Lengths of the lists of parameters used to bind the small sets
+	 */
+	private static final int[] LIST_SIZES = new int[] { 1, 10, 100 };
+
+	private static final int INSERT_BATCH = 1000;
+
+	/**
+	 * If the table ld_tmpids exists, it may be missing in the databases not
+	 * yet upgraded. Checked once in the database metadata, null until then.
+	 */
+	private static volatile Boolean tableAvailable = null;
+
+	private final String dbms;
+
+	private String sql;
+
+	private final List<Object> args = new ArrayList<>();
+
+	private final List<Array> arrays = new ArrayList<>();
+
+	private final List<String> setIds = new ArrayList<>();
+
+	IdsBinder(String dbms) {
+		this.dbms = dbms;
+	}
+
+	String getSql() {
+		return sql;
+	}
+
+	Object[] getArgs() {
+		return args.toArray();
+	}
+
+	/**
+	 * Rewrites the statement and prepares the arguments
+	 *
+	 * @param con the connection that will execute the statement
+	 * @param statement the SQL with the placeholders
+	 * @param statementArgs the arguments of the original statement
+	 * @param idSets the sets of identifiers
+	 *
+	 * @throws SQLException error in the database
+	 */
+	void bind(Connection con, String statement, Object[] statementArgs, List<? extends Collection<Long>> idSets)
+			throws SQLException {
+		String[] expressions = new String[idSets.size()];
+		List<List<Object>> setArgs = new ArrayList<>();
+		for (int i = 0; i < idSets.size(); i++) {
+			List<Object> values = new ArrayList<>();
+			expressions[i] = bindSet(con, idSets.get(i), values);
+			setArgs.add(values);
+		}
+
+		StringBuffer sb = new StringBuffer();
+		int argIndex = 0;
+		Matcher matcher = PLACEHOLDERS.matcher(statement);
+		while (matcher.find()) {
+			if (matcher.group(1) == null) {
+				args.add(statementArgs[argIndex++]);
+				matcher.appendReplacement(sb, "?");
+			} else {
+				int set = Integer.parseInt(matcher.group(1));
+				args.addAll(setArgs.get(set));
+				matcher.appendReplacement(sb, Matcher.quoteReplacement(expressions[set]));
+			}
+		}
+		matcher.appendTail(sb);
+		sql = sb.toString();
+	}
+
+	private String bindSet(Connection con, Collection<Long> ids, List<Object> values) throws SQLException {
+		if (ids.size() <= LIST_SIZES[LIST_SIZES.length - 1])
+			return bindList(ids, values);
+
+		if ("postgresql".equals(dbms) || "hsqldb".equals(dbms)) {
+			Array array = con.createArrayOf("BIGINT", ids.toArray(new Long[0]));
+			arrays.add(array);
+			values.add(array);
+			return "postgresql".equals(dbms) ? "select unnest(?)" : "unnest(?)";
+		}
+
+		if (isTableAvailable(con)) {
+			try {
+				String setId = insert(con, ids);
+				values.add(setId);
+				return "select ld_value from ld_tmpids where ld_setid = ?";
+			} catch (SQLException e) {
+				// Maybe a transient problem, so just this statement goes
+				// without the table
+				log.warn("Cannot use the table ld_tmpids, the identifiers will be written in the statement: {}",
+						e.getMessage());
+			}
+		}
+
+		return inline(ids);
+	}
+
+	private static boolean isTableAvailable(Connection con) {
+		if (tableAvailable == null) {
+			boolean found = false;
+			try {
+				DatabaseMetaData metadata = con.getMetaData();
+				for (String name : new String[] { "ld_tmpids", "LD_TMPIDS" }) {
+					try (ResultSet rs = metadata.getTables(null, null, name, new String[] { "TABLE" })) {
+						if (rs.next()) {
+							found = true;
+							break;
+						}
+					}
+				}
+			} catch (SQLException e) {
+				// Check again the next time
+				log.debug("Cannot check the table ld_tmpids: {}", e.getMessage());
+				return false;
+			}
+
+			if (!found)
+				log.warn("The table ld_tmpids does not exist, the identifiers will be written in the statements");
+			tableAvailable = found;
+		}
+		return tableAvailable;
+	}
+
+	/**
+	 * Binds the identifiers as a list of parameters, repeating the last one to
+	 * reach one of the fixed lengths
+	 */
+	private static String bindList(Collection<Long> ids, List<Object> values) {
+		int size = LIST_SIZES[0];
+		for (int listSize : LIST_SIZES)
+			if (listSize >= ids.size()) {
+				size = listSize;
+				break;
+			}
+
+		Object last = new SqlParameterValue(Types.BIGINT, null);
+		for (Long id : ids) {
+			values.add(id);
+			last = id;
+		}
+		while (values.size() < size)
+			values.add(last);
+
+		StringBuilder sb = new StringBuilder("?");
+		for (int i = 1; i < size; i++)
+			sb.append(",?");
+		return sb.toString();
+	}
+
+	private String insert(Connection con, Collection<Long> ids) throws SQLException {
+		String setId = UUID.randomUUID().toString();
+
+		// Outside a transaction avoid committing each single insert
+		boolean autoCommit = con.getAutoCommit();
+		if (autoCommit)
+			con.setAutoCommit(false);
+		try (PreparedStatement stmt = con.prepareStatement("insert into ld_tmpids(ld_setid, ld_value) values (?, ?)")) {
+			int count = 0;
+			for (Long id : ids) {
+				stmt.setString(1, setId);
+				stmt.setLong(2, id);
+				stmt.addBatch();
+				if (++count % INSERT_BATCH == 0)
+					stmt.executeBatch();
+			}
+			if (count % INSERT_BATCH != 0)
+				stmt.executeBatch();
+			if (autoCommit)
+				con.commit();
+		} catch (SQLException e) {
+			if (autoCommit)
+				con.rollback();
+			throw e;
+		} finally {
+			if (autoCommit)
+				con.setAutoCommit(true);
+		}
+
+		setIds.add(setId);
+		return setId;
+	}
+
+	/**
+	 * Last resort, writes the identifiers in the statement
+	 */
+	private String inline(Collection<Long> ids) {
+		if (!"oracle".equals(dbms))
+			return ids.stream().map(id -> Long.toString(id)).collect(Collectors.joining(","));
+
+		/*
+		 * In Oracle a list cannot contain more than 1000 elements, so we
+		 * concatenate several collections
+		 */
+		List<String> chunks = new ArrayList<>();
+		List<Long> list = new ArrayList<>(ids);
+		for (int i = 0; i < list.size(); i += 999)
+			chunks.add("select column_value from table(sys.odcinumberlist(" + list.subList(i, Math.min(i + 999, list.size()))
+					.stream().map(id -> Long.toString(id)).collect(Collectors.joining(",")) + "))");
+		return String.join(" union all ", chunks);
+	}
+
+	/**
+	 * Frees the resources allocated to bind the identifiers
+	 *
+	 * @param con the connection used to execute the statement
+	 */
+	void release(Connection con) {
+		for (Array array : arrays) {
+			try {
+				array.free();
+			} catch (Throwable t) {
+				// Nothing to do
+			}
+		}
+
+		if (setIds.isEmpty())
+			return;
+		try (PreparedStatement stmt = con.prepareStatement("delete from ld_tmpids where ld_setid = ?")) {
+			for (String setId : setIds) {
+				stmt.setString(1, setId);
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} catch (SQLException e) {
+			log.warn("Cannot clean the table ld_tmpids: {}", e.getMessage());
+		}
+	}
+}
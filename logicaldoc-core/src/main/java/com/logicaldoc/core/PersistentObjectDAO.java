@@ -192,6 +192,22 @@ public interface PersistentObjectDAO<T extends PersistentObject> {
 	public List<Object> findByQuery(String query, Map<String, Object> parameters, Integer max)
 			throws PersistenceException;
 
+	/**
+	 * Find a page of everything you want from the DB using the ORM query
+	 * language
+	 * 
+	 * @param query The query to execute
+	 * @param parameters The map of the parameters
+	 * @param first Position of the first result to retrieve, starting from 0
+	 * @param max Maximum results number (optional)
+	 * 
+	 * @return Query result
+	 * 
+	 * @throws PersistenceException raised in case of errors in the database
+	 */
+	public List<Object> findByQuery(String query, Map<String, Object> parameters, int first, Integer max)
+			throws PersistenceException;
+
 	/**
 	 * Finds all entities ids by the given expression. Use
 	 * {@value #ENTITY} alias to reference attributes in the where
@@ -252,6 +268,29 @@ public interface PersistentObjectDAO<T extends PersistentObject> {
 	@SuppressWarnings("rawtypes")
 	public List query(String sql, Object[] args, RowMapper rowMapper, Integer maxRows) throws PersistenceException;
 
+	/**
+	 * Same as {@link #query(String, Object[], RowMapper, Integer)} but also
+	 * binds sets of identifiers of any size. In the SQL, reference the sets
+	 * with the placeholders <b>{ids0}</b>, <b>{ids1}</b>... in positions
+	 * where a subquery is allowed, e.g.: <code>A.ld_id in ({ids0})</code>.
+	 * The identifiers are never written in the statement, so its text and
+	 * the execution plan remain the same whatever the number of identifiers.
+	 * 
+	 * @param sql SQL query to execute
+	 * @param args arguments to bind to the query
+	 * @param idSets the sets of identifiers, the placeholder {idsN}
+	 *        references the N-th element
+	 * @param rowMapper object that will map one object per row
+	 * @param maxRows the new max rows limit; null means there is no limit
+	 * 
+	 * @return the result List, containing mapped objects
+	 * 
+	 * @throws PersistenceException raised in case of errors in the database
+	 */
+	@SuppressWarnings("rawtypes")
+	public List queryWithIds(String sql, Object[] args, List<? extends Collection<Long>> idSets,
+			RowMapper rowMapper, Integer maxRows) throws PersistenceException;
+
 	/**
 	 * Query given SQL to create a prepared statement from SQL and a list of
 	 * arguments to bind to the query, returns a navigable RowSet
@@ -488,6 +527,39 @@ public interface PersistentObjectDAO<T extends PersistentObject> {
 	 */
 	public int jdbcUpdate(String statement, Object... args) throws PersistenceException;
 
+	/**
+	 * Executes the same update statement once for each set of arguments,
+	 * sending the executions to the database in batches
+	 * 
+	 * @param statement SQL containing bind parameters
+	 * @param args the arguments to bind in each execution
+	 * 
+	 * @return the number of rows affected by each execution
+	 * 
+	 * @throws PersistenceException raised in case of errors in the database
+	 */
+	public int[] jdbcBatchUpdate(String statement, List<Object[]> args) throws PersistenceException;
+
+	/**
+	 * Same as {@link #jdbcUpdate(String, Object...)} but also binds sets of
+	 * identifiers of any size, see
+	 * {@link #queryWithIds(String, Object[], List, RowMapper, Integer)}. Like
+	 * a bulk update, the entities of this DAO get evicted from the second
+	 * level cache.
+	 * 
+	 * @param statement SQL containing bind parameters and the placeholders
+	 *        of the sets
+	 * @param args arguments to bind to the statement
+	 * @param idSets the sets of identifiers, the placeholder {idsN}
+	 *        references the N-th element
+	 * 
+	 * @return the number of rows affected
+	 * 
+	 * @throws PersistenceException raised in case of errors in the database
+	 */
+	public int jdbcUpdateWithIds(String statement, Object[] args, List<? extends Collection<Long>> idSets)
+			throws PersistenceException;
+
 	/**
 	 * Get the DBMS name currently connected(possible values are: <b>mysql</b>,
 	 * <b>hsqldb</b>, <b>oracle</b>, <b>mssql</b>)
@@ -0,0 +1,113 @@
+package com.logicaldoc.core.changelog;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import com.logicaldoc.core.PersistentObject;
+
+/**
+ * An entry of the change log, the append-only journal of the creations,
+ * updates and deletions of documents and folders. Inside a tenant the entries
+ * are numbered with a monotonic sequence, so the number of the last entry
+ * read can be used by the clients as an exact cursor to fetch the following
+ * changes.
+ * 
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class Change extends PersistentObject implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int TYPE_DOCUMENT = 0;
+
+	public static final int TYPE_FOLDER = 1;
+
+	public static final int CHANGE_CREATED = 0;
+
+	public static final int CHANGE_UPDATED = 1;
+
+	public static final int CHANGE_DELETED = 2;
+
+	/**
+	 * Position of this entry in the change log of the tenant, 0 until the
+	 * entry gets numbered
+	 */
+	private long number = 0L;
+
+	private Date date = new Date();
+
+	/**
+	 * Identifier of the document or folder
+	 */
+	private long objectId;
+
+	/**
+	 * The kind of object, see {@link #TYPE_DOCUMENT} and {@link #TYPE_FOLDER}
+	 */
+	private int objectType = TYPE_DOCUMENT;
+
+	/**
+	 * The kind of change, see {@link #CHANGE_CREATED},
+	 * {@link #CHANGE_UPDATED} and {@link #CHANGE_DELETED}
+	 */
+	private int changeType = CHANGE_UPDATED;
+
+	/**
+	 * The history event that originated this change
+	 */
+	private String event;
+
+	public long getNumber() {
+		return number;
+	}
+
+	public void setNumber(long number) {
+		this.number = number;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public void setDate(Date date) {
+		this.date = date;
+	}
+
+	public long getObjectId() {
+		return objectId;
+	}
+
+	public void setObjectId(long objectId) {
+		this.objectId = objectId;
+	}
+
+	public int getObjectType() {
+		return objectType;
+	}
+
+	public void setObjectType(int objectType) {
+		this.objectType = objectType;
+	}
+
+	public int getChangeType() {
+		return changeType;
+	}
+
+	public void setChangeType(int changeType) {
+		this.changeType = changeType;
+	}
+
+	public String getEvent() {
+		return event;
+	}
+
+	public void setEvent(String event) {
+		this.event = event;
+	}
+
+	@Override
+	public String toString() {
+		return number + " " + event + " " + (objectType == TYPE_FOLDER ? "folder " : "document ") + objectId;
+	}
+}
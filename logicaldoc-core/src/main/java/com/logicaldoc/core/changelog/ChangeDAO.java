@@ -0,0 +1,84 @@
+package com.logicaldoc.core.changelog;
+
+import java.util.Date;
+import java.util.List;
+
+import com.logicaldoc.core.History;
+import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.core.PersistentObjectDAO;
+
+/**
+ * DAO for the entries of the change log
+ * 
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public interface ChangeDAO extends PersistentObjectDAO<Change> {
+
+	/**
+	 * Appends to the change log the change described by a history, if its
+	 * event is one of those that create, update or delete a document or a
+	 * folder. Nothing is done if the change log is disabled by the
+	 * configuration parameter <b>changelog.enabled</b> or if the table
+	 * ld_change does not exist. The change gets its number only once
+	 * committed, the next time the log is read.
+	 * 
+	 * @param history the document or folder history just saved
+	 * 
+	 * @return the appended change or null if the history does not represent a
+	 *         change
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	public Change append(History history) throws PersistenceException;
+
+	/**
+	 * Gets the changes that follow a given position in the change log of a
+	 * tenant
+	 * 
+	 * @param tenantId identifier of the tenant
+	 * @param after the number of the last change already known, use 0 to read
+	 *        from the beginning
+	 * @param max maximum number of changes to return
+	 * 
+	 * @return the changes ordered by ascending number
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	public List<Change> findAfter(long tenantId, long after, Integer max) throws PersistenceException;
+
+	/**
+	 * Gets the number of the latest change recorded in a tenant
+	 * 
+	 * @param tenantId identifier of the tenant
+	 * 
+	 * @return the number of the latest change, 0 if there are no changes
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	public long getLatestNumber(long tenantId) throws PersistenceException;
+
+	/**
+	 * Converts a date in a position of the change log of a tenant, so that
+	 * {@link #findAfter(long, long, Integer)} returns the changes recorded at
+	 * or after that date
+	 * 
+	 * @param tenantId identifier of the tenant
+	 * @param date the date
+	 * 
+	 * @return the number preceding the first change recorded at or after the
+	 *         date, the latest number if there are no such changes
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	public long findNumberBefore(long tenantId, Date date) throws PersistenceException;
+
+	/**
+	 * This method deletes the changes older than the given number of days
+	 * 
+	 * @param ttl Maximum number of days, -1 to keep everything
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	public void cleanOldChanges(int ttl) throws PersistenceException;
+}
@@ -0,0 +1,234 @@
+package com.logicaldoc.core.changelog;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.logicaldoc.core.HibernatePersistentObjectDAO;
+import com.logicaldoc.core.History;
+import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.core.document.DocumentEvent;
+import com.logicaldoc.core.folder.FolderEvent;
+import com.logicaldoc.core.folder.FolderHistory;
+import com.logicaldoc.core.sequence.SequenceDAO;
+import com.logicaldoc.util.config.ContextProperties;
+
+/**
+ * Hibernate implementation of {@link ChangeDAO}. The changes are appended
+ * without a number inside the transaction that saves the history, so the
+ * writers never wait for each other. The committed changes are numbered just
+ * before reading the log, in a short transaction of its own that takes the
+ * numbers from the sequence <b>changelog</b> of the tenant: the lock held on
+ * the sequence's row until that transaction commits makes the numbers become
+ * visible in ascending order, so they can be used as cursors. For the same
+ * reason the sequence <b>changelog</b> must not be allocated in blocks.
+ * 
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class HibernateChangeDAO extends HibernatePersistentObjectDAO<Change> implements ChangeDAO {
+
+	private static final String SEQUENCE = "changelog";
+
+	private static final String TENANT_ID = "tenantId";
+
+	/**
+	 * If the table ld_change exists, it may be missing in the databases not
+	 * yet upgraded. Checked once in the database metadata, null until then.
+	 */
+	private static volatile Boolean tableAvailable = null;
+
+	private SequenceDAO sequenceDAO;
+
+	private ContextProperties config;
+
+	private PlatformTransactionManager transactionManager;
+
+	private HibernateChangeDAO() {
+		super(Change.class);
+		super.log = LoggerFactory.getLogger(HibernateChangeDAO.class);
+	}
+
+	@Override
+	public Change append(History history) throws PersistenceException {
+		if (history == null || (config != null && !config.getBoolean("changelog.enabled", true))
+				|| !isTableAvailable())
+			return null;
+
+		Change change = new Change();
+		if (history instanceof FolderHistory) {
+			if (history.getFolderId() == null)
+				return null;
+			change.setObjectType(Change.TYPE_FOLDER);
+			change.setObjectId(history.getFolderId());
+			change.setChangeType(getFolderChangeType(history.getEvent()));
+		} else {
+			if (history.getDocId() == null)
+				return null;
+			change.setObjectType(Change.TYPE_DOCUMENT);
+			change.setObjectId(history.getDocId());
+			change.setChangeType(getDocumentChangeType(history.getEvent()));
+		}
+
+		if (change.getChangeType() < 0)
+			return null;
+
+		change.setTenantId(history.getTenantId());
+		change.setEvent(history.getEvent());
+		if (history.getDate() != null)
+			change.setDate(history.getDate());
+		store(change);
+		return change;
+	}
+
+	/**
+	 * Numbers the committed changes of a tenant that have not been numbered
+	 * yet, in a new transaction so the sequence's row stays locked only for
+	 * the time of the numbering
+	 */
+	private void assignNumbers(long tenantId) throws PersistenceException {
+		if (!isTableAvailable())
+			return;
+
+		if (transactionManager == null) {
+			doAssignNumbers(tenantId);
+			return;
+		}
+
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		PersistenceException error = template.execute(status -> {
+			try {
+				doAssignNumbers(tenantId);
+				return null;
+			} catch (PersistenceException e) {
+				status.setRollbackOnly();
+				return e;
+			}
+		});
+		if (error != null)
+			throw error;
+	}
+
+	private void doAssignNumbers(long tenantId) throws PersistenceException {
+		@SuppressWarnings("unchecked")
+		List<Long> ids = queryForList(
+				"select ld_id from ld_change where ld_tenantid = ? and ld_number = 0 and ld_deleted = 0 order by ld_id",
+				new Object[] { tenantId }, Long.class, null);
+		if (ids.isEmpty())
+			return;
+
+		/*
+		 * The increment locks the sequence's row until the commit, so a
+		 * concurrent numbering waits for this one and then skips the changes
+		 * already numbered here thanks to the condition on ld_number.
+		 */
+		long number = sequenceDAO.next(SEQUENCE, 0L, tenantId, ids.size()) - ids.size();
+		List<Object[]> args = new ArrayList<>();
+		for (Long id : ids)
+			args.add(new Object[] { ++number, id });
+		jdbcBatchUpdate("update ld_change set ld_number = ? where ld_id = ? and ld_number = 0", args);
+	}
+
+	private boolean isTableAvailable() {
+		if (tableAvailable == null) {
+			boolean found = false;
+			try (Connection con = getConnection()) {
+				DatabaseMetaData metadata = con.getMetaData();
+				for (String name : new String[] { "ld_change", "LD_CHANGE" }) {
+					try (ResultSet rs = metadata.getTables(null, null, name, new String[] { "TABLE" })) {
+						if (rs.next()) {
+							found = true;
+							break;
+						}
+					}
+				}
+			} catch (SQLException e) {
+				// Check again the next time
+				log.debug("Cannot check the table ld_change: {}", e.getMessage());
+				return false;
+			}
+
+			if (!found)
+				log.warn("The table ld_change does not exist, the changes will not be recorded");
+			tableAvailable = found;
+		}
+		return tableAvailable;
+	}
+
+	private static int getDocumentChangeType(String event) {
+		if (DocumentEvent.STORED.toString().equals(event))
+			return Change.CHANGE_CREATED;
+		else if (DocumentEvent.CHECKEDIN.toString().equals(event) || DocumentEvent.RENAMED.toString().equals(event)
+				|| DocumentEvent.MOVED.toString().equals(event))
+			return Change.CHANGE_UPDATED;
+		else if (DocumentEvent.DELETED.toString().equals(event))
+			return Change.CHANGE_DELETED;
+		return -1;
+	}
+
+	private static int getFolderChangeType(String event) {
+		if (FolderEvent.CREATED.toString().equals(event))
+			return Change.CHANGE_CREATED;
+		else if (FolderEvent.RENAMED.toString().equals(event) || FolderEvent.MOVED.toString().equals(event))
+			return Change.CHANGE_UPDATED;
+		else if (FolderEvent.DELETED.toString().equals(event))
+			return Change.CHANGE_DELETED;
+		return -1;
+	}
+
+	@Override
+	public List<Change> findAfter(long tenantId, long after, Integer max) throws PersistenceException {
+		assignNumbers(tenantId);
+
+		Map<String, Object> params = new HashMap<>();
+		params.put(TENANT_ID, tenantId);
+		params.put("after", after);
+		return findByWhere(ENTITY + ".tenantId = :tenantId and " + ENTITY + ".number > :after", params,
+				ENTITY + ".number asc", max);
+	}
+
+	@Override
+	public long getLatestNumber(long tenantId) throws PersistenceException {
+		assignNumbers(tenantId);
+		return queryForLong("select max(ld_number) from ld_change where ld_tenantid = ?", tenantId);
+	}
+
+	@Override
+	public long findNumberBefore(long tenantId, Date date) throws PersistenceException {
+		assignNumbers(tenantId);
+		long first = queryForLong("select min(ld_number) from ld_change where ld_tenantid = ? and ld_number > 0"
+				+ " and ld_deleted = 0 and ld_date >= ?", tenantId, date);
+		if (first > 0)
+			return first - 1;
+		return queryForLong("select max(ld_number) from ld_change where ld_tenantid = ?", tenantId);
+	}
+
+	@Override
+	public void cleanOldChanges(int ttl) throws PersistenceException {
+		log.info("cleanOldChanges rows updated: {}", cleanOldRecords(ttl, "ld_change"));
+	}
+
+	public void setSequenceDAO(SequenceDAO sequenceDAO) {
+		this.sequenceDAO = sequenceDAO;
+	}
+
+	public void setConfig(ContextProperties config) {
+		this.config = config;
+	}
+
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+}
@@ -1,17 +1,29 @@
 package com.logicaldoc.core.document;
 
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.PersistentObjectDAO;
 import com.logicaldoc.core.document.dao.DocumentDAO;
+import com.logicaldoc.core.store.Storer;
 import com.logicaldoc.core.task.Task;
+import com.logicaldoc.core.threading.ThreadPools;
 import com.logicaldoc.i18n.I18N;
+import com.logicaldoc.util.io.FileUtil;
 
 /**
- * This task takes care of calculating the documents digest
+ * This task takes care of calculating the digest of the documents stored
+ * before the digest was computed while storing the files. The documents are
+ * processed in batches by the threads of the pool <b>DigestProcessor</b> and
+ * the digests of each batch are saved with batched updates.
  * 
  * @author Marco Meschieri - LogicalDOC
  * @since 6.4
@@ -19,11 +31,15 @@ import com.logicaldoc.i18n.I18N;
 public class DigestProcessor extends Task {
 	public static final String NAME = "DigestProcessor";
 
+	private static final int BATCH_SIZE = 100;
+
 	private DocumentDAO documentDao;
 
-	private long processed = 0;
+	private Storer storer;
+
+	private AtomicLong processed = new AtomicLong();
 
-	private long errors = 0;
+	private AtomicLong errors = new AtomicLong();
 
 	public DigestProcessor() {
 		super(NAME);
@@ -34,6 +50,10 @@ public class DigestProcessor extends Task {
 		this.documentDao = documentDao;
 	}
 
+	public void setStorer(Storer storer) {
+		this.storer = storer;
+	}
+
 	@Override
 	public boolean isIndeterminate() {
 		return false;
@@ -47,8 +67,8 @@ public class DigestProcessor extends Task {
 	@Override
 	protected void runTask() throws Exception {
 		log.info("Start processing of digests");
-		errors = 0;
-		processed = 0;
+		errors.set(0);
+		processed.set(0);
 		try {
 			// First of all find documents to be processed
 			size = documentDao.queryForLong(
@@ -68,28 +88,75 @@ public class DigestProcessor extends Task {
 
 			List<Long> ids = documentDao.findIdsByWhere(PersistentObjectDAO.ENTITY + ".docRef is null and "
 					+ PersistentObjectDAO.ENTITY + ".digest is null and deleted = 0", null, max);
-			for (Long id : ids) {
-				try {
-					log.debug("Processing document {}", id);
 
-					Document doc = documentDao.findById(id);
-					documentDao.updateDigest(doc);
+			ExecutorService pool = ThreadPools.get().getPool(NAME);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+				List<Long> batch = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+				futures.add(pool.submit(() -> processBatch(batch)));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} finally {
+			log.info("Digest processing finished");
+			log.info("Processed documents: {}", processed.get());
+			log.info("Errors: {}", errors.get());
+		}
+	}
+
+	/**
+	 * Computes the digests of a batch of documents and saves them all
+	 * together
+	 * 
+	 * @param ids identifiers of the documents
+	 */
+	private void processBatch(List<Long> ids) {
+		if (interruptRequested)
+			return;
 
-					log.debug("Processed document {}", id);
-					processed++;
+		try {
+			@SuppressWarnings("unchecked")
+			List<Document> docs = documentDao.queryWithIds(
+					"select ld_id, ld_fileversion, ld_version from ld_document where ld_id in ({ids0})", null,
+					Collections.singletonList(ids), (rs, rowNum) -> {
+						Document doc = new Document();
+						doc.setId(rs.getLong(1));
+						doc.setFileVersion(rs.getString(2));
+						doc.setVersion(rs.getString(3));
+						return doc;
+					}, null);
+
+			List<Document> computed = new ArrayList<>();
+			for (Document doc : docs) {
+				if (interruptRequested)
+					break;
+				try {
+					log.debug("Processing document {}", doc.getId());
+
+					String resource = storer.getResourceName(doc, null, null);
+					if (storer.exists(doc.getId(), resource)) {
+						InputStream in = storer.getStream(doc.getId(), resource);
+						doc.setDigest(FileUtil.computeDigest(in));
+						if (doc.getDigest() != null)
+							computed.add(doc);
+						else
+							errors.incrementAndGet();
+					}
+
+					log.debug("Processed document {}", doc.getId());
+					processed.incrementAndGet();
 				} catch (Throwable e) {
 					log.error(e.getMessage(), e);
-					errors++;
+					errors.incrementAndGet();
 				} finally {
 					next();
 				}
-				if (interruptRequested)
-					return;
 			}
-		} finally {
-			log.info("Digest processing finished");
-			log.info("Processed documents: {}", processed);
-			log.info("Errors: {}", errors);
+
+			documentDao.updateDigests(computed);
+		} catch (Throwable e) {
+			log.error(e.getMessage(), e);
+			errors.addAndGet(ids.size());
 		}
 	}
 
@@ -97,10 +164,10 @@ public class DigestProcessor extends Task {
 	protected String prepareReport(Locale locale) {
 		StringBuilder sb = new StringBuilder();
 		sb.append(I18N.message("processeddocs", locale) + ": ");
-		sb.append(processed);
+		sb.append(processed.get());
 		sb.append("\n");
 		sb.append(I18N.message("errors", locale) + ": ");
-		sb.append(errors);
+		sb.append(errors.get());
 		return sb.toString();
 	}
-}
\ No newline at end of file
+}
@@ -3,8 +3,10 @@ package com.logicaldoc.core.document;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Date;
+import java.util.function.Supplier;
 
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.folder.Folder;
@@ -315,6 +317,18 @@ public interface DocumentManager {
 	 */
 	public String parseDocument(Document doc, String fileVersion) throws ParseException;
 
+	/**
+	 * Extracts the document's content writing it in the given writer while
+	 * the file is parsed
+	 * 
+	 * @param doc the document representation
+	 * @param fileVersion version of the file
+	 * @param output where to write the document's content
+	 * 
+	 * @throws ParseException error in the parsing
+	 */
+	public void parseDocument(Document doc, String fileVersion, Writer output) throws ParseException;
+
 	/**
 	 * Archives all the documents in a folder's tree
 	 * 
@@ -411,4 +425,19 @@ public interface DocumentManager {
 	 * @return the number of pages
 	 */
 	public int countPages(Document doc);
+
+	/**
+	 * Executes a task holding the locks that serialize the modifications of
+	 * the given documents. Each modification releases its lock when it returns,
+	 * before the enclosing transaction commits, so a task that makes several
+	 * modifications in one transaction uses this method to keep the other
+	 * writers of those documents out until the transaction completes.
+	 * 
+	 * @param <T> type of the result
+	 * @param docIds identifiers of the documents
+	 * @param task the task to execute, usually a whole transaction
+	 * 
+	 * @return the result of the task
+	 */
+	public <T> T executeLocked(Collection<Long> docIds, Supplier<T> task);
 }
\ No newline at end of file
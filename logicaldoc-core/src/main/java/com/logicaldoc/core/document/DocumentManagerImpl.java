@@ -1,8 +1,14 @@
 package com.logicaldoc.core.document;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
@@ -18,9 +24,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
@@ -39,7 +51,9 @@ import com.logicaldoc.core.metadata.Template;
 import com.logicaldoc.core.metadata.TemplateDAO;
 import com.logicaldoc.core.parser.ParseException;
 import com.logicaldoc.core.parser.Parser;
+import com.logicaldoc.core.parser.ParserExecutor;
 import com.logicaldoc.core.parser.ParserFactory;
+import com.logicaldoc.core.parser.TextWriter;
 import com.logicaldoc.core.searchengine.SearchEngine;
 import com.logicaldoc.core.security.Group;
 import com.logicaldoc.core.security.Permission;
@@ -50,6 +64,7 @@ import com.logicaldoc.core.security.authorization.PermissionException;
 import com.logicaldoc.core.security.dao.TenantDAO;
 import com.logicaldoc.core.security.dao.UserDAO;
 import com.logicaldoc.core.store.Storer;
+import com.logicaldoc.core.threading.StripedLocks;
 import com.logicaldoc.core.threading.ThreadPools;
 import com.logicaldoc.core.ticket.Ticket;
 import com.logicaldoc.core.ticket.TicketDAO;
@@ -67,6 +82,12 @@ import com.logicaldoc.util.time.TimeDiff.TimeField;
  */
 public class DocumentManagerImpl implements DocumentManager {
 
+	/**
+	 * Suffix of the resource that keeps the text extracted from a file
+	 * version, so that the file doesn't need to be parsed again
+	 */
+	public static final String TEXT_SUFFIX = "text.txt.gz";
+
 	private static final String NO_COMMENT_IN_TRANSACTION = "No comment in transaction";
 
 	private static final String MERGE = "merge";
@@ -99,6 +120,10 @@ public class DocumentManagerImpl implements DocumentManager {
 
 	private ContextProperties config;
 
+	private final StripedLocks documentLocks = new StripedLocks(1024);
+
+	private final StripedLocks folderLocks = new StripedLocks(256);
+
 	public void setListenerManager(DocumentListenerManager listenerManager) {
 		this.listenerManager = listenerManager;
 	}
@@ -165,16 +190,18 @@ public class DocumentManagerImpl implements DocumentManager {
 				storer.delete(document.getId(), resource);
 
 			// Store the new file
-			storer.store(newFile, document.getId(), storer.getResourceName(document, fileVersion, null));
+			String digest = storer.store(newFile, document.getId(),
+					storer.getResourceName(document, fileVersion, null));
 
 			long fileSize = newFile.length();
 
-			// Now update the file size in the versions
+			// Now update the file size and digest in the versions
 			List<Version> versions = versionDAO.findByDocId(document.getId());
 			for (Version version : versions) {
 				if (version.getFileVersion().equals(fileVersion)) {
 					versionDAO.initialize(version);
 					version.setFileSize(fileSize);
+					version.setDigest(digest);
 					storeVersionAsync(version);
 				}
 			}
@@ -182,6 +209,8 @@ public class DocumentManagerImpl implements DocumentManager {
 			// Update the document's gridRecord
 			documentDAO.initialize(document);
 			document.setFileSize(fileSize);
+			if (fileVersion.equals(document.getFileVersion()))
+				document.setDigest(digest);
 			if (document.getIndexed() != AbstractDocument.INDEX_SKIP)
 				document.setIndexed(AbstractDocument.INDEX_TO_INDEX);
 			document.setOcrd(0);
@@ -216,9 +245,12 @@ public class DocumentManagerImpl implements DocumentManager {
 
 		/*
 		 * Better to synchronize this block because under high multi-threading
-		 * may lead to hibernate's sessions rollbacks
+		 * may lead to hibernate's sessions rollbacks. Only the operations on
+		 * the same document are serialized.
 		 */
-		synchronized (this) {
+		Lock lock = documentLocks.get(docId);
+		lock.lock();
+		try {
 			// identify the document and folder
 			Document document = documentDAO.findDocument(docId);
 			String oldFileVersion = document.getFileVersion();
@@ -303,7 +335,7 @@ public class DocumentManagerImpl implements DocumentManager {
 
 			// store the document in the repository (on the file system)
 			try {
-				storeFile(document, file);
+				document.setDigest(storeFile(document, file));
 			} catch (IOException ioe) {
 				log.error("Cannot save the new version {} into the storage", document, ioe);
 
@@ -323,7 +355,7 @@ public class DocumentManagerImpl implements DocumentManager {
 			}
 
 			version.setFileSize(document.getFileSize());
-			version.setDigest(null);
+			version.setDigest(document.getDigest());
 			storeVersionAsync(version);
 
 			log.debug("Stored version {}", version.getVersion());
@@ -336,6 +368,8 @@ public class DocumentManagerImpl implements DocumentManager {
 
 			if (!document.getFileVersion().equals(oldFileVersion))
 				documentNoteDAO.copyAnnotations(document.getId(), oldFileVersion, document.getFileVersion());
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -379,9 +413,12 @@ public class DocumentManagerImpl implements DocumentManager {
 
 		/*
 		 * Better to synchronize this block because under high multi-threading
-		 * may lead to hibernate's sessions rollbacks
+		 * may lead to hibernate's sessions rollbacks. Only the operations on
+		 * the same document are serialized.
 		 */
-		synchronized (this) {
+		Lock lock = documentLocks.get(docId);
+		lock.lock();
+		try {
 			Document document = documentDAO.findDocument(docId);
 
 			if (document.getStatus() == status && document.getLockUserId().equals(transaction.getUserId())) {
@@ -405,14 +442,16 @@ public class DocumentManagerImpl implements DocumentManager {
 
 			// Modify document history entry
 			documentDAO.store(document, transaction);
+		} finally {
+			lock.unlock();
 		}
 
 		log.debug("locked document {}", docId);
 	}
 
-	private void storeFile(Document doc, File file) throws IOException {
+	private String storeFile(Document doc, File file) throws IOException {
 		String resource = storer.getResourceName(doc, null, null);
-		storer.store(file, doc.getId(), resource);
+		return storer.store(file, doc.getId(), resource);
 	}
 
 	/**
@@ -441,8 +480,13 @@ public class DocumentManagerImpl implements DocumentManager {
 
 	@Override
 	public String parseDocument(Document doc, String fileVersion) throws ParseException {
-		String content = null;
+		TextWriter output = new TextWriter();
+		parseDocument(doc, fileVersion, output);
+		return output.toString();
+	}
 
+	@Override
+	public void parseDocument(Document doc, String fileVersion, Writer output) throws ParseException {
 		// Check if the document is an alias
 		if (doc.getDocRef() != null) {
 			long docref = doc.getDocRef();
@@ -463,11 +507,24 @@ public class DocumentManagerImpl implements DocumentManager {
 		log.debug("Using parser {} to parse document {}", parser.getClass().getName(), doc.getId());
 
 		// and gets some fields
-		if (parser != null) {
+		if (parser == null)
+			return;
+
+		// Reuse the text extracted in a previous parsing of the same file
+		String textResource = storer.getResourceName(doc, fileVersion, TEXT_SUFFIX);
+		String textKey = getTextKey(parser, doc.getId(), resource);
+		if (readText(doc.getId(), textResource, textKey, output)) {
+			log.debug("Reusing the text extracted from document {}", doc.getId());
+			return;
+		}
+
+		// The text is written in the output and at the same time saved
+		TextTee tee = new TextTee(config.getBoolean("parser.textcache", true) ? textKey : null, output);
+		try {
 			TenantDAO tDao = (TenantDAO) Context.get().getBean(TenantDAO.class);
-			try {
-				content = parser.parse(storer.getStream(doc.getId(), resource), doc.getFileName(), null, locale,
-						tDao.findById(doc.getTenantId()).getName(), doc, fileVersion);
+			try (InputStream is = storer.getStream(doc.getId(), resource)) {
+				ParserExecutor.get().parse(parser, is, doc.getFileName(), null, locale,
+						tDao.findById(doc.getTenantId()).getName(), doc, fileVersion, tee);
 			} catch (Throwable e) {
 				log.error("Cannot parse document {}", doc, e);
 				if (e instanceof ParseException)
@@ -475,13 +532,65 @@ public class DocumentManagerImpl implements DocumentManager {
 				else
 					throw new ParseException(e);
 			}
-		}
 
-		if (content == null) {
-			content = "";
+			// Only a complete text can be reused
+			if (!tee.isTruncated())
+				tee.saveCache(doc.getId(), textResource);
+		} finally {
+			tee.discardCache();
 		}
+	}
 
-		return content;
+	/**
+	 * Computes the key that identifies an extracted text: the text is valid
+	 * as long as the same version of the parser processed the same file
+	 * 
+	 * @param parser the parser
+	 * @param docId identifier of the document
+	 * @param resource name of the parsed resource
+	 * 
+	 * @return the key of the text
+	 */
+	private String getTextKey(Parser parser, long docId, String resource) {
+		Package pkg = parser.getClass().getPackage();
+		String parserVersion = pkg != null ? pkg.getImplementationVersion() : null;
+		if (parserVersion == null)
+			parserVersion = config.getProperty("product.release", "");
+		return parser.getClass().getName() + ";" + parserVersion + ";" + storer.size(docId, resource);
+	}
+
+	/**
+	 * Writes in the output the text cached in the given resource
+	 * 
+	 * @param docId identifier of the document
+	 * @param textResource name of the resource with the text
+	 * @param textKey the key the text must have been saved with
+	 * @param output where to write the text
+	 * 
+	 * @return false if the cache is missing or stale
+	 * 
+	 * @throws ParseException the cached text cannot be read
+	 */
+	private boolean readText(long docId, String textResource, String textKey, Writer output)
+			throws ParseException {
+		if (!config.getBoolean("parser.textcache", true) || !storer.exists(docId, textResource))
+			return false;
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(storer.getStream(docId, textResource)), StandardCharsets.UTF_8))) {
+			if (!textKey.equals(reader.readLine()))
+				return false;
+
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) != -1)
+				output.write(buffer, 0, read);
+			return true;
+		} catch (TextWriter.LimitException e) {
+			return true;
+		} catch (Throwable t) {
+			throw new ParseException(String.format("Cannot read the text %s of document %d", textResource, docId), t);
+		}
 	}
 
 	@Override
@@ -500,9 +609,13 @@ public class DocumentManagerImpl implements DocumentManager {
 			Document realDoc = documentDAO.findById(doc.getDocRef());
 			if (realDoc != null) {
 				if (realDoc.getIndexed() == AbstractDocument.INDEX_TO_INDEX
-						|| realDoc.getIndexed() == AbstractDocument.INDEX_TO_INDEX_METADATA)
+						|| realDoc.getIndexed() == AbstractDocument.INDEX_TO_INDEX_METADATA) {
 					parsingTime = reindex(realDoc.getId(), content, new DocumentHistory(transaction));
 
+					// Make sure the hit of the real document is readable
+					indexer.flush();
+				}
+
 				// Take the content from the real document to avoid double
 				// parsing
 				if (StringUtils.isEmpty(content))
@@ -517,17 +630,22 @@ public class DocumentManagerImpl implements DocumentManager {
 			}
 		}
 
+		TextWriter text = null;
 		if (StringUtils.isEmpty(cont) && doc.getIndexed() != AbstractDocument.INDEX_TO_INDEX_METADATA) {
 			// Extracts the content from the file. This may take very long
 			// time.
 			Date beforeParsing = new Date();
-			cont = parseDocument(doc, null);
+			text = indexer.newContentWriter();
+			parseDocument(doc, null, text);
 			parsingTime = TimeDiff.getTimeDifference(beforeParsing, new Date(), TimeField.MILLISECOND);
 		}
 
 		// This may take time
 		try {
-			indexer.addHit(doc, cont);
+			if (text != null)
+				indexer.addHit(doc, text);
+			else
+				indexer.addHit(doc, cont);
 		} catch (Exception e) {
 			throw new ParseException(e.getMessage(), e);
 		}
@@ -566,9 +684,16 @@ public class DocumentManagerImpl implements DocumentManager {
 		try {
 			/*
 			 * Better to synchronize this block because under high
-			 * multi-threading may lead to hibernate's sessions rollbacks
+			 * multi-threading may lead to hibernate's sessions rollbacks. Only
+			 * the operations on the same document are serialized.
 			 */
-			synchronizedUpdate(document, docVO, transaction);
+			Lock lock = documentLocks.get(document.getId());
+			lock.lock();
+			try {
+				synchronizedUpdate(document, docVO, transaction);
+			} finally {
+				lock.unlock();
+			}
 		} catch (Throwable e) {
 			log.error(e.getMessage(), e);
 			if (e instanceof PersistenceException)
@@ -578,7 +703,7 @@ public class DocumentManagerImpl implements DocumentManager {
 		}
 	}
 
-	private synchronized void synchronizedUpdate(Document document, Document docVO, DocumentHistory transaction)
+	private void synchronizedUpdate(Document document, Document docVO, DocumentHistory transaction)
 			throws Exception, PersistenceException {
 		documentDAO.initialize(document);
 		if (document.getImmutable() == 0
@@ -725,9 +850,14 @@ public class DocumentManagerImpl implements DocumentManager {
 
 			/*
 			 * Better to synchronize this block because under high
-			 * multi-threading may lead to hibernate's sessions rollbacks
+			 * multi-threading may lead to hibernate's sessions rollbacks. The
+			 * document is locked before the target folder, never the opposite.
 			 */
-			synchronized (this) {
+			Lock documentLock = documentLocks.get(doc.getId());
+			Lock folderLock = folderLocks.get(folder.getId());
+			documentLock.lock();
+			folderLock.lock();
+			try {
 				documentDAO.initialize(doc);
 				transaction.setPathOld(folderDAO.computePathExtended(doc.getFolder().getId()));
 				transaction.setFilenameOld(doc.getFileName());
@@ -756,6 +886,9 @@ public class DocumentManagerImpl implements DocumentManager {
 				documentDAO.store(doc, transaction);
 
 				storeVersionAsync(version);
+			} finally {
+				folderLock.unlock();
+				documentLock.unlock();
 			}
 		} else {
 			throw new PersistenceException(DOCUMENT_IS_IMMUTABLE);
@@ -798,35 +931,62 @@ public class DocumentManagerImpl implements DocumentManager {
 		if (!(file != null && file.length() > 0))
 			throw new IllegalArgumentException("Cannot create 0 bytes document");
 
-		setAtributesForCreation(file, docVO, transaction);
+		setAtributesForCreation(file.length(), docVO, transaction);
+		transaction.setFile(file.getAbsolutePath());
 
+		return create(docVO, transaction, doc -> {
+			countPages(file, doc);
+		}, doc -> storeFile(doc, file));
+	}
+
+	/**
+	 * Creates a new document whose content is taken from the storage
+	 * 
+	 * @param docVO the document to create, already prepared
+	 * @param transaction the current session informations
+	 * @param prepare preliminary elaboration of the document
+	 * @param content writes the content of the saved document in the storage
+	 *        and returns its digest
+	 * 
+	 * @return the created document
+	 * 
+	 * @throws PersistenceException error at data layer
+	 */
+	private Document create(Document docVO, DocumentHistory transaction, Consumer<Document> prepare,
+			ContentWriter content) throws PersistenceException {
 		/*
 		 * Better to synchronize this block because under high multi-threading
-		 * it may lead to hibernate's sessions rollbacks
+		 * it may lead to hibernate's sessions rollbacks. Only the creations in
+		 * the same folder are serialized.
 		 */
-		synchronized (this) {
-			countPages(file, docVO);
+		Lock lock = folderLocks.get(docVO.getFolder() != null ? docVO.getFolder().getId() : 0L);
+		lock.lock();
+		try {
+			prepare.accept(docVO);
 
 			if (docVO.getTemplate() == null && docVO.getTemplateId() != null)
 				docVO.setTemplate(templateDAO.findById(docVO.getTemplateId()));
 
-			if (file != null)
-				transaction.setFile(file.getAbsolutePath());
-
 			// Create the gridRecord
 			transaction.setEvent(DocumentEvent.STORED.toString());
 			documentDAO.store(docVO, transaction);
 
 			/* store the document into filesystem */
-			if (file != null)
-				try {
-					storeFile(docVO, file);
-				} catch (Throwable e) {
-					String message = String.format("Unable to store the file of document %d", docVO.getId());
-					log.error(message);
-					documentDAO.delete(docVO.getId());
-					throw new PersistenceException(message, e);
-				}
+			String digest;
+			try {
+				digest = content.write(docVO);
+			} catch (Throwable e) {
+				String message = String.format("Unable to store the file of document %d", docVO.getId());
+				log.error(message);
+				documentDAO.delete(docVO.getId());
+				throw new PersistenceException(message, e);
+			}
+
+			// The digest has been computed while storing the file
+			if (digest != null && !digest.equals(docVO.getDigest())) {
+				docVO.setDigest(digest);
+				documentDAO.updateDigests(Collections.singletonList(docVO));
+			}
 
 			// The document record has been written, now store the initial
 			// version (default 1.0)
@@ -836,8 +996,9 @@ public class DocumentManagerImpl implements DocumentManager {
 			storeVersionAsync(version);
 
 			return docVO;
+		} finally {
+			lock.unlock();
 		}
-
 	}
 
 	/**
@@ -879,7 +1040,7 @@ public class DocumentManagerImpl implements DocumentManager {
 		}, "VersionSave", 100L);
 	}
 
-	private void setAtributesForCreation(File file, Document docVO, DocumentHistory transaction) {
+	private void setAtributesForCreation(long fileSize, Document docVO, DocumentHistory transaction) {
 		String type = UNKNOWN;
 		int lastDotIndex = docVO.getFileName().lastIndexOf(".");
 		if (lastDotIndex > 0) {
@@ -916,7 +1077,7 @@ public class DocumentManagerImpl implements DocumentManager {
 		docVO.setType(type);
 		docVO.setVersion(config.getProperty("document.startversion"));
 		docVO.setFileVersion(docVO.getVersion());
-		docVO.setFileSize(file.length());
+		docVO.setFileSize(fileSize);
 		docVO.setId(0L);
 	}
 
@@ -951,6 +1112,22 @@ public class DocumentManagerImpl implements DocumentManager {
 		}
 	}
 
+	@Override
+	public <T> T executeLocked(Collection<Long> docIds, Supplier<T> task) {
+		List<Lock> locks = documentLocks.get(docIds);
+		int locked = 0;
+		try {
+			for (Lock lock : locks) {
+				lock.lock();
+				locked++;
+			}
+			return task.get();
+		} finally {
+			for (int i = locked - 1; i >= 0; i--)
+				locks.get(i).unlock();
+		}
+	}
+
 	public Document copyToFolder(Document doc, Folder folder, DocumentHistory transaction)
 			throws PersistenceException, IOException {
 		validateTransaction(transaction);
@@ -963,39 +1140,44 @@ public class DocumentManagerImpl implements DocumentManager {
 		}
 
 		String resource = storer.getResourceName(doc, null, null);
-		InputStream is = storer.getStream(doc.getId(), resource);
-		try {
-			Document cloned = new Document(doc);
-			cloned.setId(0);
-			if (doc.getFolder().getId() != folder.getId())
-				cloned.setFolder(folder);
-			cloned.setLastModified(null);
-			cloned.setDate(null);
-			if (cloned.getIndexed() == AbstractDocument.INDEX_INDEXED)
-				cloned.setIndexed(AbstractDocument.INDEX_TO_INDEX);
-			cloned.setStamped(0);
-			cloned.setSigned(0);
-			cloned.setLinks(0);
-			cloned.setOcrd(0);
-			cloned.setBarcoded(0);
-			Document createdDocument = create(is, cloned, transaction);
-
-			// Save the event of the copy
-			DocumentHistory copyEvent = new DocumentHistory(transaction);
-			copyEvent.setDocument(doc);
-			copyEvent.setFolder(doc.getFolder());
-			copyEvent.setEvent(DocumentEvent.COPYED.toString());
-
-			String newPath = folderDAO.computePathExtended(folder.getId());
-			copyEvent.setComment(newPath + "/" + createdDocument.getFileName());
-			documentDAO.saveDocumentHistory(doc, copyEvent);
-
-			return createdDocument;
-		} finally {
-			if (is != null)
-				is.close();
-			is = null;
-		}
+
+		Document cloned = new Document(doc);
+		cloned.setId(0);
+		if (doc.getFolder().getId() != folder.getId())
+			cloned.setFolder(folder);
+		cloned.setLastModified(null);
+		cloned.setDate(null);
+		if (cloned.getIndexed() == AbstractDocument.INDEX_INDEXED)
+			cloned.setIndexed(AbstractDocument.INDEX_TO_INDEX);
+		cloned.setStamped(0);
+		cloned.setSigned(0);
+		cloned.setLinks(0);
+		cloned.setOcrd(0);
+		cloned.setBarcoded(0);
+		setAtributesForCreation(doc.getFileSize(), cloned, transaction);
+
+		/*
+		 * The pages and the digest are the same of the original, the storer
+		 * copies the content and may just share it with the original
+		 */
+		Document createdDocument = create(cloned, transaction, d -> {
+			// Nothing to prepare
+		}, d -> {
+			storer.copy(doc.getId(), resource, d.getId(), storer.getResourceName(d, null, null));
+			return d.getDigest();
+		});
+
+		// Save the event of the copy
+		DocumentHistory copyEvent = new DocumentHistory(transaction);
+		copyEvent.setDocument(doc);
+		copyEvent.setFolder(doc.getFolder());
+		copyEvent.setEvent(DocumentEvent.COPYED.toString());
+
+		String newPath = folderDAO.computePathExtended(folder.getId());
+		copyEvent.setComment(newPath + "/" + createdDocument.getFileName());
+		documentDAO.saveDocumentHistory(doc, copyEvent);
+
+		return createdDocument;
 	}
 
 	@Override
@@ -1004,9 +1186,12 @@ public class DocumentManagerImpl implements DocumentManager {
 
 		/*
 		 * Better to synchronize this block because under high multi-threading
-		 * may lead to hibernate's sessions rollbacks
+		 * may lead to hibernate's sessions rollbacks. Only the operations on
+		 * the same document are serialized.
 		 */
-		synchronized (this) {
+		Lock lock = documentLocks.get(docId);
+		lock.lock();
+		try {
 			Document document = documentDAO.findDocument(docId);
 			documentDAO.initialize(document);
 
@@ -1033,6 +1218,8 @@ public class DocumentManagerImpl implements DocumentManager {
 			// Modify document history entry
 			transaction.setEvent(DocumentEvent.UNLOCKED.toString());
 			documentDAO.store(document, transaction);
+		} finally {
+			lock.unlock();
 		}
 		log.debug("Unlocked document {}", docId);
 	}
@@ -1059,9 +1246,12 @@ public class DocumentManagerImpl implements DocumentManager {
 
 		/*
 		 * Better to synchronize this block because under high multi-threading
-		 * may lead to hibernate's sessions rollbacks
+		 * may lead to hibernate's sessions rollbacks. Only the operations on
+		 * the same document are serialized.
 		 */
-		synchronized (this) {
+		Lock lock = documentLocks.get(docId);
+		lock.lock();
+		try {
 			Document document = documentDAO.findById(docId);
 
 			if (document.getImmutable() == 0
@@ -1089,6 +1279,8 @@ public class DocumentManagerImpl implements DocumentManager {
 			} else {
 				throw new PersistenceException(DOCUMENT_IS_IMMUTABLE);
 			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -1691,4 +1883,98 @@ public class DocumentManagerImpl implements DocumentManager {
 				FileUtil.strongDelete(tempDir);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes the content of a document in the storage and returns its digest
+	 */
+	private interface ContentWriter {
+		public String write(Document document) throws IOException;
+	}
+
+	/**
+	 * Writes the extracted text in the output and at the same time in a
+	 * temporary file, compressed and preceded by its key, so that it can be
+	 * saved for later reuse. Problems with the temporary file just disable the
+	 * saving.
+	 */
+	private class TextTee extends Writer {
+
+		private Writer output;
+
+		private File cache;
+
+		private Writer cacheWriter;
+
+		private boolean truncated = false;
+
+		TextTee(String textKey, Writer output) {
+			this.output = output;
+			if (textKey == null)
+				return;
+
+			try {
+				cache = FileUtil.createTempFile("text", ".gz");
+				cacheWriter = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(cache)),
+						StandardCharsets.UTF_8);
+				cacheWriter.write(textKey);
+				cacheWriter.write("\n");
+			} catch (Throwable t) {
+				log.warn("Cannot save the extracted text", t);
+				discardCache();
+			}
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			try {
+				output.write(cbuf, off, len);
+			} catch (TextWriter.LimitException e) {
+				truncated = true;
+				throw e;
+			}
+
+			if (cacheWriter != null) {
+				try {
+					cacheWriter.write(cbuf, off, len);
+				} catch (IOException e) {
+					log.warn("Cannot save the extracted text", e);
+					discardCache();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		public void close() {
+			// The output is closed by who opened it
+		}
+
+		boolean isTruncated() {
+			return truncated;
+		}
+
+		void saveCache(long docId, String textResource) {
+			if (cacheWriter == null)
+				return;
+
+			try {
+				cacheWriter.close();
+				cacheWriter = null;
+				storer.store(cache, docId, textResource);
+			} catch (Throwable t) {
+				log.warn("Cannot save the text {} of document {}", textResource, docId, t);
+			}
+		}
+
+		void discardCache() {
+			IOUtils.closeQuietly(cacheWriter);
+			cacheWriter = null;
+			FileUtils.deleteQuietly(cache);
+			cache = null;
+		}
+	}
+}
@@ -479,6 +479,18 @@ public interface DocumentDAO extends PersistentObjectDAO<Document> {
 	 */
 	public void updateDigest(Document doc) throws PersistenceException;
 
+	/**
+	 * Saves the already computed digests (SHA-1) of a set of documents, also
+	 * in their versions with the same file version. The updates are sent to
+	 * the database in batches.
+	 * 
+	 * @param docs The documents, each one with identifier, file version and
+	 *        digest
+	 * 
+	 * @throws PersistenceException error at data layer
+	 */
+	public void updateDigests(Collection<Document> docs) throws PersistenceException;
+
 	/**
 	 * Cleans all references to expired transactions. If no lock is found for a
 	 * document referencing a given transaction, the transactionId will be set
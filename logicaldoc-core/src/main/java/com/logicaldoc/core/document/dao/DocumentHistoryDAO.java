@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.PersistentObjectDAO;
 import com.logicaldoc.core.document.DocumentHistory;
 
@@ -103,4 +104,27 @@ public interface DocumentHistoryDAO extends PersistentObjectDAO<DocumentHistory>
 	 * @return list of histories ordered by date
 	 */
 	public List<DocumentHistory> findByUserIdAndEvent(long userId, String event, String sessionId);
-}
\ No newline at end of file
+
+	/**
+	 * Opens a batch for the current thread: from now on the histories stored
+	 * by this thread are kept aside and written all together by
+	 * {@link #flushBatch()}, using JDBC batches.
+	 */
+	public void startBatch();
+
+	/**
+	 * Writes the histories kept aside since the last {@link #startBatch()}
+	 * and closes the batch of the current thread
+	 * 
+	 * @return number of written histories
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	public int flushBatch() throws PersistenceException;
+
+	/**
+	 * Closes the batch of the current thread dropping the histories not yet
+	 * written, for instance because the transaction has been rolled back
+	 */
+	public void discardBatch();
+}
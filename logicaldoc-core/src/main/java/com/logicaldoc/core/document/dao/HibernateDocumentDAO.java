@@ -543,6 +543,27 @@ public class HibernateDocumentDAO extends HibernatePersistentObjectDAO<Document>
 		}
 	}
 
+	@Override
+	public void updateDigests(Collection<Document> docs) throws PersistenceException {
+		if (docs.isEmpty())
+			return;
+
+		List<Object[]> documentArgs = new ArrayList<>();
+		List<Object[]> versionArgs = new ArrayList<>();
+		for (Document doc : docs) {
+			documentArgs.add(new Object[] { doc.getDigest(), doc.getId() });
+			versionArgs.add(new Object[] { doc.getDigest(), doc.getId(), doc.getFileVersion() });
+		}
+		jdbcBatchUpdate("update ld_document set ld_digest=? where ld_id=?", documentArgs);
+		jdbcBatchUpdate("update ld_version set ld_digest=? where ld_documentid=? and ld_fileversion=?", versionArgs);
+
+		if (sessionFactory.getCache() != null) {
+			for (Document doc : docs)
+				sessionFactory.getCache().evictEntityData(Document.class, doc.getId());
+			sessionFactory.getCache().evictEntityData(Version.class);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<Document> findLastModifiedByUserId(long userId, int maxElements) throws PersistenceException {
 		List<Document> coll = new ArrayList<>();
@@ -8,12 +8,14 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Session;
 import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.HibernatePersistentObjectDAO;
 import com.logicaldoc.core.History;
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.RunLevel;
+import com.logicaldoc.core.changelog.ChangeDAO;
 import com.logicaldoc.core.communication.EventCollector;
 import com.logicaldoc.core.document.DocumentHistory;
 import com.logicaldoc.util.sql.SqlUtil;
@@ -31,6 +33,15 @@ public class HibernateDocumentHistoryDAO extends HibernatePersistentObjectDAO<Do
 	private static final String ORDER_BY = "order by ";
 	private static final String AND = " and ";
 
+	private static final int BATCH_SIZE = 100;
+
+	private ChangeDAO changeDAO;
+
+	/**
+	 * Histories kept aside by the threads that opened a batch
+	 */
+	private final ThreadLocal<List<DocumentHistory>> batch = new ThreadLocal<>();
+
 	private HibernateDocumentHistoryDAO() {
 		super(DocumentHistory.class);
 		super.log = LoggerFactory.getLogger(HibernateDocumentHistoryDAO.class);
@@ -128,7 +139,16 @@ public class HibernateDocumentHistoryDAO extends HibernatePersistentObjectDAO<Do
 		if (RunLevel.current().aspectEnabled(History.ASPECT)) {
 			if (history.getComment() != null && history.getComment().length() > 4000)
 				history.setComment(StringUtils.abbreviate(history.getComment(), 4000));
+
+			List<DocumentHistory> histories = batch.get();
+			if (histories != null) {
+				histories.add(history);
+				return;
+			}
+
 			super.store(history);
+			if (changeDAO != null)
+				changeDAO.append(history);
 			EventCollector.get().newEvent(history);
 		}
 	}
@@ -164,4 +184,51 @@ public class HibernateDocumentHistoryDAO extends HibernatePersistentObjectDAO<Do
 			return new ArrayList<>();
 		}
 	}
+
+	@Override
+	public void startBatch() {
+		if (batch.get() == null)
+			batch.set(new ArrayList<>());
+	}
+
+	@Override
+	public int flushBatch() throws PersistenceException {
+		List<DocumentHistory> histories = batch.get();
+		batch.remove();
+		if (histories == null || histories.isEmpty())
+			return 0;
+
+		Session session = getCurrentSession();
+		Integer batchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(BATCH_SIZE);
+		try {
+			// Histories first and changes after, so the inserts of each table
+			// go in the same JDBC batches
+			for (DocumentHistory history : histories)
+				super.store(history);
+			if (changeDAO != null)
+				for (DocumentHistory history : histories)
+					changeDAO.append(history);
+			session.flush();
+		} catch (PersistenceException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new PersistenceException(t);
+		} finally {
+			session.setJdbcBatchSize(batchSize);
+		}
+
+		for (DocumentHistory history : histories)
+			EventCollector.get().newEvent(history);
+		return histories.size();
+	}
+
+	@Override
+	public void discardBatch() {
+		batch.remove();
+	}
+
+	public void setChangeDAO(ChangeDAO changeDAO) {
+		this.changeDAO = changeDAO;
+	}
 }
\ No newline at end of file
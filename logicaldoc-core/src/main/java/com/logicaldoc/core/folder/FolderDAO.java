@@ -2,6 +2,7 @@ package com.logicaldoc.core.folder;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.logicaldoc.core.PersistenceException;
@@ -269,6 +270,33 @@ public interface FolderDAO extends PersistentObjectDAO<Folder> {
 	 */
 	public Set<Permission> getEnabledPermissions(long folderId, long userId) throws PersistenceException;
 
+	/**
+	 * Finds all permissions of a user enabled on the specified folder
+	 * 
+	 * @param folderId ID of the folder
+	 * @param userId ID of the user
+	 * 
+	 * @return Mask of the enabled permissions, see {@link Permission#getMask()}
+	 * 
+	 * @throws PersistenceException error at data layer
+	 */
+	public int getEnabledPermissionsMask(long folderId, long userId) throws PersistenceException;
+
+	/**
+	 * Finds all permissions of a user enabled on a set of folders, the
+	 * policies not already cached are read with a single query
+	 * 
+	 * @param folders the folders to inspect
+	 * @param userId ID of the user
+	 * 
+	 * @return Map folderId - mask of the enabled permissions, see
+	 *         {@link Permission#getMask()}
+	 * 
+	 * @throws PersistenceException error at data layer
+	 */
+	public Map<Long, Integer> getEnabledPermissionsMasks(Collection<Folder> folders, long userId)
+			throws PersistenceException;
+
 	/**
 	 * This method selects only the folder ID from the folders for which a user
 	 * is authorized. Only folders direct child of the specified parent are
@@ -111,38 +111,32 @@ public class FolderGroup implements Serializable {
 	 * @return Permissions settings as integer representation.
 	 */
 	public int getPermissions() {
-		/**
-		 * Very important, see the Permission enumeration in order u replicate
-		 * the same mask order.
-		 */
-		StringBuilder sb = new StringBuilder();
-		sb.append(codeFlag(getStorage()));
-		sb.append(codeFlag(getAutomation()));
-		sb.append(codeFlag(getEmail()));
-		sb.append(codeFlag(getMove()));
-		sb.append(codeFlag(getPassword()));
-		sb.append(codeFlag(getPrint()));
-		sb.append(codeFlag(getSubscription()));
-		sb.append(codeFlag(getCalendar()));
-		sb.append(codeFlag(getDownload()));
-		sb.append(codeFlag(getWorkflow()));
-		sb.append(codeFlag(getArchive()));
-		sb.append(codeFlag(getSign()));
-		sb.append(codeFlag(getExport()));
-		sb.append(codeFlag(getImport()));
-		sb.append(codeFlag(getRename()));
-		sb.append(codeFlag(getDelete()));
-		sb.append(codeFlag(getImmutable()));
-		sb.append(codeFlag(getSecurity()));
-		sb.append(codeFlag(getAdd()));
-		sb.append(codeFlag(getWrite()));
-		sb.append(codeFlag(getRead()));
-
-		return Integer.parseInt(sb.toString(), 2);
-	}
-
-	private String codeFlag(int flagValue) {
-		return flagValue == 1 ? "1" : "0";
+		int permissions = codeFlag(getRead(), Permission.READ);
+		permissions |= codeFlag(getWrite(), Permission.WRITE);
+		permissions |= codeFlag(getAdd(), Permission.ADD);
+		permissions |= codeFlag(getSecurity(), Permission.SECURITY);
+		permissions |= codeFlag(getImmutable(), Permission.IMMUTABLE);
+		permissions |= codeFlag(getDelete(), Permission.DELETE);
+		permissions |= codeFlag(getRename(), Permission.RENAME);
+		permissions |= codeFlag(getImport(), Permission.IMPORT);
+		permissions |= codeFlag(getExport(), Permission.EXPORT);
+		permissions |= codeFlag(getSign(), Permission.SIGN);
+		permissions |= codeFlag(getArchive(), Permission.ARCHIVE);
+		permissions |= codeFlag(getWorkflow(), Permission.WORKFLOW);
+		permissions |= codeFlag(getDownload(), Permission.DOWNLOAD);
+		permissions |= codeFlag(getCalendar(), Permission.CALENDAR);
+		permissions |= codeFlag(getSubscription(), Permission.SUBSCRIPTION);
+		permissions |= codeFlag(getPrint(), Permission.PRINT);
+		permissions |= codeFlag(getPassword(), Permission.PASSWORD);
+		permissions |= codeFlag(getMove(), Permission.MOVE);
+		permissions |= codeFlag(getEmail(), Permission.EMAIL);
+		permissions |= codeFlag(getAutomation(), Permission.AUTOMATION);
+		permissions |= codeFlag(getStorage(), Permission.STORAGE);
+		return permissions;
+	}
+
+	private int codeFlag(int flagValue, Permission permission) {
+		return flagValue == 1 ? permission.getMask() : 0;
 	}
 
 	/**
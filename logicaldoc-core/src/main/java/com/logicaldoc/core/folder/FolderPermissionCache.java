@@ -0,0 +1,405 @@
+package com.logicaldoc.core.folder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.logicaldoc.core.security.Permission;
+import com.logicaldoc.util.config.ContextProperties;
+
+/**
+ * In-memory cache of the folder permissions. The permissions are stored as a
+ * bitmask of {@link Permission#getMask()} values and are keyed by the set of
+ * groups of the user and the folder that defines the security policies (the
+ * security reference). Users belonging to the same groups share the same
+ * entries.<br>
+ * <br>
+ * The cache also remembers the security reference of each folder and, for
+ * every set of groups and permission, the folders that declare their own
+ * policies granting that permission.<br>
+ * <br>
+ * Every write to the policies must invalidate the affected entries; when the
+ * invalidation happens inside a transaction, it is repeated after the
+ * transaction completes so that concurrent readers cannot put back data read
+ * before the commit. The size is controlled by the setting
+ * <b>security.acl.cache.size</b>, 0 disables the cache.<br>
+ * <br>
+ * In a cluster the policies may be changed by other nodes, so the DAO
+ * compares a signature of the security tables every
+ * <b>security.acl.cache.check</b> seconds and clears the cache when it
+ * differs; 0 means at every access.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class FolderPermissionCache {
+
+	protected static Logger log = LoggerFactory.getLogger(FolderPermissionCache.class);
+
+	private ContextProperties config;
+
+	/**
+	 * Permissions masks: security reference -> groups -> mask
+	 */
+	private final Map<Long, Map<Groups, Integer>> permissions = new ConcurrentHashMap<>();
+
+	/**
+	 * Security references: folder -> folder that defines the policies
+	 */
+	private final Map<Long, Long> securityRefs = new ConcurrentHashMap<>();
+
+	/**
+	 * Reverse of the security references: folder that defines the policies ->
+	 * folders pointing to it
+	 */
+	private final Map<Long, Set<Long>> referrers = new ConcurrentHashMap<>();
+
+	/**
+	 * Folders with own policies: groups+permission -> folder identifiers
+	 */
+	private final Map<String, Set<Long>> masters = new ConcurrentHashMap<>();
+
+	private final AtomicInteger size = new AtomicInteger(0);
+
+	/**
+	 * Incremented at each invalidation, used to discard values read from the
+	 * database before an invalidation
+	 */
+	private final AtomicLong generation = new AtomicLong(0);
+
+	private final AtomicLong hits = new AtomicLong(0);
+
+	private final AtomicLong misses = new AtomicLong(0);
+
+	private final AtomicLong invalidations = new AtomicLong(0);
+
+	/**
+	 * Signature of the security tables at the time of the last check
+	 */
+	private volatile String signature;
+
+	private volatile long lastCheck = 0;
+
+	public void setConfig(ContextProperties config) {
+		this.config = config;
+	}
+
+	public boolean isEnabled() {
+		return getMaxSize() > 0;
+	}
+
+	private int getMaxSize() {
+		return config != null ? config.getInt("security.acl.cache.size", 100000) : 100000;
+	}
+
+	/**
+	 * Tells if the cache must be checked against the database because other
+	 * nodes of the cluster may have changed the policies
+	 *
+	 * @return true if a check is required now
+	 */
+	public boolean isCheckRequired() {
+		if (!isEnabled() || config == null || !config.getBoolean("cluster.enabled", false))
+			return false;
+		long now = System.currentTimeMillis();
+		if (now - lastCheck < config.getInt("security.acl.cache.check", 5) * 1000L)
+			return false;
+		lastCheck = now;
+		return true;
+	}
+
+	public String getSignature() {
+		return signature;
+	}
+
+	public void setSignature(String signature) {
+		this.signature = signature;
+	}
+
+	/**
+	 * Gets the current generation, to be read before querying the database
+	 * and passed to the put methods
+	 *
+	 * @return the generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Gets the cached permissions
+	 *
+	 * @param groupIds identifiers of the groups of the user
+	 * @param securityRef identifier of the folder that defines the policies
+	 *
+	 * @return the permissions mask or null if not cached
+	 */
+	public Integer getPermissions(long[] groupIds, long securityRef) {
+		Map<Groups, Integer> masks = permissions.get(securityRef);
+		Integer mask = masks != null ? masks.get(new Groups(groupIds)) : null;
+		count(mask != null);
+		return mask;
+	}
+
+	/**
+	 * Caches the permissions
+	 *
+	 * @param groupIds identifiers of the groups of the user
+	 * @param securityRef identifier of the folder that defines the policies
+	 * @param mask the permissions mask
+	 * @param generation the generation read before querying the database
+	 */
+	public void putPermissions(long[] groupIds, long securityRef, int mask, long generation) {
+		if (!isEnabled() || generation != this.generation.get())
+			return;
+		if (permissions.computeIfAbsent(securityRef, k -> new ConcurrentHashMap<>()).put(new Groups(groupIds),
+				mask) == null)
+			grow();
+	}
+
+	/**
+	 * Gets the cached security reference of a folder
+	 *
+	 * @param folderId identifier of the folder
+	 *
+	 * @return the identifier of the folder that defines the policies or null
+	 *         if not cached
+	 */
+	public Long getSecurityRef(long folderId) {
+		Long ref = securityRefs.get(folderId);
+		count(ref != null);
+		return ref;
+	}
+
+	/**
+	 * Caches the security reference of a folder
+	 *
+	 * @param folderId identifier of the folder
+	 * @param securityRef identifier of the folder that defines the policies
+	 * @param generation the generation read before querying the database
+	 */
+	public void putSecurityRef(long folderId, long securityRef, long generation) {
+		if (!isEnabled() || generation != this.generation.get())
+			return;
+		// Index the referrer first, so a concurrent invalidation of the
+		// reference always finds the new entry
+		referrers.computeIfAbsent(securityRef, k -> ConcurrentHashMap.newKeySet()).add(folderId);
+		Long previous = securityRefs.put(folderId, securityRef);
+		if (previous == null)
+			grow();
+		else if (previous.longValue() != securityRef)
+			removeReferrer(previous, folderId);
+	}
+
+	private void removeReferrer(long securityRef, long folderId) {
+		Set<Long> folderIds = referrers.get(securityRef);
+		if (folderIds != null)
+			folderIds.remove(folderId);
+	}
+
+	/**
+	 * Gets the cached folders that declare their own policies granting a
+	 * permission to at least one of the given groups
+	 *
+	 * @param groupIds identifiers of the groups of the user
+	 * @param permission the permission
+	 *
+	 * @return the folder identifiers or null if not cached
+	 */
+	public Set<Long> getMasters(long[] groupIds, Permission permission) {
+		Set<Long> ids = masters.get(mastersKey(groupIds, permission));
+		count(ids != null);
+		return ids;
+	}
+
+	/**
+	 * Caches the folders that declare their own policies granting a
+	 * permission to at least one of the given groups
+	 *
+	 * @param groupIds identifiers of the groups of the user
+	 * @param permission the permission
+	 * @param folderIds the folder identifiers
+	 * @param generation the generation read before querying the database
+	 */
+	public void putMasters(long[] groupIds, Permission permission, Collection<Long> folderIds, long generation) {
+		if (!isEnabled() || generation != this.generation.get())
+			return;
+		if (masters.put(mastersKey(groupIds, permission),
+				Collections.unmodifiableSet(new HashSet<>(folderIds))) == null)
+			grow();
+	}
+
+	private static String mastersKey(long[] groupIds, Permission permission) {
+		return permission.getName() + ":" + new Groups(groupIds);
+	}
+
+	/**
+	 * Invalidates everything related to the given folders: their policies and
+	 * their security references
+	 *
+	 * @param folderIds identifiers of the folders
+	 */
+	public void invalidateFolders(Collection<Long> folderIds) {
+		final Set<Long> ids = new HashSet<>(folderIds);
+		runNowAndAfterCompletion(() -> {
+			for (Long id : ids) {
+				permissions.remove(id);
+				Long ref = securityRefs.remove(id);
+				if (ref != null)
+					removeReferrer(ref, id);
+			}
+			masters.clear();
+		});
+	}
+
+	/**
+	 * Invalidates everything related to a folder: its policies, its security
+	 * reference and the security references of the folders that point to it
+	 *
+	 * @param folderId identifier of the folder
+	 */
+	public void invalidateFolder(long folderId) {
+		runNowAndAfterCompletion(() -> {
+			permissions.remove(folderId);
+			Long ref = securityRefs.remove(folderId);
+			if (ref != null)
+				removeReferrer(ref, folderId);
+			Set<Long> folderIds = referrers.remove(folderId);
+			if (folderIds != null)
+				for (Long id : folderIds)
+					securityRefs.remove(id, folderId);
+			masters.clear();
+		});
+	}
+
+	/**
+	 * Invalidates the policies of all the sets of groups containing the given
+	 * group
+	 *
+	 * @param groupId identifier of the group
+	 */
+	public void invalidateGroup(long groupId) {
+		runNowAndAfterCompletion(() -> {
+			for (Map<Groups, Integer> masks : permissions.values())
+				masks.keySet().removeIf(groups -> groups.contains(groupId));
+			masters.clear();
+		});
+	}
+
+	/**
+	 * Invalidates the whole cache
+	 */
+	public void clear() {
+		runNowAndAfterCompletion(this::clearAll);
+	}
+
+	private void clearAll() {
+		permissions.clear();
+		securityRefs.clear();
+		referrers.clear();
+		masters.clear();
+		size.set(0);
+	}
+
+	private void runNowAndAfterCompletion(Runnable invalidation) {
+		invalidate(invalidation);
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					invalidate(invalidation);
+				}
+			});
+		}
+	}
+
+	private void invalidate(Runnable invalidation) {
+		generation.incrementAndGet();
+		invalidations.incrementAndGet();
+		invalidation.run();
+	}
+
+	private void grow() {
+		/*
+		 * The size is just an approximation, decremented only when the whole
+		 * cache gets cleared. When the maximum is exceeded we start from
+		 * scratch, that is cheap and keeps the hot entries coming back soon.
+		 */
+		if (size.incrementAndGet() > getMaxSize()) {
+			log.debug("Folder permissions cache full, clearing it");
+			generation.incrementAndGet();
+			clearAll();
+		}
+	}
+
+	private void count(boolean hit) {
+		if (hit)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Approximated number of cached entries
+	 *
+	 * @return the size
+	 */
+	public int getSize() {
+		return size.get();
+	}
+
+	/**
+	 * A sorted set of group identifiers
+	 */
+	private static final class Groups {
+		private final long[] ids;
+
+		private Groups(long[] groupIds) {
+			ids = groupIds.clone();
+			Arrays.sort(ids);
+		}
+
+		private boolean contains(long groupId) {
+			return Arrays.binarySearch(ids, groupId) >= 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(ids);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Groups && Arrays.equals(ids, ((Groups) obj).ids);
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(ids);
+		}
+	}
+}
@@ -0,0 +1,549 @@
+package com.logicaldoc.core.folder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.logicaldoc.core.PersistentObject;
+import com.logicaldoc.util.config.ContextProperties;
+
+/**
+ * In-memory representation of the hierarchy of all the folders, used to
+ * answer the structural questions (subtrees, parents, paths, workspaces)
+ * without querying the database.<br>
+ * <br>
+ * Each folder occupies a slot in a set of parallel primitive arrays holding
+ * its identifier, parent, type and deletion code; the children of a
+ * folder are linked through the <code>firstChild</code> and
+ * <code>nextSibling</code> arrays. The structure is loaded by the
+ * {@link FolderDAO} and kept updated at each change of the hierarchy. When a
+ * transaction that changed the tree is rolled back, the tree is invalidated
+ * and reloaded at the next access.<br>
+ * <br>
+ * In a cluster other nodes may alter the hierarchy, so the DAO compares a
+ * signature of the ld_folder table every <b>folder.tree.check</b> seconds and
+ * reloads the tree when it differs. The setting <b>folder.tree.enabled</b>
+ * can be used to disable the tree and go always to the database.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class FolderTree {
+
+	protected static Logger log = LoggerFactory.getLogger(FolderTree.class);
+
+	private static final int NONE = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private ContextProperties config;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final SlotIndex index = new SlotIndex();
+
+	private long[] ids = new long[INITIAL_CAPACITY];
+
+	private long[] parents = new long[INITIAL_CAPACITY];
+
+	private int[] types = new int[INITIAL_CAPACITY];
+
+	private int[] deleted = new int[INITIAL_CAPACITY];
+
+	private int[] firstChild = new int[INITIAL_CAPACITY];
+
+	private int[] nextSibling = new int[INITIAL_CAPACITY];
+
+	private int size = 0;
+
+	private volatile boolean loaded = false;
+
+	/**
+	 * Signature of the ld_folder table at the time of the last load or check
+	 */
+	private volatile String signature;
+
+	private volatile long lastCheck = 0;
+
+	public void setConfig(ContextProperties config) {
+		this.config = config;
+	}
+
+	public boolean isEnabled() {
+		return config == null || config.getBoolean("folder.tree.enabled", true);
+	}
+
+	/**
+	 * Tells if the tree must be checked against the database because other
+	 * nodes of the cluster may have changed it
+	 *
+	 * @return true if a check is required now
+	 */
+	public boolean isCheckRequired() {
+		if (config == null || !config.getBoolean("cluster.enabled", false))
+			return false;
+		long now = System.currentTimeMillis();
+		if (now - lastCheck < config.getInt("folder.tree.check", 30) * 1000L)
+			return false;
+		lastCheck = now;
+		return true;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public String getSignature() {
+		return signature;
+	}
+
+	public void setSignature(String signature) {
+		this.signature = signature;
+	}
+
+	/**
+	 * Marks the tree as not loaded, it will be reloaded at the next access
+	 */
+	public void invalidate() {
+		loaded = false;
+	}
+
+	/**
+	 * Invalidates the tree in case the current transaction is rolled back
+	 */
+	public void invalidateOnRollback() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status != STATUS_COMMITTED)
+						invalidate();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Replaces the whole content of the tree. Each record is an array of: id,
+	 * parentId, type, deleted.
+	 *
+	 * @param records the folders
+	 */
+	public void load(Collection<long[]> records) {
+		lock.writeLock().lock();
+		try {
+			index.clear();
+			size = 0;
+			ensureCapacity(records.size());
+
+			// First create all the slots, then link them
+			for (long[] rec : records)
+				allocate(rec[0], rec[1], (int) rec[2], (int) rec[3]);
+			for (int slot = 0; slot < size; slot++)
+				link(slot);
+
+			loaded = true;
+			log.info("Loaded folder tree with {} folders", size);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds or updates a folder, moving it under a different parent if needed
+	 *
+	 * @param id identifier of the folder
+	 * @param parentId identifier of the parent folder
+	 * @param type type of folder
+	 * @param deleted the deletion code
+	 */
+	public void put(long id, long parentId, int type, int deleted) {
+		lock.writeLock().lock();
+		try {
+			int slot = index.get(id);
+			if (slot == NONE) {
+				slot = allocate(id, parentId, type, deleted);
+				link(slot);
+			} else {
+				if (parents[slot] != parentId) {
+					unlink(slot);
+					parents[slot] = parentId;
+					link(slot);
+				}
+				types[slot] = type;
+				this.deleted[slot] = deleted;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Updates the deletion code of some folders
+	 *
+	 * @param folderIds identifiers of the folders
+	 * @param deleted the deletion code
+	 */
+	public void setDeleted(Collection<Long> folderIds, int deleted) {
+		lock.writeLock().lock();
+		try {
+			for (Long id : folderIds) {
+				int slot = index.get(id);
+				if (slot != NONE)
+					this.deleted[slot] = deleted;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Moves a folder under a different parent
+	 *
+	 * @param folderId identifier of the folder
+	 * @param parentId identifier of the new parent
+	 */
+	public void setParent(long folderId, long parentId) {
+		lock.writeLock().lock();
+		try {
+			int slot = index.get(folderId);
+			if (slot != NONE && parents[slot] != parentId) {
+				unlink(slot);
+				parents[slot] = parentId;
+				link(slot);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Restores those folders marked with the default deletion code
+	 *
+	 * @param folderIds identifiers of the folders
+	 */
+	public void restore(Collection<Long> folderIds) {
+		lock.writeLock().lock();
+		try {
+			for (Long id : folderIds) {
+				int slot = index.get(id);
+				if (slot != NONE && deleted[slot] == PersistentObject.DELETED_CODE_DEFAULT)
+					deleted[slot] = 0;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean contains(long folderId) {
+		lock.readLock().lock();
+		try {
+			return index.get(folderId) != NONE;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Collects the identifiers of a folder and all its descendants
+	 *
+	 * @param rootId identifier of the top folder, always included
+	 * @param includeDeleted if the deleted folders must be included
+	 * @param prune if true the descendants of a deleted folder are not
+	 *        visited when <code>includeDeleted</code> is false
+	 *
+	 * @return the identifiers or null if the folder is not in the tree
+	 */
+	public Set<Long> getSubtree(long rootId, boolean includeDeleted, boolean prune) {
+		lock.readLock().lock();
+		try {
+			int root = index.get(rootId);
+			if (root == NONE)
+				return null;
+
+			Set<Long> subtree = new HashSet<>();
+			subtree.add(rootId);
+
+			int[] stack = new int[16];
+			int top = 0;
+			stack[top++] = root;
+			while (top > 0) {
+				int slot = stack[--top];
+				for (int child = firstChild[slot]; child != NONE; child = nextSibling[child]) {
+					boolean alive = includeDeleted || deleted[child] == 0;
+					if (alive)
+						subtree.add(ids[child]);
+					if (alive || !prune) {
+						if (top == stack.length)
+							stack = Arrays.copyOf(stack, top * 2);
+						stack[top++] = child;
+					}
+				}
+			}
+			return subtree;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the ancestors of a folder
+	 *
+	 * @param folderId identifier of the folder
+	 *
+	 * @return the identifiers of the ancestors, starting from the root and
+	 *         ending with the direct parent or null if the folder is not in
+	 *         the tree
+	 */
+	public long[] getParents(long folderId) {
+		lock.readLock().lock();
+		try {
+			int slot = index.get(folderId);
+			if (slot == NONE)
+				return null;
+
+			long[] path = new long[16];
+			int count = 0;
+			while (!isRoot(slot)) {
+				slot = index.get(parents[slot]);
+				if (slot == NONE)
+					break;
+				if (count == path.length)
+					path = Arrays.copyOf(path, count * 2);
+				path[count++] = ids[slot];
+
+				// Protection against cycles
+				if (count > size)
+					return null;
+			}
+
+			long[] reversed = new long[count];
+			for (int i = 0; i < count; i++)
+				reversed[i] = path[count - 1 - i];
+			return reversed;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Tells if a folder is an ancestor of another one
+	 *
+	 * @param folderId identifier of the possible ancestor
+	 * @param targetId identifier of the folder to inspect
+	 *
+	 * @return true if folderId is a parent of targetId, null if the target is
+	 *         not in the tree
+	 */
+	public Boolean isInPath(long folderId, long targetId) {
+		long[] path = getParents(targetId);
+		if (path == null)
+			return null;
+		for (long id : path)
+			if (id == folderId)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Computes the path of a folder in the form /id1/id2/folderId, the root
+	 * is not included
+	 *
+	 * @param folderId identifier of the folder
+	 *
+	 * @return the path or null if the folder is not in the tree
+	 */
+	public String computePath(long folderId) {
+		long[] path = getParents(folderId);
+		if (path == null)
+			return null;
+
+		if (path.length == 0)
+			return "/";
+
+		StringBuilder sb = new StringBuilder();
+		// Skip the root
+		for (int i = 1; i < path.length; i++) {
+			sb.append('/');
+			sb.append(path[i]);
+		}
+		sb.append('/');
+		sb.append(folderId);
+		return sb.toString();
+	}
+
+	/**
+	 * Finds the workspace a folder belongs to
+	 *
+	 * @param folderId identifier of the folder
+	 *
+	 * @return the identifier of the workspace, {@link #NONE} if there is no
+	 *         workspace or null if the folder is not in the tree
+	 */
+	public Long findWorkspace(long folderId) {
+		lock.readLock().lock();
+		try {
+			int slot = index.get(folderId);
+			if (slot == NONE)
+				return null;
+			if (types[slot] == Folder.TYPE_WORKSPACE)
+				return folderId;
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		long[] path = getParents(folderId);
+		if (path == null)
+			return null;
+
+		lock.readLock().lock();
+		try {
+			// Skip the root
+			for (int i = 1; i < path.length; i++) {
+				int slot = index.get(path[i]);
+				if (slot != NONE && types[slot] == Folder.TYPE_WORKSPACE)
+					return path[i];
+			}
+			return (long) NONE;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private boolean isRoot(int slot) {
+		return parents[slot] == ids[slot];
+	}
+
+	private int allocate(long id, long parentId, int type, int deleted) {
+		ensureCapacity(size + 1);
+		int slot = size++;
+		ids[slot] = id;
+		parents[slot] = parentId;
+		types[slot] = type;
+		this.deleted[slot] = deleted;
+		firstChild[slot] = NONE;
+		nextSibling[slot] = NONE;
+		index.put(id, slot);
+		return slot;
+	}
+
+	private void link(int slot) {
+		if (isRoot(slot))
+			return;
+		int parent = index.get(parents[slot]);
+		if (parent == NONE) {
+			// The parent is unknown, maybe created by another node
+			if (loaded) {
+				log.debug("Unknown parent {} of folder {}, the tree will be reloaded", parents[slot], ids[slot]);
+				loaded = false;
+			}
+			return;
+		}
+		nextSibling[slot] = firstChild[parent];
+		firstChild[parent] = slot;
+	}
+
+	private void unlink(int slot) {
+		int parent = index.get(parents[slot]);
+		if (parent == NONE || isRoot(slot))
+			return;
+
+		if (firstChild[parent] == slot) {
+			firstChild[parent] = nextSibling[slot];
+		} else {
+			for (int child = firstChild[parent]; child != NONE; child = nextSibling[child])
+				if (nextSibling[child] == slot) {
+					nextSibling[child] = nextSibling[slot];
+					break;
+				}
+		}
+		nextSibling[slot] = NONE;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= ids.length)
+			return;
+		int newCapacity = Math.max(capacity, ids.length * 2);
+		ids = Arrays.copyOf(ids, newCapacity);
+		parents = Arrays.copyOf(parents, newCapacity);
+		types = Arrays.copyOf(types, newCapacity);
+		deleted = Arrays.copyOf(deleted, newCapacity);
+		firstChild = Arrays.copyOf(firstChild, newCapacity);
+		nextSibling = Arrays.copyOf(nextSibling, newCapacity);
+	}
+
+	/**
+	 * Open addressing map from folder identifiers to slots, to avoid boxing
+	 */
+	private static final class SlotIndex {
+		private long[] keys = new long[INITIAL_CAPACITY * 2];
+
+		private int[] values = new int[INITIAL_CAPACITY * 2];
+
+		private boolean[] used = new boolean[INITIAL_CAPACITY * 2];
+
+		private int count = 0;
+
+		private void clear() {
+			Arrays.fill(used, false);
+			count = 0;
+		}
+
+		private int get(long key) {
+			int mask = keys.length - 1;
+			for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask)
+				if (keys[i] == key)
+					return values[i];
+			return NONE;
+		}
+
+		private void put(long key, int value) {
+			if ((count + 1) * 2 > keys.length)
+				rehash(keys.length * 2);
+
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (used[i]) {
+				if (keys[i] == key) {
+					values[i] = value;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			used[i] = true;
+			keys[i] = key;
+			values[i] = value;
+			count++;
+		}
+
+		private void rehash(int capacity) {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			boolean[] oldUsed = used;
+			keys = new long[capacity];
+			values = new int[capacity];
+			used = new boolean[capacity];
+			count = 0;
+			for (int i = 0; i < oldKeys.length; i++)
+				if (oldUsed[i])
+					put(oldKeys[i], oldValues[i]);
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
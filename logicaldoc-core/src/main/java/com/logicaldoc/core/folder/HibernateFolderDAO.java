@@ -7,6 +7,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -15,7 +16,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.stream.Collectors;
@@ -24,6 +24,8 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
 
 import com.logicaldoc.core.HibernatePersistentObjectDAO;
 import com.logicaldoc.core.PersistenceException;
@@ -45,13 +47,11 @@ import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.security.SessionManager;
 import com.logicaldoc.core.security.Tenant;
 import com.logicaldoc.core.security.User;
-import com.logicaldoc.core.security.UserGroup;
 import com.logicaldoc.core.security.dao.GroupDAO;
 import com.logicaldoc.core.security.dao.TenantDAO;
 import com.logicaldoc.core.security.dao.UserDAO;
 import com.logicaldoc.core.store.Storer;
 import com.logicaldoc.util.Context;
-import com.logicaldoc.util.StringUtil;
 import com.logicaldoc.util.html.HTMLSanitizer;
 import com.logicaldoc.util.sql.SqlUtil;
 
@@ -93,6 +93,16 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 	private static final String WHERE_GROUP_GROUPID_IN = " where _group.groupId in (";
 
+	/**
+	 * The permissions stored in the columns of ld_foldergroup
+	 */
+	private static final Permission[] PERMISSION_COLUMNS = Arrays.stream(Permission.values())
+			.filter(p -> p != Permission.READ).toArray(Permission[]::new);
+
+	private static final String SELECT_PERMISSIONS = SELECT
+			+ Arrays.stream(PERMISSION_COLUMNS).map(p -> "A." + p.getColumn()).collect(Collectors.joining(", "))
+			+ " from ld_foldergroup A";
+
 	private UserDAO userDAO;
 
 	private FolderHistoryDAO historyDAO;
@@ -101,6 +111,10 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 	private FolderListenerManager listenerManager;
 
+	private FolderPermissionCache permissionCache;
+
+	private FolderTree folderTree;
+
 	protected HibernateFolderDAO() {
 		super(Folder.class);
 		super.log = LoggerFactory.getLogger(HibernateFolderDAO.class);
@@ -172,6 +186,11 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 			flush();
 
+			// The policies or the security reference may have been changed
+			permissionCache.invalidateFolder(folder.getId());
+
+			updateTree(folder);
+
 			if (folder.getDeleted() == 0 && folder.getId() != 0L)
 				refresh(folder);
 
@@ -197,6 +216,8 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 				else
 					alias.setSecurityRef(folder.getId());
 				saveOrUpdate(alias);
+				permissionCache.invalidateFolder(alias.getId());
+				updateTree(alias);
 			}
 		}
 	}
@@ -489,34 +510,21 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 		return isPermissionEnabled(Permission.MOVE, id, userId);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public boolean isReadEnabled(long folderId, long userId) throws PersistenceException {
 		User user = getExistingtUser(userId);
 		if (user.isMemberOf(Group.GROUP_ADMIN))
 			return true;
 
-		long id = folderId;
-		Folder folder = findById(folderId);
-		if (folder == null)
+		Long id = getSecurityRef(folderId);
+		if (id == null)
 			return false;
-		if (folder.getSecurityRef() != null)
-			id = folder.getSecurityRef().longValue();
 
-		Set<Group> userGroups = user.getGroups();
-		if (userGroups.isEmpty())
+		long[] groupIds = user.getGroupIds();
+		if (groupIds.length == 0)
 			return false;
 
-		StringBuilder query = new StringBuilder(SELECT_DISTINCT + ENTITY + ") " + FROM_FOLDER + ENTITY + "  ");
-		query.append(LEFT_JOIN + ENTITY + FOLDER_GROUPS_AS_GROUP);
-		query.append(WHERE_GROUP_GROUPID_IN);
-		query.append(userGroups.stream().map(g -> Long.toString(g.getId())).collect(Collectors.joining(",")));
-		query.append(") " + AND + ENTITY + ".id = :id");
-
-		Map<String, Object> params = new HashMap<>();
-		params.put("id", Long.valueOf(id));
-		List<FolderGroup> coll = findByQuery(query.toString(), params, null);
-		return !coll.isEmpty();
+		return Permission.READ.match(getPermissionsMask(id, groupIds));
 	}
 
 	@Override
@@ -672,6 +680,16 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 		if (folder == null)
 			return null;
 
+		FolderTree tree = getTree();
+		if (tree != null) {
+			// The parent may have been just changed in the given instance
+			if (folder.getId() == folder.getParentId())
+				return SLASH;
+			String parentPath = tree.computePath(folder.getParentId());
+			if (parentPath != null)
+				return (SLASH.equals(parentPath) ? "" : parentPath) + SLASH + folder.getId();
+		}
+
 		Folder root = findRoot(folder.getTenantId());
 		if (root == null)
 			return null;
@@ -823,6 +841,18 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 	@Override
 	public List<Folder> findParents(long folderId) throws PersistenceException {
+		FolderTree tree = getTree();
+		long[] parentIds = tree != null ? tree.getParents(folderId) : null;
+		if (parentIds != null) {
+			List<Folder> coll = new ArrayList<>();
+			for (long parentId : parentIds) {
+				Folder parent = findById(parentId);
+				if (parent != null)
+					coll.add(parent);
+			}
+			return coll;
+		}
+
 		Folder folder = findById(folderId);
 
 		if (folder == null)
@@ -840,6 +870,11 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 	@Override
 	public Folder findWorkspace(long folderId) throws PersistenceException {
+		FolderTree tree = getTree();
+		Long workspaceId = tree != null ? tree.findWorkspace(folderId) : null;
+		if (workspaceId != null)
+			return workspaceId > 0 ? findById(workspaceId) : null;
+
 		Folder folder = findById(folderId);
 
 		if (folder != null && folder.isWorkspace())
@@ -857,8 +892,7 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 	@Override
 	public boolean isPermissionEnabled(Permission permission, long folderId, long userId) throws PersistenceException {
-		Set<Permission> permissions = getEnabledPermissions(folderId, userId);
-		return permissions.contains(permission);
+		return permission.match(getEnabledPermissionsMask(folderId, userId));
 	}
 
 	@Override
@@ -866,6 +900,7 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 		// The parent folder
 		Folder parent = findFolder(parentId);
 
+		long newParentId = parent.getId();
 		int count = bulkUpdate("set ld_deleted=0, ld_parentid=" + parent.getId()
 				+ ", ld_lastmodified=CURRENT_TIMESTAMP where not ld_type=" + Folder.TYPE_WORKSPACE + " and ld_id="
 				+ folderId, (Map<String, Object>) null);
@@ -878,6 +913,13 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 			bulkUpdate("set ld_deleted=0, ld_parentid=" + root.getId()
 					+ ", ld_lastmodified=CURRENT_TIMESTAMP where ld_type=" + Folder.TYPE_WORKSPACE + " and ld_id="
 					+ folderId, (Map<String, Object>) null);
+			newParentId = root.getId();
+		}
+
+		if (folderTree != null && folderTree.isLoaded()) {
+			folderTree.invalidateOnRollback();
+			folderTree.setParent(folderId, newParentId);
+			folderTree.setDeleted(Collections.singleton(folderId), 0);
 		}
 
 		Folder fld = findFolder(folderId);
@@ -892,6 +934,8 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 			String idsStr = treeIds.toString().replace('[', '(').replace(']', ')');
 			bulkUpdate("set ld_deleted=0, ld_lastmodified=CURRENT_TIMESTAMP where ld_deleted=1 and ld_id in " + idsStr,
 					(Map<String, Object>) null);
+			if (folderTree != null && folderTree.isLoaded())
+				folderTree.restore(treeIds);
 			jdbcUpdate(
 					"update ld_document set ld_deleted=0, ld_lastmodified=CURRENT_TIMESTAMP where ld_deleted=1 and ld_folderid in "
 							+ idsStr);
@@ -900,57 +944,175 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 	@Override
 	public Set<Permission> getEnabledPermissions(long folderId, long userId) throws PersistenceException {
-		Set<Permission> permissions = new HashSet<>();
+		return Permission.fromMask(getEnabledPermissionsMask(folderId, userId));
+	}
+
+	@Override
+	public int getEnabledPermissionsMask(long folderId, long userId) throws PersistenceException {
 		User user = getExistingtUser(userId);
 
 		// If the user is an administrator bypass all controls
-		if (user.isMemberOf(Group.GROUP_ADMIN)) {
-			return Permission.all();
-		}
+		if (user.isMemberOf(Group.GROUP_ADMIN))
+			return Permission.ALL;
 
-		Set<Group> userGroups = user.getGroups();
-		if (userGroups.isEmpty())
-			return permissions;
+		long[] groupIds = user.getGroupIds();
+		if (groupIds.length == 0)
+			return 0;
 
 		// If the folder defines a security ref, use another folder to find
 		// the policies
-		long id = folderId;
-		Folder folder = findById(folderId);
-		if (folder.getSecurityRef() != null) {
-			id = folder.getSecurityRef().longValue();
-			log.debug("Use the security reference {}", id);
+		Long id = getSecurityRef(folderId);
+		if (id == null)
+			throw new PersistenceException("Unexisting folder " + folderId);
+
+		return getPermissionsMask(id, groupIds);
+	}
+
+	@Override
+	public Map<Long, Integer> getEnabledPermissionsMasks(Collection<Folder> folders, long userId)
+			throws PersistenceException {
+		Map<Long, Integer> masks = new HashMap<>();
+		if (folders.isEmpty())
+			return masks;
+
+		User user = getExistingtUser(userId);
+
+		// If the user is an administrator bypass all controls
+		if (user.isMemberOf(Group.GROUP_ADMIN)) {
+			for (Folder folder : folders)
+				masks.put(folder.getId(), Permission.ALL);
+			return masks;
 		}
 
-		StringBuilder query = new StringBuilder(
-				"select A.ld_write as LDWRITE, A.ld_add as LDADD, A.ld_security as LDSECURITY, A.ld_immutable as LDIMMUTABLE, A.ld_delete as LDDELETE, A.ld_rename as LDRENAME, A.ld_import as LDIMPORT, A.ld_export as LDEXPORT, A.ld_sign as LDSIGN, A.ld_archive as LDARCHIVE, A.ld_workflow as LDWORKFLOW, A.ld_download as LDDOWNLOAD, A.ld_calendar as LDCALENDAR, A.ld_subscription as LDSUBSCRIPTION, A.ld_print as LDPRINT, A.ld_password as LDPASSWORD, A.ld_move as LDMOVE, A.ld_email as LDEMAIL, A.ld_automation LDAUTOMATION, A.ld_storage LDSTORAGE");
-		query.append(" from ld_foldergroup A");
+		long[] groupIds = user.getGroupIds();
+		checkPermissionCache();
+
+		// The folders are already loaded, so they tell their security
+		// reference
+		Map<Long, Long> securityRefs = new HashMap<>();
+		long generation = permissionCache.getGeneration();
+		for (Folder folder : folders) {
+			long securityRef = folder.getSecurityRef() != null ? folder.getSecurityRef() : folder.getId();
+			securityRefs.put(folder.getId(), securityRef);
+			permissionCache.putSecurityRef(folder.getId(), securityRef, generation);
+		}
+
+		Map<Long, Integer> refMasks = new HashMap<>();
+		if (groupIds.length > 0) {
+			Set<Long> missing = new HashSet<>();
+			for (Long securityRef : securityRefs.values()) {
+				Integer mask = permissionCache.getPermissions(groupIds, securityRef);
+				if (mask != null)
+					refMasks.put(securityRef, mask);
+				else
+					missing.add(securityRef);
+			}
+
+			if (!missing.isEmpty())
+				refMasks.putAll(getPermissionsMasks(missing, groupIds));
+		}
+
+		for (Map.Entry<Long, Long> entry : securityRefs.entrySet())
+			masks.put(entry.getKey(), refMasks.getOrDefault(entry.getValue(), 0));
+		return masks;
+	}
+
+	/**
+	 * Computes in a single query the masks of the permissions granted to a set
+	 * of groups by the policies of several folders
+	 * 
+	 * @param ids identifiers of the folders that define the policies
+	 * @param groupIds identifiers of the groups
+	 * 
+	 * @return map folderId - permissions mask
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	private Map<Long, Integer> getPermissionsMasks(Set<Long> ids, long[] groupIds) throws PersistenceException {
+		long generation = permissionCache.getGeneration();
+
+		Map<Long, Integer> masks = new HashMap<>();
+		for (Long id : ids)
+			masks.put(id, 0);
+
+		String query = SELECT + "A.ld_folderid, " + SELECT_PERMISSIONS.substring(SELECT.length()) + WHERE
+				+ " A.ld_folderid in ({ids0}) and A.ld_groupid in ({ids1})";
+		queryWithIds(query, null,
+				Arrays.asList(ids, Arrays.stream(groupIds).boxed().collect(Collectors.toList())),
+				(rs, rowNum) -> {
+					int mask = Permission.READ.getMask();
+					for (int i = 0; i < PERMISSION_COLUMNS.length; i++)
+						if (rs.getInt(i + 2) == 1)
+							mask |= PERMISSION_COLUMNS[i].getMask();
+					masks.merge(rs.getLong(1), mask, (a, b) -> a | b);
+					return null;
+				}, null);
+
+		for (Map.Entry<Long, Integer> entry : masks.entrySet())
+			permissionCache.putPermissions(groupIds, entry.getKey(), entry.getValue(), generation);
+		return masks;
+	}
+
+	/**
+	 * Gets the identifier of the folder that defines the security policies of
+	 * a given folder
+	 * 
+	 * @param folderId identifier of the folder
+	 * 
+	 * @return the security reference or the folder itself, null if the folder
+	 *         does not exist
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	private Long getSecurityRef(long folderId) throws PersistenceException {
+		checkPermissionCache();
+		Long securityRef = permissionCache.getSecurityRef(folderId);
+		if (securityRef != null)
+			return securityRef;
+
+		long generation = permissionCache.getGeneration();
+		Folder folder = findById(folderId);
+		if (folder == null)
+			return null;
+
+		securityRef = folder.getSecurityRef() != null ? folder.getSecurityRef() : folderId;
+		if (folder.getSecurityRef() != null)
+			log.debug("Use the security reference {}", securityRef);
+		permissionCache.putSecurityRef(folderId, securityRef, generation);
+		return securityRef;
+	}
+
+	/**
+	 * Computes the mask of the permissions granted to a set of groups by the
+	 * policies of a given folder
+	 * 
+	 * @param id identifier of the folder that defines the policies
+	 * @param groupIds identifiers of the groups
+	 * 
+	 * @return the permissions mask
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	private int getPermissionsMask(long id, long[] groupIds) throws PersistenceException {
+		checkPermissionCache();
+		Integer mask = permissionCache.getPermissions(groupIds, id);
+		if (mask != null)
+			return mask;
+
+		long generation = permissionCache.getGeneration();
+
+		StringBuilder query = new StringBuilder(SELECT_PERMISSIONS);
 		query.append(WHERE);
 		query.append(" A.ld_folderid=" + id);
 		query.append(AND_LDGROUPID_IN);
-		query.append(userGroups.stream().map(ug -> Long.toString(ug.getId())).collect(Collectors.joining(",")));
+		query.append(Arrays.stream(groupIds).mapToObj(Long::toString).collect(Collectors.joining(",")));
 		query.append(")");
 
-		Map<String, Permission> permissionColumn = new HashMap<>();
-		permissionColumn.put("LDADD", Permission.ADD);
-		permissionColumn.put("LDEXPORT", Permission.EXPORT);
-		permissionColumn.put("LDIMPORT", Permission.IMPORT);
-		permissionColumn.put("LDDELETE", Permission.DELETE);
-		permissionColumn.put("LDIMMUTABLE", Permission.IMMUTABLE);
-		permissionColumn.put("LDSECURITY", Permission.SECURITY);
-		permissionColumn.put("LDRENAME", Permission.RENAME);
-		permissionColumn.put("LDWRITE", Permission.WRITE);
-		permissionColumn.put("LDSIGN", Permission.SIGN);
-		permissionColumn.put("LDARCHIVE", Permission.ARCHIVE);
-		permissionColumn.put("LDWORKFLOW", Permission.WORKFLOW);
-		permissionColumn.put("LDDOWNLOAD", Permission.DOWNLOAD);
-		permissionColumn.put("LDCALENDAR", Permission.CALENDAR);
-		permissionColumn.put("LDSUBSCRIPTION", Permission.SUBSCRIPTION);
-		permissionColumn.put("LDPRINT", Permission.PRINT);
-		permissionColumn.put("LDPASSWORD", Permission.PASSWORD);
-		permissionColumn.put("LDMOVE", Permission.MOVE);
-		permissionColumn.put("LDEMAIL", Permission.EMAIL);
-		permissionColumn.put("LDAUTOMATION", Permission.AUTOMATION);
-		permissionColumn.put("LDSTORAGE", Permission.STORAGE);
+		/*
+		 * The permissions of all the groups are merged together, each record
+		 * grants at least the read permission.
+		 */
+		int permissionsMask = 0;
 
 		/**
 		 * IMPORTANT: the connection MUST be explicitly closed, otherwise it is
@@ -960,18 +1122,17 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 				Statement stmt = con.createStatement();
 				ResultSet rs = stmt.executeQuery(query.toString())) {
 			while (rs.next()) {
-				permissions.add(Permission.READ);
-				for (Entry<String, Permission> entry : permissionColumn.entrySet()) {
-					String column = entry.getKey();
-					Permission permission = entry.getValue();
-					if (rs.getInt(column) == 1)
-						permissions.add(permission);
-				}
+				permissionsMask |= Permission.READ.getMask();
+				for (int i = 0; i < PERMISSION_COLUMNS.length; i++)
+					if (rs.getInt(i + 1) == 1)
+						permissionsMask |= PERMISSION_COLUMNS[i].getMask();
 			}
 		} catch (SQLException se) {
 			throw new PersistenceException(se.getMessage(), se);
 		}
-		return permissions;
+
+		permissionCache.putPermissions(groupIds, id, permissionsMask, generation);
+		return permissionsMask;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -996,67 +1157,18 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 		 * restrict to the tree since a folder in the tree can reference another
 		 * folder outside.
 		 */
-		StringBuilder query1 = new StringBuilder("select distinct(A.ld_folderid) from ld_foldergroup A where 1=1 ");
-
-		List<Long> groupIds = user.getUserGroups().stream().map(UserGroup::getGroupId).collect(Collectors.toList());
-		if (!groupIds.isEmpty()) {
-			query1.append(AND_LDGROUPID_IN);
-			query1.append(StringUtil.arrayToString(groupIds.toArray(new Long[0]), ","));
-			query1.append(") ");
-		}
-
-		List<Long> masterIds = queryForList(query1.toString(), Long.class);
+		Collection<Long> masterIds = findMasterIds(user, Permission.READ);
 		if (masterIds.isEmpty())
 			return ids;
 
 		/*
 		 * Now search for those folders that are or reference the masterIds
 		 */
-		StringBuilder query2 = new StringBuilder("select B.ld_id from ld_folder B where B.ld_deleted=0 and ( ");
-		if (isOracle()) {
-			/*
-			 * In Oracle The limit of 1000 elements applies to sets of single
-			 * items: (x) IN ((1), (2), (3), ...). There is no limit if the sets
-			 * contain two or more items: (x, 0) IN ((1,0), (2,0), (3,0), ...):
-			 */
-			query2.append("(B.ld_id,0) in ( ");
-			query2.append(masterIds.stream().map(id -> ("(" + id + ",0)")).collect(Collectors.joining(",")));
-			query2.append(" ) ");
-		} else {
-			query2.append(" B.ld_id in " + masterIds.toString().replace('[', '(').replace(']', ')'));
-		}
-
-		query2.append(" or ");
-		if (isOracle()) {
-			/*
-			 * In Oracle The limit of 1000 elements applies to sets of single
-			 * items: (x) IN ((1), (2), (3), ...). There is no limit if the sets
-			 * contain two or more items: (x, 0) IN ((1,0), (2,0), (3,0), ...):
-			 */
-			query2.append(" (B.ld_securityref,0) in ( ");
-			query2.append(masterIds.stream().map(id -> ("(" + id + ",0)")).collect(Collectors.joining(",")));
-			query2.append(" ) ");
-		} else {
-			query2.append(" B.ld_securityref in " + masterIds.toString().replace('[', '(').replace(']', ')'));
-		}
-		query2.append(" ) ");
-
-		query2.append(AND);
+		String query2 = "select B.ld_id from ld_folder B where B.ld_deleted=0 "
+				+ " and (B.ld_id in ({ids0}) or B.ld_securityref in ({ids0})) and B.ld_id in ({ids1})";
 		Set<Long> folderIds = findFolderIdInPath(parentId, false);
-		if (isOracle()) {
-			/*
-			 * In Oracle The limit of 1000 elements applies to sets of single
-			 * items: (x) IN ((1), (2), (3), ...). There is no limit if the sets
-			 * contain two or more items: (x, 0) IN ((1,0), (2,0), (3,0), ...):
-			 */
-			query2.append("( (B.ld_id,0) in ( ");
-			query2.append(folderIds.stream().map(id -> ("(" + id + ",0)")).collect(Collectors.joining(",")));
-			query2.append(" ) )");
-		} else {
-			query2.append("  B.ld_id in " + folderIds.toString().replace('[', '(').replace(']', ')'));
-		}
-
-		ids.addAll(queryForList(query2.toString(), Long.class));
+		ids.addAll(queryWithIds(query2, null, Arrays.asList(masterIds, folderIds),
+				new SingleColumnRowMapper<>(Long.class), null));
 
 		return ids;
 	}
@@ -1091,13 +1203,7 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 		 * restrict to the tree since a folder in the tree can reference another
 		 * folder outside.
 		 */
-		StringBuilder query1 = new StringBuilder("select distinct(A.ld_folderid) from ld_foldergroup A where 1=1 ");
-		if (permission != Permission.READ)
-			query1.append(" and A.ld_" + permission.getName() + "=1 ");
-
-		appendUserGroupIdsCondition(user, query1);
-
-		List<Long> masterIds = queryForList(query1.toString(), Long.class);
+		Collection<Long> masterIds = findMasterIds(user, permission);
 		if (masterIds.isEmpty())
 			return ids;
 
@@ -1117,6 +1223,36 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 		return ids;
 	}
 
+	/**
+	 * Finds the folders that declare their own policies granting a permission
+	 * to at least one group of the user
+	 * 
+	 * @param user the user
+	 * @param permission the permission
+	 * 
+	 * @return the identifiers of the folders
+	 * 
+	 * @throws PersistenceException Error in the data layer
+	 */
+	private Collection<Long> findMasterIds(User user, Permission permission) throws PersistenceException {
+		long[] groupIds = user.getGroupIds();
+		checkPermissionCache();
+		Set<Long> masterIds = permissionCache.getMasters(groupIds, permission);
+		if (masterIds != null)
+			return masterIds;
+
+		long generation = permissionCache.getGeneration();
+		StringBuilder query = new StringBuilder("select distinct(A.ld_folderid) from ld_foldergroup A where 1=1 ");
+		if (permission != Permission.READ)
+			query.append(" and A.ld_" + permission.getName() + "=1 ");
+
+		appendUserGroupIdsCondition(user, query);
+
+		List<Long> ids = queryForList(query.toString(), Long.class);
+		permissionCache.putMasters(groupIds, permission, ids, generation);
+		return ids;
+	}
+
 	private void appendParentCondition(Long parentId, StringBuilder query, boolean tree) {
 		if (parentId != null) {
 			query.append(AND);
@@ -1224,6 +1360,7 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 				int count = jdbcUpdate(
 						"update set ld_deleted=" + delCode + " from ld_folder where ld_foldref in (" + aliasIds + ")");
 				log.info("Removed {} aliases pointing to the deleted folder {}", count, folderId);
+				invalidateTree();
 			}
 		}
 	}
@@ -1288,6 +1425,8 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 		jdbcUpdate("delete from ld_foldergroup where not ld_folderid = ? and ld_folderid in " + treeIdsString, rootId);
 		log.warn("Removed {} specific rights in tree {}", records, rootId);
 
+		permissionCache.invalidateFolders(treeIds);
+
 		if (getSessionFactory().getCache() != null) {
 			getSessionFactory().getCache().evictEntityData(Folder.class);
 			getSessionFactory().getCache().evictCollectionData(Folder.class.getCanonicalName() + ".folderGroups");
@@ -1778,6 +1917,13 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 				"update ld_folder set ld_deleted=" + delCode + " where  ld_foldref in " + treeIdsString);
 		log.warn("Deleted {} folder aliases in tree {} - {}", aliases, folder.getName(), folder.getId());
 
+		if (aliases > 0) {
+			invalidateTree();
+		} else if (folderTree != null && folderTree.isLoaded()) {
+			folderTree.invalidateOnRollback();
+			folderTree.setDeleted(treeIds, delCode);
+		}
+
 		/*
 		 * Delete the documents as well
 		 */
@@ -1798,6 +1944,13 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 	public Set<Long> findFolderIdInTree(long rootId, boolean includeDeleted) {
 		log.debug("findFolderIdInTree, rootID: {}, includeDeleted: {}", rootId, includeDeleted);
 
+		FolderTree tree = getTree();
+		if (tree != null) {
+			Set<Long> ids = tree.getSubtree(rootId, includeDeleted, true);
+			if (ids != null)
+				return ids;
+		}
+
 		Set<Long> ids = new HashSet<>();
 		ids.add(rootId);
 
@@ -1846,6 +1999,13 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 	@SuppressWarnings("unchecked")
 	@Override
 	public Set<Long> findFolderIdInPath(long rootId, boolean includeDeleted) throws PersistenceException {
+		FolderTree tree = getTree();
+		if (tree != null) {
+			Set<Long> ids = tree.getSubtree(rootId, includeDeleted, false);
+			if (ids != null)
+				return ids;
+		}
+
 		Set<Long> ids = new HashSet<>();
 
 		Folder rootFolder = null;
@@ -1878,6 +2038,13 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 	@Override
 	public boolean isInPath(long folderId, long targetId) throws PersistenceException {
+		FolderTree tree = getTree();
+		if (tree != null) {
+			Boolean inPath = tree.isInPath(folderId, targetId);
+			if (inPath != null)
+				return inPath;
+		}
+
 		for (Folder folder : findParents(targetId)) {
 			if (folder.getId() == folderId)
 				return true;
@@ -2009,6 +2176,7 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 
 		// Now all the folders that are referencing this one must be updated
 		bulkUpdate("set securityRef=" + securityRef + " where securityRef=" + folderId, (Map<String, Object>) null);
+		permissionCache.invalidateFolder(folderId);
 	}
 
 	@Override
@@ -2409,4 +2577,127 @@ public class HibernateFolderDAO extends HibernatePersistentObjectDAO<Folder> imp
 	public void setListenerManager(FolderListenerManager listenerManager) {
 		this.listenerManager = listenerManager;
 	}
+
+	public FolderPermissionCache getPermissionCache() {
+		return permissionCache;
+	}
+
+	public void setPermissionCache(FolderPermissionCache permissionCache) {
+		this.permissionCache = permissionCache;
+	}
+
+	public FolderTree getFolderTree() {
+		return folderTree;
+	}
+
+	public void setFolderTree(FolderTree folderTree) {
+		this.folderTree = folderTree;
+	}
+
+	/**
+	 * Gets the in-memory folder tree, loading it if needed
+	 * 
+	 * @return the tree or null if it is not available
+	 */
+	private FolderTree getTree() {
+		if (folderTree == null || !folderTree.isEnabled())
+			return null;
+
+		try {
+			if (!folderTree.isLoaded()
+					|| (folderTree.isCheckRequired() && !computeTreeSignature().equals(folderTree.getSignature())))
+				loadTree();
+		} catch (PersistenceException e) {
+			log.warn("Unable to load the folder tree", e);
+			return null;
+		}
+
+		return folderTree.isLoaded() ? folderTree : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void loadTree() throws PersistenceException {
+		synchronized (folderTree) {
+			String signature = computeTreeSignature();
+			List<long[]> records = query("select ld_id, ld_parentid, ld_type, ld_deleted from ld_folder", null,
+					(rs, rowNum) -> new long[] { rs.getLong(1), rs.getLong(2), rs.getInt(3), rs.getInt(4) }, null);
+
+			// We may be reading data not yet committed
+			folderTree.invalidateOnRollback();
+			folderTree.load(records);
+			folderTree.setSignature(signature);
+		}
+	}
+
+	/**
+	 * Computes a signature of the ld_folder table that changes at every
+	 * alteration of the hierarchy
+	 */
+	private String computeTreeSignature() throws PersistenceException {
+		SqlRowSet rs = queryForRowSet(
+				"select count(ld_id), sum(ld_recordversion), sum(ld_parentid), sum(ld_deleted) from ld_folder", null,
+				null);
+		if (rs.next())
+			return rs.getLong(1) + "-" + rs.getLong(2) + "-" + rs.getLong(3) + "-" + rs.getLong(4);
+		return "";
+	}
+
+	/**
+	 * In a cluster, clears the permissions cache if the policies have been
+	 * changed since the last check, maybe by another node
+	 */
+	private void checkPermissionCache() throws PersistenceException {
+		if (!permissionCache.isCheckRequired())
+			return;
+
+		String signature = computePermissionsSignature();
+		if (!signature.equals(permissionCache.getSignature())) {
+			if (permissionCache.getSignature() != null)
+				log.debug("The folder policies have been changed, clearing the permissions cache");
+			permissionCache.clear();
+			permissionCache.setSignature(signature);
+		}
+	}
+
+	/**
+	 * Computes a signature of the folder policies and of the security
+	 * references that changes at every alteration of them
+	 */
+	private String computePermissionsSignature() throws PersistenceException {
+		String[] columns = new String[] { "ld_folderid", "ld_groupid", "ld_write", "ld_add", "ld_security",
+				"ld_immutable", "ld_delete", "ld_rename", "ld_import", "ld_export", "ld_sign", "ld_archive",
+				"ld_workflow", "ld_download", "ld_calendar", "ld_subscription", "ld_print", "ld_password", "ld_move",
+				"ld_email", "ld_automation", "ld_storage" };
+
+		// Sum each column separately, so the values cannot overflow
+		StringBuilder query = new StringBuilder("select count(*)");
+		for (String column : columns)
+			query.append(", sum(" + column + ")");
+		query.append(" from ld_foldergroup");
+
+		StringBuilder signature = new StringBuilder();
+		SqlRowSet rs = queryForRowSet(query.toString(), null, null);
+		if (rs.next())
+			for (int i = 1; i <= columns.length + 1; i++)
+				signature.append(rs.getLong(i) + "-");
+
+		rs = queryForRowSet(
+				"select count(ld_id), sum(ld_recordversion), sum(ld_securityref), sum(ld_deleted) from ld_folder",
+				null, null);
+		if (rs.next())
+			signature.append("/" + rs.getLong(1) + "-" + rs.getLong(2) + "-" + rs.getLong(3) + "-" + rs.getLong(4));
+		return signature.toString();
+	}
+
+	private void updateTree(Folder folder) {
+		if (folderTree != null && folderTree.isLoaded() && folder.getId() != 0L) {
+			folderTree.invalidateOnRollback();
+			folderTree.put(folder.getId(), folder.getParentId(), folder.getType(), folder.getDeleted());
+		}
+	}
+
+	private void invalidateTree() {
+		if (folderTree != null)
+			folderTree.invalidate();
+	}
 }
\ No newline at end of file
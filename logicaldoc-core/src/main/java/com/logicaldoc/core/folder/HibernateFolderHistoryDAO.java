@@ -14,6 +14,7 @@ import com.logicaldoc.core.HibernatePersistentObjectDAO;
 import com.logicaldoc.core.History;
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.RunLevel;
+import com.logicaldoc.core.changelog.ChangeDAO;
 import com.logicaldoc.core.communication.EventCollector;
 import com.logicaldoc.util.sql.SqlUtil;
 
@@ -31,6 +32,8 @@ public class HibernateFolderHistoryDAO extends HibernatePersistentObjectDAO<Fold
 
 	private static final String ORDER_BY = "order by ";
 
+	private ChangeDAO changeDAO;
+
 	private HibernateFolderHistoryDAO() {
 		super(FolderHistory.class);
 		super.log = LoggerFactory.getLogger(HibernateFolderHistoryDAO.class);
@@ -91,6 +94,8 @@ public class HibernateFolderHistoryDAO extends HibernatePersistentObjectDAO<Fold
 			if (history.getComment() != null && history.getComment().length() > 4000)
 				history.setComment(StringUtils.abbreviate(history.getComment(), 4000));
 			super.store(history);
+			if (changeDAO != null)
+				changeDAO.append(history);
 			EventCollector.get().newEvent(history);
 		}
 	}
@@ -146,4 +151,8 @@ public class HibernateFolderHistoryDAO extends HibernatePersistentObjectDAO<Fold
 			return new ArrayList<>();
 		}
 	}
+
+	public void setChangeDAO(ChangeDAO changeDAO) {
+		this.changeDAO = changeDAO;
+	}
 }
\ No newline at end of file
@@ -3,19 +3,14 @@ package com.logicaldoc.core.parser;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.io.Writer;
 import java.util.Locale;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.document.Document;
 import com.logicaldoc.core.security.Tenant;
-import com.logicaldoc.util.Context;
 
 /**
  * Abstract implementation of a Parser
@@ -53,72 +48,39 @@ public abstract class AbstractParser implements Parser {
 	@Override
 	public String parse(final InputStream input, String filename, String encoding, Locale locale, String tenant,
 			Document document, String fileVersion) throws ParseException {
-		if (log.isDebugEnabled())
-			log.debug("Parse started");
-		StringBuilder content = new StringBuilder();
+		TextWriter output = new TextWriter();
+		parse(input, filename, encoding, locale, tenant, document, fileVersion, output);
+		return output.toString();
+	}
 
+	@Override
+	public void parse(InputStream input, String filename, String encoding, Locale locale, String tenant,
+			Document document, String fileVersion, Writer output) throws ParseException {
 		Locale lcl = getLocale(locale);
 		String tnt = getTenant(locale, tenant);
 
-		long timeout = getTimeout(tenant);
-
-		if (timeout <= 0) {
-			parseInCurrentThread(input, filename, encoding, document, fileVersion, content, lcl, tnt);
-		} else {
-			parseInNewThread(input, filename, encoding, document, fileVersion, content, lcl, tnt, timeout);
+		// Parse in the shared pool, that enforces the limits and the timeout
+		ParserExecutor executor = ParserExecutor.get();
+		if (!executor.isParsing()) {
+			executor.parse(this, input, filename, encoding, lcl, tnt, document, fileVersion, output);
+			return;
 		}
 
 		if (log.isDebugEnabled())
-			log.debug("Parse Finished");
-		return content.toString();
-	}
+			log.debug("Parse started");
 
-	private int getTimeout(String tenant) {
 		try {
-			Context context = Context.get();
-			return context != null ? Context.get().getProperties().getInt(tenant + ".parser.timeout", 120) : 120;
+			internalParse(input, filename, encoding, lcl, tnt, document, fileVersion, output);
+		} catch (TextWriter.LimitException e) {
+			log.debug("Parse truncated at the maximum text length");
+		} catch (ParseException e) {
+			throw e;
 		} catch (Exception e) {
-			return 120;
-		}
-	}
-
-	private void parseInNewThread(final InputStream input, String filename, String encoding, Document document,
-			String fileVersion, StringBuilder content, Locale locale, String tenant, long timeout)
-			throws ParseException {
-		// Invoke in a separate thread
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		try {
-			String ret = null;
-			try {
-				ret = executor.invokeAll(Arrays.asList(new InternalParseTask(input, filename, encoding, locale, tenant,
-						document, fileVersion, content)), timeout, TimeUnit.SECONDS).get(0).get();
-			} catch (InterruptedException ie) {
-				log.warn("Interrupted parse");
-				Thread.currentThread().interrupt();
-			} catch (Throwable e) {
-				if (e instanceof ParseException)
-					throw (ParseException) e;
-				else
-					log.warn(e.getMessage(), e);
-			}
-			if (!"completed".equals(ret))
-				throw new ParseException(ret);
-		} finally {
-			if (executor != null)
-				executor.shutdownNow();
+			throw new ParseException(e);
 		}
-	}
 
-	private void parseInCurrentThread(final InputStream input, String filename, String encoding, Document document,
-			String fileVersion, StringBuilder content, Locale locale, String tenant) throws ParseException {
-		try {
-			internalParse(input, filename, encoding, locale, tenant, document, fileVersion, content);
-		} catch (Exception e) {
-			if (e instanceof ParseException)
-				throw (ParseException) e;
-			else
-				throw new ParseException(e);
-		}
+		if (log.isDebugEnabled())
+			log.debug("Parse Finished");
 	}
 
 	private String getTenant(Locale locale, String tenant) {
@@ -132,56 +94,17 @@ public abstract class AbstractParser implements Parser {
 	}
 
 	/**
-	 * Callable that performs the internal parsing.
+	 * Invoked by the parse method to write the text in the given writer. By
+	 * default the text is extracted all at once by
+	 * {@link #internalParse(InputStream, String, String, Locale, String, Document, String, StringBuilder)}
+	 * and then written, the parsers able to produce the text incrementally
+	 * should override this method.
 	 */
-	class InternalParseTask implements Callable<String> {
-		private InputStream is;
-
-		private String filename;
-
-		private String encoding;
-
-		private Locale locale;
-
-		private String tenant;
-
-		private Document document;
-
-		private String fileVersion;
-
-		private StringBuilder content;
-
-		public InternalParseTask(InputStream is, String filename, String encoding, Locale locale, String tenant,
-				Document document, String fileVersion, StringBuilder content) {
-			super();
-			this.is = is;
-			this.filename = filename;
-			this.encoding = encoding;
-			this.locale = locale;
-			this.tenant = tenant;
-			this.content = content;
-			this.document = document;
-			this.fileVersion = fileVersion;
-		}
-
-		public String call() throws ParseException {
-			try {
-				internalParse(is, filename, encoding, locale, tenant, document, fileVersion, content);
-				return "completed";
-			} catch (InterruptedException e) {
-				try {
-					String message = "Timeout while parsing document " + document;
-					log.warn(message);
-					throw new ParseException(message);
-				} finally {
-					Thread.currentThread().interrupt();
-				}
-			} catch (ParseException pe) {
-				throw pe;
-			} catch (Exception ee) {
-				throw new ParseException(ee.getMessage(), ee);
-			}
-		}
+	protected void internalParse(InputStream is, String filename, String encoding, Locale locale, String tenant,
+			Document document, String fileVersion, Writer output) throws Exception {
+		StringBuilder content = new StringBuilder();
+		internalParse(is, filename, encoding, locale, tenant, document, fileVersion, content);
+		output.append(content);
 	}
 
 	/**
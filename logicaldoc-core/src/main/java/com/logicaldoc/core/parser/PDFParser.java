@@ -36,6 +36,21 @@ public class PDFParser extends AbstractParser {
 	@Override
 	public void internalParse(InputStream input, String filename, String encoding, Locale locale, String tenant,
 			Document document, String fileVersion, StringBuilder content) throws ParseException {
+		try {
+			parse(input, content);
+		} catch (TextWriter.LimitException e) {
+			// Cannot happen with a StringBuilder
+		}
+	}
+
+	@Override
+	protected void internalParse(InputStream input, String filename, String encoding, Locale locale, String tenant,
+			Document document, String fileVersion, Writer output) throws TextWriter.LimitException {
+		// The text is written page by page
+		parse(input, output);
+	}
+
+	private void parse(InputStream input, Appendable content) throws TextWriter.LimitException {
 		PDDocument pdfDocument = null;
 		try {
 			pdfDocument = PDDocument.load(input);
@@ -63,6 +78,8 @@ public class PDFParser extends AbstractParser {
 				// Now parse the forms
 				parseForm(pdfDocument, content);
 			}
+		} catch (TextWriter.LimitException le) {
+			throw le;
 		} catch (Throwable ex) {
 			log.error(ex.getMessage(), ex);
 		} finally {
@@ -80,7 +97,7 @@ public class PDFParser extends AbstractParser {
 	 * 
 	 * @throws Exception
 	 */
-	protected void parseDocument(PDDocument pdfDocument, StringBuilder content) throws Exception {
+	protected void parseDocument(PDDocument pdfDocument, Appendable content) throws Exception {
 		PDDocumentInformation information = pdfDocument.getDocumentInformation();
 		if (information == null) {
 			throw new Exception("Can not get information from pdf document");
@@ -101,6 +118,8 @@ public class PDFParser extends AbstractParser {
 				stripper.writeText(pdfDocument, writer);
 				writer.flush();
 				content.append(writer.toString());
+			} catch (TextWriter.LimitException le) {
+				throw le;
 			} catch (Throwable tw) {
 				log.error("Exception reading pdf document: {}", tw.getMessage());
 			}
@@ -110,7 +129,7 @@ public class PDFParser extends AbstractParser {
 	/**
 	 * Extract the text from the form fields
 	 */
-	private void parseForm(PDDocument pdfDocument, StringBuilder content) throws IOException {
+	private void parseForm(PDDocument pdfDocument, Appendable content) throws IOException {
 		PDDocumentCatalog docCatalog = pdfDocument.getDocumentCatalog();
 		if (docCatalog == null)
 			return;
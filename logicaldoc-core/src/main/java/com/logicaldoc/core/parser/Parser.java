@@ -2,6 +2,7 @@ package com.logicaldoc.core.parser;
 
 import java.io.File;
 import java.io.InputStream;
+import java.io.Writer;
 import java.util.Locale;
 
 import com.logicaldoc.core.document.Document;
@@ -95,6 +96,28 @@ public interface Parser {
 	public String parse(InputStream input, String filename, String encoding, Locale locale, String tenant,
 			Document document, String fileVersion) throws ParseException;
 
+	/**
+	 * Same as
+	 * {@link #parse(InputStream, String, String, Locale, String, Document, String)},
+	 * but the extracted text is written in the given writer while the content
+	 * gets parsed, so the whole text doesn't need to be kept in memory. If the
+	 * writer raises a {@link TextWriter.LimitException} the parsing stops and
+	 * the text written so far is retained.
+	 * 
+	 * @param input binary content from which to extract the text
+	 * @param filename name of the file
+	 * @param encoding character encoding
+	 * @param locale the locale
+	 * @param tenant name of the tenant
+	 * @param document the document the file belongs to (optional)
+	 * @param fileVersion the file version being processed (optional)
+	 * @param output where to write the extracted text
+	 * 
+	 * @throws ParseException error in the parsing
+	 */
+	public void parse(InputStream input, String filename, String encoding, Locale locale, String tenant,
+			Document document, String fileVersion, Writer output) throws ParseException;
+
 	/**
 	 * Extracts content for the text content of the given binary document. The
 	 * content type and character encoding (if available and applicable) are
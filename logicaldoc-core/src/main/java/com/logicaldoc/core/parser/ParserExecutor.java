@@ -0,0 +1,349 @@
+package com.logicaldoc.core.parser;
+
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logicaldoc.core.document.Document;
+import com.logicaldoc.core.threading.NamedThreadFactory;
+import com.logicaldoc.util.Context;
+import com.logicaldoc.util.config.ContextProperties;
+
+/**
+ * Executes the parsings in a shared pool of threads, bounding the number of
+ * concurrent parsings and enforcing the timeouts. The configuration is taken
+ * from the following settings:
+ *
+ * <ul>
+ * <li>parser.concurrency: the number of threads of the pool, that is the
+ * maximum number of concurrent parsings (default value: 8)</li>
+ * <li>parser.concurrency.tenant: the maximum number of concurrent parsings of
+ * the same tenant (default value: parser.concurrency)</li>
+ * <li>parser.concurrency.<b>ParserClass</b>: the maximum number of concurrent
+ * parsings made by the parser with the given simple class name, eg.
+ * parser.concurrency.PDFParser (default value: parser.concurrency)</li>
+ * <li><b>tenant</b>.parser.timeout: the maximum time in seconds a parsing can
+ * last, the parsing thread is interrupted after this time (default value:
+ * 120)</li>
+ * </ul>
+ *
+ * A parsing that does not fit the limits waits in the calling thread. The
+ * parsings started while another parsing is in progress, like the entries of
+ * an archive, are executed directly in the current thread.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class ParserExecutor {
+
+	private static final String PARSER_CONCURRENCY = "parser.concurrency";
+
+	private static final String POOL_NAME = "Parser";
+
+	private static Logger log = LoggerFactory.getLogger(ParserExecutor.class);
+
+	private static ParserExecutor instance;
+
+	private final ThreadPoolExecutor pool;
+
+	private final int concurrency;
+
+	private final Semaphore permits;
+
+	private final Map<String, Semaphore> tenantPermits = new ConcurrentHashMap<>();
+
+	private final Map<String, Semaphore> parserPermits = new ConcurrentHashMap<>();
+
+	private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+	/**
+	 * Marks the threads that are executing a parsing
+	 */
+	private final ThreadLocal<Boolean> parsing = new ThreadLocal<>();
+
+	private ParserExecutor() {
+		concurrency = Math.max(1, getConfig(PARSER_CONCURRENCY, 8));
+		permits = new Semaphore(concurrency, true);
+
+		ThreadFactory factory = new NamedThreadFactory(POOL_NAME);
+		pool = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				r -> {
+					Thread thread = factory.newThread(r);
+					thread.setDaemon(true);
+					return thread;
+				});
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	public static synchronized ParserExecutor get() {
+		if (instance == null)
+			instance = new ParserExecutor();
+		return instance;
+	}
+
+	/**
+	 * Parses the given content with the given parser, within the limits of
+	 * concurrency and time of the tenant
+	 *
+	 * @param parser the parser to use
+	 * @param input the input contents as stream
+	 * @param filename name of the file
+	 * @param encoding encoding of the stream
+	 * @param locale the locale
+	 * @param tenant name of the tenant
+	 * @param document the document the file belongs to (optional)
+	 * @param fileVersion the file version being processed (optional)
+	 *
+	 * @return the text extracted from the input
+	 *
+	 * @throws ParseException error in the parsing or timeout
+	 */
+	public String parse(Parser parser, InputStream input, String filename, String encoding, Locale locale,
+			String tenant, Document document, String fileVersion) throws ParseException {
+		return execute(parser, tenant, document != null ? document : filename,
+				() -> parser.parse(input, filename, encoding, locale, tenant, document, fileVersion));
+	}
+
+	/**
+	 * Parses the given content with the given parser writing the text in the
+	 * given writer, within the limits of concurrency and time of the tenant
+	 *
+	 * @param parser the parser to use
+	 * @param input the input contents as stream
+	 * @param filename name of the file
+	 * @param encoding encoding of the stream
+	 * @param locale the locale
+	 * @param tenant name of the tenant
+	 * @param document the document the file belongs to (optional)
+	 * @param fileVersion the file version being processed (optional)
+	 * @param output where to write the extracted text
+	 *
+	 * @throws ParseException error in the parsing or timeout
+	 */
+	public void parse(Parser parser, InputStream input, String filename, String encoding, Locale locale,
+			String tenant, Document document, String fileVersion, Writer output) throws ParseException {
+		execute(parser, tenant, document != null ? document : filename, () -> {
+			parser.parse(input, filename, encoding, locale, tenant, document, fileVersion, output);
+			return null;
+		});
+	}
+
+	private <T> T execute(Parser parser, String tenant, Object subject, Parsing<T> task) throws ParseException {
+		if (isParsing())
+			return task.run();
+
+		String parserName = parser.getClass().getSimpleName();
+		Stats parserStats = stats.computeIfAbsent(parser.getClass().getName(), k -> new Stats());
+		long timeout = getConfig(tenant + ".parser.timeout", 120);
+
+		Semaphore tenantSemaphore = tenantPermits.computeIfAbsent(String.valueOf(tenant),
+				k -> new Semaphore(getConfig(PARSER_CONCURRENCY + ".tenant", concurrency), true));
+		Semaphore parserSemaphore = parserPermits.computeIfAbsent(parserName,
+				k -> new Semaphore(getConfig(PARSER_CONCURRENCY + "." + parserName, concurrency), true));
+
+		// Always acquire in the same order: tenant, parser and thread
+		long enqueued = System.currentTimeMillis();
+		Semaphore[] acquired = acquire(tenantSemaphore, parserSemaphore, permits);
+
+		// Whoever claims the parsing first, the pool or the caller that gives
+		// up waiting, releases the permits
+		AtomicBoolean claimed = new AtomicBoolean(false);
+		Future<T> future = null;
+		try {
+			long started = System.currentTimeMillis();
+			parserStats.waitTime.add(started - enqueued);
+			future = pool.submit(() -> {
+				if (!claimed.compareAndSet(false, true))
+					return null;
+				parsing.set(Boolean.TRUE);
+				try {
+					return task.run();
+				} finally {
+					parsing.remove();
+					parserStats.parseTime.add(System.currentTimeMillis() - started);
+					release(acquired);
+				}
+			});
+		} catch (Throwable t) {
+			release(acquired);
+			throw new ParseException(t.getMessage(), t);
+		}
+
+		parserStats.parses.increment();
+		try {
+			return timeout > 0 ? future.get(timeout, TimeUnit.SECONDS) : future.get();
+		} catch (TimeoutException e) {
+			parserStats.timeouts.increment();
+			parserStats.failures.increment();
+			cancel(future, claimed, acquired);
+			String message = String.format("Timeout while parsing document %s", subject);
+			log.warn(message);
+			throw new ParseException(message);
+		} catch (InterruptedException e) {
+			cancel(future, claimed, acquired);
+			Thread.currentThread().interrupt();
+			throw new ParseException("Interrupted parse");
+		} catch (ExecutionException e) {
+			parserStats.failures.increment();
+			if (e.getCause() instanceof ParseException)
+				throw (ParseException) e.getCause();
+			else
+				throw new ParseException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Checks if the current thread is executing a parsing
+	 *
+	 * @return true if the current thread is one of the pool running a parsing
+	 */
+	public boolean isParsing() {
+		return Boolean.TRUE.equals(parsing.get());
+	}
+
+	/**
+	 * Cancels a parsing interrupting its thread. The permits are released
+	 * immediately only if the parsing did not start, otherwise they remain
+	 * taken until the thread really ends.
+	 */
+	private void cancel(Future<?> future, AtomicBoolean claimed, Semaphore[] acquired) {
+		if (claimed.compareAndSet(false, true))
+			release(acquired);
+		future.cancel(true);
+	}
+
+	private Semaphore[] acquire(Semaphore... semaphores) throws ParseException {
+		int count = 0;
+		try {
+			for (Semaphore semaphore : semaphores) {
+				semaphore.acquire();
+				count++;
+			}
+			return semaphores;
+		} catch (InterruptedException e) {
+			for (int i = 0; i < count; i++)
+				semaphores[i].release();
+			Thread.currentThread().interrupt();
+			throw new ParseException("Interrupted parse");
+		}
+	}
+
+	private void release(Semaphore... semaphores) {
+		for (Semaphore semaphore : semaphores)
+			semaphore.release();
+	}
+
+	private static int getConfig(String property, int defaultValue) {
+		try {
+			ContextProperties config = Context.get() != null ? Context.get().getProperties() : null;
+			return config != null ? config.getInt(property, defaultValue) : defaultValue;
+		} catch (Throwable t) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Gets the statistics of the parsings
+	 *
+	 * @return map with key the class name of the parser and value its
+	 *         statistics
+	 */
+	public Map<String, Stats> getStats() {
+		return Collections.unmodifiableMap(new TreeMap<>(stats));
+	}
+
+	/**
+	 * Gets the number of parsings currently in execution
+	 *
+	 * @return number of running parsings
+	 */
+	public int getRunning() {
+		return concurrency - permits.availablePermits();
+	}
+
+	/**
+	 * A parsing to execute
+	 */
+	private interface Parsing<T> {
+		public T run() throws ParseException;
+	}
+
+	/**
+	 * Statistics about the parsings made by a parser
+	 *
+	 * @author Marco Meschieri - LogicalDOC
+	 * @since 8.8.4
+	 */
+	public static class Stats {
+
+		private final LongAdder parses = new LongAdder();
+
+		private final LongAdder failures = new LongAdder();
+
+		private final LongAdder timeouts = new LongAdder();
+
+		private final LongAdder waitTime = new LongAdder();
+
+		private final LongAdder parseTime = new LongAdder();
+
+		/**
+		 * @return number of executed parsings
+		 */
+		public long getParses() {
+			return parses.sum();
+		}
+
+		/**
+		 * @return number of parsings terminated with an error, timeouts
+		 *         included
+		 */
+		public long getFailures() {
+			return failures.sum();
+		}
+
+		/**
+		 * @return number of parsings interrupted for timeout
+		 */
+		public long getTimeouts() {
+			return timeouts.sum();
+		}
+
+		/**
+		 * @return total time in milliseconds the parsings waited before
+		 *         starting
+		 */
+		public long getWaitTime() {
+			return waitTime.sum();
+		}
+
+		/**
+		 * @return total time in milliseconds spent parsing
+		 */
+		public long getParseTime() {
+			return parseTime.sum();
+		}
+
+		@Override
+		public String toString() {
+			return "parses: " + getParses() + ", failures: " + getFailures() + ", timeouts: " + getTimeouts()
+					+ ", wait: " + getWaitTime() + " ms, parse: " + getParseTime() + " ms";
+		}
+	}
+}
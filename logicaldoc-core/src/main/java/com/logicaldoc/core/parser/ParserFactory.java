@@ -2,6 +2,7 @@ package com.logicaldoc.core.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Locale;
@@ -168,8 +169,32 @@ public class ParserFactory {
 		Parser parser = getParser(filename);
 		TenantDAO dao = (TenantDAO) Context.get().getBean(TenantDAO.class);
 		String tenantName = dao.getTenantName(tenantId);
-		return parser.parse(input, filename, encoding, locale, tenantName != null ? tenantName : Tenant.DEFAULT_NAME,
-				document, fileVersion);
+		return ParserExecutor.get().parse(parser, input, filename, encoding, locale,
+				tenantName != null ? tenantName : Tenant.DEFAULT_NAME, document, fileVersion);
+	}
+
+	/**
+	 * Gets the proper parser and parse the given content writing the text in
+	 * the given writer
+	 * 
+	 * @param input the input contents as stream
+	 * @param filename name of the file
+	 * @param encoding encoding of the stream
+	 * @param locale the locale
+	 * @param tenantId identifier of the tenant
+	 * @param document the document the file belongs to (optional)
+	 * @param fileVersion the file version being processed (optional)
+	 * @param output where to write the text extracted from the input
+	 * 
+	 * @throws ParseException error in the parsing
+	 */
+	public static void parse(InputStream input, String filename, String encoding, Locale locale, long tenantId,
+			Document document, String fileVersion, Writer output) throws ParseException {
+		Parser parser = getParser(filename);
+		TenantDAO dao = (TenantDAO) Context.get().getBean(TenantDAO.class);
+		String tenantName = dao.getTenantName(tenantId);
+		ParserExecutor.get().parse(parser, input, filename, encoding, locale,
+				tenantName != null ? tenantName : Tenant.DEFAULT_NAME, document, fileVersion, output);
 	}
 
 	/**
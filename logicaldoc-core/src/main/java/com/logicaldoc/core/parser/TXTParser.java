@@ -1,11 +1,15 @@
 package com.logicaldoc.core.parser;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.Locale;
 
@@ -71,6 +75,25 @@ public class TXTParser extends AbstractParser {
 		}
 	}
 
+	@Override
+	protected void internalParse(InputStream input, String filename, String encoding, Locale locale, String tenant,
+			Document document, String fileVersion, Writer output) throws IOException {
+		if (input == null)
+			return;
+
+		// Write the text while reading it, without loading the whole file
+		String enc = StringUtils.isNotEmpty(encoding) ? encoding : "UTF-8";
+		try (Reader reader = new BufferedReader(new InputStreamReader(getLimitedStream(input, tenant), enc))) {
+			char[] buffer = new char[8192];
+			int n;
+			while ((n = reader.read(buffer)) != -1)
+				output.write(buffer, 0, n);
+		} catch (UnsupportedEncodingException e) {
+			log.warn("Unsupported encoding '{}', using default ({}) instead.", encoding,
+					System.getProperty("file.encoding"));
+		}
+	}
+
 	private InputStream getLimitedStream(InputStream input, String tenant) {
 		long maxBytes = Context.get().getProperties().getInt(tenant + ".parser.txt.maxsize", 1024) * 1024L;
 		return IOUtil.getLimitedStream(input, maxBytes);
@@ -0,0 +1,175 @@
+package com.logicaldoc.core.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * A writer that collects the text extracted by a parser. The text can be
+ * limited to a maximum length: once the limit is reached a
+ * {@link LimitException} is thrown to stop the parsing, so the rest of the file
+ * is not even read. Optionally the characters not allowed in the full-text
+ * index are replaced with blanks while they are written.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class TextWriter extends Writer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final StringBuilder text = new StringBuilder();
+
+	private final int maxLength;
+
+	private final boolean sanitize;
+
+	private boolean truncated = false;
+
+	/**
+	 * Constructor of a writer that collects all the text as is
+	 */
+	public TextWriter() {
+		this(-1, false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxLength maximum number of characters to collect, a value
+	 *        &lt;=0 means no limit
+	 * @param sanitize if the characters not supported by the full-text index
+	 *        must be replaced with blanks
+	 */
+	public TextWriter(int maxLength, boolean sanitize) {
+		this.maxLength = maxLength;
+		this.sanitize = sanitize;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		checkLimit(1);
+		put((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		int count = checkLimit(len);
+		for (int i = off; i < off + count; i++)
+			put(cbuf[i]);
+		if (count < len)
+			limitReached();
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		append(str, off, off + len);
+	}
+
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		CharSequence sequence = csq != null ? csq : "null";
+		return append(sequence, 0, sequence.length());
+	}
+
+	@Override
+	public Writer append(CharSequence csq, int start, int end) throws IOException {
+		CharSequence sequence = csq != null ? csq : "null";
+		int count = checkLimit(end - start);
+		for (int i = start; i < start + count; i++)
+			put(sequence.charAt(i));
+		if (count < end - start)
+			limitReached();
+		return this;
+	}
+
+	/**
+	 * Writes all the text read from the given reader, until the end of the
+	 * reader or until the limit is reached
+	 *
+	 * @param reader the reader to consume
+	 *
+	 * @throws IOException error reading the text
+	 */
+	public void write(Reader reader) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		int read;
+		try {
+			while ((read = reader.read(buffer)) != -1)
+				write(buffer, 0, read);
+		} catch (LimitException e) {
+			// Enough text has been collected
+		}
+	}
+
+	private void put(char c) {
+		if (sanitize && (c == '\uFFFF' || c == '\uD835'))
+			text.append(' ');
+		else
+			text.append(c);
+	}
+
+	/**
+	 * Computes how many of the given characters can still be written
+	 */
+	private int checkLimit(int len) throws LimitException {
+		if (maxLength <= 0)
+			return len;
+		int available = maxLength - text.length();
+		if (available <= 0)
+			limitReached();
+		return Math.min(len, available);
+	}
+
+	private void limitReached() throws LimitException {
+		truncated = true;
+		throw new LimitException();
+	}
+
+	@Override
+	public void flush() {
+		// Nothing to do
+	}
+
+	@Override
+	public void close() {
+		// Nothing to do
+	}
+
+	/**
+	 * Checks if some text has been discarded because of the limit
+	 *
+	 * @return true if the text has been truncated
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public int length() {
+		return text.length();
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	@Override
+	public String toString() {
+		return text.toString();
+	}
+
+	/**
+	 * Raised when the maximum length of the text has been reached
+	 *
+	 * @author Marco Meschieri - LogicalDOC
+	 * @since 8.8.4
+	 */
+	public static class LimitException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public LimitException() {
+			super("Maximum text length reached");
+		}
+	}
+}
@@ -0,0 +1,496 @@
+package com.logicaldoc.core.searchengine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logicaldoc.core.searchengine.analyzer.FilteredAnalyzer;
+import com.logicaldoc.core.threading.NamedThreadFactory;
+
+/**
+ * Write pipeline in front of the Solr server. Many producers can submit hits
+ * concurrently into a bounded queue, a single writer thread drains it and
+ * sends the hits to the server in batches. A batch is written when it reaches
+ * the configured size or age and is then made visible with a soft commit,
+ * while hard commits are issued periodically for durability.<br>
+ * <br>
+ * Callers that need read-your-writes semantics can invoke {@link #flush()}
+ * that waits until everything submitted before the call is searchable.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class BatchIndexWriter {
+
+	protected static Logger log = LoggerFactory.getLogger(BatchIndexWriter.class);
+
+	private final SolrClient server;
+
+	private final BlockingQueue<Object> queue;
+
+	private final int batchSize;
+
+	private final long maxAge;
+
+	private final long hardCommitInterval;
+
+	private Consumer<Collection<Long>> failureHandler;
+
+	/**
+	 * Identifiers of the hits that could not be written and not yet reported
+	 * by {@link #flush(Collection)}
+	 */
+	private final Set<Long> failed = ConcurrentHashMap.newKeySet();
+
+	private Thread writer;
+
+	private volatile boolean running = false;
+
+	/**
+	 * The producers check {@link #running} and enqueue holding the read lock,
+	 * the stop takes the write lock to clear it, so nothing can be enqueued
+	 * after the writer thread did its last drain
+	 */
+	private final ReadWriteLock submission = new ReentrantReadWriteLock();
+
+	private final AtomicLong written = new AtomicLong(0);
+
+	private final AtomicLong batches = new AtomicLong(0);
+
+	private final AtomicLong failures = new AtomicLong(0);
+
+	/**
+	 * Constructor
+	 *
+	 * @param server the Solr server to write into
+	 * @param queueSize maximum number of pending operations, producers block
+	 *        when the queue is full
+	 * @param batchSize maximum number of hits written in a single batch
+	 * @param maxAge maximum time(ms) a hit can wait before being written
+	 * @param hardCommitInterval minimum time(ms) between two hard commits
+	 */
+	public BatchIndexWriter(SolrClient server, int queueSize, int batchSize, long maxAge,
+			long hardCommitInterval) {
+		this.server = server;
+		this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+		this.batchSize = Math.max(batchSize, 1);
+		this.maxAge = Math.max(maxAge, 1);
+		this.hardCommitInterval = hardCommitInterval;
+	}
+
+	/**
+	 * Sets the handler notified with the identifiers of the hits that could
+	 * not be written
+	 *
+	 * @param failureHandler the handler
+	 */
+	public void setFailureHandler(Consumer<Collection<Long>> failureHandler) {
+		this.failureHandler = failureHandler;
+	}
+
+	/**
+	 * Starts the writer thread
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+		running = true;
+		writer = new NamedThreadFactory("IndexWriter").newThread(this::drain);
+		writer.setDaemon(true);
+		writer.start();
+		log.info("Index writer started with batch size {} and max age {}ms", batchSize, maxAge);
+	}
+
+	/**
+	 * Flushes all the pending operations, issues an hard commit and stops the
+	 * writer thread
+	 */
+	public synchronized void stop() {
+		if (!running)
+			return;
+		try {
+			awaitCompletion(new Flush(true));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		/*
+		 * Do not interrupt the writer, an interrupt during a write would close
+		 * the index channels. It will notice the stop within maxAge.
+		 */
+		submission.writeLock().lock();
+		try {
+			running = false;
+		} finally {
+			submission.writeLock().unlock();
+		}
+		try {
+			writer.join(maxAge + 5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.info("Index writer stopped");
+	}
+
+	/**
+	 * Submits a hit to be added into the index
+	 *
+	 * @param id identifier of the hit
+	 * @param hit the hit to write
+	 * @param language the language used to analyze the hit
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 *         for space in the queue
+	 */
+	public void add(long id, SolrInputDocument hit, String language) throws InterruptedException {
+		Add add = new Add(id, hit, language);
+
+		// A new attempt for this hit
+		failed.remove(id);
+
+		if (enqueue(add))
+			return;
+
+		// No writer thread, so write immediately
+		List<Add> batch = new ArrayList<>();
+		batch.add(add);
+		synchronized (this) {
+			write(batch);
+			softCommit();
+		}
+	}
+
+	/**
+	 * Removes some hits from the index and waits until the deletion is
+	 * visible
+	 *
+	 * @param ids identifiers of the hits to delete
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void delete(Collection<Long> ids) throws InterruptedException {
+		awaitCompletion(new Delete(ids));
+	}
+
+	/**
+	 * Waits until all the operations submitted before this call have been
+	 * written and made visible by a soft commit
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void flush() throws InterruptedException {
+		awaitCompletion(new Flush(false));
+	}
+
+	/**
+	 * Same as {@link #flush()} but also tells which of the given hits could
+	 * not be written
+	 *
+	 * @param ids identifiers of the hits to check
+	 *
+	 * @return the identifiers, among the given ones, of the hits that could
+	 *         not be written
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public Set<Long> flush(Collection<Long> ids) throws InterruptedException {
+		flush();
+		Set<Long> notWritten = new HashSet<>();
+		for (Long id : ids)
+			if (failed.remove(id))
+				notWritten.add(id);
+		return notWritten;
+	}
+
+	/**
+	 * Waits until all the operations submitted before this call have been
+	 * written and persisted by a hard commit
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void commit() throws InterruptedException {
+		awaitCompletion(new Flush(true));
+	}
+
+	private void awaitCompletion(Barrier barrier) throws InterruptedException {
+		if (Thread.currentThread() != writer && enqueue(barrier)) {
+			barrier.latch.await();
+			return;
+		}
+
+		// No writer to wait for, just process the barrier here
+		synchronized (this) {
+			process(barrier, new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Puts an operation in the queue if the writer thread is running
+	 *
+	 * @return true if the operation has been enqueued
+	 */
+	private boolean enqueue(Object item) throws InterruptedException {
+		submission.readLock().lock();
+		try {
+			if (!running)
+				return false;
+			queue.put(item);
+			return true;
+		} finally {
+			submission.readLock().unlock();
+		}
+	}
+
+	private void drain() {
+		List<Add> batch = new ArrayList<>();
+		long batchStart = 0;
+		long lastHardCommit = System.currentTimeMillis();
+		boolean hardCommitPending = false;
+
+		while (running) {
+			try {
+				long timeout = batch.isEmpty() ? maxAge
+						: Math.max(0, batchStart + maxAge - System.currentTimeMillis());
+				Object item = queue.poll(timeout, TimeUnit.MILLISECONDS);
+
+				if (item instanceof Add) {
+					if (batch.isEmpty())
+						batchStart = System.currentTimeMillis();
+					batch.add((Add) item);
+					if (batch.size() >= batchSize || System.currentTimeMillis() - batchStart >= maxAge) {
+						write(batch);
+						softCommit();
+						hardCommitPending = true;
+					}
+				} else if (item instanceof Barrier) {
+					boolean hard = process((Barrier) item, batch);
+					hardCommitPending = !hard;
+					if (hard)
+						lastHardCommit = System.currentTimeMillis();
+				} else if (!batch.isEmpty() && System.currentTimeMillis() - batchStart >= maxAge) {
+					write(batch);
+					softCommit();
+					hardCommitPending = true;
+				}
+
+				if (hardCommitPending && hardCommitInterval > 0
+						&& System.currentTimeMillis() - lastHardCommit >= hardCommitInterval) {
+					hardCommit();
+					hardCommitPending = false;
+					lastHardCommit = System.currentTimeMillis();
+				}
+			} catch (InterruptedException e) {
+				if (running)
+					log.debug("Index writer interrupted");
+			} catch (Throwable t) {
+				log.error("Index writer error: {}", t.getMessage(), t);
+			}
+		}
+
+		// Process whatever is still pending
+		List<Object> pending = new ArrayList<>();
+		queue.drainTo(pending);
+		for (Object item : pending) {
+			if (item instanceof Add)
+				batch.add((Add) item);
+			else
+				process((Barrier) item, batch);
+		}
+		if (!batch.isEmpty()) {
+			write(batch);
+			hardCommit();
+		}
+	}
+
+	/**
+	 * Processes a barrier writing the current batch first
+	 *
+	 * @return true if an hard commit has been done
+	 */
+	private boolean process(Barrier barrier, List<Add> batch) {
+		try {
+			write(batch);
+			if (barrier instanceof Delete) {
+				Delete delete = (Delete) barrier;
+				server.deleteById(delete.ids.stream().map(i -> Long.toString(i)).collect(Collectors.toList()));
+				softCommit();
+				return false;
+			} else if (((Flush) barrier).hard) {
+				hardCommit();
+				return true;
+			} else {
+				softCommit();
+				return false;
+			}
+		} catch (Throwable t) {
+			log.error(t.getMessage(), t);
+			return false;
+		} finally {
+			barrier.latch.countDown();
+		}
+	}
+
+	/**
+	 * Writes a batch of hits, the hits are grouped by language so that each
+	 * group is analyzed with the right language.
+	 */
+	private void write(List<Add> batch) {
+		if (batch.isEmpty())
+			return;
+
+		Map<String, List<Add>> languages = new HashMap<>();
+		for (Add add : batch)
+			languages.computeIfAbsent(add.language, k -> new ArrayList<>()).add(add);
+		batch.clear();
+
+		for (Map.Entry<String, List<Add>> entry : languages.entrySet()) {
+			List<Add> adds = entry.getValue();
+			try {
+				FilteredAnalyzer.lang.set(entry.getKey());
+				try {
+					server.add(adds.stream().map(a -> a.hit).collect(Collectors.toList()));
+					written.addAndGet(adds.size());
+				} catch (Throwable t) {
+					log.warn("Unable to write a batch of {} hits, retrying one by one: {}", adds.size(),
+							t.getMessage());
+					writeOneByOne(adds);
+				}
+			} finally {
+				FilteredAnalyzer.lang.remove();
+			}
+		}
+		batches.incrementAndGet();
+	}
+
+	private void writeOneByOne(List<Add> adds) {
+		List<Long> notWritten = new ArrayList<>();
+		for (Add add : adds) {
+			try {
+				server.add(add.hit);
+				written.incrementAndGet();
+			} catch (Throwable t) {
+				log.error("Unable to write hit {}: {}", add.id, t.getMessage(), t);
+				notWritten.add(add.id);
+			}
+		}
+
+		if (!notWritten.isEmpty()) {
+			failures.addAndGet(notWritten.size());
+			failed.addAll(notWritten);
+			if (failureHandler != null)
+				failureHandler.accept(notWritten);
+		}
+	}
+
+	private void softCommit() {
+		try {
+			server.commit(true, true, true);
+		} catch (Throwable t) {
+			log.error("Soft commit failed: {}", t.getMessage(), t);
+		}
+	}
+
+	private void hardCommit() {
+		try {
+			server.commit(true, true, false);
+		} catch (Throwable t) {
+			log.error("Hard commit failed: {}", t.getMessage(), t);
+		}
+	}
+
+	/**
+	 * Number of operations waiting to be processed
+	 *
+	 * @return the size of the queue
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Total number of hits written so far
+	 *
+	 * @return the number of written hits
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * Total number of batches written so far
+	 *
+	 * @return the number of batches
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * Total number of hits that could not be written
+	 *
+	 * @return the number of failures
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	private static class Add {
+		private final long id;
+
+		private final SolrInputDocument hit;
+
+		private final String language;
+
+		private Add(long id, SolrInputDocument hit, String language) {
+			this.id = id;
+			this.hit = hit;
+			this.language = language != null ? language : "en";
+		}
+	}
+
+	/**
+	 * An operation that forces the current batch to be written and that
+	 * notifies its completion
+	 */
+	private abstract static class Barrier {
+		private final CountDownLatch latch = new CountDownLatch(1);
+	}
+
+	private static class Flush extends Barrier {
+		private final boolean hard;
+
+		private Flush(boolean hard) {
+			this.hard = hard;
+		}
+	}
+
+	private static class Delete extends Barrier {
+		private final Collection<Long> ids;
+
+		private Delete(Collection<Long> ids) {
+			this.ids = ids;
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -12,7 +13,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
 import org.springframework.jdbc.core.RowMapper;
@@ -164,28 +164,12 @@ public class FulltextSearch extends Search {
 
 		log.debug("DB search");
 
+		/*
+		 * The identifiers of the hits are bound as a set, see
+		 * PersistentObjectDAO.queryWithIds
+		 */
 		Set<Long> hitsIds = hitsMap.keySet();
-		StringBuilder hitsIdsCondition = new StringBuilder();
-		if (!hitsIds.isEmpty()) {
-			hitsIdsCondition.append(" and (");
-			FolderDAO fdao = (FolderDAO) Context.get().getBean(FolderDAO.class);
-			if (fdao.isOracle()) {
-				/*
-				 * In Oracle The limit of 1000 elements applies to sets of
-				 * single items: (x) IN ((1), (2), (3), ...). There is no limit
-				 * if the sets contain two or more items: (x, 0) IN ((1,0),
-				 * (2,0), (3,0), ...):
-				 */
-				hitsIdsCondition.append(" (A.ld_id,0) in ( ");
-				hitsIdsCondition
-						.append(hitsIds.stream().map(id -> ("(" + id + ",0)")).collect(Collectors.joining(",")));
-				hitsIdsCondition.append(" )");
-			} else {
-				hitsIdsCondition.append(" A.ld_id in " + hitsIds.toString().replace('[', '(').replace(']', ')'));
-			}
-
-			hitsIdsCondition.append(")");
-		}
+		String hitsIdsCondition = " and A.ld_id in ({ids0}) ";
 
 		StringBuilder richQuery = new StringBuilder();
 		// Find real documents
@@ -212,7 +196,7 @@ public class FulltextSearch extends Search {
 			richQuery.append(" and ( A.ld_stoppublishing is null or A.ld_stoppublishing > CURRENT_TIMESTAMP )");
 		}
 		richQuery.append("  and A.ld_docref is null ");
-		richQuery.append(hitsIdsCondition.toString());
+		richQuery.append(hitsIdsCondition);
 
 		if (options.isRetrieveAliases()) {
 			// Append all aliases
@@ -245,14 +229,14 @@ public class FulltextSearch extends Search {
 			}
 			richQuery.append("  and A.ld_docref is not null and REF.ld_deleted=0 and not A.ld_status="
 					+ AbstractDocument.DOC_ARCHIVED + " and A.ld_docref = REF.ld_id ");
-			richQuery.append(hitsIdsCondition.toString().replace("A.ld_id", "A.ld_docref"));
+			richQuery.append(hitsIdsCondition.replace("A.ld_id", "A.ld_docref"));
 		}
 
 		log.debug("Execute query {}", richQuery.toString());
 
 		DocumentDAO dao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
 		try {
-			dao.query(richQuery.toString(), null, new HitMapper(hitsMap), null);
+			dao.queryWithIds(richQuery.toString(), null, Arrays.asList(hitsIds), new HitMapper(hitsMap), null);
 		} catch (PersistenceException e) {
 			throw new SearchException(e);
 		}
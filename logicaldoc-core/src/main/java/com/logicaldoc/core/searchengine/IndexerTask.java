@@ -1,40 +1,48 @@
 package com.logicaldoc.core.searchengine;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowMapper;
 
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.PersistentObjectDAO;
 import com.logicaldoc.core.document.AbstractDocument;
 import com.logicaldoc.core.document.Document;
+import com.logicaldoc.core.document.DocumentEvent;
 import com.logicaldoc.core.document.DocumentHistory;
 import com.logicaldoc.core.document.DocumentManager;
 import com.logicaldoc.core.document.dao.DocumentDAO;
+import com.logicaldoc.core.parser.TextWriter;
 import com.logicaldoc.core.security.Tenant;
 import com.logicaldoc.core.security.dao.TenantDAO;
 import com.logicaldoc.core.task.Task;
 import com.logicaldoc.core.threading.NamedThreadFactory;
 import com.logicaldoc.i18n.I18N;
-import com.logicaldoc.util.CollectionUtil;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.util.config.ContextProperties;
 import com.logicaldoc.util.io.FileUtil;
 import com.logicaldoc.util.time.TimeDiff;
-import com.logicaldoc.util.time.TimeDiff.TimeField;
 
 /**
  * This task enlists all non-indexed documents and performs the indexing
@@ -49,7 +57,7 @@ public class IndexerTask extends Task {
 	/**
 	 * This executor will be used to index files
 	 */
-	private static ScheduledExecutorService executor = null;
+	private static ExecutorService executor = null;
 
 	public static final String NAME = "IndexerTask";
 
@@ -69,6 +77,11 @@ public class IndexerTask extends Task {
 
 	private long parsingTime = 0;
 
+	/**
+	 * The pipeline of the current or last indexing
+	 */
+	private volatile Pipeline pipeline;
+
 	public IndexerTask() {
 		super(NAME);
 		log = LoggerFactory.getLogger(IndexerTask.class);
@@ -109,6 +122,7 @@ public class IndexerTask extends Task {
 		errors = 0;
 		indexed = 0;
 		indexingTime = 0;
+		parsingTime = 0;
 		try {
 			Integer max = getMax();
 
@@ -138,6 +152,11 @@ public class IndexerTask extends Task {
 			// transaction. This may require time
 			assignTransition(docIds);
 
+			// Process the most expensive documents first, unless the
+			// administrator has chosen an order
+			if ("cost".equals(config.getProperty("index.scheduling", "cost")) && StringUtils.isEmpty(query[1]))
+				docIds = sortByCost(docIds);
+
 			// First step done
 			next();
 
@@ -145,36 +164,21 @@ public class IndexerTask extends Task {
 			lockManager.release(getName(), transactionId);
 
 			if (!docIds.isEmpty()) {
-				int threadsTotal = config.getInt("index.threads", 1);
-				log.info("Distribute the indexing among {} threads", threadsTotal);
-
-				// Divide the docs in groups of N
-				Collection<List<Long>> partitions = CollectionUtil.partition(docIds, threadsTotal);
-
-				startIndexerThreads(threadsTotal);
-				List<IndexerThread> threads = new ArrayList<>();
-
-				// Prepare the threads and launch them
-				int i = 1;
-				for (List<Long> partition : partitions) {
-					IndexerThread iThread = new IndexerThread(partition, i++);
-					threads.add(iThread);
-					executor.schedule(new FutureTask<Long>(iThread), 1, TimeUnit.SECONDS);
-					log.debug("Launched the thread for documents {}", partition);
-				}
+				int parsers = config.getInt("index.threads", 1);
+				int writers = config.getInt("index.writers", 1);
+				log.info("Distribute the indexing among {} parsers and {} writers", parsers, writers);
+
+				pipeline = new Pipeline(docIds, parsers, writers);
+				pipeline.start();
 
-				// Wait for the threads to complete
-				waitThreadsCompleteion(threads);
+				// Wait for the pipeline to complete
+				waitPipelineCompletion(pipeline);
 
-				log.info("All threads have completed");
+				log.info("All stages have completed");
 
 				// Collect some stats
-				for (IndexerThread thread : threads) {
-					indexingTime += thread.getIndexingTime();
-					parsingTime += thread.getParsingTime();
-					indexed += thread.getIndexed();
-					errors += thread.getErrors();
-				}
+				indexingTime = pipeline.writeStage.getTime();
+				parsingTime = pipeline.parseStage.getTime();
 			}
 		} finally {
 			killIndexerThreads();
@@ -202,48 +206,69 @@ public class IndexerTask extends Task {
 		}
 	}
 
-	private void waitThreadsCompleteion(List<IndexerThread> threads) {
+	private void waitPipelineCompletion(Pipeline pipeline) {
 		log.info("Waiting for completion");
-		boolean threadsCompleted = false;
-		while (!threadsCompleted) {
-			synchronized (this) {
-				try {
-					wait(2);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-				}
-			}
-
-			threadsCompleted = true;
-			for (IndexerThread iThread : threads) {
-				if (!iThread.isCompleted()) {
-					threadsCompleted = false;
-					;
-					break;
-				}
+		long lastReport = System.currentTimeMillis();
+		while (!pipeline.isCompleted()) {
+			try {
+				pipeline.await(2000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
 			}
 
 			if (interruptRequested)
-				threadsCompleted = true;
+				break;
+
+			if (System.currentTimeMillis() - lastReport > 30000) {
+				pipeline.logStatistics();
+				lastReport = System.currentTimeMillis();
+			}
 		}
+		pipeline.logStatistics();
 	}
 
 	private void assignTransition(List<Long> docIds) throws PersistenceException {
 		if (!docIds.isEmpty()) {
 			// Mark all these documents as belonging to the current
 			// transaction. This may require time
-			String idsStr = docIds.toString().replace('[', '(').replace(']', ')');
-
-			Map<String, Object> params = new HashMap<>();
-			params.put("transactionId", transactionId);
-
-			documentDao.bulkUpdate(
-					" set ld_transactionid = :transactionId where ld_transactionid is null and ld_id in " + idsStr,
-					params);
+			documentDao.jdbcUpdateWithIds(
+					"update ld_document set ld_transactionid = ? where ld_transactionid is null and ld_id in ({ids0})",
+					new Object[] { transactionId }, Arrays.asList(docIds));
 		}
 		log.info("Documents marked for indexing in transaction {}", transactionId);
 	}
 
+	/**
+	 * Sorts the documents by descending estimated indexing cost, see
+	 * {@link IndexingCost}
+	 */
+	private List<Long> sortByCost(List<Long> docIds) throws PersistenceException {
+		if (docIds.size() < 2)
+			return docIds;
+
+		@SuppressWarnings("unchecked")
+		List<Object[]> records = (List<Object[]>) documentDao.query(
+				"select ld_id, ld_filename, ld_filesize from ld_document where ld_transactionid = ?",
+				new Object[] { transactionId }, new RowMapper<Object[]>() {
+					@Override
+					public Object[] mapRow(ResultSet rs, int row) throws SQLException {
+						return new Object[] { rs.getLong(1), rs.getString(2), rs.getLong(3) };
+					}
+				}, null);
+
+		List<Long> sorted = new IndexingCost(config).sort(records);
+
+		// Documents not marked with our transaction go at the end
+		Set<Long> sortedSet = new HashSet<>(sorted);
+		for (Long id : docIds)
+			if (!sortedSet.contains(id))
+				sorted.add(id);
+
+		log.debug("Documents sorted by indexing cost");
+		return sorted;
+	}
+
 	private Integer getMax() {
 		Integer max = Context.get().getProperties().getProperty("index.batch") != null
 				? Integer.parseInt(config.getProperty("index.batch"))
@@ -301,21 +326,48 @@ public class IndexerTask extends Task {
 		sb.append(I18N.message("indexationtime", locale) + ": ");
 		sb.append(TimeDiff.printDuration(indexingTime));
 		sb.append("\n");
+		sb.append(I18N.message("parsingtime", locale) + ": ");
+		sb.append(TimeDiff.printDuration(parsingTime));
+		sb.append("\n");
 		sb.append(I18N.message("indexeddocs", locale) + ": ");
 		sb.append(indexed);
 		sb.append("\n");
 		sb.append(I18N.message("errors", locale) + ": ");
 		sb.append(errors);
+		for (StageStatistics stage : getStageStatistics()) {
+			sb.append("\n");
+			sb.append(stage);
+		}
 		return sb.toString();
 	}
 
+	public long getIndexed() {
+		return indexed;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Gets the statistics of the stages of the current indexing, or of the
+	 * last one if the task is not running
+	 * 
+	 * @return the statistics of the prefetch, parse, write and status stages,
+	 *         empty if no indexing has been done yet
+	 */
+	public List<StageStatistics> getStageStatistics() {
+		Pipeline current = pipeline;
+		return current != null ? current.getStatistics() : new ArrayList<>();
+	}
+
 	public void setTenantDao(TenantDAO tenantDao) {
 		this.tenantDao = tenantDao;
 	}
 
 	private static void startIndexerThreads(int threadsTotal) {
 		if (executor == null || executor.isShutdown() || executor.isTerminated())
-			executor = Executors.newScheduledThreadPool(threadsTotal, new NamedThreadFactory("Indexer"));
+			executor = Executors.newFixedThreadPool(threadsTotal, new NamedThreadFactory("Indexer"));
 	}
 
 	/**
@@ -334,114 +386,517 @@ public class IndexerTask extends Task {
 	}
 
 	/**
-	 * This is invoked to index a selection of files
+	 * A document traveling along the indexing pipeline
 	 * 
 	 * @author Marco Meschieri - LogicalDOC
-	 * @since 8.2.1
+	 * @since 8.8.4
 	 */
-	class IndexerThread implements Callable<Long> {
+	static class IndexingItem {
 
-		private long indexingTime = 0;
+		/**
+		 * Marks the end of the stream of items
+		 */
+		static final IndexingItem END = new IndexingItem(0L, null, null);
 
-		private long parsingTime = 0;
+		private long docId;
 
-		private List<Long> docIds = new ArrayList<>();
+		private Document document;
 
-		private int number = 1;
+		private Tenant tenant;
 
-		private boolean completed = false;
+		private TextWriter content;
 
-		private int indexed = 0;
+		private boolean skip = false;
 
-		private int errors = 0;
+		/**
+		 * True if the database has already been updated by the writer
+		 */
+		private boolean stored = false;
 
-		IndexerThread(List<Long> docIds, int number) {
-			this.docIds = docIds;
+		private Throwable error;
+
+		IndexingItem(long docId, Document document, Tenant tenant) {
+			this.docId = docId;
+			this.document = document;
+			this.tenant = tenant;
+		}
+	}
+
+	/**
+	 * Collects the statistics of a stage of the pipeline
+	 * 
+	 * @author Marco Meschieri - LogicalDOC
+	 * @since 8.8.4
+	 */
+	static class Stage {
+
+		private String name;
+
+		/**
+		 * The queue this stage takes its work from
+		 */
+		private BlockingQueue<IndexingItem> queue;
+
+		private AtomicLong count = new AtomicLong(0);
+
+		private AtomicLong time = new AtomicLong(0);
+
+		Stage(String name, BlockingQueue<IndexingItem> queue) {
+			this.name = name;
+			this.queue = queue;
+		}
+
+		void done(long items, long elapsed) {
+			count.addAndGet(items);
+			time.addAndGet(elapsed);
+		}
+
+		long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * The total time spent by all the threads of this stage
+		 */
+		long getTime() {
+			return time.get();
+		}
+
+		/**
+		 * The number of processed items per second in the given elapsed time
+		 */
+		double getThroughput(long elapsed) {
+			return elapsed > 0 ? count.get() * 1000D / elapsed : 0D;
 		}
 
 		@Override
-		public Long call() throws Exception {
-			try {
-				/*
-				 * Prepare the master transaction object
-				 */
-				DocumentHistory transaction = new DocumentHistory();
-				transaction.setUser(userDao.findByUsername("_system"));
+		public String toString() {
+			return name;
+		}
+	}
 
-				for (Long id : docIds) {
-					try {
-						log.debug("Thread {}: Indexing document {}", number, id);
+	/**
+	 * Snapshot of the statistics of a stage of the indexing pipeline
+	 * 
+	 * @author Marco Meschieri - LogicalDOC
+	 * @since 8.8.4
+	 */
+	public static class StageStatistics {
+
+		private final String name;
+
+		private final long count;
+
+		private final long time;
+
+		private final double throughput;
+
+		private final int queued;
+
+		StageStatistics(Stage stage, long elapsed, int queued) {
+			this.name = stage.name;
+			this.count = stage.getCount();
+			this.time = stage.getTime();
+			this.throughput = stage.getThroughput(elapsed);
+			this.queued = queued;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * The number of documents processed by the stage
+		 * 
+		 * @return number of documents
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * The total time(ms) spent by all the threads of the stage
+		 * 
+		 * @return the time in milliseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * The processed documents per second
+		 * 
+		 * @return the throughput
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		/**
+		 * The number of documents waiting to enter the stage
+		 * 
+		 * @return size of the queue in front of the stage
+		 */
+		public int getQueued() {
+			return queued;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stage %s: %d documents, %.2f docs/s, %d queued", name, count, throughput,
+					queued);
+		}
+	}
 
-						Document doc = documentDao.findById(id);
-						Tenant tenant = tenantDao.findById(doc.getTenantId());
+	/**
+	 * The indexing pipeline, made of four stages connected by bounded queues
+	 * so that a slow stage slows down the previous ones:
+	 * <ol>
+	 * <li><b>prefetch</b>: loads the documents and their tenants in
+	 * batches</li>
+	 * <li><b>parse</b>: a pool of threads extracting the texts</li>
+	 * <li><b>write</b>: adds the hits into the index</li>
+	 * <li><b>status</b>: marks the documents as indexed in batches</li>
+	 * </ol>
+	 * All the threads of a stage take their work from the same queue, so a
+	 * thread stuck on a huge file does not prevent the others from going on.
+	 * 
+	 * @author Marco Meschieri - LogicalDOC
+	 * @since 8.8.4
+	 */
+	class Pipeline {
+
+		private List<Long> docIds;
+
+		private int parsers;
+
+		private int writers;
+
+		private int prefetchSize;
+
+		private int statusBatch;
+
+		private BlockingQueue<IndexingItem> parseQueue;
+
+		private BlockingQueue<IndexingItem> writeQueue;
+
+		private BlockingQueue<IndexingItem> statusQueue;
 
+		private AtomicInteger activeParsers;
+
+		private AtomicInteger activeWriters;
+
+		private CountDownLatch completion = new CountDownLatch(1);
+
+		private DocumentHistory transaction;
+
+		private long startTime;
+
+		private volatile long endTime = 0;
+
+		final Stage prefetchStage;
+
+		final Stage parseStage;
+
+		final Stage writeStage;
+
+		final Stage statusStage;
+
+		Pipeline(List<Long> docIds, int parsers, int writers) {
+			this.docIds = docIds;
+			this.parsers = Math.max(parsers, 1);
+			this.writers = Math.max(writers, 1);
+			this.prefetchSize = Math.max(config.getInt("index.prefetch", 50), 1);
+			this.statusBatch = Math.max(config.getInt("index.statusbatch", 50), 1);
+
+			parseQueue = new ArrayBlockingQueue<>(this.parsers * 2);
+			writeQueue = new ArrayBlockingQueue<>(this.writers * 4);
+			statusQueue = new ArrayBlockingQueue<>(this.statusBatch * 2);
+			activeParsers = new AtomicInteger(this.parsers);
+			activeWriters = new AtomicInteger(this.writers);
+
+			prefetchStage = new Stage("prefetch", null);
+			parseStage = new Stage("parse", parseQueue);
+			writeStage = new Stage("write", writeQueue);
+			statusStage = new Stage("status", statusQueue);
+		}
+
+		/**
+		 * Launches the threads of all the stages
+		 */
+		void start() {
+			transaction = new DocumentHistory();
+			transaction.setUser(userDao.findByUsername("_system"));
+
+			startTime = System.currentTimeMillis();
+			startIndexerThreads(parsers + writers + 2);
+			executor.execute(this::prefetch);
+			for (int i = 0; i < parsers; i++)
+				executor.execute(this::parse);
+			for (int i = 0; i < writers; i++)
+				executor.execute(this::write);
+			executor.execute(this::updateStatus);
+		}
+
+		boolean isCompleted() {
+			return completion.getCount() == 0;
+		}
+
+		void await(long millis) throws InterruptedException {
+			completion.await(millis, TimeUnit.MILLISECONDS);
+		}
+
+		void logStatistics() {
+			for (StageStatistics stage : getStatistics())
+				log.info("{}", stage);
+		}
+
+		List<StageStatistics> getStatistics() {
+			long elapsed = (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+			List<StageStatistics> statistics = new ArrayList<>();
+			for (Stage stage : new Stage[] { prefetchStage, parseStage, writeStage, statusStage }) {
+				// The documents still to be loaded wait in front of the
+				// prefetch
+				int queued = stage.queue != null ? stage.queue.size()
+						: (int) Math.max(0, docIds.size() - stage.getCount());
+				statistics.add(new StageStatistics(stage, elapsed, queued));
+			}
+			return statistics;
+		}
+
+		/**
+		 * Loads the documents in batches and feeds the parsers
+		 */
+		private void prefetch() {
+			try {
+				Map<Long, Tenant> tenants = new HashMap<>();
+				for (Tenant tenant : tenantDao.findAll())
+					tenants.put(tenant.getId(), tenant);
+
+				for (int i = 0; i < docIds.size() && !interruptRequested; i += prefetchSize) {
+					long start = System.currentTimeMillis();
+					List<Long> chunk = docIds.subList(i, Math.min(i + prefetchSize, docIds.size()));
+					Map<Long, Document> docs = new HashMap<>();
+					for (Document doc : documentDao.findByIds(chunk.toArray(new Long[0]), null))
+						docs.put(doc.getId(), doc);
+					prefetchStage.done(chunk.size(), System.currentTimeMillis() - start);
+
+					// Preserve the original ordering
+					for (Long id : chunk) {
+						Document doc = docs.get(id);
+						if (doc == null) {
+							IndexingItem item = new IndexingItem(id, null, null);
+							item.error = new Exception("Unexisting document " + id);
+							statusQueue.put(item);
+						} else {
+							Tenant tenant = tenants.get(doc.getTenantId());
+							if (tenant == null) {
+								tenant = tenantDao.findById(doc.getTenantId());
+								tenants.put(doc.getTenantId(), tenant);
+							}
+							parseQueue.put(new IndexingItem(id, doc, tenant));
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable t) {
+				log.error("Error prefetching the documents", t);
+			} finally {
+				end(parseQueue, parsers);
+			}
+		}
+
+		/**
+		 * Extracts the texts of the documents
+		 */
+		private void parse() {
+			try {
+				while (true) {
+					IndexingItem item = parseQueue.take();
+					if (item == IndexingItem.END)
+						break;
+
+					long start = System.currentTimeMillis();
+					Document doc = item.document;
+					try {
 						// Check if this document must be marked for skipping
 						if (!FileUtil.matches(doc.getFileName(),
-								config.getProperty(tenant.getName() + ".index.includes") == null ? ""
-										: config.getProperty(tenant.getName() + ".index.includes"),
-								config.getProperty(tenant.getName() + ".index.excludes") == null ? ""
-										: config.getProperty(tenant.getName() + ".index.excludes"))) {
-							documentDao.initialize(doc);
-							doc.setIndexed(AbstractDocument.INDEX_SKIP);
-							documentDao.store(doc);
-							log.warn("Thread {}: Document {} with filename '{}' marked as unindexable", number, id,
-									doc.getFileName());
-						} else {
-							Date beforeIndexing = new Date();
-							parsingTime += documentManager.reindex(id, null, new DocumentHistory(transaction));
-							long indexingDiff = TimeDiff.getTimeDifference(beforeIndexing, new Date(),
-									TimeField.MILLISECOND);
-							indexingTime += indexingDiff;
-							log.debug("Thread {}: Indexed document {} in {}ms", number, indexingDiff);
+								config.getProperty(item.tenant.getName() + ".index.includes", ""),
+								config.getProperty(item.tenant.getName() + ".index.excludes", ""))) {
+							item.skip = true;
+							statusQueue.put(item);
+							continue;
 						}
-						indexed++;
+
+						// Aliases and metadata-only documents are not parsed
+						if (doc.getDocRef() == null && doc.getIndexed() != AbstractDocument.INDEX_TO_INDEX_METADATA) {
+							log.debug("Parsing document {}", doc.getId());
+							TextWriter text = indexer.newContentWriter();
+							documentManager.parseDocument(doc, null, text);
+							item.content = text;
+						}
+						parseStage.done(1, System.currentTimeMillis() - start);
+
+						writeQueue.put(item);
+					} catch (InterruptedException ie) {
+						throw ie;
 					} catch (Throwable e) {
-						log.error("Thread {}: There was a problem indexing document {}", number, id);
-						log.error(e.getMessage(), e);
-						errors++;
-					} finally {
-						next();
+						item.error = e;
+						statusQueue.put(item);
 					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (activeParsers.decrementAndGet() == 0)
+					end(writeQueue, writers);
+			}
+		}
 
-					if (interruptRequested) {
-						log.debug("Thread {}: interrupt requested", number);
+		/**
+		 * Writes the hits into the index
+		 */
+		private void write() {
+			try {
+				while (true) {
+					IndexingItem item = writeQueue.take();
+					if (item == IndexingItem.END)
 						break;
+
+					long start = System.currentTimeMillis();
+					try {
+						if (item.document.getDocRef() != null) {
+							// Aliases are entirely handled by the document
+							// manager
+							documentManager.reindex(item.docId, null, new DocumentHistory(transaction));
+							item.stored = true;
+						} else {
+							indexer.addHit(item.document, item.content);
+						}
+						writeStage.done(1, System.currentTimeMillis() - start);
+					} catch (InterruptedException ie) {
+						throw ie;
+					} catch (Throwable e) {
+						item.error = e;
 					}
-				}
 
-				log.debug("Thread {} has completed");
-				return indexingTime;
+					// Release the memory as soon as possible
+					item.content = null;
+					statusQueue.put(item);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			} finally {
-				completed = true;
+				if (activeWriters.decrementAndGet() == 0)
+					end(statusQueue, 1);
 			}
 		}
 
-		public long getIndexingTime() {
-			return indexingTime;
+		/**
+		 * Updates the indexing status of the documents in batches
+		 */
+		private void updateStatus() {
+			List<IndexingItem> batch = new ArrayList<>();
+			try {
+				boolean end = false;
+				while (!end) {
+					IndexingItem item = statusQueue.poll(1, TimeUnit.SECONDS);
+					if (item == IndexingItem.END)
+						end = true;
+					else if (item != null)
+						batch.add(item);
+
+					if (!batch.isEmpty() && (end || item == null || batch.size() >= statusBatch))
+						storeStatus(batch);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable t) {
+				log.error("Error updating the indexing status", t);
+			} finally {
+				endTime = System.currentTimeMillis();
+				completion.countDown();
+			}
 		}
 
-		public long getParsingTime() {
-			return parsingTime;
-		}
+		private void storeStatus(List<IndexingItem> batch) {
+			long start = System.currentTimeMillis();
+
+			List<Document> indexedDocs = new ArrayList<>();
+			List<Long> skippedIds = new ArrayList<>();
+			for (IndexingItem item : batch) {
+				if (item.error != null) {
+					log.error("There was a problem indexing document {}", item.docId);
+					log.error(item.error.getMessage(), item.error);
+					errors++;
+				} else if (item.skip) {
+					log.warn("Document {} with filename '{}' marked as unindexable", item.docId,
+							item.document.getFileName());
+					skippedIds.add(item.docId);
+				} else if (item.stored) {
+					indexed++;
+				} else {
+					indexedDocs.add(item.document);
+				}
+			}
 
-		public void setIndexingTime(long indexingTime) {
-			this.indexingTime = indexingTime;
-		}
+			try {
+				if (!skippedIds.isEmpty())
+					documentDao.jdbcUpdateWithIds("update ld_document set ld_indexed = ? where ld_id in ({ids0})",
+							new Object[] { AbstractDocument.INDEX_SKIP }, Arrays.asList(skippedIds));
+
+				if (!indexedDocs.isEmpty()) {
+					// The documents can be marked as indexed only when their
+					// hits are visible. Those whose hits could not be written
+					// have already been put back in the indexing queue.
+					Set<Long> failedIds = indexer
+							.flush(indexedDocs.stream().map(Document::getId).collect(Collectors.toList()));
+					if (!failedIds.isEmpty()) {
+						log.error("Unable to write the hits of documents {}", failedIds);
+						errors += failedIds.size();
+						indexedDocs.removeIf(d -> failedIds.contains(d.getId()));
+					}
+				}
 
-		public void setParsingTime(long parsingTime) {
-			this.parsingTime = parsingTime;
-		}
+				if (!indexedDocs.isEmpty()) {
+					List<Long> indexedIds = indexedDocs.stream().map(Document::getId).collect(Collectors.toList());
+					documentDao.jdbcUpdateWithIds("update ld_document set ld_indexed = ? where ld_id in ({ids0})",
+							new Object[] { AbstractDocument.INDEX_INDEXED }, Arrays.asList(indexedIds));
 
-		public boolean isCompleted() {
-			return completed;
-		}
+					// Mark the aliases to be re-indexed
+					documentDao.jdbcUpdateWithIds(
+							"update ld_document set ld_indexed = ? where ld_docref in ({ids0})",
+							new Object[] { AbstractDocument.INDEX_TO_INDEX }, Arrays.asList(indexedIds));
 
-		public int getIndexed() {
-			return indexed;
+					for (Document doc : indexedDocs) {
+						DocumentHistory history = new DocumentHistory(transaction);
+						history.setEvent(DocumentEvent.INDEXED.toString());
+						documentDao.saveDocumentHistory(doc, history);
+					}
+					indexed += indexedDocs.size();
+				}
+			} catch (Throwable t) {
+				log.error("Unable to update the indexing status of {} documents", batch.size(), t);
+				errors += indexedDocs.size();
+			}
+
+			statusStage.done(batch.size(), System.currentTimeMillis() - start);
+			for (int i = 0; i < batch.size(); i++)
+				next();
+			batch.clear();
 		}
 
-		public int getErrors() {
-			return errors;
+		/**
+		 * Signals the end of the items to the consumers of the given queue
+		 */
+		private void end(BlockingQueue<IndexingItem> queue, int consumers) {
+			try {
+				for (int i = 0; i < consumers; i++)
+					queue.put(IndexingItem.END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+package com.logicaldoc.core.searchengine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.logicaldoc.util.config.ContextProperties;
+import com.logicaldoc.util.io.FileUtil;
+
+/**
+ * Estimates the cost of indexing a document. The cost is the file size
+ * multiplied by a weight that depends on the type of file, since some formats
+ * are much more expensive to parse than others. The weight of each extension
+ * can be configured in the setting <b>index.cost.<i>extension</i></b>, the
+ * default weight is 1.<br>
+ * <br>
+ * Processing the most expensive documents first keeps all the indexing threads
+ * busy until the end of the batch, instead of leaving a single thread working
+ * on a huge file while the others are idle.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class IndexingCost {
+
+	public static final int DEFAULT_WEIGHT = 1;
+
+	private ContextProperties config;
+
+	private Map<String, Integer> weights = new HashMap<>();
+
+	public IndexingCost(ContextProperties config) {
+		this.config = config;
+	}
+
+	/**
+	 * Gets the weight of a given file type
+	 *
+	 * @param fileName name of the file
+	 *
+	 * @return the weight
+	 */
+	public synchronized int getWeight(String fileName) {
+		String extension = FileUtil.getExtension(fileName).toLowerCase();
+		return weights.computeIfAbsent(extension,
+				ext -> ext.isEmpty() ? DEFAULT_WEIGHT : config.getInt("index.cost." + ext, DEFAULT_WEIGHT));
+	}
+
+	/**
+	 * Estimates the cost of indexing a file
+	 *
+	 * @param fileName name of the file
+	 * @param fileSize size of the file in bytes
+	 *
+	 * @return the estimated cost
+	 */
+	public long estimate(String fileName, long fileSize) {
+		return Math.max(fileSize, 1L) * getWeight(fileName);
+	}
+
+	/**
+	 * Sorts the documents from the most expensive to the cheapest
+	 *
+	 * @param documents list of documents, each one described by an array of
+	 *        identifier, file name and file size
+	 *
+	 * @return the ordered list of document identifiers
+	 */
+	public List<Long> sort(List<Object[]> documents) {
+		List<Object[]> sorted = new ArrayList<>(documents);
+		Map<Long, Long> costs = new HashMap<>();
+		for (Object[] doc : sorted)
+			costs.put((Long) doc[0], estimate((String) doc[1], doc[2] != null ? (Long) doc[2] : 0L));
+		sorted.sort(Comparator.comparing((Object[] doc) -> costs.get((Long) doc[0])).reversed());
+
+		List<Long> ids = new ArrayList<>();
+		for (Object[] doc : sorted)
+			ids.add((Long) doc[0]);
+		return ids;
+	}
+}
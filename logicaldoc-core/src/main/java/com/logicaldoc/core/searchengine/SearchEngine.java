@@ -1,9 +1,12 @@
 package com.logicaldoc.core.searchengine;
 
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.Collection;
+import java.util.Set;
 
 import com.logicaldoc.core.document.Document;
+import com.logicaldoc.core.parser.TextWriter;
 
 /**
  * Model of a search engine with search and I/O capabilities. Various
@@ -16,7 +19,9 @@ import com.logicaldoc.core.document.Document;
 public interface SearchEngine {
 
 	/**
-	 * Adds a new Hit into the index
+	 * Adds a new Hit into the index. The hit may be written asynchronously, so
+	 * it is not guaranteed to be searchable when this method returns, use
+	 * {@link #flush()} when needed.
 	 * 
 	 * @param document The document to add into the index
 	 * @param content The extracted body text
@@ -37,6 +42,57 @@ public interface SearchEngine {
 	 */
 	public void addHit(Document document, InputStream content) throws Exception;
 
+	/**
+	 * Adds a new hit to the index reading the text from the given reader. Only
+	 * the characters that fit the maximum length of the content are read.
+	 * 
+	 * @param document The document to add into the index
+	 * @param content Reader of the extracted body text
+	 * 
+	 * @throws Exception is an error happens and the document cannot be added to
+	 *         the index
+	 */
+	public void addHit(Document document, Reader content) throws Exception;
+
+	/**
+	 * Adds a new hit to the index with the text collected by a writer
+	 * obtained from {@link #newContentWriter()}. The text is already
+	 * sanitized and truncated, so it is used as is.
+	 * 
+	 * @param document The document to add into the index
+	 * @param content The collected text, null for no content
+	 * 
+	 * @throws Exception is an error happens and the document cannot be added to
+	 *         the index
+	 */
+	public void addHit(Document document, TextWriter content) throws Exception;
+
+	/**
+	 * Creates a writer where to collect the text of a document to be indexed:
+	 * the characters not supported by the index are replaced while written
+	 * and the text is truncated at the maximum length of the content.
+	 * 
+	 * @return the new writer
+	 */
+	public TextWriter newContentWriter();
+
+	/**
+	 * Waits until all the hits added so far have been written and are visible
+	 * to searches
+	 */
+	public void flush();
+
+	/**
+	 * Same as {@link #flush()} but also tells which of the given documents
+	 * could not be written into the index
+	 * 
+	 * @param docIds identifiers of the documents to check
+	 * 
+	 * @return the identifiers, among the given ones, of the documents whose
+	 *         hits could not be written
+	 */
+	public Set<Long> flush(Collection<Long> docIds);
+
 	/**
 	 * Launch the index optimization that physically deletes the removed
 	 * entries. This is a long running operation.
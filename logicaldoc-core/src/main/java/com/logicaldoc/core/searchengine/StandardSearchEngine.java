@@ -5,13 +5,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.CharacterCodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.index.CheckIndex;
@@ -43,6 +46,7 @@ import com.logicaldoc.core.document.dao.DocumentDAO;
 import com.logicaldoc.core.document.dao.DocumentNoteDAO;
 import com.logicaldoc.core.metadata.Attribute;
 import com.logicaldoc.core.parser.ParserFactory;
+import com.logicaldoc.core.parser.TextWriter;
 import com.logicaldoc.core.searchengine.analyzer.FilteredAnalyzer;
 import com.logicaldoc.util.StringUtil;
 import com.logicaldoc.util.config.ContextProperties;
@@ -60,6 +64,11 @@ public class StandardSearchEngine implements SearchEngine {
 
 	private static final String INDEX_DIR = "index.dir";
 
+	/**
+	 * Default maximum number of characters of the content of a hit
+	 */
+	public static final int DEFAULT_MAX_TEXT = 5000000;
+
 	public static Version VERSION = Version.LUCENE_8_11_2;
 
 	protected static Logger log = LoggerFactory.getLogger(StandardSearchEngine.class);
@@ -72,6 +81,8 @@ public class StandardSearchEngine implements SearchEngine {
 
 	protected EmbeddedSolrServer server;
 
+	protected BatchIndexWriter writer;
+
 	protected StandardSearchEngine() {
 	}
 
@@ -91,7 +102,25 @@ public class StandardSearchEngine implements SearchEngine {
 	 * .document.Document, java.lang.String)
 	 */
 	@Override
-	public synchronized void addHit(Document document, String content) throws Exception {
+	public void addHit(Document document, String content) throws Exception {
+		addHit(document, content, false);
+	}
+
+	@Override
+	public void addHit(Document document, TextWriter content) throws Exception {
+		addHit(document, content != null ? content.toString() : null, true);
+	}
+
+	/**
+	 * Adds a new hit
+	 * 
+	 * @param document the document to add
+	 * @param content the body text
+	 * @param prepared true if the text has been collected by a writer of
+	 *        {@link #newContentWriter()}, so it is already sanitized and
+	 *        truncated
+	 */
+	private void addHit(Document document, String content, boolean prepared) throws Exception {
 		Document doc = getDocument(document);
 
 		SolrInputDocument hit = new SolrInputDocument();
@@ -108,7 +137,12 @@ public class StandardSearchEngine implements SearchEngine {
 		hit.addField(HitField.TAGS.getName(), doc.getTagsString());
 		hit.addField(HitField.DOC_REF.getName(), doc.getDocRef());
 
-		setContent(content, hit);
+		if (prepared) {
+			if (content != null)
+				hit.addField(HitField.CONTENT.getName(), content);
+		} else {
+			setContent(content, hit);
+		}
 
 		setFolder(doc, hit);
 
@@ -127,13 +161,8 @@ public class StandardSearchEngine implements SearchEngine {
 		if (sb.length() > 0)
 			hit.addField(HitField.NOTES.getName(), sb.toString());
 
-		try {
-			FilteredAnalyzer.lang.set(doc.getLanguage());
-			server.add(hit);
-			server.commit();
-		} finally {
-			FilteredAnalyzer.lang.remove();
-		}
+		// The hit will be written and committed asynchronously
+		writer.add(doc.getId(), hit, doc.getLanguage());
 	}
 
 	private void addExtendedAttributes(Document doc, SolrInputDocument hit) {
@@ -175,8 +204,14 @@ public class StandardSearchEngine implements SearchEngine {
 		}
 	}
 
+	/**
+	 * Gets the maximum number of characters of the content to index. It also
+	 * bounds the memory used to collect the text of a document, so when not
+	 * configured {@link #DEFAULT_MAX_TEXT} is used. A value &lt;=0 removes the
+	 * limit.
+	 */
 	private int getMaxText() {
-		int maxText = -1;
+		int maxText = DEFAULT_MAX_TEXT;
 		if (StringUtils.isNotEmpty(config.getProperty("index.maxtext"))) {
 			try {
 				maxText = config.getInt("index.maxtext");
@@ -212,7 +247,7 @@ public class StandardSearchEngine implements SearchEngine {
 	 * .document.Document, java.io.InputStream)
 	 */
 	@Override
-	public synchronized void addHit(Document document, InputStream content) throws Exception {
+	public void addHit(Document document, InputStream content) throws Exception {
 		Document doc = document;
 		if (doc.getDocRef() != null)
 			doc = documentDao.findById(doc.getDocRef());
@@ -221,12 +256,23 @@ public class StandardSearchEngine implements SearchEngine {
 		if (locale == null)
 			locale = Locale.ENGLISH;
 
-		String contentString = null;
-
+		TextWriter text = newContentWriter();
 		if (doc.getIndexed() != AbstractDocument.INDEX_TO_INDEX_METADATA)
-			ParserFactory.parse(content, doc.getFileName(), null, locale, doc.getTenantId(), doc, null);
+			ParserFactory.parse(content, doc.getFileName(), null, locale, doc.getTenantId(), doc, null, text);
+
+		addHit(doc, text);
+	}
 
-		addHit(doc, contentString);
+	@Override
+	public void addHit(Document document, Reader content) throws Exception {
+		TextWriter text = newContentWriter();
+		text.write(content);
+		addHit(document, text);
+	}
+
+	@Override
+	public TextWriter newContentWriter() {
+		return new TextWriter(getMaxText(), true);
 	}
 
 	/*
@@ -238,6 +284,7 @@ public class StandardSearchEngine implements SearchEngine {
 	public synchronized void optimize() {
 		log.warn("Started optimization of the index");
 		try {
+			writer.commit();
 			server.optimize(true, true);
 		} catch (Exception e) {
 			log.error("Error during optimization: " + e.getMessage(), e);
@@ -322,10 +369,11 @@ public class StandardSearchEngine implements SearchEngine {
 	 * @see com.logicaldoc.core.searchengine.SearchEngine#deleteHit(long)
 	 */
 	@Override
-	public synchronized void deleteHit(long id) {
+	public void deleteHit(long id) {
 		try {
-			server.deleteById(Long.toString(id));
-			server.commit();
+			writer.delete(Arrays.asList(id));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} catch (Throwable e) {
 			log.debug("Unable to delete hit {}", id, e);
 		}
@@ -338,15 +386,44 @@ public class StandardSearchEngine implements SearchEngine {
 	 * Collection )
 	 */
 	@Override
-	public synchronized void deleteHits(Collection<Long> ids) {
+	public void deleteHits(Collection<Long> ids) {
+		if (ids.isEmpty())
+			return;
 		try {
-			server.deleteById(ids.stream().map(i -> Long.toString(i)).collect(Collectors.toList()));
-			server.commit();
+			writer.delete(ids);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} catch (Throwable e) {
 			log.debug("Unable to delete {} hits", ids.size(), e);
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.logicaldoc.core.searchengine.SearchEngine#flush()
+	 */
+	@Override
+	public void flush() {
+		try {
+			writer.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public Set<Long> flush(Collection<Long> docIds) {
+		try {
+			return writer.flush(docIds);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			// Nothing can be said about the hits
+			return new HashSet<>(docIds);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -433,6 +510,7 @@ public class StandardSearchEngine implements SearchEngine {
 	public synchronized void close() {
 		log.warn("Closing the indexer");
 		try {
+			writer.stop();
 			server.commit();
 			unlock();
 			server.getCoreContainer().shutdown();
@@ -569,6 +647,7 @@ public class StandardSearchEngine implements SearchEngine {
 	@Override
 	public void dropIndex() {
 		try {
+			writer.flush();
 			server.deleteByQuery("*:*");
 			server.optimize();
 		} catch (Throwable e) {
@@ -653,6 +732,8 @@ public class StandardSearchEngine implements SearchEngine {
 			container.load();
 
 			unlock();
+
+			initWriter();
 			
 			log.info("The full-text search engine has been initialized");
 		} catch (Error | Exception e) {
@@ -660,6 +741,34 @@ public class StandardSearchEngine implements SearchEngine {
 		}
 	}
 
+	/**
+	 * Prepares and starts the writer used to send the hits to the server
+	 */
+	protected void initWriter() {
+		writer = new BatchIndexWriter(server, config.getInt("index.writer.queue", 1000),
+				config.getInt("index.writer.batch", 100), config.getLong("index.writer.maxage", 1000L),
+				config.getLong("index.writer.hardcommit", 60000L));
+		writer.setFailureHandler(this::markToIndex);
+		writer.start();
+	}
+
+	/**
+	 * Puts back in the indexing queue those documents whose hits could not be
+	 * written
+	 */
+	private void markToIndex(Collection<Long> ids) {
+		try {
+			documentDao.jdbcUpdateWithIds("update ld_document set ld_indexed = ? where ld_id in ({ids0})",
+					new Object[] { AbstractDocument.INDEX_TO_INDEX }, Arrays.asList(ids));
+		} catch (PersistenceException e) {
+			log.error("Unable to mark documents {} to be indexed", ids, e);
+		}
+	}
+
+	public BatchIndexWriter getWriter() {
+		return writer;
+	}
+
 	@Override
 	public Object getServer() {
 		return server;
@@ -58,6 +58,27 @@ public class Group extends PersistentObject implements Serializable {
 	 */
 	private Set<User> users = new HashSet<>();
 
+	public Group() {
+	}
+
+	/**
+	 * Copy constructor, the users are not copied
+	 * 
+	 * @param source the group to copy
+	 */
+	public Group(Group source) {
+		this.name = source.name;
+		this.descriprion = source.descriprion;
+		this.type = source.type;
+		this.source = source.source;
+
+		setId(source.getId());
+		setTenantId(source.getTenantId());
+		setDeleted(source.getDeleted());
+		setLastModified(source.getLastModified());
+		setRecordVersion(source.getRecordVersion());
+	}
+
 	public int getType() {
 		return type;
 	}
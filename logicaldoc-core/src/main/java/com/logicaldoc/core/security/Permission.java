@@ -1,9 +1,9 @@
 package com.logicaldoc.core.security;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -36,43 +36,27 @@ import java.util.Set;
  * @since 4.0
  */
 public enum Permission {
-	READ("read"), DOWNLOAD("download"), WRITE("write"), ADD("add"), SECURITY("security"), IMMUTABLE(
-			"immutable"), DELETE("delete"), RENAME("rename"), IMPORT("import"), EXPORT("export"), SIGN("sign"), ARCHIVE(
-					"archive"), WORKFLOW("workflow"), CALENDAR("calendar"), SUBSCRIPTION("subscription"), PRINT(
-							"print"), PASSWORD("password"), MOVE(
-									"move"), EMAIL("email"), AUTOMATION("automation"), STORAGE("storage");
+	READ("read", 0), DOWNLOAD("download", 12), WRITE("write", 1), ADD("add", 2), SECURITY("security",
+			3), IMMUTABLE("immutable", 4), DELETE("delete", 5), RENAME("rename", 6), IMPORT("import", 7), EXPORT(
+					"export", 8), SIGN("sign", 9), ARCHIVE("archive", 10), WORKFLOW("workflow", 11), CALENDAR(
+							"calendar", 13), SUBSCRIPTION("subscription", 14), PRINT("print", 15), PASSWORD(
+									"password", 16), MOVE("move", 17), EMAIL("email", 18), AUTOMATION(
+											"automation", 19), STORAGE("storage", 20);
+
+	/**
+	 * Mask with all the permissions enabled
+	 */
+	public static final int ALL = (1 << 21) - 1;
+
+	private static final Permission[] VALUES = values();
 
 	private final String name;
 
-	private int mask;
+	private final int mask;
 
-	private Permission(String name) {
+	private Permission(String name, int bit) {
 		this.name = name;
-
-		Map<String, String> masks = new HashMap<>();
-		masks.put("read", "000000000000000000001");
-		masks.put("write", "000000000000000000010");
-		masks.put("add", "000000000000000000100");
-		masks.put("security", "000000000000000001000");
-		masks.put("immutable", "000000000000000010000");
-		masks.put("delete", "000000000000000100000");
-		masks.put("rename", "000000000000001000000");
-		masks.put("import", "000000000000010000000");
-		masks.put("export", "000000000000100000000");
-		masks.put("sign", "000000000001000000000");
-		masks.put("archive", "000000000010000000000");
-		masks.put("workflow", "000000000100000000000");
-		masks.put("download", "000000001000000000000");
-		masks.put("calendar", "000000010000000000000");
-		masks.put("subscription", "000000100000000000000");
-		masks.put("print", "000001000000000000000");
-		masks.put("password", "000010000000000000000");
-		masks.put("move", "000100000000000000000");
-		masks.put("email", "001000000000000000000");
-		masks.put("automation", "010000000000000000000");
-		masks.put("storage", "100000000000000000000");
-
-		this.mask = Integer.parseInt(masks.get(name), 2);
+		this.mask = 1 << bit;
 	}
 
 	public String getName() {
@@ -83,18 +67,74 @@ public enum Permission {
 		return mask;
 	}
 
+	/**
+	 * Name of the column that stores this permission in the ACL tables, like
+	 * <code>ld_foldergroup</code>. The READ permission has no column since it
+	 * is granted by the existence of the record itself.
+	 * 
+	 * @return the column name
+	 */
+	public String getColumn() {
+		return "ld_" + name;
+	}
+
 	public boolean match(int permission) {
 		return (permission & mask) != 0;
 	}
 
 	public static Permission valueOf(int mask) {
-		for (Permission permission : all()) {
+		for (Permission permission : VALUES) {
 			if (permission.match(mask))
 				return permission;
 		}
 		return null;
 	}
 
+	/**
+	 * Converts a collection of permissions into a mask
+	 * 
+	 * @param permissions the permissions
+	 * 
+	 * @return the mask
+	 */
+	public static int toMask(Collection<Permission> permissions) {
+		int mask = 0;
+		for (Permission permission : permissions)
+			mask |= permission.mask;
+		return mask;
+	}
+
+	/**
+	 * Converts a mask into a set of permissions
+	 * 
+	 * @param mask the mask
+	 * 
+	 * @return the permissions enabled in the mask
+	 */
+	public static Set<Permission> fromMask(int mask) {
+		Set<Permission> set = EnumSet.noneOf(Permission.class);
+		for (Permission permission : VALUES)
+			if (permission.match(mask))
+				set.add(permission);
+		return set;
+	}
+
+	/**
+	 * Converts a mask into the names of the permissions
+	 * 
+	 * @param mask the mask
+	 * 
+	 * @return the names of the permissions enabled in the mask
+	 */
+	public static String[] toNames(int mask) {
+		String[] names = new String[Integer.bitCount(mask & ALL)];
+		int i = 0;
+		for (Permission permission : VALUES)
+			if (permission.match(mask))
+				names[i++] = permission.name;
+		return names;
+	}
+
 	public static Set<Permission> all() {
 		return new HashSet<>(Arrays.asList(Permission.values()));
 	}
@@ -113,4 +153,4 @@ public enum Permission {
 	public String toString() {
 		return name;
 	}
-}
\ No newline at end of file
+}
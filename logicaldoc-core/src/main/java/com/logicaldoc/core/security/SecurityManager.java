@@ -81,4 +81,17 @@ public interface SecurityManager {
 	 * @throws PersistenceException error at data layer 
 	 */
 	public Set<Permission> getEnabledPermissions(long docId, long userId) throws PersistenceException;
+
+	/**
+	 * Finds all permissions of a user enabled on the specified document
+	 * 
+	 * @param docId ID of the document
+	 * @param userId ID of the user
+	 * 
+	 * @return Mask of the permissions granted to the user on the document, see
+	 *         {@link Permission#getMask()}
+	 * 
+	 * @throws PersistenceException error at data layer 
+	 */
+	public int getEnabledPermissionsMask(long docId, long userId) throws PersistenceException;
 }
\ No newline at end of file
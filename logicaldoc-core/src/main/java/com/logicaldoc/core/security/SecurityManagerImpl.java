@@ -171,6 +171,11 @@ public class SecurityManagerImpl implements SecurityManager {
 
 	@Override
 	public Set<Permission> getEnabledPermissions(long docId, long userId) throws PersistenceException {
+		return Permission.fromMask(getEnabledPermissionsMask(docId, userId));
+	}
+
+	@Override
+	public int getEnabledPermissionsMask(long docId, long userId) throws PersistenceException {
 		Document doc = null;
 		try {
 			doc = documentDAO.findById(docId, true);
@@ -178,9 +183,9 @@ public class SecurityManagerImpl implements SecurityManager {
 			log.error(e.getMessage(), e);
 		}
 		if (doc == null)
-			return new HashSet<>();
+			return 0;
 		else
-			return folderDAO.getEnabledPermissions(doc.getFolder().getId(), userId);
+			return folderDAO.getEnabledPermissionsMask(doc.getFolder().getId(), userId);
 	}
 
 	public void setFolderDAO(FolderDAO folderDAO) {
@@ -88,6 +88,11 @@ public class Session extends PersistentObject implements Comparable<Session> {
 
 	private User user = null;
 
+	/**
+	 * Snapshot of the user, see {@link SessionManager#getPrincipal(String)}
+	 */
+	private transient volatile SessionPrincipal principal = null;
+
 	/**
 	 * Represents a dictionary of custom informations a client may save in the
 	 * session
@@ -420,6 +425,14 @@ public class Session extends PersistentObject implements Comparable<Session> {
 		return user;
 	}
 
+	SessionPrincipal getPrincipal() {
+		return principal;
+	}
+
+	void setPrincipal(SessionPrincipal principal) {
+		this.principal = principal;
+	}
+
 	public void setTenantId(long tenantId) {
 		this.tenantId = tenantId;
 	}
@@ -8,7 +8,11 @@ import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
@@ -18,18 +22,27 @@ import javax.servlet.http.HttpSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.security.authentication.AuthenticationChain;
 import com.logicaldoc.core.security.authentication.AuthenticationException;
 import com.logicaldoc.core.security.dao.SessionDAO;
+import com.logicaldoc.core.security.dao.UserDAO;
 import com.logicaldoc.core.security.spring.LDAuthenticationToken;
 import com.logicaldoc.core.security.spring.LDSecurityContextRepository;
 import com.logicaldoc.util.Context;
+import com.logicaldoc.util.config.ContextProperties;
 
 /**
- * Repository of all current user sessions.
+ * Repository of all current user sessions. The map in memory is the
+ * authoritative source of the sessions of this node, the changes of state are
+ * written in the database asynchronously: the sessions to save are collected
+ * by sid, so multiple changes of the same session result in just one write,
+ * and periodically saved in batches.
  * 
  * @author Marco Meschieri - LogicalDOC
  * @since 4.6
@@ -47,17 +60,48 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	// The maximum number of closed session maintained in memory
 	private static int MAX_CLOSED_SESSIONS = 50;
 
+	// The maximum number of sessions saved in the same transaction
+	private static final int WRITE_BATCH = 100;
+
 	private transient AuthenticationChain authenticationChain;
 
 	private transient SessionDAO sessionDao;
 
 	private transient SessionTimeoutWatchDog timeoutWatchDog = new SessionTimeoutWatchDog();
 
-	private transient List<SessionListener> listeners = new ArrayList<>();
+	private transient List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Sessions whose state must be saved in the database, the key is the sid
+	 */
+	private transient Map<String, Session> pendingWrites = new ConcurrentHashMap<>();
+
+	private transient SessionWriter writer = new SessionWriter();
+
+	/**
+	 * Sids of the sessions removed while their first write may still be in
+	 * progress, the writer deletes their records once inserted
+	 */
+	private transient Set<String> removedSids = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Incremented at each invalidation of the principals, used to discard
+	 * those loaded before an invalidation
+	 */
+	private transient AtomicLong principalsGeneration = new AtomicLong(0);
+
+	/**
+	 * Signature of the users and groups tables at the time of the last check,
+	 * see {@link #checkPrincipals()}
+	 */
+	private transient volatile String principalsSignature;
+
+	private transient volatile long principalsLastCheck = 0;
 
 	private SessionManager() {
 		timeoutWatchDog.start();
 		log.info("Starting the session timeout watchdog");
+		writer.start();
 	}
 
 	public final static SessionManager get() {
@@ -77,7 +121,7 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	 *
 	 * @throws AuthenticationException raised in case of failed login
 	 */
-	public synchronized Session newSession(String username, String password, String key, Client client)
+	public Session newSession(String username, String password, String key, Client client)
 			throws AuthenticationException {
 		User user = authenticationChain.authenticate(username, password, key, client);
 		if (user == null)
@@ -99,7 +143,7 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	 *
 	 * @throws AuthenticationException raised in case of failed login
 	 */
-	public synchronized Session newSession(String username, String password, Client client)
+	public Session newSession(String username, String password, Client client)
 			throws AuthenticationException {
 		return newSession(username, password, null, client);
 	}
@@ -115,10 +159,15 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	 * 
 	 * @return the session created after the successful login
 	 */
-	private synchronized Session createSession(User user, String password, String key, Client client) {
+	private Session createSession(User user, String password, String key, Client client) {
 		Session session = new Session(user, password, key, client);
 		put(session.getSid(), session);
 		log.warn("Created new session {} for user {}", session.getSid(), user.getUsername());
+		try {
+			getPrincipal(session.getSid());
+		} catch (Throwable t) {
+			log.warn("Cannot load the principal of session {}", session.getSid(), t);
+		}
 		cleanClosedSessions();
 		storeSession(session);
 		for (SessionListener listener : listeners)
@@ -140,30 +189,112 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	 * 
 	 * @return the session created after the successful login
 	 */
-	public synchronized Session createSession(User user, Client client) throws AuthenticationException {
+	public Session createSession(User user, Client client) throws AuthenticationException {
 		return createSession(user, null, null, client);
 	}
 
+	/**
+	 * Schedules the save of the session in the database
+	 * 
+	 * @param session the session to save
+	 */
 	private void storeSession(Session session) {
-		try {
-			if (session.getId() == 0L) {
-				Session dbSession = session.getClone();
-				sessionDao.store(dbSession);
-				session.setId(dbSession.getId());
-			} else {
-				Session dbSession = sessionDao.findById(session.getId());
-				if (dbSession != null) {
-					dbSession.setDeleted(session.getDeleted());
-					dbSession.setLastRenew(session.getLastRenew());
-					dbSession.setStatus(session.getStatus());
-					sessionDao.store(dbSession);
-				}
+		pendingWrites.put(session.getSid(), session);
+		if (pendingWrites.size() >= WRITE_BATCH)
+			writer.wakeUp();
+	}
+
+	/**
+	 * Saves in the database all the sessions whose state changed since the
+	 * last invocation
+	 */
+	synchronized void flushSessions() {
+		while (!pendingWrites.isEmpty()) {
+			List<Session> sessions = new ArrayList<>();
+			for (String sid : new ArrayList<>(pendingWrites.keySet())) {
+				Session session = pendingWrites.remove(sid);
+				if (session == null)
+					continue;
+				sessions.add(session);
+				if (sessions.size() >= WRITE_BATCH)
+					break;
 			}
-		} catch (org.springframework.orm.hibernate5.HibernateOptimisticLockingFailureException fe1) {
-			// May happen, forget it.
+
+			// Do not insist with a database that is not working, the
+			// sessions not written will be retried at the next round
+			if (!writeSessions(sessions))
+				break;
+		}
+
+		// No session is being written now, so the remaining tombstones refer
+		// to sessions that have never been inserted
+		removedSids.clear();
+	}
+
+	/**
+	 * Writes a batch of sessions. If the batch fails, the sessions are written
+	 * one by one and those that still fail are scheduled again.
+	 * 
+	 * @return true if all the sessions have been written
+	 */
+	private boolean writeSessions(List<Session> sessions) {
+		try {
+			writeSessionStates(sessions);
+			return true;
 		} catch (Throwable t) {
-			log.warn(t.getMessage(), t);
+			log.warn("Unable to save {} sessions, saving them one by one: {}", sessions.size(), t.getMessage());
+		}
+
+		boolean allWritten = true;
+		for (Session session : sessions) {
+			try {
+				writeSessionStates(Collections.singletonList(session));
+			} catch (Throwable t) {
+				log.warn("Unable to save session {}: {}", session.getSid(), t.getMessage(), t);
+				allWritten = false;
+
+				// A newer state may have been scheduled in the meanwhile,
+				// and a removed session must not be written anymore
+				if (containsKey(session.getSid()))
+					pendingWrites.putIfAbsent(session.getSid(), session);
+			}
+		}
+		return allWritten;
+	}
+
+	/**
+	 * Writes the current states of the given sessions in a single transaction
+	 * and, once committed, assigns the identifiers to the new ones
+	 */
+	private void writeSessionStates(List<Session> sessions) throws PersistenceException {
+		List<Session> dbSessions = new ArrayList<>();
+		for (Session session : sessions) {
+			Session dbSession = session.getClone();
+			dbSession.setStatus(session.getStatus());
+			dbSession.setDeleted(session.getDeleted());
+			dbSessions.add(dbSession);
+		}
+
+		sessionDao.storeStates(dbSessions);
+
+		List<Long> removedIds = new ArrayList<>();
+		for (int i = 0; i < sessions.size(); i++) {
+			Session session = sessions.get(i);
+			synchronized (session) {
+				if (session.getId() == 0L)
+					session.setId(dbSessions.get(i).getId());
+				if (removedSids.remove(session.getSid()))
+					removedIds.add(session.getId());
+			}
 		}
+
+		// Sessions removed while they were being inserted
+		for (Long id : removedIds)
+			try {
+				sessionDao.delete(id);
+			} catch (PersistenceException e) {
+				log.warn(e.getMessage(), e);
+			}
 	}
 
 	/**
@@ -192,10 +323,27 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	public Session remove(Object sid) {
 		kill((String) sid);
 
-		try {
-			sessionDao.delete(get(sid).getId());
-		} catch (PersistenceException e) {
-			log.warn(e.getMessage(), e);
+		Session session = get(sid);
+		if (session != null) {
+			// The record is going to be deleted, no need to update it
+			pendingWrites.remove(sid);
+
+			long id;
+			synchronized (session) {
+				id = session.getId();
+
+				// The writer may be inserting it right now, let it delete
+				// the record once the identifier is known
+				if (id == 0L)
+					removedSids.add(session.getSid());
+			}
+
+			if (id != 0L)
+				try {
+					sessionDao.delete(id);
+				} catch (PersistenceException e) {
+					log.warn(e.getMessage(), e);
+				}
 		}
 
 		return super.remove(sid);
@@ -252,6 +400,138 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 		return session;
 	}
 
+	/**
+	 * Gets the snapshot of the user that owns a session. It is loaded the
+	 * first time and then reused by all the requests of the session, until
+	 * the user or one of his groups gets modified.
+	 * 
+	 * @param sid identifier of the session
+	 * 
+	 * @return the principal or null if the session or the user do not exist
+	 * 
+	 * @throws PersistenceException error at data layer
+	 */
+	public SessionPrincipal getPrincipal(String sid) throws PersistenceException {
+		Session session = get(sid);
+		if (session == null)
+			return null;
+
+		checkPrincipals();
+
+		SessionPrincipal principal = session.getPrincipal();
+		if (principal != null)
+			return principal;
+
+		long generation = principalsGeneration.get();
+		UserDAO userDao = (UserDAO) Context.get().getBean(UserDAO.class);
+		User user = userDao.findById(session.getUserId());
+		if (user == null)
+			return null;
+		userDao.initialize(user);
+
+		principal = new SessionPrincipal(user);
+		if (generation == principalsGeneration.get())
+			session.setPrincipal(principal);
+		return principal;
+	}
+
+	/**
+	 * In a cluster the users and the groups may be changed by other nodes, so
+	 * like the folder permissions cache, every <b>security.acl.cache.check</b>
+	 * seconds a signature of the users and groups tables is compared with the
+	 * previous one and all the principals are discarded when it differs.
+	 */
+	private void checkPrincipals() {
+		ContextProperties config = Context.get().getProperties();
+		if (!config.getBoolean("cluster.enabled", false))
+			return;
+
+		long now = System.currentTimeMillis();
+		if (now - principalsLastCheck < config.getInt("security.acl.cache.check", 5) * 1000L)
+			return;
+		principalsLastCheck = now;
+
+		String signature;
+		try {
+			signature = computePrincipalsSignature();
+		} catch (PersistenceException e) {
+			log.warn("Cannot check the principals: {}", e.getMessage());
+			return;
+		}
+
+		if (!signature.equals(principalsSignature)) {
+			if (principalsSignature != null)
+				log.debug("The users or the groups have been changed, discarding the principals");
+			principalsGeneration.incrementAndGet();
+			for (Session session : values())
+				session.setPrincipal(null);
+			principalsSignature = signature;
+		}
+	}
+
+	private String computePrincipalsSignature() throws PersistenceException {
+		UserDAO userDao = (UserDAO) Context.get().getBean(UserDAO.class);
+		StringBuilder signature = new StringBuilder();
+		for (String query : new String[] {
+				"select count(ld_id), sum(ld_recordversion), max(ld_lastmodified) from ld_user",
+				"select count(ld_id), sum(ld_recordversion), max(ld_lastmodified) from ld_group",
+				"select count(*), sum(ld_userid), sum(ld_groupid) from ld_usergroup" }) {
+			SqlRowSet rs = userDao.queryForRowSet(query, null, null);
+			if (rs.next())
+				signature.append("/" + rs.getLong(1) + "-" + rs.getLong(2) + "-" + rs.getString(3));
+		}
+		return signature.toString();
+	}
+
+	/**
+	 * Discards the principals of the sessions of a user, they will be loaded
+	 * again at the next request
+	 * 
+	 * @param userId identifier of the user
+	 */
+	public void invalidatePrincipals(long userId) {
+		runNowAndAfterCompletion(() -> {
+			for (Session session : values())
+				if (session.getUserId() == userId)
+					session.setPrincipal(null);
+		});
+	}
+
+	/**
+	 * Discards the principals of the sessions of the members of a group, they
+	 * will be loaded again at the next request
+	 * 
+	 * @param groupId identifier of the group
+	 */
+	public void invalidateGroupPrincipals(long groupId) {
+		runNowAndAfterCompletion(() -> {
+			for (Session session : values()) {
+				SessionPrincipal principal = session.getPrincipal();
+				if (principal != null && principal.isMemberOf(groupId))
+					session.setPrincipal(null);
+			}
+		});
+	}
+
+	/**
+	 * The invalidation is repeated after the current transaction completes, so
+	 * that concurrent requests cannot put back data read before the commit
+	 */
+	private void runNowAndAfterCompletion(Runnable invalidation) {
+		principalsGeneration.incrementAndGet();
+		invalidation.run();
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					principalsGeneration.incrementAndGet();
+					invalidation.run();
+				}
+			});
+		}
+	}
+
 	/**
 	 * Gets the session of the given client
 	 * 
@@ -277,7 +557,7 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	 * @return number of opened sessions
 	 */
 	public int countOpened() {
-		return sessionDao.countSessions(null, Session.STATUS_OPEN);
+		return countOpened(null);
 	}
 
 	/**
@@ -288,7 +568,20 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	 * @return number of opened sessions
 	 */
 	public int countOpened(long tenantId) {
-		return sessionDao.countSessions(tenantId, Session.STATUS_OPEN);
+		return countOpened(Long.valueOf(tenantId));
+	}
+
+	/**
+	 * Counts in memory, the states of the sessions may not have been written
+	 * in the database yet
+	 */
+	private int countOpened(Long tenantId) {
+		int count = 0;
+		for (Session session : values())
+			if ((tenantId == null || session.getTenantId() == tenantId.longValue())
+					&& getStatus(session.getSid()) == Session.STATUS_OPEN)
+				count++;
+		return count;
 	}
 
 	/**
@@ -308,6 +601,14 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 	 * {@value #MAX_CLOSED_SESSIONS}
 	 */
 	private void cleanClosedSessions() {
+		// Most of the times there is nothing to clean, so avoid the sorting
+		int closed = 0;
+		for (Session session : values())
+			if (getStatus(session.getSid()) != Session.STATUS_OPEN)
+				closed++;
+		if (closed <= MAX_CLOSED_SESSIONS)
+			return;
+
 		List<String> garbage = new ArrayList<>();
 		int counter = 0;
 		for (Session session : getSessions()) {
@@ -506,6 +807,10 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 				// Nothing to do
 			}
 		}
+
+		log.info("Stopping the session writer");
+		writer.finish();
+		flushSessions();
 		clear();
 
 		if (timeoutWatchDog.isAlive()) {
@@ -561,6 +866,59 @@ public class SessionManager extends ConcurrentHashMap<String, Session> {
 		}
 	}
 
+	/**
+	 * Periodically saves the sessions waiting to be written in the database
+	 * 
+	 * @author Marco Meschieri - LogicalDOC
+	 * @since 8.8.4
+	 */
+	class SessionWriter extends Thread {
+		boolean active = true;
+
+		private SessionWriter() {
+			setDaemon(true);
+			setName("SessionWriter");
+		}
+
+		@Override
+		public void run() {
+			while (active) {
+				synchronized (this) {
+					try {
+						if (pendingWrites.size() < WRITE_BATCH)
+							wait(getInterval());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+
+				try {
+					flushSessions();
+				} catch (Throwable t) {
+					log.warn(t.getMessage(), t);
+				}
+			}
+		}
+
+		private long getInterval() {
+			try {
+				return Context.get().getProperties().getLong("session.write.interval", 1000L);
+			} catch (Throwable t) {
+				return 1000L;
+			}
+		}
+
+		public synchronized void wakeUp() {
+			notifyAll();
+		}
+
+		public synchronized void finish() {
+			this.active = false;
+			notifyAll();
+		}
+	}
+
 	public SessionDAO getSessionDao() {
 		return sessionDao;
 	}
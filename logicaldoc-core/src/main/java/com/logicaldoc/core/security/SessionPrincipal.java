@@ -0,0 +1,78 @@
+package com.logicaldoc.core.security;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the user that owns a session, loaded once and shared by all the
+ * requests of the session until the user or one of his groups gets modified
+ * (see {@link SessionManager#getPrincipal(String)}), also when the change is
+ * made by another node of the cluster. The group identifiers are the same keys
+ * used by the folder permissions cache.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class SessionPrincipal {
+
+	private final long userId;
+
+	private final long tenantId;
+
+	private final String username;
+
+	private final long[] groupIds;
+
+	private final boolean admin;
+
+	private final User user;
+
+	/**
+	 * Constructor
+	 *
+	 * @param user the user, already initialized
+	 */
+	SessionPrincipal(User user) {
+		this.user = user;
+		this.userId = user.getId();
+		this.tenantId = user.getTenantId();
+		this.username = user.getUsername();
+		this.admin = user.isMemberOf(Group.GROUP_ADMIN);
+		this.groupIds = user.getGroupIds().clone();
+		Arrays.sort(this.groupIds);
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public long getTenantId() {
+		return tenantId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public long[] getGroupIds() {
+		return groupIds.clone();
+	}
+
+	public boolean isAdmin() {
+		return admin;
+	}
+
+	public boolean isMemberOf(long groupId) {
+		return Arrays.binarySearch(groupIds, groupId) >= 0;
+	}
+
+	/**
+	 * Gets the user with his groups. The snapshot is shared by all the
+	 * requests of the session, so each call returns a detached copy of it
+	 * that the caller is free to modify.
+	 *
+	 * @return a copy of the user
+	 */
+	public User getUser() {
+		return new User(user);
+	}
+}
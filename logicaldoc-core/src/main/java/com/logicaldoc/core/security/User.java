@@ -211,6 +211,84 @@ public class User extends PersistentObject implements Serializable {
 	private Set<WorkingTime> workingTimes = new HashSet<>();
 
 	private String timeZone;
+
+	public User() {
+	}
+
+	/**
+	 * Copy constructor, the groups and the working times are copied as well
+	 * 
+	 * @param source the user to copy
+	 */
+	public User(User source) {
+		this.username = source.username;
+		this.password = source.password;
+		this.passwordmd4 = source.passwordmd4;
+		this.name = source.name;
+		this.firstName = source.firstName;
+		this.street = source.street;
+		this.postalcode = source.postalcode;
+		this.city = source.city;
+		this.country = source.country;
+		this.state = source.state;
+		this.language = source.language;
+		this.email = source.email;
+		this.emailSignature = source.emailSignature;
+		this.email2 = source.email2;
+		this.emailSignature2 = source.emailSignature2;
+		this.telephone = source.telephone;
+		this.telephone2 = source.telephone2;
+		this.type = source.type;
+		this.enabled = source.enabled;
+		this.passwordChanged = source.passwordChanged;
+		this.passwordExpires = source.passwordExpires;
+		this.passwordExpired = source.passwordExpired;
+		this.repass = source.repass;
+		this.source = source.source;
+		this.quota = source.quota;
+		this.welcomeScreen = source.welcomeScreen;
+		this.ipWhiteList = source.ipWhiteList;
+		this.ipBlackList = source.ipBlackList;
+		this.decodedPassword = source.decodedPassword;
+		this.certExpire = source.certExpire;
+		this.certDN = source.certDN;
+		this.defaultWorkspace = source.defaultWorkspace;
+		this.secondFactor = source.secondFactor;
+		this.key = source.key;
+		this.creation = source.creation;
+		this.docsGrid = source.docsGrid;
+		this.hitsGrid = source.hitsGrid;
+		this.avatar = source.avatar;
+		this.dateFormat = source.dateFormat;
+		this.dateFormatShort = source.dateFormatShort;
+		this.dateFormatLong = source.dateFormatLong;
+		this.searchPref = source.searchPref;
+		this.expire = source.expire;
+		this.lastEnabled = source.lastEnabled;
+		this.maxInactivity = source.maxInactivity;
+		this.enforceWorkingTime = source.enforceWorkingTime;
+		this.timeZone = source.timeZone;
+
+		if (source.groups != null)
+			for (Group group : source.groups)
+				this.groups.add(new Group(group));
+		if (source.groupIds != null)
+			this.groupIds = source.groupIds.clone();
+		if (source.groupNames != null)
+			this.groupNames = source.groupNames.clone();
+		if (source.userGroups != null)
+			for (UserGroup userGroup : source.userGroups)
+				this.userGroups.add(new UserGroup(userGroup.getGroupId()));
+		if (source.workingTimes != null)
+			for (WorkingTime workingTime : source.workingTimes)
+				this.workingTimes.add(new WorkingTime(workingTime));
+
+		setId(source.getId());
+		setTenantId(source.getTenantId());
+		setDeleted(source.getDeleted());
+		setLastModified(source.getLastModified());
+		setRecordVersion(source.getRecordVersion());
+	}
 	
 	public int getType() {
 		return type;
@@ -9,7 +9,9 @@ import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.HibernatePersistentObjectDAO;
 import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.core.folder.FolderPermissionCache;
 import com.logicaldoc.core.security.Group;
+import com.logicaldoc.core.security.SessionManager;
 import com.logicaldoc.core.security.User;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.util.sql.SqlUtil;
@@ -22,6 +24,8 @@ public class HibernateGroupDAO extends HibernatePersistentObjectDAO<Group> imple
 
 	private MenuDAO menuDAO;
 
+	private FolderPermissionCache folderPermissionCache;
+
 	private HibernateGroupDAO() {
 		super(Group.class);
 		super.log = LoggerFactory.getLogger(HibernateGroupDAO.class);
@@ -35,6 +39,10 @@ public class HibernateGroupDAO extends HibernatePersistentObjectDAO<Group> imple
 		this.menuDAO = menuDAO;
 	}
 
+	public void setFolderPermissionCache(FolderPermissionCache folderPermissionCache) {
+		this.folderPermissionCache = folderPermissionCache;
+	}
+
 	public void delete(long groupId, int code) throws PersistenceException {
 		if(code==0)
 			throw new IllegalArgumentException("code cannot be 0");
@@ -48,6 +56,7 @@ public class HibernateGroupDAO extends HibernatePersistentObjectDAO<Group> imple
 			group.setName(group.getName() + "." + group.getId());
 			group.setDeleted(code);
 			saveOrUpdate(group);
+			SessionManager.get().invalidateGroupPrincipals(groupId);
 		}
 	}
 
@@ -168,6 +177,8 @@ public class HibernateGroupDAO extends HibernatePersistentObjectDAO<Group> imple
 				jdbcUpdate(sql);
 			}
 
+			folderPermissionCache.invalidateGroup(groupId);
+
 			fixGuestPermissions(group);
 		} catch (Throwable e) {
 			log.error(e.getMessage(), e);
@@ -215,6 +226,7 @@ public class HibernateGroupDAO extends HibernatePersistentObjectDAO<Group> imple
 	@Override
 	public void store(Group group) throws PersistenceException {
 		super.store(group);
+		SessionManager.get().invalidateGroupPrincipals(group.getId());
 		fixGuestPermissions((Group) group);
 	}
 
@@ -240,6 +252,8 @@ public class HibernateGroupDAO extends HibernatePersistentObjectDAO<Group> imple
 						+ " ld_sign=0, ld_archive=0, ld_workflow=0, ld_calendar=0, ld_password=0, ld_move=0, ld_automation=0 , ld_storage=0 "
 						+ " where ld_groupid=" + group.getId();
 				jdbcUpdate(sql);
+
+				folderPermissionCache.invalidateGroup(group.getId());
 			}
 		} catch (Throwable e) {
 			log.error(e.getMessage(), e);
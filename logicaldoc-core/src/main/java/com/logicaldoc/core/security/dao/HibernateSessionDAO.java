@@ -1,6 +1,8 @@
 package com.logicaldoc.core.security.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,6 +59,28 @@ public class HibernateSessionDAO extends HibernatePersistentObjectDAO<Session> i
 		}
 	}
 
+	@Override
+	public void storeStates(Collection<Session> sessions) throws PersistenceException {
+		if (!checkStoringAspect())
+			return;
+
+		boolean updated = false;
+		for (Session session : sessions) {
+			if (session.getId() == 0L) {
+				store(session);
+			} else {
+				jdbcUpdate(
+						"update ld_session set ld_status = ?, ld_deleted = ?, ld_lastrenew = ?, ld_lastmodified = ?, ld_recordversion = ld_recordversion + 1 where ld_id = ?",
+						session.getStatus(), session.getDeleted(), session.getLastRenew(), new Date(), session.getId());
+				updated = true;
+			}
+		}
+		flush();
+
+		if (updated && sessionFactory.getCache() != null)
+			sessionFactory.getCache().evictEntityData(Session.class);
+	}
+
 	@Override
 	public Session findBySid(String sid) {
 		try {
@@ -24,6 +24,7 @@ import com.logicaldoc.core.generic.Generic;
 import com.logicaldoc.core.generic.GenericDAO;
 import com.logicaldoc.core.security.Group;
 import com.logicaldoc.core.security.PasswordHistory;
+import com.logicaldoc.core.security.SessionManager;
 import com.logicaldoc.core.security.Tenant;
 import com.logicaldoc.core.security.User;
 import com.logicaldoc.core.security.UserEvent;
@@ -281,6 +282,8 @@ public class HibernateUserDAO extends HibernatePersistentObjectDAO<User> impleme
 		 */
 		updateUserGroupAssignments(user);
 
+		SessionManager.get().invalidatePrincipals(user.getId());
+
 		// Save the password history to track the password change
 		recordPasswordChange(user, transaction, passwordChanged);
 
@@ -728,6 +731,8 @@ public class HibernateUserDAO extends HibernatePersistentObjectDAO<User> impleme
 
 		jdbcUpdate("delete from ld_usergroup where ld_userid=" + userId);
 
+		SessionManager.get().invalidatePrincipals(userId);
+
 		saveUserHistory(user, transaction);
 	}
 
@@ -1,7 +1,9 @@
 package com.logicaldoc.core.security.dao;
 
+import java.util.Collection;
 import java.util.List;
 
+import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.PersistentObjectDAO;
 import com.logicaldoc.core.security.Session;
 
@@ -46,6 +48,17 @@ public interface SessionDAO extends PersistentObjectDAO<Session> {
 	 */
 	public List<Session> findByNode(String node);
 	
+	/**
+	 * Saves a batch of sessions in a single transaction. The new sessions are
+	 * inserted, of the existing ones only the status, the deleted flag and the
+	 * last renewal are updated.
+	 * 
+	 * @param sessions the sessions to save
+	 * 
+	 * @throws PersistenceException error at data layer
+	 */
+	public void storeStates(Collection<Session> sessions) throws PersistenceException;
+
 	/**
 	 * This method deletes all the session entries oldest than the
 	 * given days since now. If <code>ttl</code> is 0 or -1, the deletion is not
@@ -5,17 +5,37 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.logicaldoc.core.HibernatePersistentObjectDAO;
 import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.core.threading.StripedLocks;
+import com.logicaldoc.util.config.ContextProperties;
 import com.logicaldoc.util.sql.SqlUtil;
 
 /**
  * Hibernate implementation of <code>SequenceDAO</code>. <br>
  * Sequences are implemented ad Generics whose type is 'sequence' and subtype is
- * the sequence name.
+ * the sequence name.<br>
+ * Each increment is an atomic update of the record in the database, so it is
+ * safe also when several nodes share the same database. By default the
+ * sequences are gap-free, but if the configuration parameter
+ * <b>sequence.&lt;name&gt;.block</b> is greater than 1 the sequence with that
+ * name is allocated in blocks: a whole range of values is reserved in the
+ * database and then the values are handed out from memory until the range is
+ * exhausted. Blocks allocation is much faster but the sequence may have gaps
+ * (the unused values of a range are lost at shutdown) and the value stored in
+ * the database is the end of the last reserved range. Each range is reserved
+ * in a transaction of its own, so a rollback of the caller's transaction
+ * cannot give back to the database a range whose values are already being
+ * handed out.
  * 
  * @author Marco Meschieri - LogicalDOC
  * @since 4.0
@@ -24,14 +44,33 @@ public class HibernateSequenceDAO extends HibernatePersistentObjectDAO<Sequence>
 
 	private static final String AND = " and ";
 
+	private static final String WHERE_ALTERNATE_KEY = " where ld_name = ? and ld_objectid = ? and ld_tenantid = ? and ld_deleted = 0";
+
+	private ContextProperties config;
+
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * The ranges currently reserved for the sequences allocated in blocks,
+	 * the key is the one produced by {@link #key(String, long, long)}
+	 */
+	private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+	private final StripedLocks locks = new StripedLocks(256);
+
 	private HibernateSequenceDAO() {
 		super(Sequence.class);
 		super.log = LoggerFactory.getLogger(HibernateSequenceDAO.class);
 	}
 
 	@Override
-	public synchronized void reset(String sequence, long objectId, long tenantId, long value) {
-		synchronized (SequenceDAO.class) {
+	public void reset(String sequence, long objectId, long tenantId, long value) {
+		String key = key(sequence, objectId, tenantId);
+		Lock lock = locks.get(key.hashCode());
+		lock.lock();
+		try {
+			blocks.remove(key);
+
 			Sequence seq = findByAlternateKey(sequence, objectId, tenantId);
 			if (seq == null)
 				seq = new Sequence();
@@ -46,36 +85,109 @@ public class HibernateSequenceDAO extends HibernatePersistentObjectDAO<Sequence>
 			} catch (PersistenceException e) {
 				log.error(e.getMessage(), e);
 			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
 	@Override
-	public synchronized long next(String sequence, long objectId, long tenantId, long increment) {
-		synchronized (SequenceDAO.class) {
-			Sequence seq = findByAlternateKey(sequence, objectId, tenantId);
-			if (seq == null) {
-				seq = new Sequence();
+	public long next(String sequence, long objectId, long tenantId, long increment) {
+		String key = key(sequence, objectId, tenantId);
+		int blockSize = config != null ? config.getInt("sequence." + sequence + ".block", 1) : 1;
+		if (blockSize <= 1 || increment <= 0) {
+			if (blockSize > 1)
+				blocks.remove(key);
+			return increment(key, sequence, objectId, tenantId, increment);
+		}
+
+		while (true) {
+			Block block = blocks.get(key);
+			if (block != null) {
+				long value = block.take(increment);
+				if (value != Long.MIN_VALUE)
+					return value;
 			}
 
-			seq.setName(sequence);
-			seq.setObjectId(objectId);
-			seq.setTenantId(tenantId);
-			seq.setValue(seq.getValue() + increment);
+			// The range is exhausted, only one thread reserves the next one
+			Lock lock = locks.get(key.hashCode());
+			lock.lock();
 			try {
-				store(seq);
-				flush();
-			} catch (PersistenceException e) {
-				log.error(e.getMessage(), e);
+				if (blocks.get(key) == block) {
+					long size = Math.max(blockSize, increment);
+					long max = reserve(key, sequence, objectId, tenantId, size);
+					blocks.put(key, new Block(max - size, max));
+				}
+			} finally {
+				lock.unlock();
 			}
-			return seq.getValue();
 		}
 	}
 
 	@Override
-	public synchronized long next(String sequence, long objectId, long tenantId) {
+	public long next(String sequence, long objectId, long tenantId) {
 		return this.next(sequence, objectId, tenantId, 1L);
 	}
 
+	/**
+	 * Reserves a range of values in a new transaction, committed independently
+	 * from the caller's one
+	 */
+	private long reserve(String key, String sequence, long objectId, long tenantId, long size) {
+		if (transactionManager == null)
+			return increment(key, sequence, objectId, tenantId, size);
+
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return template.execute(status -> increment(key, sequence, objectId, tenantId, size));
+	}
+
+	/**
+	 * Increments the value of the sequence in the database and returns the new
+	 * value. The update is atomic so the concurrent increments from other
+	 * nodes cannot get lost.
+	 * 
+	 * @throws IllegalStateException if the sequence cannot be incremented, a
+	 *         value must never be returned twice
+	 */
+	private long increment(String key, String sequence, long objectId, long tenantId, long increment) {
+		Lock lock = locks.get(key.hashCode());
+		lock.lock();
+		try {
+			Object[] keyArgs = new Object[] { sequence, objectId, tenantId };
+			int updated = jdbcUpdate(
+					"update ld_sequence set ld_value = ld_value + ?, ld_lastmodified = ?, ld_recordversion = ld_recordversion + 1"
+							+ WHERE_ALTERNATE_KEY,
+					increment, new Date(), sequence, objectId, tenantId);
+
+			if (updated == 0) {
+				Sequence seq = new Sequence();
+				seq.setName(sequence);
+				seq.setObjectId(objectId);
+				seq.setTenantId(tenantId);
+				seq.setValue(increment);
+				store(seq);
+				flush();
+				return increment;
+			}
+
+			@SuppressWarnings("unchecked")
+			List<Long> ids = queryForList("select ld_id from ld_sequence" + WHERE_ALTERNATE_KEY, keyArgs, Long.class,
+					null);
+			if (!ids.isEmpty() && sessionFactory != null && sessionFactory.getCache() != null)
+				sessionFactory.getCache().evictEntityData(Sequence.class, ids.get(0));
+
+			return queryForLong("select ld_value from ld_sequence" + WHERE_ALTERNATE_KEY, keyArgs);
+		} catch (PersistenceException e) {
+			throw new IllegalStateException("Cannot increment the sequence " + sequence, e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static String key(String sequence, long objectId, long tenantId) {
+		return tenantId + "-" + objectId + "-" + sequence;
+	}
+
 	@Override
 	public long getCurrentValue(String sequence, long objectId, long tenantId) {
 		Sequence seq = findByAlternateKey(sequence, objectId, tenantId);
@@ -148,6 +260,7 @@ public class HibernateSequenceDAO extends HibernatePersistentObjectDAO<Sequence>
 
 	@Override
 	public void delete(String name, long objectId, long tenantId) throws PersistenceException {
+		blocks.remove(key(name, objectId, tenantId));
 		Sequence seq = findByAlternateKey(name, objectId, tenantId);
 		if (seq != null)
 			delete(seq.getId());
@@ -157,9 +270,52 @@ public class HibernateSequenceDAO extends HibernatePersistentObjectDAO<Sequence>
 	public void delete(long id, int code) throws PersistenceException {
 		Sequence seq = findById(id);
 		if (seq != null) {
+			blocks.remove(key(seq.getName(), seq.getObjectId(), seq.getTenantId()));
 			seq.setName(seq.getId() + "." + seq.getName());
 			seq.setDeleted(code);
 			store(seq);
 		}
 	}
+
+	public void setConfig(ContextProperties config) {
+		this.config = config;
+	}
+
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * A range of values reserved in the database for a sequence
+	 */
+	private static class Block {
+
+		/**
+		 * The last value handed out
+		 */
+		private final AtomicLong value;
+
+		private final long max;
+
+		private Block(long start, long max) {
+			this.value = new AtomicLong(start);
+			this.max = max;
+		}
+
+		/**
+		 * Takes the next value from the range
+		 * 
+		 * @return the value or Long.MIN_VALUE if the range is exhausted
+		 */
+		private long take(long increment) {
+			while (true) {
+				long current = value.get();
+				long next = current + increment;
+				if (next > max)
+					return Long.MIN_VALUE;
+				if (value.compareAndSet(current, next))
+					return next;
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -25,6 +25,8 @@ public interface SequenceDAO extends PersistentObjectDAO<Sequence> {
 	 * @param tenantId ID of the owning tenant
 	 * 
 	 * @return The next value
+	 * 
+	 * @throws IllegalStateException if the sequence cannot be incremented
 	 */
 	public long next(String name, long objectId, long tenantId);
 
@@ -38,6 +40,8 @@ public interface SequenceDAO extends PersistentObjectDAO<Sequence> {
 	 * @param increment ID of the owning tenant
 	 * 
 	 * @return The next value
+	 * 
+	 * @throws IllegalStateException if the sequence cannot be incremented
 	 */
 	public long next(String name, long objectId, long tenantId, long increment);
 
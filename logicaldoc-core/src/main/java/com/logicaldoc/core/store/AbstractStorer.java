@@ -9,6 +9,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,6 +28,7 @@ import com.logicaldoc.util.Context;
 import com.logicaldoc.util.StringUtil;
 import com.logicaldoc.util.config.ContextProperties;
 import com.logicaldoc.util.io.FileUtil;
+import com.logicaldoc.util.io.IOUtil;
 
 /**
  * Common methods for all the Storer implementations.
@@ -34,6 +39,14 @@ import com.logicaldoc.util.io.FileUtil;
 public abstract class AbstractStorer implements Storer {
 	protected static final int DEFAULT_BUFFER_SIZE = 1024;
 
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Algorithm of the digest returned by the store methods, the same saved
+	 * in the documents
+	 */
+	protected static final String SHA1 = "SHA-1";
+
 	protected static Logger log = LoggerFactory.getLogger(AbstractStorer.class);
 
 	protected ContextProperties config;
@@ -91,7 +104,7 @@ public abstract class AbstractStorer implements Storer {
 	}
 
 	@Override
-	public void store(File file, long docId, String resource) throws IOException {
+	public String store(File file, long docId, String resource) throws IOException {
 		if (!isEnabled()) {
 			log.warn("Storer not enabled");
 			throw new IOException("Storer not enabled");
@@ -99,7 +112,59 @@ public abstract class AbstractStorer implements Storer {
 
 		InputStream is = new BufferedInputStream(new FileInputStream(file), DEFAULT_BUFFER_SIZE);
 
-		store(is, docId, resource);
+		return store(is, docId, resource);
+	}
+
+	/**
+	 * Copies a stream updating the given digests with the copied bytes, so
+	 * the content is read just once
+	 * 
+	 * @param in the stream to read
+	 * @param out where to write the content, may be null to just compute the
+	 *        digests
+	 * @param digests the digests to update
+	 * 
+	 * @return number of copied bytes
+	 * 
+	 * @throws IOException error reading or writing
+	 */
+	protected static long copy(InputStream in, OutputStream out, MessageDigest... digests) throws IOException {
+		byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		long count = 0;
+		int len;
+		while ((len = in.read(buffer)) != -1) {
+			for (MessageDigest digest : digests)
+				digest.update(buffer, 0, len);
+			if (out != null)
+				out.write(buffer, 0, len);
+			count += len;
+		}
+		return count;
+	}
+
+	/**
+	 * Instantiates a digest
+	 * 
+	 * @param algorithm the algorithm, like SHA-1
+	 * 
+	 * @return the new digest
+	 * 
+	 * @throws IOException the algorithm is not available
+	 */
+	protected static MessageDigest newDigest(String algorithm) throws IOException {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void copy(long sourceDocId, String sourceResource, long targetDocId, String targetResource)
+			throws IOException {
+		try (InputStream is = getStream(sourceDocId, sourceResource)) {
+			store(is, targetDocId, targetResource);
+		}
 	}
 
 	/**
@@ -150,8 +215,8 @@ public abstract class AbstractStorer implements Storer {
 	@Override
 	public void writeToStream(long docId, String resource, OutputStream output, long start, long length)
 			throws IOException {
-		try {
-			IOUtils.copyLarge(getStream(docId, resource), output, start, length);
+		try (ReadableByteChannel channel = getChannel(docId, resource, start)) {
+			IOUtil.write(channel, output, length);
 		} catch (IOException ioe) {
 			log.error(ioe.getMessage(), ioe);
 			throw ioe;
@@ -160,12 +225,23 @@ public abstract class AbstractStorer implements Storer {
 
 	@Override
 	public void writeToStream(long docId, String resource, OutputStream output) throws IOException {
+		writeToStream(docId, resource, output, 0L, -1L);
+	}
+
+	/**
+	 * Opens the stream and skips the bytes before the start, the
+	 * implementations that can seek should override this method
+	 */
+	@Override
+	public ReadableByteChannel getChannel(long docId, String resource, long start) throws IOException {
+		InputStream is = getStream(docId, resource);
 		try {
-			IOUtils.copyLarge(getStream(docId, resource), output);
-		} catch (IOException ioe) {
-			log.error(ioe.getMessage(), ioe);
-			throw ioe;
+			IOUtils.skipFully(is, start);
+		} catch (IOException e) {
+			is.close();
+			throw e;
 		}
+		return Channels.newChannel(is);
 	}
 
 	@Override
@@ -0,0 +1,422 @@
+package com.logicaldoc.core.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logicaldoc.core.threading.StripedLocks;
+
+/**
+ * A {@link FSStorer} that keeps a single copy of each content. The contents
+ * are saved once in the <b>blobs</b> folder of the storage root, named by
+ * their SHA-256 digest (e.g. blobs/ab/cd/abcd...), and the files of the
+ * documents are hard links to those blobs: the filesystem itself maintains the
+ * mapping from each resource to its blob and counts the references, so the
+ * resources are read exactly as in the {@link FSStorer} and copying a
+ * resource does not copy any byte.<br>
+ * <br>
+ * The blobs no more referenced by any resource are removed by
+ * {@link #collect(Path)}, the files written by a plain {@link FSStorer} are
+ * turned into links by {@link #deduplicate(Path)}, both are invoked by the
+ * {@link Deduplicator} task. Where the filesystem does not support hard links
+ * or does not expose their count this storer behaves like the
+ * {@link FSStorer}.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class DedupStorer extends FSStorer {
+
+	protected static Logger log = LoggerFactory.getLogger(DedupStorer.class);
+
+	public static final String BLOBS = "blobs";
+
+	private static final String LINK_COUNT = "unix:nlink";
+
+	private static final String SHA256 = "SHA-256";
+
+	/**
+	 * Serializes the operations on the same blob
+	 */
+	private final StripedLocks blobLocks = new StripedLocks(256);
+
+	/**
+	 * Serializes the operations on the same resource, always acquired before
+	 * the blob's lock
+	 */
+	private final StripedLocks resourceLocks = new StripedLocks(256);
+
+	private volatile Boolean deduplicating = null;
+
+	public DedupStorer() {
+		super();
+	}
+
+	/**
+	 * Checks if the contents are actually shared, that is if the filesystem
+	 * of the storage supports the hard links and their count
+	 *
+	 * @return true if the contents are shared
+	 */
+	public boolean isDeduplicating() {
+		if (deduplicating == null) {
+			boolean supported = getRoot().toPath().getFileSystem().supportedFileAttributeViews().contains("unix");
+			if (!supported)
+				log.warn("The filesystem of {} cannot count the hard links, the contents will not be shared",
+						getRoot());
+			deduplicating = supported;
+		}
+		return deduplicating;
+	}
+
+	/**
+	 * The folder that contains the blobs
+	 *
+	 * @return the blobs folder
+	 */
+	public File getBlobs() {
+		return new File(getRoot(), BLOBS);
+	}
+
+	/**
+	 * Gets the blob of a content
+	 *
+	 * @param digest the SHA-256 digest of the content
+	 *
+	 * @return the path of the blob
+	 */
+	public Path getBlob(String digest) {
+		return getBlobs().toPath().resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+	}
+
+	@Override
+	public String store(File file, long docId, String resource) throws IOException {
+		if (!isDeduplicating())
+			return super.store(file, docId, resource);
+
+		// Do not store 0 byte files
+		if (file.length() == 0L)
+			throw new IOException("Do not store 0 byte file");
+
+		if (!isEnabled())
+			throw new IOException("Storer not enabled");
+
+		/*
+		 * Compute the digest before writing anything, so a content already
+		 * stored costs just one read
+		 */
+		MessageDigest sha256 = newDigest(SHA256);
+		MessageDigest sha1 = newDigest(SHA1);
+		try (InputStream is = Files.newInputStream(file.toPath())) {
+			copy(is, null, sha256, sha1);
+		}
+		share(file.toPath(), false, Hex.encodeHexString(sha256.digest()), getResourceFile(docId, resource));
+		return Hex.encodeHexString(sha1.digest());
+	}
+
+	@Override
+	public String store(InputStream stream, long docId, String resource) throws IOException {
+		if (!isDeduplicating())
+			return super.store(stream, docId, resource);
+
+		Path tmp = null;
+		try {
+			if (!isEnabled())
+				throw new IOException("Storer not enabled");
+
+			// Write the content and compute its digests in a single pass
+			tmp = newTempFile();
+			MessageDigest sha256 = newDigest(SHA256);
+			MessageDigest sha1 = newDigest(SHA1);
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				copy(stream, out, sha256, sha1);
+			}
+			share(tmp, true, Hex.encodeHexString(sha256.digest()), getResourceFile(docId, resource));
+			return Hex.encodeHexString(sha1.digest());
+		} catch (IOException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			IOUtils.closeQuietly(stream);
+			if (tmp != null)
+				Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Links the target resource to the same content of the source one
+	 */
+	@Override
+	public void copy(long sourceDocId, String sourceResource, long targetDocId, String targetResource)
+			throws IOException {
+		if (!isDeduplicating()) {
+			super.copy(sourceDocId, sourceResource, targetDocId, targetResource);
+			return;
+		}
+
+		/*
+		 * The source is itself a link to the blob, so the blob cannot be
+		 * collected while we link it
+		 */
+		File target = getResourceFile(targetDocId, targetResource);
+		FileUtils.forceMkdir(target.getParentFile());
+		Lock lock = getLock(target.toPath());
+		lock.lock();
+		try {
+			link(getResourceFile(sourceDocId, sourceResource).toPath(), target.toPath());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void delete(long docId, String resource) {
+		Lock lock = getLock(getResourceFile(docId, resource).toPath());
+		lock.lock();
+		try {
+			super.delete(docId, resource);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Turns a file written by the {@link FSStorer} into a link to the blob of
+	 * its content, creating the blob if it does not exist yet.
+	 *
+	 * @param file the file of a resource
+	 *
+	 * @return true if the file has been processed, false if it was already
+	 *         shared
+	 *
+	 * @throws IOException error reading or linking the file
+	 */
+	public boolean deduplicate(Path file) throws IOException {
+		if (!isDeduplicating())
+			return false;
+
+		// Nobody can replace or delete the file meanwhile
+		Lock resourceLock = getLock(file);
+		resourceLock.lock();
+		try {
+			if (!Files.exists(file) || getLinkCount(file) != 1 || Files.size(file) == 0L)
+				return false;
+
+			String digest;
+			digest = digest(Files.newInputStream(file));
+
+			Path blob = getBlob(digest);
+			Lock blobLock = getLock(digest);
+			blobLock.lock();
+			try {
+				if (Files.exists(blob)) {
+					link(blob, file);
+				} else {
+					// The existing file becomes the blob, nothing is copied
+					Files.createDirectories(blob.getParent());
+					Files.createLink(blob, file);
+				}
+				return true;
+			} finally {
+				blobLock.unlock();
+			}
+		} finally {
+			resourceLock.unlock();
+		}
+	}
+
+	/**
+	 * Deletes a blob if it is not referenced by any resource
+	 *
+	 * @param blob the blob to check
+	 *
+	 * @return true if the blob has been deleted
+	 *
+	 * @throws IOException error accessing the blob
+	 */
+	public boolean collect(Path blob) throws IOException {
+		if (!isDeduplicating())
+			return false;
+
+		String digest = blob.getFileName().toString();
+		Lock lock = getLock(digest);
+		lock.lock();
+		try {
+			if (getLinkCount(blob) != 1)
+				return false;
+			return Files.deleteIfExists(blob);
+		} catch (NoSuchFileException e) {
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Counts each blob once, plus the resources that are not shared
+	 */
+	@Override
+	public long getTotalSize() {
+		if (!isDeduplicating())
+			return super.getTotalSize();
+
+		AtomicLong size = new AtomicLong();
+		Path blobs = getBlobs().toPath();
+		try {
+			Files.walkFileTree(getRoot().toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (file.startsWith(blobs) || getLinkCount(file) <= 1)
+						size.addAndGet(attrs.size());
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			log.warn("Cannot compute the size of {}: {}", getRoot(), e.getMessage());
+		}
+		return size.get();
+	}
+
+	/**
+	 * Makes sure the blob of the content exists and links the resource to it.
+	 *
+	 * @param content file with the content
+	 * @param move true if the content can be moved into the blob
+	 * @param digest digest of the content
+	 * @param dest the resource's file
+	 */
+	private void share(Path content, boolean move, String digest, File dest) throws IOException {
+		FileUtils.forceMkdir(dest.getParentFile());
+
+		Path blob = getBlob(digest);
+		Lock resourceLock = getLock(dest.toPath());
+		Lock blobLock = getLock(digest);
+		resourceLock.lock();
+		blobLock.lock();
+		try {
+			if (!Files.exists(blob)) {
+				Files.createDirectories(blob.getParent());
+				if (move) {
+					Files.move(content, blob, StandardCopyOption.ATOMIC_MOVE);
+				} else {
+					Path tmp = newTempFile();
+					try {
+						Files.copy(content, tmp, StandardCopyOption.REPLACE_EXISTING);
+						Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+					} finally {
+						Files.deleteIfExists(tmp);
+					}
+				}
+			}
+
+			// Hold the lock until the link exists, or the blob may be collected
+			link(blob, dest.toPath());
+		} finally {
+			blobLock.unlock();
+			resourceLock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the destination with a new link to the same file of the
+	 * source. The destination is never written, because it may be shared with
+	 * other resources.
+	 */
+	private void link(Path source, Path dest) throws IOException {
+		if (Files.exists(dest) && Files.isSameFile(source, dest))
+			return;
+
+		// Files starting with dot are not listed as resources
+		Path tmp = dest.resolveSibling("." + dest.getFileName() + "." + UUID.randomUUID());
+		try {
+			try {
+				Files.createLink(tmp, source);
+			} catch (UnsupportedOperationException | FileSystemException e) {
+				log.warn("Cannot link {} to {}, the content will be copied: {}", dest, source, e.getMessage());
+				Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+			}
+			Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private File getResourceFile(long docId, String resource) {
+		return new File(getContainer(docId), resource);
+	}
+
+	/**
+	 * Creates a temporary file inside the blobs folder, so it can be moved
+	 * atomically into a blob
+	 */
+	private Path newTempFile() throws IOException {
+		Path dir = getBlobs().toPath().resolve(".tmp");
+		Files.createDirectories(dir);
+		return Files.createTempFile(dir, "blob", null);
+	}
+
+	private Lock getLock(String digest) {
+		return blobLocks.get(Long.parseUnsignedLong(digest.substring(0, 16), 16));
+	}
+
+	private Lock getLock(Path resource) {
+		return resourceLocks.get(resource.toAbsolutePath().normalize().toString().hashCode());
+	}
+
+	/**
+	 * Counts the links to a file
+	 *
+	 * @param file the file to inspect
+	 *
+	 * @return number of links to the file
+	 *
+	 * @throws IOException error reading the attributes
+	 */
+	public static int getLinkCount(Path file) throws IOException {
+		Map<String, Object> attrs = Files.readAttributes(file, LINK_COUNT);
+		return ((Number) attrs.get("nlink")).intValue();
+	}
+
+	/**
+	 * Computes the SHA-256 digest of a stream, that names the blob
+	 *
+	 * @param is the stream to read
+	 *
+	 * @return the digest in hexadecimal notation
+	 *
+	 * @throws IOException error reading the stream
+	 */
+	static String digest(InputStream is) throws IOException {
+		MessageDigest sha256 = newDigest(SHA256);
+		try (InputStream in = is) {
+			copy(in, null, sha256);
+		}
+		return Hex.encodeHexString(sha256.digest());
+	}
+}
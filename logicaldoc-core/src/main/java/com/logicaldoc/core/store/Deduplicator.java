@@ -0,0 +1,149 @@
+package com.logicaldoc.core.store;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.slf4j.LoggerFactory;
+
+import com.logicaldoc.core.task.Task;
+
+/**
+ * This task maintains the storage of the {@link DedupStorer}: the files
+ * written before the adoption of the deduplication are turned into links to
+ * shared blobs, then the blobs no more referenced by any document are deleted.
+ * When a different storer is in use the task does nothing.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class Deduplicator extends Task {
+
+	public static final String NAME = "Deduplicator";
+
+	private Storer storer;
+
+	private long deduplicated = 0;
+
+	private long collected = 0;
+
+	private long errors = 0;
+
+	public Deduplicator() {
+		super(NAME);
+		log = LoggerFactory.getLogger(Deduplicator.class);
+	}
+
+	@Override
+	public boolean isIndeterminate() {
+		return true;
+	}
+
+	@Override
+	public boolean isConcurrent() {
+		return false;
+	}
+
+	@Override
+	protected void runTask() throws Exception {
+		if (!(storer instanceof DedupStorer) || !((DedupStorer) storer).isDeduplicating()) {
+			log.info("The storer {} does not deduplicate the contents", storer);
+			return;
+		}
+
+		DedupStorer dedupStorer = (DedupStorer) storer;
+		log.info("Start deduplication of the storage {}", dedupStorer.getRoot());
+
+		deduplicated = 0;
+		collected = 0;
+		errors = 0;
+
+		try {
+			Path root = dedupStorer.getRoot().toPath();
+			Path blobs = dedupStorer.getBlobs().toPath();
+			if (!Files.exists(root))
+				return;
+
+			// Share the contents of the files not yet linked to a blob
+			Files.walkFileTree(root, new Visitor(blobs) {
+				@Override
+				protected void process(Path file) throws IOException {
+					if (dedupStorer.deduplicate(file))
+						deduplicated++;
+				}
+			});
+
+			if (interruptRequested || !Files.exists(blobs))
+				return;
+
+			// Delete the blobs no more linked by any resource
+			Files.walkFileTree(blobs, new Visitor(null) {
+				@Override
+				protected void process(Path blob) throws IOException {
+					if (dedupStorer.collect(blob))
+						collected++;
+				}
+			});
+		} finally {
+			log.info("Deduplication finished");
+			log.info("Deduplicated files: {}", deduplicated);
+			log.info("Deleted blobs: {}", collected);
+			log.info("Errors: {}", errors);
+		}
+	}
+
+	/**
+	 * Visits the regular files skipping the hidden ones, that are temporary
+	 * files
+	 */
+	private abstract class Visitor extends SimpleFileVisitor<Path> {
+
+		private Path excluded;
+
+		Visitor(Path excluded) {
+			this.excluded = excluded;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+			if (dir.equals(excluded) || dir.getFileName().toString().startsWith("."))
+				return FileVisitResult.SKIP_SUBTREE;
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+			if (!attrs.isRegularFile() || file.getFileName().toString().startsWith("."))
+				return FileVisitResult.CONTINUE;
+
+			try {
+				process(file);
+			} catch (Throwable t) {
+				log.error("Error processing file {}: {}", file, t.getMessage(), t);
+				errors++;
+			} finally {
+				next();
+			}
+			return interruptRequested ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException exc) {
+			log.warn("Cannot access file {}: {}", file, exc.getMessage());
+			return FileVisitResult.CONTINUE;
+		}
+
+		protected abstract void process(Path file) throws IOException;
+	}
+
+	public Storer getStorer() {
+		return storer;
+	}
+
+	public void setStorer(Storer storer) {
+		this.storer = storer;
+	}
+}
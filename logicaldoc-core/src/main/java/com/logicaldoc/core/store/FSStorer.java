@@ -3,12 +3,20 @@ package com.logicaldoc.core.store;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -72,7 +80,7 @@ public class FSStorer extends AbstractStorer {
 	}
 
 	@Override
-	public void store(File file, long docId, String resource) throws IOException {
+	public String store(File file, long docId, String resource) throws IOException {
 		// Do not store 0 byte files
 		if (file.length() == 0L)
 			throw new IOException("Do not store 0 byte file");
@@ -83,11 +91,16 @@ public class FSStorer extends AbstractStorer {
 		File dir = getContainer(docId);
 		FileUtils.forceMkdir(dir);
 		File dest = new File(new StringBuilder(dir.getPath()).append("/").append(resource).toString());
-		FileUtil.copyFile(file, dest);
+
+		// The file may be a link shared with other resources, never write into it
+		Files.deleteIfExists(dest.toPath());
+		try (InputStream in = new FileInputStream(file)) {
+			return write(in, dest);
+		}
 	}
 
 	@Override
-	public void store(InputStream stream, long docId, String resource) throws IOException {
+	public String store(InputStream stream, long docId, String resource) throws IOException {
 		File file = null;
 		try {
 			if (!isEnabled())
@@ -96,7 +109,8 @@ public class FSStorer extends AbstractStorer {
 			File dir = getContainer(docId);
 			FileUtils.forceMkdir(dir);
 			file = new File(new StringBuilder(dir.getPath()).append("/").append(resource).toString());
-			FileUtil.writeFile(stream, file.getPath());
+			Files.deleteIfExists(file.toPath());
+			return write(stream, file);
 		} catch (IOException e) {
 			throw e;
 		} catch (Throwable e) {
@@ -110,6 +124,24 @@ public class FSStorer extends AbstractStorer {
 		}
 	}
 
+	/**
+	 * Writes a stream into a file computing the digest of the content
+	 * 
+	 * @param in the stream to write
+	 * @param dest the destination file
+	 * 
+	 * @return the SHA-1 digest of the content
+	 * 
+	 * @throws IOException error reading or writing
+	 */
+	private String write(InputStream in, File dest) throws IOException {
+		MessageDigest sha = newDigest(SHA1);
+		try (OutputStream out = new FileOutputStream(dest)) {
+			copy(in, out, sha);
+		}
+		return Hex.encodeHexString(sha.digest());
+	}
+
 	@Override
 	public void writeToFile(long docId, String resource, File out) throws IOException {
 		File container = getContainer(docId);
@@ -131,6 +163,19 @@ public class FSStorer extends AbstractStorer {
 		}
 	}
 
+	@Override
+	public ReadableByteChannel getChannel(long docId, String resource, long start) throws IOException {
+		File file = new File(getContainer(docId), resource);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			channel.position(start);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return channel;
+	}
+
 	@Override
 	public long getTotalSize() {
 		long size = 0;
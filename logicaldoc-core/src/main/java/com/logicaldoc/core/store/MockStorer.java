@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 import com.logicaldoc.util.Context;
@@ -32,23 +35,23 @@ public class MockStorer extends FSStorer {
 	}
 
 	@Override
-	public void store(File file, long docId, String resource) throws IOException {
+	public String store(File file, long docId, String resource) throws IOException {
 		if (errorOnStore)
 			throw new IOException("error");
 		if (useDummyFile)
-			super.store(new File(POM_XML), docId, resource);
+			return super.store(new File(POM_XML), docId, resource);
 		else
-			super.store(file, docId, resource);
+			return super.store(file, docId, resource);
 	}
 
 	@Override
-	public void store(InputStream stream, long docId, String resource) throws IOException {
+	public String store(InputStream stream, long docId, String resource) throws IOException {
 		if (errorOnStore)
 			throw new IOException("error");
 		if (useDummyFile)
-			super.store(new FileInputStream(POM_XML), docId, resource);
+			return super.store(new FileInputStream(POM_XML), docId, resource);
 		else
-			super.store(stream, docId, resource);
+			return super.store(stream, docId, resource);
 	}
 
 	@Override
@@ -59,6 +62,16 @@ public class MockStorer extends FSStorer {
 			return super.getStream(docId, resource);
 	}
 
+	@Override
+	public ReadableByteChannel getChannel(long docId, String resource, long start) throws IOException {
+		if (useDummyFile) {
+			FileChannel channel = FileChannel.open(new File(POM_XML).toPath(), StandardOpenOption.READ);
+			channel.position(start);
+			return channel;
+		} else
+			return super.getChannel(docId, resource, start);
+	}
+
 	public boolean isUseDummyFile() {
 		return useDummyFile;
 	}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 import java.util.Map;
 
@@ -41,9 +42,12 @@ public interface Storer extends Comparable<Storer> {
 	 * @param docId The document identifier
 	 * @param resource Name of the resource to be stored
 	 * 
+	 * @return the digest (SHA-1) of the stored content, computed while
+	 *         writing it
+	 * 
 	 * @throws IOException the content cannot be stored
 	 */
-	public void store(InputStream stream, long docId, String resource) throws IOException;
+	public String store(InputStream stream, long docId, String resource) throws IOException;
 
 	/**
 	 * Stores a file
@@ -54,9 +58,26 @@ public interface Storer extends Comparable<Storer> {
 	 * @param docId identifier of the document
 	 * @param resource name of the resource
 	 * 
+	 * @return the digest (SHA-1) of the stored content, computed while
+	 *         writing it
+	 * 
 	 * @throws IOException the content cannot be stored
 	 */
-	public void store(File file, long docId, String resource) throws IOException;
+	public String store(File file, long docId, String resource) throws IOException;
+
+	/**
+	 * Copies a resource of a document into another document. The
+	 * implementations that share the contents may avoid copying the bytes.
+	 * 
+	 * @param sourceDocId identifier of the source document
+	 * @param sourceResource name of the resource to copy
+	 * @param targetDocId identifier of the target document
+	 * @param targetResource name of the resource in the target document
+	 * 
+	 * @throws IOException the content cannot be copied
+	 */
+	public void copy(long sourceDocId, String sourceResource, long targetDocId, String targetResource)
+			throws IOException;
 
 	/**
 	 * Deletes all resources of a document from the storage.
@@ -173,6 +194,23 @@ public interface Storer extends Comparable<Storer> {
 	 */
 	public InputStream getStream(long docId, String resource) throws IOException;
 
+	/**
+	 * Opens a channel to read the document's content for the specified
+	 * resource starting from a given byte. When possible the implementations
+	 * should seek to the starting byte instead of reading all the preceding
+	 * ones.
+	 * 
+	 * @param docId The document's identifier
+	 * @param resource Name of the resource
+	 * @param start Index of the starting byte
+	 * 
+	 * @return The channel positioned at the starting byte, it must be closed
+	 *         by the caller
+	 * 
+	 * @throws IOException cannot open the channel
+	 */
+	public ReadableByteChannel getChannel(long docId, String resource, long start) throws IOException;
+
 	/**
 	 * Obtains the document's raw bytes for the specified resource
 	 * 
@@ -0,0 +1,76 @@
+package com.logicaldoc.core.threading;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared among an unbounded number of keys: each key is
+ * always mapped to the same lock, so operations on the same key are
+ * serialized while operations on different keys most probably run in
+ * parallel. The locks are reentrant.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class StripedLocks {
+
+	private final ReentrantLock[] locks;
+
+	private final int mask;
+
+	/**
+	 * Constructor
+	 *
+	 * @param stripes minimum number of locks, rounded up to a power of two
+	 */
+	public StripedLocks(int stripes) {
+		int size = 1;
+		while (size < stripes)
+			size <<= 1;
+		locks = new ReentrantLock[size];
+		for (int i = 0; i < size; i++)
+			locks[i] = new ReentrantLock();
+		mask = size - 1;
+	}
+
+	/**
+	 * Gets the lock of a key
+	 *
+	 * @param key the key
+	 *
+	 * @return the lock associated to the given key
+	 */
+	public Lock get(long key) {
+		return locks[index(key)];
+	}
+
+	/**
+	 * Gets the locks of several keys, without duplicates and always in the
+	 * same order, so that they can be acquired together without deadlocks
+	 *
+	 * @param keys the keys
+	 *
+	 * @return the locks associated to the given keys
+	 */
+	public List<Lock> get(Collection<Long> keys) {
+		TreeMap<Integer, Lock> sorted = new TreeMap<>();
+		for (Long key : keys) {
+			int index = index(key);
+			sorted.put(index, locks[index]);
+		}
+		return new ArrayList<>(sorted.values());
+	}
+
+	private int index(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	public int size() {
+		return locks.length;
+	}
+}
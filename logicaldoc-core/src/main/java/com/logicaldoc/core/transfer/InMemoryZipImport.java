@@ -1,12 +1,21 @@
 package com.logicaldoc.core.transfer;
 
 import java.io.File;
-import java.util.List;
-
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.document.Document;
 import com.logicaldoc.core.document.DocumentEvent;
 import com.logicaldoc.core.document.DocumentHistory;
@@ -15,17 +24,21 @@ import com.logicaldoc.core.folder.Folder;
 import com.logicaldoc.core.folder.FolderDAO;
 import com.logicaldoc.core.folder.FolderHistory;
 import com.logicaldoc.core.security.dao.UserDAO;
+import com.logicaldoc.core.threading.ThreadPools;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.util.io.FileUtil;
-import com.logicaldoc.util.io.ZipUtil;
 
 /**
  * This is an import utilities that imports documents stored in a zip archive.
  * The entire import process is followed in memory, to replicate correctly the
  * names of directories and documents when they contain native characters. All
  * folders in the zip will be replicated. Also, if required the parsing of
- * documents is executed for the extraction of the tags of the documents.
- * 
+ * documents is executed for the extraction of the tags of the documents.<br>
+ * The archive is opened just once and its entries are read in a single pass:
+ * each folder is created the first time it is met and then reused, while the
+ * documents are created in the pool <b>ZipImport</b>, with at most
+ * <b>zip.import.parallel</b> creations in progress at the same time.
+ *
  * @author Alessandro Gasparini - LogicalDOC
  * @since 4.5.2
  */
@@ -33,6 +46,17 @@ public class InMemoryZipImport extends ZipImport {
 
 	protected static Logger logger = LoggerFactory.getLogger(InMemoryZipImport.class);
 
+	private static final String POOL_NAME = "ZipImport";
+
+	/**
+	 * Folders already created, by path relative to the parent folder
+	 */
+	private final Map<String, Folder> folders = new HashMap<>();
+
+	private final AtomicInteger imported = new AtomicInteger(0);
+
+	private volatile int total = 0;
+
 	public InMemoryZipImport(Document docVo, String charset) {
 		super(docVo, charset);
 	}
@@ -42,59 +66,124 @@ public class InMemoryZipImport extends ZipImport {
 		this.sessionId = sessionId;
 
 		UserDAO userDao = (UserDAO) Context.get().getBean(UserDAO.class);
-		FolderDAO fDao = (FolderDAO) Context.get().getBean(FolderDAO.class);
-		DocumentManager docManager = (DocumentManager) Context.get().getBean(DocumentManager.class);
+		int parallel = Context.get().getProperties().getInt("zip.import.parallel", 4);
+		Semaphore slots = new Semaphore(Math.max(1, parallel));
 
-		try {
+		try (ZipFile zip = new ZipFile(zipsource, "auto".equals(fileNameCharset) ? "UTF-8" : fileNameCharset)) {
 			this.user = userDao.findById(userId);
+			folders.put("", parent);
 
-			// Open the Zip and list all the contents
-			ZipUtil zipUtil = new ZipUtil();
-			zipUtil.setFileNameCharset(fileNameCharset);
-			List<String> entries = zipUtil.listEntries(zipsource);
-
-			for (String entry : entries) {
-				String relativePath = FileUtil.getPath(entry);
-				if (relativePath.startsWith("/"))
-					relativePath = relativePath.substring(1);
-				if (relativePath.endsWith("/"))
-					relativePath = relativePath.substring(0, relativePath.length() - 1);
-
-				// Ensure to have the proper folder to upload the file into
-				FolderHistory folderTransaction = new FolderHistory();
-				folderTransaction.setSessionId(sessionId);
-				folderTransaction.setUser(user);
-				Folder folder = fDao.createPath(parent, relativePath, true, folderTransaction);
-
-				// Create the document
-				String fileName = FileUtil.getName(entry);
-				String title = FileUtil.getBaseName(fileName);
-
-				if (StringUtils.isEmpty(fileName) || StringUtils.isEmpty(title))
-					continue;
+			Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+			while (entries.hasMoreElements()) {
+				ZipArchiveEntry entry = entries.nextElement();
+				String name = entry.getName();
 
 				try {
-					Document doc = new Document(docVo);
-					doc.setId(0L);
-					doc.setFileName(fileName);
-					doc.setFolder(folder);
-
-					DocumentHistory history = new DocumentHistory();
-					history.setEvent(DocumentEvent.STORED.toString());
-					history.setComment("");
-					history.setUser(user);
-					history.setSessionId(sessionId);
-		
-					docManager.create(zipUtil.getEntryStream(zipsource, entry), doc, history);
-				} catch (Exception e) {
-					logger.warn("InMemoryZipImport unable to import ZIP entry {}", entry, e);
+					// Ensure to have the proper folder to upload the file into
+					Folder folder = getFolder(FileUtil.getPath(name));
+
+					// Create the document
+					String fileName = FileUtil.getName(name);
+					String title = FileUtil.getBaseName(fileName);
+					if (entry.isDirectory() || StringUtils.isEmpty(fileName) || StringUtils.isEmpty(title))
+						continue;
+
+					total++;
+					slots.acquire();
+					submit(() -> {
+						try {
+							createDocument(zip, entry, folder);
+						} finally {
+							slots.release();
+						}
+					});
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (Throwable e) {
+					logger.warn("InMemoryZipImport unable to import ZIP entry {}", name, e);
+					errors.put(name, e.getMessage());
 				}
 			}
+
+			// Wait for the creations still in progress before closing the zip
+			slots.acquireUninterruptibly(Math.max(1, parallel));
 		} catch (Throwable e) {
 			logger.error("InMemoryZipImport process failed", e);
 		}
 
+		logger.info("Imported {} documents of {} from {}, {} errors", imported.get(), total, zipsource.getName(),
+				errors.size());
+
 		if (isNotifyUser())
 			sendNotificationMessage();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Gets the folder of a path of the archive, creating it the first time
+	 */
+	private Folder getFolder(String path) throws PersistenceException {
+		String relativePath = path;
+		if (relativePath.startsWith("/"))
+			relativePath = relativePath.substring(1);
+		if (relativePath.endsWith("/"))
+			relativePath = relativePath.substring(0, relativePath.length() - 1);
+
+		Folder folder = folders.get(relativePath);
+		if (folder == null) {
+			FolderHistory folderTransaction = new FolderHistory();
+			folderTransaction.setSessionId(sessionId);
+			folderTransaction.setUser(user);
+
+			FolderDAO fDao = (FolderDAO) Context.get().getBean(FolderDAO.class);
+			folder = fDao.createPath(folders.get(""), relativePath, true, folderTransaction);
+			folders.put(relativePath, folder);
+		}
+		return folder;
+	}
+
+	private void createDocument(ZipFile zip, ZipArchiveEntry entry, Folder folder) {
+		String name = entry.getName();
+		try (InputStream is = zip.getInputStream(entry)) {
+			Document doc = new Document(docVo);
+			doc.setId(0L);
+			doc.setFileName(FileUtil.getName(name));
+			doc.setFolder(folder);
+
+			DocumentHistory history = new DocumentHistory();
+			history.setEvent(DocumentEvent.STORED.toString());
+			history.setComment("");
+			history.setUser(user);
+			history.setSessionId(sessionId);
+
+			DocumentManager docManager = (DocumentManager) Context.get().getBean(DocumentManager.class);
+			docManager.create(is, doc, history);
+
+			int count = imported.incrementAndGet();
+			if (logger.isDebugEnabled())
+				logger.debug("Imported ZIP entry {} ({} of {})", name, count, total);
+		} catch (Throwable e) {
+			logger.warn("InMemoryZipImport unable to import ZIP entry {}", name, e);
+			errors.put(name, e.getMessage());
+		}
+	}
+
+	private void submit(Runnable task) {
+		try {
+			ExecutorService pool = ThreadPools.get().getPool(POOL_NAME);
+			pool.execute(task);
+		} catch (Throwable t) {
+			logger.debug("Cannot use the pool {}: {}", POOL_NAME, t.getMessage());
+			task.run();
+		}
+	}
+
+	/**
+	 * Gets the number of documents imported so far
+	 *
+	 * @return number of imported documents
+	 */
+	public int getImported() {
+		return imported.get();
+	}
+}
@@ -1,19 +1,29 @@
 package com.logicaldoc.core.transfer;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream.UnicodeExtraFieldPolicy;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,12 +38,24 @@ import com.logicaldoc.core.folder.FolderDAO;
 import com.logicaldoc.core.folder.FolderEvent;
 import com.logicaldoc.core.folder.FolderHistory;
 import com.logicaldoc.core.store.Storer;
+import com.logicaldoc.core.threading.ThreadPools;
 import com.logicaldoc.util.Context;
+import com.logicaldoc.util.config.ContextProperties;
 import com.logicaldoc.util.io.FileUtil;
 
 /**
  * Exports a folder hierarchy and all documents in it as a zip file. Can also be
- * used to export a selection of documents
+ * used to export a selection of documents.<br>
+ * The archive is streamed: each entry is written in the output while the
+ * document's content is read from the store, so the memory used does not
+ * depend on the size of the export. While an entry is being written, the next
+ * <b>zip.export.readahead</b> documents are prepared (PDF conversion and
+ * opening of the stream) in the pool <b>ZipExport</b>. The files whose
+ * extension is listed in <b>zip.export.nocompression</b> are already
+ * compressed and they are not deflated again.<br>
+ * A document whose content cannot be read is left out of the archive, while
+ * an error writing the archive aborts the export. The archive is
+ * reproducible: the same documents always produce the same bytes.
  * 
  * @author Alessandro Gasparini - LogicalDOC
  * @author Matteo Caruso - LogicalDOC
@@ -42,8 +64,23 @@ public class ZipExport {
 
 	protected static Logger log = LoggerFactory.getLogger(ZipExport.class);
 
+	private static final String POOL_NAME = "ZipExport";
+
+	private static final String DEFAULT_NOCOMPRESSION = "zip,gz,tgz,bz2,xz,7z,rar,jar,jpg,jpeg,png,gif,webp,mp3,mp4,m4a,m4v,mov,avi,mkv,ogg,docx,xlsx,pptx,odt,ods,odp,epub,pdf";
+
 	private ZipArchiveOutputStream zos;
 
+	/**
+	 * Buffer used to copy the contents into the archive
+	 */
+	private final byte[] buffer = new byte[64 * 1024];
+
+	private int readAhead = 2;
+
+	private Set<String> noCompression = new HashSet<>();
+
+	private boolean saveHistory = true;
+
 	private long userId;
 
 	private boolean allLevel;
@@ -55,29 +92,32 @@ public class ZipExport {
 		userId = -1;
 		allLevel = false;
 		startFolderId = Folder.DEFAULTWORKSPACEID;
+
+		ContextProperties config = Context.get().getProperties();
+		readAhead = config.getInt("zip.export.readahead", 2);
+		for (String ext : config.getProperty("zip.export.nocompression", DEFAULT_NOCOMPRESSION).split(","))
+			if (!ext.trim().isEmpty())
+				noCompression.add(ext.trim().toLowerCase());
 	}
 
 	/**
 	 * Exports the specified folder content
 	 * 
 	 * @param transaction Transaction with all informations about the export
+	 * @param out The stream that will receive the zip
 	 * @param pdfConversion True if the pdf conversion has to be used instead of
 	 *        the original files
 	 * 
-	 * @return The Stream of the zip archive
 	 * @throws PersistenceException error at database level
+	 * @throws IOException error writing the archive
 	 */
-	public ByteArrayOutputStream process(FolderHistory transaction, boolean pdfConversion) throws PersistenceException {
+	public void process(FolderHistory transaction, OutputStream out, boolean pdfConversion)
+			throws PersistenceException, IOException {
 		FolderDAO folderDao = (FolderDAO) Context.get().getBean(FolderDAO.class);
 		Folder folder = folderDao.findFolder(transaction.getFolderId());
 		this.userId = transaction.getUserId();
 		this.startFolderId = folder.getId();
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		zos = new ZipArchiveOutputStream(bos);
-		zos.setMethod(ZipEntry.DEFLATED);
-		zos.setEncoding("UTF-8");
-		zos.setCreateUnicodeExtraFields(UnicodeExtraFieldPolicy.ALWAYS);
-		zos.setUseLanguageEncodingFlag(true);
+		zos = openArchive(out);
 
 		try {
 			appendChildren(folder, 0, pdfConversion, transaction.getSessionId());
@@ -93,29 +133,10 @@ public class ZipExport {
 		/*
 		 * Record the export event
 		 */
-		transaction.setEvent(FolderEvent.EXPORTED.toString());
-		folderDao.saveFolderHistory(folder, transaction);
-
-		return bos;
-	}
-
-	/**
-	 * Exports a selection of documents
-	 * 
-	 * @param docIds Identifiers of the documents
-	 * @param pdfConversion True if the pdf conversion has to be used instead of
-	 *        the original files
-	 * @param transaction session informations
-	 * 
-	 * @return The Stream of the zip archive
-	 * 
-	 * @throws PersistenceException error at data layer
-	 */
-	public ByteArrayOutputStream process(Long[] docIds, boolean pdfConversion, DocumentHistory transaction)
-			throws PersistenceException {
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		process(docIds, bos, pdfConversion, transaction);
-		return bos;
+		if (saveHistory) {
+			transaction.setEvent(FolderEvent.EXPORTED.toString());
+			folderDao.saveFolderHistory(folder, transaction);
+		}
 	}
 
 	/**
@@ -127,19 +148,17 @@ public class ZipExport {
 	 *        the original files
 	 * @param transaction session informations
 	 * @throws PersistenceException error at database level
+	 * @throws IOException error writing the archive
 	 */
 	public void process(Long[] docIds, OutputStream out, boolean pdfConversion, DocumentHistory transaction)
-			throws PersistenceException {
+			throws PersistenceException, IOException {
 		DocumentDAO ddao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
 		FolderDAO fdao = (FolderDAO) Context.get().getBean(FolderDAO.class);
 
-		zos = new ZipArchiveOutputStream(out);
-		zos.setEncoding("UTF-8");
-		zos.setMethod(ZipEntry.DEFLATED);
-		zos.setCreateUnicodeExtraFields(UnicodeExtraFieldPolicy.ALWAYS);
-		zos.setUseLanguageEncodingFlag(true);
+		zos = openArchive(out);
 
 		try {
+			List<ExportEntry> entries = new ArrayList<>();
 			for (long id : docIds) {
 				Document doc = ddao.findById(id);
 
@@ -149,22 +168,10 @@ public class ZipExport {
 						&& !fdao.isDownloadEnabled(doc.getFolder().getId(), transaction.getUserId()))
 					continue;
 
-				boolean convertToPdf = pdfConversion;
-				if (doc.getDocRef() != null) {
-					// This is an alias, retrieve the real document
-					doc = ddao.findById(doc.getDocRef());
-					if ("pdf".equals(doc.getDocRefType()))
-						convertToPdf = true;
-				}
-				addDocument("", doc, convertToPdf, transaction.getSessionId());
-
-				try {
-					zos.flush();
-				} catch (Throwable e) {
-					log.warn(e.getMessage());
-				}
-				saveHistory(transaction, doc);
+				entries.add(newEntry("", doc, pdfConversion));
 			}
+
+			addDocuments(entries, transaction);
 		} finally {
 			try {
 				zos.flush();
@@ -175,9 +182,18 @@ public class ZipExport {
 		}
 	}
 
+	private ZipArchiveOutputStream openArchive(OutputStream out) {
+		ZipArchiveOutputStream archive = new ZipArchiveOutputStream(out);
+		archive.setEncoding("UTF-8");
+		archive.setMethod(ZipEntry.DEFLATED);
+		archive.setCreateUnicodeExtraFields(UnicodeExtraFieldPolicy.ALWAYS);
+		archive.setUseLanguageEncodingFlag(true);
+		return archive;
+	}
+
 	private void saveHistory(DocumentHistory transaction, Document doc) {
 		DocumentDAO ddao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
-		if (transaction != null) {
+		if (transaction != null && saveHistory) {
 			DocumentHistory t = new DocumentHistory(transaction);
 			transaction.setEvent(DocumentEvent.DOWNLOADED.toString());
 			try {
@@ -198,6 +214,16 @@ public class ZipExport {
 		allLevel = level;
 	}
 
+	/**
+	 * Sets if the export events must be recorded in the histories, for
+	 * instance a resumed download should not record them again
+	 * 
+	 * @param saveHistory true if the histories must be saved
+	 */
+	public void setSaveHistory(boolean saveHistory) {
+		this.saveHistory = saveHistory;
+	}
+
 	/**
 	 * Adds all children of the specified folder up to the given level
 	 * 
@@ -207,9 +233,10 @@ public class ZipExport {
 	 * @param sid identifier of the session
 	 * 
 	 * @throws PersistenceException error at data layer
+	 * @throws IOException error writing the archive
 	 */
 	protected void appendChildren(Folder folder, int depth, boolean pdfConversion, String sid)
-			throws PersistenceException {
+			throws PersistenceException, IOException {
 		if (!allLevel && (depth > 1)) {
 			return;
 		} else {
@@ -232,22 +259,102 @@ public class ZipExport {
 	 * @param sid identifier of the session
 	 * 
 	 * @throws PersistenceException error in the databaes
+	 * @throws IOException error writing the archive
 	 */
-	protected void addFolderDocuments(Folder folder, boolean pdfConversion, String sid) throws PersistenceException {
+	protected void addFolderDocuments(Folder folder, boolean pdfConversion, String sid)
+			throws PersistenceException, IOException {
 		DocumentDAO ddao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
-		Collection<Document> docs = ddao.findByFolder(folder.getId(), null);
-
-		for (Document document : docs) {
-			Document doc = document;
-			boolean convertToPdf = pdfConversion;
-			if (doc.getDocRef() != null) {
-				// This is an alias, retrieve the real document
-				doc = ddao.findById(doc.getDocRef());
-				if ("pdf".equals(doc.getDocRefType()))
-					convertToPdf = true;
+		List<Document> docs = ddao.findByFolder(folder.getId(), null);
+
+		// Always the same order, so the archive is reproducible
+		docs.sort(Comparator.comparingLong(Document::getId));
+
+		String path = getZipEntryPath(folder);
+		List<ExportEntry> entries = new ArrayList<>();
+		for (Document document : docs)
+			entries.add(newEntry(path, document, pdfConversion));
+
+		addDocuments(entries, null);
+	}
+
+	private ExportEntry newEntry(String path, Document document, boolean pdfConversion) throws PersistenceException {
+		Document doc = document;
+		boolean convertToPdf = pdfConversion;
+		if (doc.getDocRef() != null) {
+			// This is an alias, retrieve the real document
+			DocumentDAO ddao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
+			doc = ddao.findById(doc.getDocRef());
+			if ("pdf".equals(doc.getDocRefType()))
+				convertToPdf = true;
+		}
+		return new ExportEntry(path, doc, convertToPdf);
+	}
+
+	/**
+	 * Writes the given documents in the archive. While a document is being
+	 * written, the following ones are prepared in the pool.
+	 * 
+	 * @param entries the documents to add
+	 * @param transaction if not null, a download history is saved for each
+	 *        document
+	 * 
+	 * @throws IOException error writing the archive
+	 */
+	private void addDocuments(List<ExportEntry> entries, DocumentHistory transaction) throws IOException {
+		Deque<Future<ExportEntry>> window = new ArrayDeque<>();
+		Iterator<ExportEntry> iter = entries.iterator();
+		try {
+			while (iter.hasNext() || !window.isEmpty()) {
+				while (iter.hasNext() && window.size() <= readAhead)
+					window.add(prepare(iter.next()));
+
+				ExportEntry entry = take(window.poll());
+				if (entry == null)
+					continue;
+
+				addDocument(entry);
+				if (transaction != null)
+					saveHistory(transaction, entry.document);
+			}
+		} finally {
+			// Release the streams prepared in advance and not used
+			for (Future<ExportEntry> future : window) {
+				ExportEntry prepared = take(future);
+				if (prepared != null)
+					IOUtils.closeQuietly(prepared.stream);
 			}
+		}
+	}
+
+	private Future<ExportEntry> prepare(ExportEntry entry) {
+		FutureTask<ExportEntry> task = new FutureTask<>(() -> {
+			entry.open();
+			return entry;
+		});
+
+		if (readAhead > 0) {
+			try {
+				ExecutorService pool = ThreadPools.get().getPool(POOL_NAME);
+				pool.execute(task);
+				return task;
+			} catch (Throwable t) {
+				log.debug("Cannot use the pool {}: {}", POOL_NAME, t.getMessage());
+			}
+		}
 
-			addDocument(getZipEntryPath(folder), doc, convertToPdf, sid);
+		task.run();
+		return task;
+	}
+
+	private ExportEntry take(Future<ExportEntry> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			log.warn(e.getCause().getMessage(), e.getCause());
+			return null;
 		}
 	}
 
@@ -270,51 +377,70 @@ public class ZipExport {
 	}
 
 	/**
-	 * Adds a single document into the archive in the specified path.
+	 * Adds a single document into the archive, the stream of the entry is
+	 * always closed. The first block of the content is read before creating
+	 * the entry, so a document that cannot be read is skipped; if the reading
+	 * fails later, the entry is truncated.
 	 * 
-	 * @param path path to store the document in
-	 * @param document the document
-	 * @param pdfConversion if the PDF conversion has to be used instead
-	 * @param sid identifier of the session
+	 * @param entry the prepared entry
+	 * 
+	 * @throws IOException error writing the archive
 	 */
-	private void addDocument(String path, Document document, boolean pdfConversion, String sid) {
-		Storer storer = (Storer) Context.get().getBean(Storer.class);
-		String resource = storer.getResourceName(document, null, null);
+	private void addDocument(ExportEntry entry) throws IOException {
+		if (entry.stream == null)
+			return;
 
-		if (pdfConversion && !"pdf".equals(FileUtil.getExtension(document.getFileName().toLowerCase()))) {
-			FormatConverterManager manager = (FormatConverterManager) Context.get()
-					.getBean(FormatConverterManager.class);
-			try {
-				manager.convertToPdf(document, null);
-			} catch (IOException e) {
-				log.warn(e.getMessage(), e);
+		InputStream is = entry.stream;
+		try {
+			int read = read(entry);
+			if (read < 0)
 				return;
-			}
-			resource = storer.getResourceName(document, null, FormatConverterManager.PDF_CONVERSION_SUFFIX);
-		}
 
-		try (BufferedInputStream bis = new BufferedInputStream(storer.getStream(document.getId(), resource))) {
-			String fileName = document.getFileName();
-			if (pdfConversion)
+			String fileName = entry.document.getFileName();
+			if (entry.pdfConversion)
 				fileName = FileUtil.getBaseName(fileName) + ".pdf";
 
-			ZipEntry entry = new ZipEntry(path + adjustFileNameForWindows(fileName));
-			entry.setMethod(ZipEntry.DEFLATED);
-			zos.putArchiveEntry(new ZipArchiveEntry(entry));
+			ZipArchiveEntry zipEntry = new ZipArchiveEntry(entry.path + adjustFileNameForWindows(fileName));
+			zipEntry.setMethod(ZipEntry.DEFLATED);
 
-			// Transfer bytes from the file to the ZIP file
-			int len;
-			while ((len = bis.read()) != -1) {
-				zos.write(len);
-			}
-		} catch (IOException e) {
-			log.error(e.getMessage());
-		} finally {
+			// The time of the document makes the archive reproducible
+			if (entry.document.getDate() != null)
+				zipEntry.setTime(entry.document.getDate().getTime());
+
+			// Needed to reserve the Zip64 fields for the huge files
+			if (entry.size > 0)
+				zipEntry.setSize(entry.size);
+
+			zos.setLevel(noCompression.contains(FileUtil.getExtension(fileName).toLowerCase())
+					? Deflater.NO_COMPRESSION
+					: Deflater.DEFAULT_COMPRESSION);
+			zos.putArchiveEntry(zipEntry);
 			try {
+				// Transfer bytes from the file to the ZIP file
+				while (read > 0) {
+					zos.write(buffer, 0, read);
+					read = read < buffer.length ? 0 : read(entry);
+				}
+			} finally {
 				zos.closeArchiveEntry();
-			} catch (IOException e) {
-				log.warn(e.getMessage());
 			}
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	/**
+	 * Fills the buffer with the next block of the content of an entry
+	 * 
+	 * @return the number of bytes read, less than the buffer's size at the end
+	 *         of the content, -1 if the content cannot be read
+	 */
+	private int read(ExportEntry entry) {
+		try {
+			return IOUtils.read(entry.stream, buffer);
+		} catch (IOException e) {
+			log.error("Cannot read the document {}: {}", entry.document.getId(), e.getMessage());
+			return -1;
 		}
 	}
 
@@ -354,4 +480,46 @@ public class ZipExport {
 
 		return path.toString();
 	}
+
+	/**
+	 * A document to put in the archive
+	 */
+	private static class ExportEntry {
+
+		private final String path;
+
+		private final Document document;
+
+		private final boolean pdfConversion;
+
+		private InputStream stream;
+
+		private long size = -1L;
+
+		ExportEntry(String path, Document document, boolean pdfConversion) {
+			this.path = path;
+			this.document = document;
+			this.pdfConversion = pdfConversion
+					&& !"pdf".equals(FileUtil.getExtension(document.getFileName().toLowerCase()));
+		}
+
+		/**
+		 * Produces the PDF conversion if needed and opens the stream of the
+		 * content
+		 */
+		void open() throws IOException {
+			Storer storer = (Storer) Context.get().getBean(Storer.class);
+			String resource = storer.getResourceName(document, null, null);
+
+			if (pdfConversion) {
+				FormatConverterManager manager = (FormatConverterManager) Context.get()
+						.getBean(FormatConverterManager.class);
+				manager.convertToPdf(document, null);
+				resource = storer.getResourceName(document, null, FormatConverterManager.PDF_CONVERSION_SUFFIX);
+			}
+
+			size = storer.size(document.getId(), resource);
+			stream = storer.getStream(document.getId(), resource);
+		}
+	}
 }
\ No newline at end of file
@@ -3,9 +3,12 @@ package com.logicaldoc.core.transfer;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 
@@ -47,6 +50,8 @@ public class ZipImport {
 
 	protected static Logger log = LoggerFactory.getLogger(ZipImport.class);
 
+	private static final int MAX_NOTIFIED_ERRORS = 100;
+
 	protected File zipFile;
 
 	private boolean notifyUser = true;
@@ -57,6 +62,11 @@ public class ZipImport {
 
 	protected String fileNameCharset = "UTF-8";
 
+	/**
+	 * Entries that could not be imported, with the reason
+	 */
+	protected final Map<String, String> errors = Collections.synchronizedMap(new LinkedHashMap<>());
+
 	/**
 	 * Constructor.
 	 * 
@@ -90,6 +100,7 @@ public class ZipImport {
 						addEntry(files[i], parent);
 					} catch (PersistenceException e) {
 						log.error("Error adding entry " + files[i].getName(), e);
+						errors.put(files[i].getName(), e.getMessage());
 					}
 			}
 		} catch (IOException e) {
@@ -185,6 +196,7 @@ public class ZipImport {
 				docManager.create(file, doc, history);
 			} catch (Exception e) {
 				log.error("InMemoryZipImport addEntry failed", e);
+				errors.put(file.getName(), e.getMessage());
 			}
 		}
 	}
@@ -209,6 +221,24 @@ public class ZipImport {
 		sysmess.setSubject(bundle.getString("zip.import.subject"));
 		String message = bundle.getString("zip.import.body");
 		String body = MessageFormat.format(message, new Object[] { zipFile != null ? zipFile.getName() : "" });
+		Map<String, String> failures = getErrors();
+		if (!failures.isEmpty()) {
+			StringBuilder sb = new StringBuilder(body);
+			sb.append("\n\n");
+			sb.append(MessageFormat.format(bundle.getString("zip.import.errors"), new Object[] { failures.size() }));
+			int count = 0;
+			for (Map.Entry<String, String> failure : failures.entrySet()) {
+				if (count++ >= MAX_NOTIFIED_ERRORS) {
+					sb.append("\n...");
+					break;
+				}
+				sb.append("\n");
+				sb.append(failure.getKey());
+				sb.append(": ");
+				sb.append(failure.getValue());
+			}
+			body = sb.toString();
+		}
 		sysmess.setMessageText(body);
 		sysmess.setSentDate(now);
 		sysmess.setConfirmation(0);
@@ -222,6 +252,17 @@ public class ZipImport {
 		}
 	}
 
+	/**
+	 * Gets the entries that could not be imported
+	 * 
+	 * @return map entry - error message
+	 */
+	public Map<String, String> getErrors() {
+		synchronized (errors) {
+			return new LinkedHashMap<>(errors);
+		}
+	}
+
 	public boolean isNotifyUser() {
 		return notifyUser;
 	}
@@ -215,6 +215,7 @@ create table ld_extoption (ld_id bigint not null, ld_lastmodified timestamp not
                           primary key (ld_id));
 create table ld_temp (ld_int bigint, ld_date timestamp, ld_string varchar(4000));
 create table ld_uniquetag(ld_tag varchar(255), ld_tenantid bigint, ld_count bigint, primary key (ld_tag, ld_tenantid));
+create table ld_tmpids (ld_setid varchar(36) not null, ld_value bigint not null, primary key (ld_setid, ld_value));
 create table ld_update (ld_update varchar(255), ld_date timestamp, ld_version varchar(255));
 create table ld_patch (ld_patch varchar(255), ld_date timestamp, ld_version varchar(255));
 create table ld_session(ld_id bigint not null, ld_lastmodified timestamp not null, ld_recordversion bigint not null,
@@ -238,6 +239,10 @@ create table ld_search (ld_id bigint not null, ld_lastmodified timestamp not nul
                         ld_deleted int not null, ld_tenantid bigint not null, ld_userid bigint not null, 
                         ld_name varchar(255), ld_description varchar(1000), ld_options varchar(4000),
                         ld_date timestamp, ld_type int not null, primary key (ld_id));
+create table ld_change (ld_id bigint not null, ld_lastmodified timestamp not null, ld_recordversion bigint not null,
+                        ld_deleted int not null, ld_tenantid bigint not null, ld_number bigint not null,
+                        ld_date timestamp, ld_objectid bigint not null, ld_objecttype int not null, ld_changetype int not null,
+                        ld_event varchar(255), primary key (ld_id));
 
                           
 create table hibernate_sequences (sequence_name varchar(40) NOT NULL, next_val bigint NOT NULL, primary key (sequence_name));
@@ -310,6 +315,7 @@ create index LD_FLD_PATH on ld_folder (ld_path);
 create index LD_FLD_FOLDREF on ld_folder (ld_foldref);
 create index LD_RCP_MID_NAME on ld_recipient (ld_messageid, ld_name);
 create index LD_DEV_USERID on ld_device (ld_userid);
+create index LD_CHG_NUMBER on ld_change (ld_tenantid, ld_number);
 create index LD_PHIST_USERID on ld_password_history (ld_userid);
 
 
@@ -786,4 +792,5 @@ insert into hibernate_sequences(sequence_name, next_val) values ('ld_session', 1
 insert into hibernate_sequences(sequence_name, next_val) values ('ld_dashlet', 100);
 insert into hibernate_sequences(sequence_name, next_val) values ('ld_device', 100);
 insert into hibernate_sequences(sequence_name, next_val) values ('ld_password_history', 100);
-insert into hibernate_sequences(sequence_name, next_val) values ('ld_search', 100);
\ No newline at end of file
+insert into hibernate_sequences(sequence_name, next_val) values ('ld_search', 100);
+insert into hibernate_sequences(sequence_name, next_val) values ('ld_change', 100);
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.logicaldoc.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+
+import junit.framework.Assert;
+
+public class IdsBinderTest extends AbstractCoreTCase {
+
+	@Test
+	public void testTable() throws Exception {
+		List<Long> ids = new ArrayList<>();
+		for (long i = 0; i < 500; i++)
+			ids.add(i);
+
+		try (Connection con = ds.getConnection()) {
+			Assert.assertEquals(500, count(con, ids));
+		}
+
+		// A failure on a connection must not prevent the next statements
+		// from using the table
+		Connection closed = ds.getConnection();
+		closed.close();
+		IdsBinder binder = new IdsBinder("mysql");
+		binder.bind(closed, "select count(*) from ld_document where ld_id in ({ids0})", new Object[0],
+				Arrays.asList(ids));
+		Assert.assertFalse(binder.getSql().contains("ld_tmpids"));
+
+		try (Connection con = ds.getConnection()) {
+			Assert.assertEquals(500, count(con, ids));
+		}
+	}
+
+	/**
+	 * Counts the given identifiers through the table ld_tmpids
+	 */
+	private int count(Connection con, List<Long> ids) throws Exception {
+		IdsBinder binder = new IdsBinder("mysql");
+		try {
+			binder.bind(con, "select count(*) from ld_tmpids where ld_value in ({ids0})", new Object[0],
+					Arrays.asList(ids));
+			Assert.assertTrue(binder.getSql().contains("ld_tmpids where ld_setid = ?"));
+			try (PreparedStatement stmt = con.prepareStatement(binder.getSql())) {
+				new ArgumentPreparedStatementSetter(binder.getArgs()).setValues(stmt);
+				try (ResultSet rs = stmt.executeQuery()) {
+					rs.next();
+					return rs.getInt(1);
+				}
+			}
+		} finally {
+			binder.release(con);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.logicaldoc.core.changelog;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.core.document.DocumentEvent;
+import com.logicaldoc.core.document.DocumentHistory;
+import com.logicaldoc.core.document.dao.DocumentHistoryDAO;
+import com.logicaldoc.core.folder.FolderEvent;
+import com.logicaldoc.core.folder.FolderHistory;
+import com.logicaldoc.core.folder.FolderHistoryDAO;
+import com.logicaldoc.core.security.Tenant;
+
+import junit.framework.Assert;
+
+/**
+ * Test case for <code>HibernateChangeDAO</code>
+ * 
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class HibernateChangeDAOTest extends AbstractCoreTCase {
+
+	// Instance under test
+	private ChangeDAO dao;
+
+	private DocumentHistoryDAO documentHistoryDao;
+
+	private FolderHistoryDAO folderHistoryDao;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+
+		// Retrieve the instance under test from spring context. Make sure that
+		// it is an HibernateChangeDAO
+		dao = (ChangeDAO) context.getBean("ChangeDAO");
+		documentHistoryDao = (DocumentHistoryDAO) context.getBean("DocumentHistoryDAO");
+		folderHistoryDao = (FolderHistoryDAO) context.getBean("FolderHistoryDAO");
+	}
+
+	@Test
+	public void testAppend() throws PersistenceException {
+		long latest = dao.getLatestNumber(Tenant.DEFAULT_ID);
+
+		DocumentHistory stored = new DocumentHistory();
+		stored.setDocId(1L);
+		stored.setFolderId(5L);
+		stored.setEvent(DocumentEvent.STORED.toString());
+		documentHistoryDao.store(stored);
+
+		// Not a change
+		DocumentHistory downloaded = new DocumentHistory();
+		downloaded.setDocId(1L);
+		downloaded.setFolderId(5L);
+		downloaded.setEvent(DocumentEvent.DOWNLOADED.toString());
+		documentHistoryDao.store(downloaded);
+
+		FolderHistory renamed = new FolderHistory();
+		renamed.setFolderId(5L);
+		renamed.setEvent(FolderEvent.RENAMED.toString());
+		folderHistoryDao.store(renamed);
+
+		DocumentHistory deleted = new DocumentHistory();
+		deleted.setDocId(2L);
+		deleted.setFolderId(5L);
+		deleted.setEvent(DocumentEvent.DELETED.toString());
+		documentHistoryDao.store(deleted);
+
+		// The changes are numbered only when the log gets read
+		Assert.assertEquals(3, dao.queryForLong(
+				"select count(*) from ld_change where ld_number = 0 and ld_tenantid = " + Tenant.DEFAULT_ID));
+
+		Assert.assertEquals(latest + 3, dao.getLatestNumber(Tenant.DEFAULT_ID));
+		Assert.assertEquals(0, dao.queryForLong(
+				"select count(*) from ld_change where ld_number = 0 and ld_tenantid = " + Tenant.DEFAULT_ID));
+
+		List<Change> changes = dao.findAfter(Tenant.DEFAULT_ID, latest, null);
+		Assert.assertEquals(3, changes.size());
+
+		Change change = changes.get(0);
+		Assert.assertEquals(latest + 1, change.getNumber());
+		Assert.assertEquals(1L, change.getObjectId());
+		Assert.assertEquals(Change.TYPE_DOCUMENT, change.getObjectType());
+		Assert.assertEquals(Change.CHANGE_CREATED, change.getChangeType());
+
+		change = changes.get(1);
+		Assert.assertEquals(latest + 2, change.getNumber());
+		Assert.assertEquals(5L, change.getObjectId());
+		Assert.assertEquals(Change.TYPE_FOLDER, change.getObjectType());
+		Assert.assertEquals(Change.CHANGE_UPDATED, change.getChangeType());
+
+		change = changes.get(2);
+		Assert.assertEquals(latest + 3, change.getNumber());
+		Assert.assertEquals(2L, change.getObjectId());
+		Assert.assertEquals(Change.CHANGE_DELETED, change.getChangeType());
+
+		// Page through the log using the last number as cursor
+		changes = dao.findAfter(Tenant.DEFAULT_ID, latest, 2);
+		Assert.assertEquals(2, changes.size());
+		changes = dao.findAfter(Tenant.DEFAULT_ID, changes.get(1).getNumber(), 2);
+		Assert.assertEquals(1, changes.size());
+		Assert.assertEquals(latest + 3, changes.get(0).getNumber());
+
+		Assert.assertTrue(dao.findAfter(Tenant.DEFAULT_ID, latest + 3, null).isEmpty());
+		Assert.assertTrue(dao.findAfter(99L, 0L, null).isEmpty());
+	}
+
+	@Test
+	public void testFindNumberBefore() throws PersistenceException {
+		long latest = dao.getLatestNumber(Tenant.DEFAULT_ID);
+		Date start = new Date(System.currentTimeMillis() - 1000L);
+
+		DocumentHistory stored = new DocumentHistory();
+		stored.setDocId(1L);
+		stored.setFolderId(5L);
+		stored.setEvent(DocumentEvent.STORED.toString());
+		stored.setDate(start);
+		documentHistoryDao.store(stored);
+
+		Assert.assertEquals(latest, dao.findNumberBefore(Tenant.DEFAULT_ID, start));
+
+		// No changes after the date, positioned at the end of the log
+		Assert.assertEquals(latest + 1,
+				dao.findNumberBefore(Tenant.DEFAULT_ID, new Date(System.currentTimeMillis() + 60000L)));
+	}
+}
@@ -8,8 +8,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
@@ -21,6 +28,7 @@ import com.logicaldoc.core.document.dao.VersionDAO;
 import com.logicaldoc.core.folder.Folder;
 import com.logicaldoc.core.folder.FolderDAO;
 import com.logicaldoc.core.parser.ParseException;
+import com.logicaldoc.core.parser.TextWriter;
 import com.logicaldoc.core.security.Group;
 import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.security.SessionManager;
@@ -31,6 +39,7 @@ import com.logicaldoc.core.store.MockStorer;
 import com.logicaldoc.core.store.Storer;
 import com.logicaldoc.core.ticket.Ticket;
 import com.logicaldoc.util.Context;
+import com.logicaldoc.util.io.FileUtil;
 
 import junit.framework.Assert;
 
@@ -226,6 +235,19 @@ public class DocumentManagerImplTest extends AbstractCoreTCase {
 		String text = documentManager.parseDocument(doc, null);
 		Assert.assertTrue(text.contains("Digital Day"));
 
+		// The extracted text has been saved aside the file
+		String textResource = storer.getResourceName(doc, null, DocumentManagerImpl.TEXT_SUFFIX);
+		Assert.assertTrue(storer.exists(doc.getId(), textResource));
+
+		// The second parsing reuses the saved text
+		Assert.assertEquals(text, documentManager.parseDocument(doc, null));
+
+		// The text can be limited while it is extracted
+		TextWriter limited = new TextWriter(10, true);
+		documentManager.parseDocument(doc, null, limited);
+		Assert.assertEquals(text.substring(0, 10), limited.toString());
+		Assert.assertTrue(limited.isTruncated());
+
 		Folder folder = folderDao.createPath(folderDao.findById(Folder.ROOTID), "/Default/test", true, null);
 
 		// Try with an alias
@@ -553,6 +575,78 @@ public class DocumentManagerImplTest extends AbstractCoreTCase {
 
 		newDoc = docDao.findById(newDoc.getId());
 		Assert.assertEquals(newDoc.getFileName(), doc.getFileName());
+
+		// The digest has been computed while storing the file
+		Assert.assertEquals(FileUtil.computeDigest(new File("pom.xml")), newDoc.getDigest());
+		Assert.assertEquals(newDoc.getDigest(), ver.getDigest());
+	}
+
+	@Test
+	public void testConcurrentCreate() throws Exception {
+		User user = userDao.findByUsername("admin");
+		Document template = docDao.findById(1);
+		docDao.initialize(template);
+
+		// Two threads per folder, so that creations in different folders run
+		// in parallel while those in the same folder are serialized
+		long[] folderIds = new long[] { 6L, 1200L };
+		Queue<Long> created = new ConcurrentLinkedQueue<>();
+		Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int thread = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 3; i++) {
+					try (InputStream is = new FileInputStream("pom.xml")) {
+						Document doc = new Document(template);
+						doc.setId(0);
+						doc.setFolder(folderDao.findById(folderIds[thread % folderIds.length]));
+						doc.setCustomId("concurrent-" + thread + "-" + i);
+
+						DocumentHistory transaction = new DocumentHistory();
+						transaction.setUser(user);
+						transaction.setUserId(user.getId());
+						transaction.setComment("concurrent");
+						created.add(documentManager.create(is, doc, transaction).getId());
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+
+		Assert.assertTrue(errors.toString(), errors.isEmpty());
+		Assert.assertEquals(12, new HashSet<>(created).size());
+		for (Long id : created)
+			Assert.assertNotNull(docDao.findById(id));
+	}
+
+	@Test
+	public void testExecuteLocked() throws InterruptedException {
+		AtomicBoolean entered = new AtomicBoolean(false);
+		Thread other = new Thread(() -> documentManager.executeLocked(Collections.singletonList(2L), () -> {
+			entered.set(true);
+			return null;
+		}));
+
+		// The other writer of document 2 waits until the task completes
+		documentManager.executeLocked(Arrays.asList(1L, 2L), () -> {
+			other.start();
+			try {
+				other.join(500L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			Assert.assertFalse(entered.get());
+			return null;
+		});
+
+		other.join();
+		Assert.assertTrue(entered.get());
 	}
 
 	@Test
@@ -763,6 +857,8 @@ public class DocumentManagerImplTest extends AbstractCoreTCase {
 		Assert.assertEquals("1.3", doc.getFileVersion());
 		Assert.assertTrue(
 				storer.getString(doc.getId(), storer.getResourceName(doc, null, null)).contains("invoice calculation"));
+		Assert.assertEquals(FileUtil.computeDigest(storer.getStream(doc.getId(), storer.getResourceName(doc, null, null))),
+				doc.getDigest());
 	}
 
 	@Test
@@ -0,0 +1,121 @@
+package com.logicaldoc.core.document;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.document.dao.DocumentDAO;
+import com.logicaldoc.core.folder.Folder;
+import com.logicaldoc.core.folder.FolderDAO;
+import com.logicaldoc.core.security.User;
+import com.logicaldoc.core.security.dao.UserDAO;
+
+/**
+ * To manually measure how the uploads per second scale with the number of
+ * client threads: each client creates documents through the
+ * <code>DocumentManagerImpl</code> of the test context, on the test
+ * database, picking a random folder at each upload.
+ *
+ * Arguments: duration of each run in milliseconds (default 2000), number of
+ * folders (default 50), file to upload (default pom.xml)
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class DocumentUploadTestbench extends AbstractCoreTCase {
+
+	private static final int[] THREADS = new int[] { 1, 2, 4, 8, 16, 32 };
+
+	public static void main(String[] args) throws Exception {
+		long duration = args.length > 0 ? Long.parseLong(args[0]) : 2000L;
+		int folders = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		File file = new File(args.length > 2 ? args[2] : "pom.xml");
+
+		DocumentUploadTestbench bench = new DocumentUploadTestbench();
+		bench.setUp();
+		try {
+			bench.run(duration, folders, file);
+		} finally {
+			bench.tearDown();
+		}
+	}
+
+	private void run(long duration, int folders, File file) throws Exception {
+		DocumentManager manager = (DocumentManager) context.getBean("DocumentManager");
+		DocumentDAO docDao = (DocumentDAO) context.getBean("DocumentDAO");
+		FolderDAO folderDao = (FolderDAO) context.getBean("FolderDAO");
+		UserDAO userDao = (UserDAO) context.getBean("UserDAO");
+
+		User user = userDao.findByUsername("admin");
+		userDao.initialize(user);
+		Document template = docDao.findById(1);
+		docDao.initialize(template);
+		byte[] content = Files.readAllBytes(file.toPath());
+
+		// Spread the uploads on a set of new folders
+		Folder workspace = folderDao.findById(Folder.DEFAULTWORKSPACEID);
+		List<Folder> targets = new ArrayList<>();
+		for (int i = 0; i < folders; i++) {
+			Folder folderVO = new Folder();
+			folderVO.setName("bench-" + i);
+			targets.add(folderDao.create(workspace, folderVO, true, null));
+		}
+
+		System.out.println("Folders: " + folders + ", file: " + file.getName() + " (" + content.length + " bytes)");
+		System.out.println("threads\tuploads/s\terrors");
+		for (int threads : THREADS) {
+			Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+			long rate = run(threads, duration, random -> {
+				try (InputStream is = new ByteArrayInputStream(content)) {
+					Document doc = new Document(template);
+					doc.setId(0);
+					doc.setCustomId(null);
+					doc.setFolder(targets.get(random.nextInt(targets.size())));
+
+					DocumentHistory transaction = new DocumentHistory();
+					transaction.setUser(user);
+					transaction.setUserId(user.getId());
+					transaction.setComment("bench");
+					manager.create(is, doc, transaction);
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			});
+			System.out.println(threads + "\t" + rate + "\t" + errors.size());
+			if (!errors.isEmpty())
+				errors.peek().printStackTrace();
+		}
+	}
+
+	private static long run(int threads, long duration, Upload upload) throws InterruptedException {
+		AtomicLong count = new AtomicLong();
+		long end = System.currentTimeMillis() + duration;
+		List<Thread> clients = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			final Random random = new Random(i);
+			clients.add(new Thread(() -> {
+				while (System.currentTimeMillis() < end) {
+					upload.run(random);
+					count.incrementAndGet();
+				}
+			}));
+		}
+		for (Thread client : clients)
+			client.start();
+		for (Thread client : clients)
+			client.join();
+		return count.get() * 1000L / duration;
+	}
+
+	private interface Upload {
+		public void run(Random random);
+	}
+}
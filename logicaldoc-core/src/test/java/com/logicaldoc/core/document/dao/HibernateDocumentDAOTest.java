@@ -4,10 +4,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -16,6 +19,7 @@ import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
 
 import com.logicaldoc.core.AbstractCoreTCase;
 import com.logicaldoc.core.PersistenceException;
@@ -121,6 +125,23 @@ public class HibernateDocumentDAOTest extends AbstractCoreTCase {
 		Assert.assertEquals(doc.getVersion(), updatedDoc.getVersion());
 	}
 
+	@Test
+	public void testUpdateDigests() throws PersistenceException {
+		List<Document> docs = new ArrayList<>();
+		for (long id : new long[] { 1L, 2L }) {
+			Document doc = dao.findById(id);
+			dao.initialize(doc);
+			doc.setDigest("digest" + id);
+			docs.add(doc);
+		}
+
+		dao.updateDigests(docs);
+
+		Assert.assertEquals("digest1", dao.findById(1L).getDigest());
+		Assert.assertEquals("digest2", dao.findById(2L).getDigest());
+		Assert.assertEquals("digest1", dao.queryForString("select ld_digest from ld_document where ld_id=1"));
+	}
+
 	@Test
 	public void testDelete() throws PersistenceException {
 		// Create the document history event
@@ -194,6 +215,22 @@ public class HibernateDocumentDAOTest extends AbstractCoreTCase {
 		Assert.assertEquals(1, dao.findByWhere("1=1", null, 1).size());
 	}
 
+	@Test
+	public void testFindByQuery() throws PersistenceException {
+		String query = "select A.id, A.fileName from Document A order by A.id asc";
+		List<Object> all = dao.findByQuery(query, new HashMap<String, Object>(), null);
+		Assert.assertEquals(4, all.size());
+
+		List<Object> page = dao.findByQuery(query, new HashMap<String, Object>(), 1, 2);
+		Assert.assertEquals(2, page.size());
+		Assert.assertEquals(((Object[]) all.get(1))[0], ((Object[]) page.get(0))[0]);
+		Assert.assertEquals(((Object[]) all.get(2))[0], ((Object[]) page.get(1))[0]);
+
+		page = dao.findByQuery(query, new HashMap<String, Object>(), 3, 10);
+		Assert.assertEquals(1, page.size());
+		Assert.assertEquals(((Object[]) all.get(3))[0], ((Object[]) page.get(0))[0]);
+	}
+
 	@Test
 	public void testFindById() throws PersistenceException {
 		Document doc = dao.findById(1);
@@ -253,6 +290,41 @@ public class HibernateDocumentDAOTest extends AbstractCoreTCase {
 		Assert.assertEquals(0, ids.size());
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testQueryWithIds() throws PersistenceException {
+		Set<Long> small = new HashSet<>(Arrays.asList(1L, 2L, 4L));
+		Set<Long> big = new HashSet<>();
+		for (long id = 1; id <= 5000; id++)
+			big.add(id);
+
+		String query = "select ld_id from ld_document where ld_deleted = ? and ld_id in ({ids0})";
+		List<Long> ids = dao.queryWithIds(query, new Object[] { 0 }, Arrays.asList(small),
+				new SingleColumnRowMapper<>(Long.class), null);
+		Assert.assertEquals(2, ids.size());
+		Assert.assertTrue(ids.contains(2L));
+
+		ids = dao.queryWithIds(query, new Object[] { 0 }, Arrays.asList(big), new SingleColumnRowMapper<>(Long.class),
+				null);
+		Assert.assertEquals(4, ids.size());
+		Assert.assertTrue(ids.contains(7L));
+
+		ids = dao.queryWithIds("select ld_id from ld_document where ld_id in ({ids0}) and not ld_id in ({ids1})",
+				null, Arrays.asList(big, small), new SingleColumnRowMapper<>(Long.class), null);
+		Assert.assertEquals(4, ids.size());
+		Assert.assertFalse(ids.contains(1L));
+
+		// Nothing must remain in the temporary table
+		Assert.assertEquals(0, dao.queryForLong("select count(*) from ld_tmpids"));
+
+		Document doc = dao.findById(1L);
+		Assert.assertNull(doc.getTransactionId());
+		int count = dao.jdbcUpdateWithIds("update ld_document set ld_transactionid = ? where ld_id in ({ids0})",
+				new Object[] { "tx1" }, Arrays.asList(big));
+		Assert.assertEquals(7, count);
+		Assert.assertEquals("tx1", dao.findById(1L).getTransactionId());
+	}
+
 	@Test
 	public void testFindByFolder() throws PersistenceException {
 		Collection<Document> docs = dao.findByFolder(6, null);
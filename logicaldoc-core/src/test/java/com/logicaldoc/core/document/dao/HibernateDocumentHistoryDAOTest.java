@@ -232,4 +232,42 @@ public class HibernateDocumentHistoryDAOTest extends AbstractCoreTCase {
 		histories = dao.findByPath("/xxxx%", null, null, null);
 		Assert.assertEquals(0, histories.size());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testBatch() throws PersistenceException {
+		int count = dao.findByUserId(3).size();
+
+		dao.startBatch();
+		try {
+			for (int i = 0; i < 5; i++) {
+				DocumentHistory history = new DocumentHistory();
+				history.setDocId(1L);
+				history.setFolderId(5L);
+				history.setUsername("sebastian");
+				history.setUserId(3L);
+				history.setEvent(DocumentEvent.CHANGED.toString());
+				dao.store(history);
+			}
+
+			// Not yet written
+			Assert.assertEquals(count, dao.findByUserId(3).size());
+
+			Assert.assertEquals(5, dao.flushBatch());
+		} finally {
+			dao.discardBatch();
+		}
+		Assert.assertEquals(count + 5, dao.findByUserId(3).size());
+
+		// Histories kept aside and then discarded are never written
+		dao.startBatch();
+		DocumentHistory history = new DocumentHistory();
+		history.setDocId(1L);
+		history.setFolderId(5L);
+		history.setUserId(3L);
+		history.setEvent(DocumentEvent.CHANGED.toString());
+		dao.store(history);
+		dao.discardBatch();
+		Assert.assertEquals(0, dao.flushBatch());
+		Assert.assertEquals(count + 5, dao.findByUserId(3).size());
+	}
+}
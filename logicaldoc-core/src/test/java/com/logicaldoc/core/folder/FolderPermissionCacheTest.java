@@ -0,0 +1,82 @@
+package com.logicaldoc.core.folder;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logicaldoc.core.security.Permission;
+import com.logicaldoc.util.config.ContextProperties;
+
+import junit.framework.Assert;
+
+public class FolderPermissionCacheTest {
+
+	private FolderPermissionCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new FolderPermissionCache();
+		cache.setConfig(new ContextProperties());
+	}
+
+	@Test
+	public void testPermissions() {
+		int mask = Permission.toMask(Arrays.asList(Permission.READ, Permission.WRITE));
+		Assert.assertNull(cache.getPermissions(new long[] { 2, 1 }, 5L));
+		cache.putPermissions(new long[] { 2, 1 }, 5L, mask, cache.getGeneration());
+
+		// The order of the groups does not matter
+		Assert.assertEquals(mask, cache.getPermissions(new long[] { 1, 2 }, 5L).intValue());
+		Assert.assertNull(cache.getPermissions(new long[] { 1 }, 5L));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(2, cache.getMisses());
+
+		Set<Permission> permissions = Permission.fromMask(mask);
+		Assert.assertEquals(2, permissions.size());
+		Assert.assertTrue(permissions.contains(Permission.WRITE));
+
+		cache.invalidateFolder(5L);
+		Assert.assertNull(cache.getPermissions(new long[] { 1, 2 }, 5L));
+	}
+
+	@Test
+	public void testInvalidateGroup() {
+		cache.putPermissions(new long[] { 1, 2 }, 5L, 1, cache.getGeneration());
+		cache.putPermissions(new long[] { 3 }, 5L, 1, cache.getGeneration());
+		cache.invalidateGroup(2L);
+		Assert.assertNull(cache.getPermissions(new long[] { 1, 2 }, 5L));
+		Assert.assertNotNull(cache.getPermissions(new long[] { 3 }, 5L));
+	}
+
+	@Test
+	public void testStaleValues() {
+		long generation = cache.getGeneration();
+		cache.putSecurityRef(6L, 5L, generation);
+		Assert.assertEquals(5L, cache.getSecurityRef(6L).longValue());
+
+		// Folders referencing the invalidated one are invalidated too
+		cache.invalidateFolder(5L);
+		Assert.assertNull(cache.getSecurityRef(6L));
+
+		// A value read before the invalidation must be discarded
+		cache.putSecurityRef(6L, 5L, generation);
+		Assert.assertNull(cache.getSecurityRef(6L));
+	}
+
+	@Test
+	public void testChangedSecurityRef() {
+		cache.putSecurityRef(6L, 5L, cache.getGeneration());
+		cache.putSecurityRef(7L, 5L, cache.getGeneration());
+		cache.putSecurityRef(6L, 8L, cache.getGeneration());
+
+		// The folder does not refer to the old reference anymore
+		cache.invalidateFolder(5L);
+		Assert.assertEquals(8L, cache.getSecurityRef(6L).longValue());
+		Assert.assertNull(cache.getSecurityRef(7L));
+
+		cache.invalidateFolder(8L);
+		Assert.assertNull(cache.getSecurityRef(6L));
+	}
+}
@@ -0,0 +1,122 @@
+package com.logicaldoc.core.folder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class FolderTreeTest {
+
+	private FolderTree tree;
+
+	@Before
+	public void setUp() throws Exception {
+		// Same hierarchy of the test database
+		List<long[]> records = new ArrayList<>();
+		records.add(new long[] { 1202, 1201, Folder.TYPE_DEFAULT, 0 });
+		records.add(new long[] { 5, 5, Folder.TYPE_WORKSPACE, 0 });
+		records.add(new long[] { 4, 5, Folder.TYPE_WORKSPACE, 0 });
+		records.add(new long[] { 3000, 5, Folder.TYPE_WORKSPACE, 0 });
+		records.add(new long[] { 6, 3000, Folder.TYPE_DEFAULT, 0 });
+		records.add(new long[] { 7, 6, Folder.TYPE_DEFAULT, 0 });
+		records.add(new long[] { 8, 7, Folder.TYPE_DEFAULT, 1 });
+		records.add(new long[] { 1200, 5, Folder.TYPE_DEFAULT, 0 });
+		records.add(new long[] { 1201, 1200, Folder.TYPE_DEFAULT, 0 });
+		records.add(new long[] { 1204, 1201, Folder.TYPE_DEFAULT, 1 });
+		records.add(new long[] { 1205, 1204, Folder.TYPE_DEFAULT, 0 });
+
+		tree = new FolderTree();
+		tree.load(records);
+	}
+
+	@Test
+	public void testSubtree() {
+		Assert.assertTrue(tree.isLoaded());
+		Assert.assertEquals(11, tree.size());
+		Assert.assertNull(tree.getSubtree(99L, false, true));
+
+		Set<Long> ids = tree.getSubtree(1200L, false, true);
+		Assert.assertEquals(3, ids.size());
+		Assert.assertTrue(ids.containsAll(Arrays.asList(1200L, 1201L, 1202L)));
+
+		// Without pruning, the alive children of deleted folders are included
+		ids = tree.getSubtree(1200L, false, false);
+		Assert.assertEquals(4, ids.size());
+		Assert.assertTrue(ids.contains(1205L));
+
+		ids = tree.getSubtree(1200L, true, true);
+		Assert.assertEquals(5, ids.size());
+
+		ids = tree.getSubtree(5L, false, true);
+		Assert.assertEquals(8, ids.size());
+		Assert.assertFalse(ids.contains(8L));
+	}
+
+	@Test
+	public void testParents() {
+		Assert.assertTrue(Arrays.equals(new long[] { 5, 1200, 1201 }, tree.getParents(1202L)));
+		Assert.assertEquals(0, tree.getParents(5L).length);
+		Assert.assertNull(tree.getParents(99L));
+
+		Assert.assertTrue(tree.isInPath(1200L, 1202L));
+		Assert.assertFalse(tree.isInPath(1202L, 1200L));
+		Assert.assertNull(tree.isInPath(1200L, 99L));
+
+		Assert.assertEquals("/", tree.computePath(5L));
+		Assert.assertEquals("/1200/1201", tree.computePath(1201L));
+		Assert.assertEquals("/3000/6/7", tree.computePath(7L));
+	}
+
+	@Test
+	public void testWorkspace() {
+		Assert.assertEquals(4L, tree.findWorkspace(4L).longValue());
+		Assert.assertEquals(3000L, tree.findWorkspace(7L).longValue());
+		Assert.assertEquals(-1L, tree.findWorkspace(1202L).longValue());
+		Assert.assertNull(tree.findWorkspace(99L));
+	}
+
+	@Test
+	public void testUpdates() {
+		// Create a new folder and move a subtree under it
+		tree.put(1300L, 4L, Folder.TYPE_DEFAULT, 0);
+		tree.put(1201L, 1300L, Folder.TYPE_DEFAULT, 0);
+		Assert.assertEquals("/4/1300/1201/1202", tree.computePath(1202L));
+		Assert.assertEquals(4L, tree.findWorkspace(1202L).longValue());
+		Assert.assertEquals(1, tree.getSubtree(1200L, true, true).size());
+		Assert.assertEquals(3, tree.getSubtree(1300L, false, true).size());
+
+		tree.setDeleted(Arrays.asList(1300L, 1201L, 1202L), 2);
+		Assert.assertEquals(1, tree.getSubtree(4L, false, true).size());
+
+		// Only the folders deleted with the default code get restored
+		tree.restore(Arrays.asList(1300L, 1204L));
+		Assert.assertEquals(1, tree.getSubtree(4L, false, true).size());
+		Assert.assertEquals(3, tree.getSubtree(1201L, false, true).size());
+		Assert.assertEquals(6, tree.getSubtree(4L, true, true).size());
+
+		tree.setParent(1300L, 1200L);
+		Assert.assertTrue(tree.isInPath(1200L, 1202L));
+
+		// A folder whose parent is not known invalidates the tree
+		tree.put(1400L, 1399L, Folder.TYPE_DEFAULT, 0);
+		Assert.assertFalse(tree.isLoaded());
+	}
+
+	@Test
+	public void testGrowth() {
+		List<long[]> records = new ArrayList<>();
+		records.add(new long[] { 1, 1, Folder.TYPE_WORKSPACE, 0 });
+		for (long id = 2; id <= 10000; id++)
+			records.add(new long[] { id, id / 2, Folder.TYPE_DEFAULT, 0 });
+		tree.load(records);
+
+		Assert.assertEquals(10000, tree.size());
+		Assert.assertEquals(10000, tree.getSubtree(1L, false, true).size());
+		Assert.assertEquals("/2/4/8/16", tree.computePath(16L));
+	}
+}
@@ -4,8 +4,11 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
@@ -29,6 +32,7 @@ import com.logicaldoc.core.security.Tenant;
 import com.logicaldoc.core.security.User;
 import com.logicaldoc.core.security.dao.UserDAO;
 import com.logicaldoc.util.Context;
+import com.logicaldoc.util.config.ContextProperties;
 
 import junit.framework.Assert;
 
@@ -909,6 +913,46 @@ public class HibernateFolderDAOTest extends AbstractCoreTCase {
 		Assert.assertTrue(dao.isReadEnabled(6L, 4L));
 	}
 
+	@Test
+	public void testPermissionCache() throws PersistenceException {
+		FolderPermissionCache cache = (FolderPermissionCache) context.getBean("FolderPermissionCache");
+
+		Assert.assertTrue(dao.isReadEnabled(1201L, 4L));
+		long misses = cache.getMisses();
+		long hits = cache.getHits();
+		Assert.assertTrue(dao.isReadEnabled(1201L, 4L));
+		Assert.assertTrue(dao.isPermissionEnabled(Permission.WRITE, 1201L, 4L));
+		Assert.assertEquals(misses, cache.getMisses());
+		Assert.assertTrue(cache.getHits() > hits);
+
+		// Revoke the policies, the cache must not serve the old ones
+		Folder folder = dao.findById(1201L);
+		dao.initialize(folder);
+		folder.getFolderGroups().clear();
+		dao.store(folder);
+		Assert.assertFalse(dao.isReadEnabled(1201L, 4L));
+		Assert.assertFalse(dao.isPermissionEnabled(Permission.WRITE, 1201L, 4L));
+		Assert.assertTrue(dao.findFolderIdByUserIdAndPermission(4L, Permission.WRITE, null, true).isEmpty());
+	}
+
+	@Test
+	public void testPermissionCacheInCluster() throws PersistenceException {
+		ContextProperties config = Context.get().getProperties();
+		config.setProperty("cluster.enabled", "true");
+		config.setProperty("security.acl.cache.check", "0");
+		try {
+			Assert.assertTrue(dao.isPermissionEnabled(Permission.WRITE, 1201L, 4L));
+			Assert.assertTrue(dao.isPermissionEnabled(Permission.WRITE, 1201L, 4L));
+
+			// Another node revokes the policy
+			dao.jdbcUpdate("update ld_foldergroup set ld_write = 0 where ld_folderid = 1201 and ld_groupid = 4");
+			Assert.assertFalse(dao.isPermissionEnabled(Permission.WRITE, 1201L, 4L));
+			Assert.assertTrue(dao.isReadEnabled(1201L, 4L));
+		} finally {
+			config.setProperty("cluster.enabled", "false");
+		}
+	}
+
 	@Test
 	public void testIsPrintEnable() throws PersistenceException {
 		Assert.assertTrue(dao.isPrintEnabled(Folder.ROOTID, 1L));
@@ -966,10 +1010,29 @@ public class HibernateFolderDAOTest extends AbstractCoreTCase {
 		Assert.assertTrue(permissions.contains(Permission.WRITE));
 		Assert.assertTrue(permissions.contains(Permission.MOVE));
 		Assert.assertTrue(permissions.contains(Permission.EMAIL));
+		Assert.assertEquals(Permission.toMask(permissions), dao.getEnabledPermissionsMask(6, 4));
+		Assert.assertEquals(Permission.ALL, dao.getEnabledPermissionsMask(6, 1));
 		permissions = dao.getEnabledPermissions(999, 1);
 		Assert.assertEquals(Permission.all().size(), permissions.size());
 	}
 
+	@Test
+	public void testGetEnabledPermissionsMasks() throws PersistenceException {
+		List<Folder> folders = Arrays.asList(dao.findById(6), dao.findById(Folder.ROOTID));
+		Map<Long, Integer> masks = dao.getEnabledPermissionsMasks(folders, 4);
+		Assert.assertEquals(2, masks.size());
+		Assert.assertEquals(dao.getEnabledPermissionsMask(6, 4), masks.get(6L).intValue());
+		Assert.assertEquals(dao.getEnabledPermissionsMask(Folder.ROOTID, 4), masks.get(Folder.ROOTID).intValue());
+
+		// Same results with cold caches
+		((FolderPermissionCache) context.getBean("FolderPermissionCache")).clear();
+		Assert.assertEquals(masks, dao.getEnabledPermissionsMasks(folders, 4));
+
+		masks = dao.getEnabledPermissionsMasks(folders, 1);
+		Assert.assertEquals(Permission.ALL, masks.get(6L).intValue());
+		Assert.assertTrue(dao.getEnabledPermissionsMasks(new ArrayList<>(), 4).isEmpty());
+	}
+
 	@Test
 	public void testFindFolderIdByUserId() throws PersistenceException {
 		Collection<Long> ids = dao.findFolderIdByUserId(3, null, true);
@@ -1382,6 +1445,40 @@ public class HibernateFolderDAOTest extends AbstractCoreTCase {
 		Assert.assertTrue(ids.contains(1201L));
 	}
 
+	@Test
+	public void testFolderTree() throws PersistenceException {
+		FolderTree tree = (FolderTree) context.getBean("FolderTree");
+		Assert.assertEquals(3, dao.findFolderIdInTree(1200L, false).size());
+		Assert.assertTrue(tree.isLoaded());
+
+		Folder docsFolder = dao.findById(Folder.DEFAULTWORKSPACEID);
+		Folder folderVO = new Folder();
+		folderVO.setName("folderA");
+		Folder folderA = dao.create(docsFolder, folderVO, true, null);
+		Assert.assertTrue(tree.contains(folderA.getId()));
+		Assert.assertEquals("/4/" + folderA.getId(), dao.computePath(folderA.getId()));
+
+		User user = userDao.findByUsername("admin");
+		FolderHistory transaction = new FolderHistory();
+		transaction.setUser(user);
+		dao.move(dao.findById(1201L), folderA, transaction);
+		Assert.assertEquals(1, dao.findFolderIdInTree(1200L, false).size());
+		Assert.assertTrue(dao.isInPath(folderA.getId(), 1202L));
+		Assert.assertEquals(Folder.DEFAULTWORKSPACEID, dao.findWorkspace(1202L).getId());
+		Assert.assertEquals(3, dao.findParents(1201L).size());
+
+		transaction = new FolderHistory();
+		transaction.setUser(user);
+		dao.deleteTree(folderA.getId(), PersistentObject.DELETED_CODE_DEFAULT, transaction);
+		Assert.assertEquals(1, dao.findFolderIdInTree(folderA.getId(), false).size());
+		Assert.assertEquals(4, dao.findFolderIdInTree(folderA.getId(), true).size());
+
+		// After a reload the tree must give the same answers
+		tree.invalidate();
+		Assert.assertEquals(1, dao.findFolderIdInTree(folderA.getId(), false).size());
+		Assert.assertTrue(dao.isInPath(folderA.getId(), 1202L));
+	}
+
 	@Test
 	public void testFindbyPathExtended() throws PersistenceException {
 		Folder folder = dao.findByPathExtended("/Default/Elard", 1L);
@@ -0,0 +1,121 @@
+package com.logicaldoc.core.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.document.Document;
+import com.logicaldoc.core.security.Tenant;
+import com.logicaldoc.util.Context;
+
+import junit.framework.Assert;
+
+public class ParserExecutorTest extends AbstractCoreTCase {
+
+	@Test
+	public void testTimeout() throws InterruptedException {
+		Context.get().getProperties().setProperty("default.parser.timeout", "1");
+		try {
+			SlowParser parser = new SlowParser(10000L);
+			long start = System.currentTimeMillis();
+			try {
+				parser.parse(new ByteArrayInputStream(new byte[0]), "test.slow", null, Locale.ENGLISH,
+						Tenant.DEFAULT_NAME);
+				Assert.fail("the parsing should have been interrupted");
+			} catch (ParseException e) {
+				Assert.assertTrue(e.getMessage().contains("Timeout"));
+			}
+			Assert.assertTrue(System.currentTimeMillis() - start < 5000L);
+
+			// The parsing thread got interrupted
+			Thread.sleep(500L);
+			Assert.assertEquals(0, parser.running.get());
+
+			ParserExecutor.Stats stats = ParserExecutor.get().getStats().get(SlowParser.class.getName());
+			Assert.assertEquals(1, stats.getTimeouts());
+			Assert.assertEquals(1, stats.getFailures());
+		} finally {
+			Context.get().getProperties().setProperty("default.parser.timeout", "-1");
+		}
+	}
+
+	@Test
+	public void testParserConcurrency() throws InterruptedException {
+		Context.get().getProperties().setProperty("parser.concurrency.LimitedParser", "1");
+
+		LimitedParser parser = new LimitedParser(200L);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					parser.parse(new ByteArrayInputStream(new byte[0]), "test.limited", null, Locale.ENGLISH,
+							Tenant.DEFAULT_NAME);
+				} catch (ParseException e) {
+					// Nothing to do
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		Assert.assertEquals(1, parser.maxRunning.get());
+		Assert.assertEquals(4, ParserExecutor.get().getStats().get(LimitedParser.class.getName()).getParses());
+		Assert.assertEquals(0, ParserExecutor.get().getRunning());
+	}
+
+	@Test
+	public void testNestedParsing() throws ParseException {
+		// A parser that parses another file inside the parsing
+		AbstractParser parser = new AbstractParser() {
+			@Override
+			protected void internalParse(InputStream is, String filename, String encoding, Locale locale,
+					String tenant, Document document, String fileVersion, StringBuilder output) throws Exception {
+				output.append(new SlowParser(0L).parse(is, "inner.slow", encoding, locale, tenant));
+				output.append(" outer");
+			}
+		};
+		Assert.assertEquals("slow outer", parser.parse(new ByteArrayInputStream(new byte[0]), "outer.nested", null,
+				Locale.ENGLISH, Tenant.DEFAULT_NAME));
+	}
+
+	static class SlowParser extends AbstractParser {
+
+		protected AtomicInteger running = new AtomicInteger();
+
+		protected AtomicInteger maxRunning = new AtomicInteger();
+
+		private long duration;
+
+		SlowParser(long duration) {
+			this.duration = duration;
+		}
+
+		@Override
+		protected void internalParse(InputStream is, String filename, String encoding, Locale locale, String tenant,
+				Document document, String fileVersion, StringBuilder output) throws Exception {
+			int count = running.incrementAndGet();
+			maxRunning.accumulateAndGet(count, Math::max);
+			try {
+				Thread.sleep(duration);
+				output.append("slow");
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	static class LimitedParser extends SlowParser {
+
+		LimitedParser(long duration) {
+			super(duration);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.logicaldoc.core.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class TextWriterTest {
+
+	@Test
+	public void testWrite() throws IOException {
+		TextWriter writer = new TextWriter();
+		writer.write("Hello");
+		writer.append(new StringBuilder(" world"));
+		writer.write('!');
+		Assert.assertEquals("Hello world!", writer.toString());
+		Assert.assertFalse(writer.isTruncated());
+
+		// Without sanitization the text is kept as is
+		writer = new TextWriter();
+		writer.write("a\uFFFFb");
+		Assert.assertEquals("a\uFFFFb", writer.toString());
+	}
+
+	@Test
+	public void testLimit() throws IOException {
+		TextWriter writer = new TextWriter(8, false);
+		writer.write("1234");
+		try {
+			writer.write("567890");
+			Assert.fail("the limit should have been reached");
+		} catch (TextWriter.LimitException e) {
+			// All right
+		}
+		Assert.assertEquals("12345678", writer.toString());
+		Assert.assertTrue(writer.isTruncated());
+
+		try {
+			writer.write('9');
+			Assert.fail("the limit should have been reached");
+		} catch (TextWriter.LimitException e) {
+			// All right
+		}
+		Assert.assertEquals(8, writer.length());
+
+		// Exactly the maximum length is not a truncation
+		writer = new TextWriter(4, false);
+		writer.write("1234");
+		Assert.assertFalse(writer.isTruncated());
+	}
+
+	@Test
+	public void testSanitize() throws IOException {
+		TextWriter writer = new TextWriter(-1, true);
+		writer.write("a\uFFFFb\uD835c".toCharArray());
+		Assert.assertEquals("a b c", writer.toString());
+	}
+
+	@Test
+	public void testWriteReader() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++)
+			sb.append("0123456789");
+
+		TextWriter writer = new TextWriter(25000, true);
+		writer.write(new StringReader(sb.toString()));
+		Assert.assertEquals(25000, writer.length());
+		Assert.assertTrue(writer.isTruncated());
+		Assert.assertEquals(sb.substring(0, 25000), writer.toString());
+
+		writer = new TextWriter();
+		writer.write(new StringReader(sb.toString()));
+		Assert.assertEquals(sb.toString(), writer.toString());
+	}
+}
@@ -98,6 +98,7 @@ public class FulltextSearchTest extends AbstractCoreTCase {
 		document.setFolder(fold);
 		engine.addHit(document,
 				"Lorem ipsum dolor sit amet, consectetur 5568299afbX0 ZKBKCHZZ80A CH8900761016116097873 adipisicing elit");
+		engine.flush();
 	}
 
 	@Test
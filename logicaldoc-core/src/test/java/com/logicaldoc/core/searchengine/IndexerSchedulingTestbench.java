@@ -0,0 +1,112 @@
+package com.logicaldoc.core.searchengine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.logicaldoc.util.config.ContextProperties;
+
+/**
+ * To manually compare the scheduling strategies of the indexer on a synthetic
+ * corpus with skewed file sizes. The parsing of each document is simulated
+ * with a pause proportional to its estimated cost. Three strategies are
+ * compared:
+ * <ul>
+ * <li><b>static</b>: the batch is split in one fixed partition per
+ * thread</li>
+ * <li><b>shared</b>: all the threads take from a shared queue in the original
+ * order</li>
+ * <li><b>cost</b>: all the threads take from a shared queue sorted by
+ * descending cost</li>
+ * </ul>
+ *
+ * Arguments: number of documents (default 400), number of threads (default 4)
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class IndexerSchedulingTestbench {
+
+	/**
+	 * Simulated parsing time of a cost unit, in nanoseconds
+	 */
+	private static final long NANOS_PER_UNIT = 200;
+
+	public static void main(String[] args) throws Exception {
+		int docs = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+		IndexingCost cost = new IndexingCost(new ContextProperties());
+
+		// Pareto distributed sizes: many small files and a few huge ones
+		Random random = new Random(1);
+		String[] extensions = new String[] { "txt", "pdf", "docx", "xlsx", "eml" };
+		List<Object[]> corpus = new ArrayList<>();
+		Map<Long, Long> costs = new HashMap<>();
+		for (long id = 1; id <= docs; id++) {
+			long size = (long) (10000 / Math.pow(1 - random.nextDouble(), 1 / 1.2));
+			String fileName = "file" + id + "." + extensions[random.nextInt(extensions.length)];
+			corpus.add(new Object[] { id, fileName, size });
+			costs.put(id, cost.estimate(fileName, size));
+		}
+
+		List<Long> ids = new ArrayList<>();
+		for (Object[] doc : corpus)
+			ids.add((Long) doc[0]);
+
+		System.out.println("Documents: " + docs + ", threads: " + threads);
+		System.out.println("static: " + runStatic(ids, costs, threads) + " ms");
+		System.out.println("shared: " + runShared(ids, costs, threads) + " ms");
+		System.out.println("cost:   " + runShared(cost.sort(corpus), costs, threads) + " ms");
+	}
+
+	private static long runStatic(List<Long> ids, Map<Long, Long> costs, int threads) throws InterruptedException {
+		int partitionSize = (int) Math.ceil((double) ids.size() / threads);
+		Collection<List<Long>> partitions = new ArrayList<>();
+		for (int i = 0; i < ids.size(); i += partitionSize)
+			partitions.add(ids.subList(i, Math.min(i + partitionSize, ids.size())));
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start = System.currentTimeMillis();
+		for (List<Long> partition : partitions)
+			pool.execute(() -> {
+				for (Long id : partition)
+					parse(costs.get(id));
+			});
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long runShared(List<Long> ids, Map<Long, Long> costs, int threads) throws InterruptedException {
+		ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<>(ids);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < threads; i++)
+			pool.execute(() -> {
+				Long id;
+				while ((id = queue.poll()) != null)
+					parse(costs.get(id));
+			});
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.HOURS);
+		return System.currentTimeMillis() - start;
+	}
+
+	private static void parse(long cost) {
+		long nanos = cost * NANOS_PER_UNIT;
+		try {
+			Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
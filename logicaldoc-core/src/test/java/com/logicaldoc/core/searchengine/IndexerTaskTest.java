@@ -0,0 +1,90 @@
+package com.logicaldoc.core.searchengine;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.document.AbstractDocument;
+import com.logicaldoc.core.document.Document;
+import com.logicaldoc.core.document.DocumentManager;
+import com.logicaldoc.core.document.dao.DocumentDAO;
+import com.logicaldoc.core.security.dao.TenantDAO;
+import com.logicaldoc.core.security.dao.UserDAO;
+import com.logicaldoc.util.Context;
+
+import junit.framework.Assert;
+
+public class IndexerTaskTest extends AbstractCoreTCase {
+
+	private DocumentDAO documentDao;
+
+	private IndexerTask task;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		documentDao = (DocumentDAO) context.getBean("DocumentDAO");
+
+		// The hits of document 3 cannot be written
+		SearchEngine engine = new StandardSearchEngine() {
+
+			@Override
+			public void addHit(Document document, String content) throws Exception {
+				// Nothing to do
+			}
+
+			@Override
+			public Set<Long> flush(Collection<Long> docIds) {
+				Set<Long> failed = new HashSet<>();
+				if (docIds.contains(3L))
+					failed.add(3L);
+				return failed;
+			}
+		};
+
+		task = new IndexerTask();
+		task.setConfig(Context.get().getProperties());
+		task.setIndexer(engine);
+		task.setDocumentDao(documentDao);
+		task.setDocumentManager((DocumentManager) context.getBean("DocumentManager"));
+		task.setTenantDao((TenantDAO) context.getBean("TenantDAO"));
+		task.setUserDao((UserDAO) context.getBean("UserDAO"));
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		// Just the metadata, so nothing gets parsed
+		documentDao.jdbcUpdate("update ld_document set ld_indexed = " + AbstractDocument.INDEX_TO_INDEX_METADATA
+				+ " where ld_id in (1, 3, 7)");
+
+		IndexerTask.Pipeline pipeline = task.new Pipeline(Arrays.asList(1L, 3L, 7L), 2, 1);
+		try {
+			pipeline.start();
+			for (int i = 0; i < 30 && !pipeline.isCompleted(); i++)
+				pipeline.await(1000);
+		} finally {
+			IndexerTask.killIndexerThreads();
+		}
+		Assert.assertTrue(pipeline.isCompleted());
+
+		Assert.assertEquals(2, task.getIndexed());
+		Assert.assertEquals(1, task.getErrors());
+
+		Assert.assertEquals(AbstractDocument.INDEX_INDEXED, documentDao.findById(1L).getIndexed());
+		Assert.assertEquals(AbstractDocument.INDEX_INDEXED, documentDao.findById(7L).getIndexed());
+
+		// The failed document must not be marked as indexed
+		Assert.assertEquals(AbstractDocument.INDEX_TO_INDEX_METADATA, documentDao.findById(3L).getIndexed());
+
+		// All the documents went through the prefetch and the status stages
+		Assert.assertEquals(4, pipeline.getStatistics().size());
+		Assert.assertEquals(3, pipeline.getStatistics().get(0).getCount());
+		Assert.assertEquals(3, pipeline.getStatistics().get(3).getCount());
+		Assert.assertEquals(0, pipeline.getStatistics().get(3).getQueued());
+	}
+}
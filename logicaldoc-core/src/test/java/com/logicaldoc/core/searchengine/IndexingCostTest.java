@@ -0,0 +1,48 @@
+package com.logicaldoc.core.searchengine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logicaldoc.util.config.ContextProperties;
+
+import junit.framework.Assert;
+
+public class IndexingCostTest {
+
+	private IndexingCost cost;
+
+	@Before
+	public void setUp() throws Exception {
+		ContextProperties config = new ContextProperties();
+		config.setProperty("index.cost.pdf", "3");
+		cost = new IndexingCost(config);
+	}
+
+	@Test
+	public void testEstimate() {
+		Assert.assertEquals(3, cost.getWeight("test.PDF"));
+		Assert.assertEquals(IndexingCost.DEFAULT_WEIGHT, cost.getWeight("test.unknown"));
+		Assert.assertEquals(IndexingCost.DEFAULT_WEIGHT, cost.getWeight("noextension"));
+		Assert.assertEquals(3000, cost.estimate("test.pdf", 1000));
+		Assert.assertEquals(1000, cost.estimate("test.txt", 1000));
+	}
+
+	@Test
+	public void testSort() {
+		List<Object[]> docs = new ArrayList<>();
+		docs.add(new Object[] { 1L, "small.txt", 100L });
+		docs.add(new Object[] { 2L, "big.txt", 5000L });
+		docs.add(new Object[] { 3L, "medium.pdf", 1000L });
+		docs.add(new Object[] { 4L, "empty.txt", null });
+
+		List<Long> sorted = cost.sort(docs);
+		Assert.assertEquals(4, sorted.size());
+		Assert.assertEquals(2L, sorted.get(0).longValue());
+		Assert.assertEquals(3L, sorted.get(1).longValue());
+		Assert.assertEquals(1L, sorted.get(2).longValue());
+		Assert.assertEquals(4L, sorted.get(3).longValue());
+	}
+}
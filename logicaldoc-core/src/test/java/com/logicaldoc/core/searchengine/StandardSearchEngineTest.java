@@ -1,7 +1,10 @@
 package com.logicaldoc.core.searchengine;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Before;
@@ -12,6 +15,7 @@ import org.slf4j.LoggerFactory;
 import com.logicaldoc.core.AbstractCoreTCase;
 import com.logicaldoc.core.document.Document;
 import com.logicaldoc.core.folder.Folder;
+import com.logicaldoc.util.Context;
 
 import junit.framework.Assert;
 
@@ -48,6 +52,7 @@ public class StandardSearchEngineTest extends AbstractCoreTCase {
 
 		engine.unlock();
 		engine.addHit(document, "Questo è un documento di prova. Per fortuna che esistono i test. document");
+		engine.flush();
 
 		Hit hit = engine.getHit(1L);
 		Assert.assertEquals(1L, hit.getId());
@@ -62,7 +67,8 @@ public class StandardSearchEngineTest extends AbstractCoreTCase {
 		document.setFolder(fold);
 		engine.addHit(document,
 				"This is another test documents just for test insertion.Solr is an enterprise-ready, Lucene-based search server that supports faceted ... This is useful for retrieving and highlighting the documents contents for display but is not .... hl, When hl=true , highlight snippets in the query response. document.");
-		
+		engine.flush();
+
 		hit = engine.getHit(1L);
 		Assert.assertEquals(1L, hit.getId());
 		Assert.assertEquals("en", hit.getLanguage());
@@ -76,6 +82,68 @@ public class StandardSearchEngineTest extends AbstractCoreTCase {
 		Assert.assertNull(hit);
 	}
 
+	@Test
+	public void testAddHitReader() throws Exception {
+		Document document = new Document();
+		document.setId(2L);
+		document.setFileName("Document test 2");
+		document.setLanguage("en");
+		document.setDate(new Date());
+		Folder fold = new Folder();
+		fold.setId(Folder.DEFAULTWORKSPACEID);
+		fold.setName("test");
+		document.setFolder(fold);
+
+		String maxText = Context.get().getProperties().getProperty("index.maxtext", "");
+		Context.get().getProperties().setProperty("index.maxtext", "20");
+		try {
+			engine.unlock();
+			engine.addHit(document, new StringReader("This is a document \uFFFFtoo long to be fully indexed"));
+			engine.flush();
+		} finally {
+			Context.get().getProperties().setProperty("index.maxtext", maxText);
+		}
+
+		// Only the first characters have been read and sanitized
+		Hit hit = engine.getHit(2L);
+		Assert.assertEquals("This is a document  ", hit.getContent());
+	}
+
+	@Test
+	public void testFlush() throws Exception {
+		Folder fold = new Folder();
+		fold.setId(Folder.DEFAULTWORKSPACEID);
+		fold.setName("test");
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int base = t * 50;
+			Thread thread = new Thread(() -> {
+				for (int i = 1; i <= 50; i++) {
+					Document document = new Document();
+					document.setId(1000L + base + i);
+					document.setFileName("Document test " + (base + i));
+					document.setLanguage("en");
+					document.setDate(new Date());
+					document.setFolder(fold);
+					try {
+						engine.addHit(document, "Concurrent document " + (base + i));
+					} catch (Exception e) {
+						log.error(e.getMessage(), e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		engine.flush();
+		Assert.assertEquals(200, engine.getCount());
+		Assert.assertEquals(1001L, engine.getHit(1001L).getId());
+	}
+
 	@Test
 	public void testDeleteHit() throws Exception {
 		testAddHit();
@@ -138,7 +206,8 @@ public class StandardSearchEngineTest extends AbstractCoreTCase {
 		document.setDate(new Date());
 		document.setFolder(fold);
 		engine.addHit(document, "This test 201");
-		
+		engine.flush();
+
 		Hits hits = engine.query("*:*", 2, 3);
 		Assert.assertEquals(1, hits.getCount());
 	}
@@ -173,6 +242,7 @@ public class StandardSearchEngineTest extends AbstractCoreTCase {
 		document.setLanguage("en");
 
 		engine.addHit(document, "This is a test content just for test insertion");
+		engine.flush();
 
 		Hit hit = engine.getHit(1L);
 		Assert.assertEquals(1L, hit.getId());
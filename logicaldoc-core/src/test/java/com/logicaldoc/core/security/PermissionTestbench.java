@@ -0,0 +1,112 @@
+package com.logicaldoc.core.security;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * To manually compare the resolution of the permissions granted by a set of
+ * ACL records: the old implementation that reads each column by name and
+ * collects the results in a set, against the mask based one that reads the
+ * columns by position and merges them with a bitwise OR. The records are
+ * simulated in memory so that only the resolution itself is measured.
+ *
+ * Arguments: number of iterations (default 1000000), records per check
+ * (default 3)
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class PermissionTestbench {
+
+	private static final Permission[] COLUMNS = new Permission[] { Permission.WRITE, Permission.ADD,
+			Permission.SECURITY, Permission.IMMUTABLE, Permission.DELETE, Permission.RENAME, Permission.IMPORT,
+			Permission.EXPORT, Permission.SIGN, Permission.ARCHIVE, Permission.WORKFLOW, Permission.DOWNLOAD,
+			Permission.CALENDAR, Permission.SUBSCRIPTION, Permission.PRINT, Permission.PASSWORD, Permission.MOVE,
+			Permission.EMAIL, Permission.AUTOMATION, Permission.STORAGE };
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int records = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		// Prepare the records, both by column name and by position
+		Random random = new Random(1);
+		int[][] byPosition = new int[records][COLUMNS.length];
+		@SuppressWarnings("unchecked")
+		Map<String, Integer>[] byName = new Map[records];
+		for (int r = 0; r < records; r++) {
+			byName[r] = new HashMap<>();
+			for (int c = 0; c < COLUMNS.length; c++) {
+				byPosition[r][c] = random.nextInt(2);
+				byName[r].put("LD" + COLUMNS[c].getName().toUpperCase(), byPosition[r][c]);
+			}
+		}
+
+		// Check that both implementations give the same result
+		if (Permission.toMask(resolveBySet(byName)) != resolveByMask(byPosition))
+			throw new IllegalStateException("The two implementations do not match");
+
+		// Warm up
+		run(iterations / 10, byName, byPosition);
+
+		long[] times = run(iterations, byName, byPosition);
+		System.out.println("Iterations: " + iterations + ", records per check: " + records);
+		System.out.println("set:  " + (times[0] / iterations) + " ns/op");
+		System.out.println("mask: " + (times[1] / iterations) + " ns/op");
+	}
+
+	private static long[] run(int iterations, Map<String, Integer>[] byName, int[][] byPosition) {
+		long blackhole = 0;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			blackhole += resolveBySet(byName).size();
+		long setTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			blackhole += resolveByMask(byPosition);
+		long maskTime = System.nanoTime() - start;
+
+		if (blackhole == 42)
+			System.out.println();
+		return new long[] { setTime, maskTime };
+	}
+
+	/**
+	 * The old resolution
+	 */
+	private static Set<Permission> resolveBySet(Map<String, Integer>[] records) {
+		Set<Permission> permissions = new HashSet<>();
+
+		Map<String, Permission> permissionColumn = new HashMap<>();
+		for (Permission permission : COLUMNS)
+			permissionColumn.put("LD" + permission.getName().toUpperCase(), permission);
+
+		for (Map<String, Integer> record : records) {
+			permissions.add(Permission.READ);
+			for (Entry<String, Permission> entry : permissionColumn.entrySet()) {
+				if (record.get(entry.getKey()) == 1)
+					permissions.add(entry.getValue());
+			}
+		}
+		return permissions;
+	}
+
+	/**
+	 * The mask based resolution
+	 */
+	private static int resolveByMask(int[][] records) {
+		int mask = 0;
+		for (int[] record : records) {
+			mask |= Permission.READ.getMask();
+			for (int i = 0; i < COLUMNS.length; i++)
+				if (record[i] == 1)
+					mask |= COLUMNS[i].getMask();
+		}
+		return mask;
+	}
+}
@@ -1,10 +1,16 @@
 package com.logicaldoc.core.security;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.security.dao.GroupDAO;
+import com.logicaldoc.core.security.dao.SessionDAO;
 import com.logicaldoc.core.security.dao.UserDAO;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.util.config.ContextProperties;
@@ -53,6 +59,174 @@ public class SessionManagerTest extends AbstractCoreTCase {
 		Assert.assertEquals(2, sm.getSessions().size());
 	}
 
+	@Test
+	public void testWriteBehind() throws PersistenceException {
+		SessionManager sm = SessionManager.get();
+		sm.clear();
+		Session session = sm.newSession("admin", "admin", null);
+		Assert.assertNotNull(session);
+
+		sm.flushSessions();
+		Assert.assertTrue(session.getId() != 0L);
+		SessionDAO dao = (SessionDAO) context.getBean("SessionDAO");
+		Session dbSession = dao.findBySid(session.getSid());
+		Assert.assertNotNull(dbSession);
+		Assert.assertEquals(Session.STATUS_OPEN, dbSession.getStatus());
+
+		// Several changes result in one write with the last state
+		sm.renew(session.getSid());
+		sm.kill(session.getSid());
+		sm.flushSessions();
+		dbSession = dao.findById(session.getId());
+		Assert.assertEquals(Session.STATUS_CLOSED, dbSession.getStatus());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testWriteBehindFailure() throws PersistenceException {
+		SessionManager sm = SessionManager.get();
+		sm.clear();
+		SessionDAO dao = (SessionDAO) context.getBean("SessionDAO");
+
+		// A DAO that fails after Hibernate assigned the identifiers
+		boolean[] failing = new boolean[] { true };
+		sm.setSessionDao((SessionDAO) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { SessionDAO.class }, (proxy, method, args) -> {
+					if (failing[0] && "storeStates".equals(method.getName())) {
+						for (Session dbSession : (Collection<Session>) args[0])
+							dbSession.setId(99999L);
+						throw new PersistenceException("Simulated failure");
+					}
+					try {
+						return method.invoke(dao, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				}));
+		try {
+			Session session = sm.newSession("admin", "admin", null);
+			sm.flushSessions();
+
+			// Not written, so no identifier and still to be written
+			Assert.assertEquals(0L, session.getId());
+			Assert.assertNull(dao.findBySid(session.getSid()));
+
+			failing[0] = false;
+			sm.flushSessions();
+			Assert.assertTrue(session.getId() != 0L);
+			Assert.assertTrue(session.getId() != 99999L);
+			Assert.assertNotNull(dao.findBySid(session.getSid()));
+		} finally {
+			sm.setSessionDao(dao);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRemoveWhileWriting() throws PersistenceException {
+		SessionManager sm = SessionManager.get();
+		sm.clear();
+		SessionDAO dao = (SessionDAO) context.getBean("SessionDAO");
+
+		// The session gets removed while the writer is inserting it
+		sm.setSessionDao((SessionDAO) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { SessionDAO.class }, (proxy, method, args) -> {
+					if ("storeStates".equals(method.getName()))
+						for (Session dbSession : (Collection<Session>) args[0])
+							if (sm.containsKey(dbSession.getSid()))
+								sm.remove(dbSession.getSid());
+					try {
+						return method.invoke(dao, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				}));
+		try {
+			Session session = sm.newSession("admin", "admin", null);
+			sm.flushSessions();
+
+			Assert.assertNull(sm.get(session.getSid()));
+			Assert.assertTrue(session.getId() != 0L);
+			Assert.assertNull(dao.findBySid(session.getSid()));
+			Assert.assertEquals(0, sm.countOpened());
+		} finally {
+			sm.setSessionDao(dao);
+		}
+	}
+
+	@Test
+	public void testPrincipal() throws Exception {
+		SessionManager sm = SessionManager.get();
+		sm.clear();
+		Session session1 = sm.newSession("admin", "admin", null);
+		Session session2 = sm.newSession("admin", "admin", null);
+
+		SessionPrincipal principal = sm.getPrincipal(session1.getSid());
+		Assert.assertNotNull(principal);
+		Assert.assertEquals(1L, principal.getUserId());
+		Assert.assertTrue(principal.isAdmin());
+		Assert.assertTrue(principal.isMemberOf(1L));
+		Assert.assertTrue(principal.getUser().isMemberOf(Group.GROUP_ADMIN));
+
+		// The same snapshot is reused by the following requests
+		Assert.assertSame(principal, sm.getPrincipal(session1.getSid()));
+		Assert.assertNull(sm.getPrincipal("unexisting"));
+
+		// Modifying the user discards the principals of all his sessions
+		SessionPrincipal principal2 = sm.getPrincipal(session2.getSid());
+		UserDAO userDao = (UserDAO) context.getBean("UserDAO");
+		User user = userDao.findById(1L);
+		userDao.initialize(user);
+		userDao.store(user);
+		Assert.assertNotSame(principal, sm.getPrincipal(session1.getSid()));
+		Assert.assertNotSame(principal2, sm.getPrincipal(session2.getSid()));
+
+		// Modifying one of his groups too
+		principal = sm.getPrincipal(session1.getSid());
+		GroupDAO groupDao = (GroupDAO) context.getBean("GroupDAO");
+		Group group = groupDao.findById(1L);
+		groupDao.store(group);
+		Assert.assertNotSame(principal, sm.getPrincipal(session1.getSid()));
+
+		// Each call returns a copy of the user
+		principal = sm.getPrincipal(session1.getSid());
+		User copy = principal.getUser();
+		copy.setName("changed");
+		copy.getGroups().clear();
+		Assert.assertNotSame(copy, principal.getUser());
+		Assert.assertFalse("changed".equals(principal.getUser().getName()));
+		Assert.assertTrue(principal.getUser().isMemberOf(Group.GROUP_ADMIN));
+	}
+
+	@Test
+	public void testPrincipalInCluster() throws Exception {
+		ContextProperties conf = Context.get().getProperties();
+		String cluster = conf.getProperty("cluster.enabled", "false");
+		String check = conf.getProperty("security.acl.cache.check", "5");
+		conf.setProperty("cluster.enabled", "true");
+		conf.setProperty("security.acl.cache.check", "0");
+		try {
+			SessionManager sm = SessionManager.get();
+			sm.clear();
+			Session session = sm.newSession("admin", "admin", null);
+			SessionPrincipal principal = sm.getPrincipal(session.getSid());
+			Assert.assertSame(principal, sm.getPrincipal(session.getSid()));
+
+			// Another node modifies the user, bypassing this node
+			UserDAO userDao = (UserDAO) context.getBean("UserDAO");
+			userDao.jdbcUpdate("update ld_user set ld_recordversion = ld_recordversion + 1 where ld_id = 1");
+			Assert.assertNotSame(principal, sm.getPrincipal(session.getSid()));
+
+			// Another node adds the user to a group
+			principal = sm.getPrincipal(session.getSid());
+			userDao.jdbcUpdate("insert into ld_usergroup (ld_groupid, ld_userid) values (10, 1)");
+			Assert.assertNotSame(principal, sm.getPrincipal(session.getSid()));
+		} finally {
+			conf.setProperty("cluster.enabled", cluster);
+			conf.setProperty("security.acl.cache.check", check);
+		}
+	}
+
 	@Test
 	public void testTimeout() {
 		ContextProperties conf = Context.get().getProperties();
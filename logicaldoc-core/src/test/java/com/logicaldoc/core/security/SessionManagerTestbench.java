@@ -0,0 +1,89 @@
+package com.logicaldoc.core.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.security.dao.UserDAO;
+
+/**
+ * To manually measure the throughput of the <code>SessionManager</code> on
+ * the test database: the number of logins per second and the number of
+ * renewals (renew plus status check, as done at each request) per second,
+ * with a growing number of client threads.
+ *
+ * Arguments: duration of each run in milliseconds (default 2000)
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class SessionManagerTestbench extends AbstractCoreTCase {
+
+	private static final int[] THREADS = new int[] { 1, 2, 4, 8, 16 };
+
+	public static void main(String[] args) throws Exception {
+		long duration = args.length > 0 ? Long.parseLong(args[0]) : 2000L;
+
+		SessionManagerTestbench bench = new SessionManagerTestbench();
+		bench.setUp();
+		try {
+			bench.run(duration);
+		} finally {
+			bench.tearDown();
+		}
+	}
+
+	private void run(long duration) throws InterruptedException {
+		SessionManager sm = SessionManager.get();
+		UserDAO userDao = (UserDAO) context.getBean("UserDAO");
+		User user = userDao.findByUsername("admin");
+		userDao.initialize(user);
+
+		System.out.println("threads\tlogins/s\trenewals/s");
+		for (int threads : THREADS) {
+			sm.clear();
+			List<String> sids = new ArrayList<>();
+			long logins = run(threads, duration, i -> {
+				Session session = sm.createSession(user, new Client("bench-" + i, "127.0.0.1", "localhost"));
+				synchronized (sids) {
+					sids.add(session.getSid());
+				}
+			});
+
+			long renewals = run(threads, duration, i -> {
+				String sid = sids.get((int) (i % sids.size()));
+				sm.renew(sid);
+				sm.isOpen(sid);
+			});
+
+			System.out.println(threads + "\t" + logins + "\t" + renewals);
+		}
+		sm.flushSessions();
+	}
+
+	private static long run(int threads, long duration, Operation operation) throws InterruptedException {
+		AtomicLong count = new AtomicLong();
+		long end = System.currentTimeMillis() + duration;
+		List<Thread> clients = new ArrayList<>();
+		for (int i = 0; i < threads; i++)
+			clients.add(new Thread(() -> {
+				while (System.currentTimeMillis() < end) {
+					try {
+						operation.run(count.incrementAndGet());
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}));
+		for (Thread client : clients)
+			client.start();
+		for (Thread client : clients)
+			client.join();
+		return count.get() * 1000L / duration;
+	}
+
+	private interface Operation {
+		public void run(long i) throws Exception;
+	}
+}
@@ -1,6 +1,11 @@
 package com.logicaldoc.core.sequence;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -8,6 +13,7 @@ import org.junit.Test;
 
 import com.logicaldoc.core.AbstractCoreTCase;
 import com.logicaldoc.core.security.Tenant;
+import com.logicaldoc.util.config.ContextProperties;
 
 public class HibernateSequenceDAOTest extends AbstractCoreTCase {
 
@@ -50,6 +56,43 @@ public class HibernateSequenceDAOTest extends AbstractCoreTCase {
 		Assert.assertEquals(23L, dao.next("test2", 0L, Tenant.DEFAULT_ID, -2L));
 	}
 
+	@Test
+	public void testNextInBlocks() throws InterruptedException {
+		ContextProperties config = (ContextProperties) context.getBean("ContextProperties");
+		config.setProperty("sequence.blocks.block", "10");
+
+		for (int i = 1; i <= 25; i++)
+			Assert.assertEquals(i, dao.next("blocks", 0L, Tenant.DEFAULT_ID));
+
+		// In the database there is the end of the last reserved range
+		Assert.assertEquals(30L, dao.getCurrentValue("blocks", 0L, Tenant.DEFAULT_ID));
+
+		// An increment larger than the remaining range reserves a new one
+		Assert.assertEquals(45L, dao.next("blocks", 0L, Tenant.DEFAULT_ID, 15L));
+		Assert.assertEquals(46L, dao.next("blocks", 0L, Tenant.DEFAULT_ID));
+
+		dao.reset("blocks", 0L, Tenant.DEFAULT_ID, 100L);
+		Assert.assertEquals(101L, dao.next("blocks", 0L, Tenant.DEFAULT_ID));
+		Assert.assertEquals(110L, dao.getCurrentValue("blocks", 0L, Tenant.DEFAULT_ID));
+
+		// Concurrent threads never get the same value
+		Set<Long> values = ConcurrentHashMap.newKeySet();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++)
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 50; i++)
+					values.add(dao.next("blocks", 0L, Tenant.DEFAULT_ID));
+			}));
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertEquals(200, values.size());
+		Assert.assertEquals(301L, Collections.max(values).longValue());
+
+		config.remove("sequence.blocks.block");
+	}
+
 	@Test
 	public void testFindByName() {
 		Collection<Sequence> sequences = dao.findByName("customid-", Tenant.DEFAULT_ID);
@@ -0,0 +1,144 @@
+package com.logicaldoc.core.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logicaldoc.util.config.ContextProperties;
+import com.logicaldoc.util.io.FileUtil;
+
+import junit.framework.Assert;
+
+public class DedupStorerTest {
+
+	private File root = new File("target/dedup");
+
+	private DedupStorer storer;
+
+	@Before
+	public void setUp() throws IOException {
+		FileUtils.deleteQuietly(root);
+		root.mkdirs();
+
+		storer = new DedupStorer();
+		storer.setConfig(new ContextProperties(new ByteArrayInputStream(
+				("store.1.dir=" + root.getAbsolutePath().replace('\\', '/')).getBytes(StandardCharsets.UTF_8))));
+		Assume.assumeTrue(storer.isDeduplicating());
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(root);
+	}
+
+	@Test
+	public void testStore() throws IOException {
+		// The returned digest is the SHA-1 of the content
+		Assert.assertEquals(FileUtil.computeDigest("content A"), storer.store(stream("content A"), 100L, "1.0"));
+		storer.store(stream("content A"), 200L, "1.0");
+		storer.store(stream("content B"), 300L, "1.0");
+
+		Assert.assertEquals("content A", storer.getString(100L, "1.0"));
+		Assert.assertEquals("content A", storer.getString(200L, "1.0"));
+		Assert.assertEquals("content B", storer.getString(300L, "1.0"));
+
+		// Same content, same blob
+		Path file100 = resource(100L, "1.0");
+		Path file200 = resource(200L, "1.0");
+		Assert.assertTrue(Files.isSameFile(file100, file200));
+		Assert.assertEquals(3, DedupStorer.getLinkCount(file100));
+		Assert.assertEquals(2, countBlobs());
+
+		// Overwriting a resource does not touch the shared content
+		storer.store(stream("content C"), 200L, "1.0");
+		Assert.assertEquals("content A", storer.getString(100L, "1.0"));
+		Assert.assertEquals("content C", storer.getString(200L, "1.0"));
+		Assert.assertEquals(2, DedupStorer.getLinkCount(file100));
+
+		// Also a file can be stored
+		File tmp = File.createTempFile("dedup", ".txt");
+		try {
+			FileUtils.writeStringToFile(tmp, "content B", StandardCharsets.UTF_8);
+			storer.store(tmp, 400L, "1.0");
+		} finally {
+			FileUtils.deleteQuietly(tmp);
+		}
+		Assert.assertTrue(Files.isSameFile(resource(300L, "1.0"), resource(400L, "1.0")));
+		Assert.assertEquals(3, countBlobs());
+		Assert.assertEquals(27L, storer.getTotalSize());
+	}
+
+	@Test
+	public void testCopy() throws IOException {
+		storer.store(stream("content A"), 100L, "1.0");
+		storer.copy(100L, "1.0", 200L, "1.0");
+
+		Assert.assertEquals("content A", storer.getString(200L, "1.0"));
+		Assert.assertTrue(Files.isSameFile(resource(100L, "1.0"), resource(200L, "1.0")));
+		Assert.assertEquals(1, storer.listResources(200L, null).size());
+	}
+
+	@Test
+	public void testCollect() throws IOException {
+		storer.store(stream("content A"), 100L, "1.0");
+		storer.store(stream("content A"), 200L, "1.0");
+		Path blob = storer.getBlob(DedupStorer.digest(stream("content A")));
+		Assert.assertTrue(Files.exists(blob));
+
+		storer.delete(100L);
+		Assert.assertFalse(storer.collect(blob));
+		Assert.assertTrue(Files.exists(blob));
+
+		storer.delete(200L, "1.0");
+		Assert.assertTrue(storer.collect(blob));
+		Assert.assertFalse(Files.exists(blob));
+	}
+
+	@Test
+	public void testDeduplicate() throws IOException {
+		// Files written by a plain FSStorer
+		Path file100 = resource(100L, "1.0");
+		Path file200 = resource(200L, "1.0");
+		for (Path file : new Path[] { file100, file200 }) {
+			Files.createDirectories(file.getParent());
+			Files.write(file, "content A".getBytes(StandardCharsets.UTF_8));
+		}
+		Assert.assertEquals(0, countBlobs());
+
+		Assert.assertTrue(storer.deduplicate(file100));
+		Assert.assertTrue(storer.deduplicate(file200));
+		Assert.assertFalse(storer.deduplicate(file200));
+
+		Assert.assertTrue(Files.isSameFile(file100, file200));
+		Assert.assertEquals(3, DedupStorer.getLinkCount(file100));
+		Assert.assertEquals(1, countBlobs());
+		Assert.assertEquals("content A", storer.getString(200L, "1.0"));
+	}
+
+	private Path resource(long docId, String resource) {
+		return new File(storer.getContainer(docId), resource).toPath();
+	}
+
+	private long countBlobs() throws IOException {
+		Path blobs = storer.getBlobs().toPath();
+		if (!Files.exists(blobs))
+			return 0;
+		try (Stream<Path> files = Files.walk(blobs)) {
+			return files.filter(p -> Files.isRegularFile(p) && !p.toString().contains(".tmp")).count();
+		}
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,84 @@
+package com.logicaldoc.core.threading;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class StripedLocksTest {
+
+	@Test
+	public void testGet() {
+		StripedLocks locks = new StripedLocks(100);
+		Assert.assertEquals(128, locks.size());
+
+		// Same key, same lock
+		Assert.assertSame(locks.get(12345L), locks.get(12345L));
+
+		// Consecutive keys are well distributed
+		Set<Lock> used = new HashSet<>();
+		for (long key = 1; key <= 128; key++)
+			used.add(locks.get(key));
+		Assert.assertTrue(used.size() > 64);
+	}
+
+	@Test
+	public void testGetAll() {
+		StripedLocks locks = new StripedLocks(16);
+		List<Lock> all = locks.get(Arrays.asList(1L, 2L, 3L, 1L, 17L));
+		Assert.assertEquals(new HashSet<>(all).size(), all.size());
+		Assert.assertTrue(all.contains(locks.get(3L)));
+
+		// Always the same order, whatever the order of the keys
+		Assert.assertEquals(all, locks.get(Arrays.asList(17L, 3L, 2L, 1L)));
+	}
+
+	@Test
+	public void testConcurrency() throws InterruptedException {
+		StripedLocks locks = new StripedLocks(16);
+		long key1 = 1;
+		long key2 = 2;
+		while (locks.get(key2) == locks.get(key1))
+			key2++;
+
+		Lock lock1 = locks.get(key1);
+		lock1.lock();
+		try {
+			// A different key can be locked while the first one is held
+			AtomicBoolean acquired = new AtomicBoolean(false);
+			CountDownLatch done = new CountDownLatch(1);
+			final long otherKey = key2;
+			new Thread(() -> {
+				Lock lock2 = locks.get(otherKey);
+				if (lock2.tryLock()) {
+					acquired.set(true);
+					lock2.unlock();
+				}
+				done.countDown();
+			}).start();
+			Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+			Assert.assertTrue(acquired.get());
+
+			// The same key cannot
+			acquired.set(false);
+			CountDownLatch done2 = new CountDownLatch(1);
+			new Thread(() -> {
+				if (locks.get(key1).tryLock())
+					acquired.set(true);
+				done2.countDown();
+			}).start();
+			Assert.assertTrue(done2.await(5, TimeUnit.SECONDS));
+			Assert.assertFalse(acquired.get());
+		} finally {
+			lock1.unlock();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.logicaldoc.core.transfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Test;
+
+import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.core.document.Document;
+import com.logicaldoc.core.document.dao.DocumentDAO;
+import com.logicaldoc.core.folder.Folder;
+import com.logicaldoc.core.folder.FolderDAO;
+import com.logicaldoc.util.io.FileUtil;
+
+import junit.framework.Assert;
+
+/**
+ * Test case for <code>InMemoryZipImport</code>
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class InMemoryZipImportTest extends AbstractCoreTCase {
+
+	@Test
+	public void testProcess() throws PersistenceException, IOException {
+		DocumentDAO docDao = (DocumentDAO) context.getBean("DocumentDAO");
+		FolderDAO folderDao = (FolderDAO) context.getBean("FolderDAO");
+
+		File zip = File.createTempFile("import", ".zip");
+		try {
+			try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(zip)) {
+				zos.putArchiveEntry(new ZipArchiveEntry("sub/"));
+				zos.closeArchiveEntry();
+				for (String name : new String[] { "a.txt", "sub/b.txt", "sub/d.txt", "sub/deeper/c.txt" }) {
+					zos.putArchiveEntry(new ZipArchiveEntry(name));
+					zos.write(("content of " + name).getBytes(StandardCharsets.UTF_8));
+					zos.closeArchiveEntry();
+				}
+			}
+
+			Document docVo = docDao.findById(1);
+			docDao.initialize(docVo);
+			Folder parent = folderDao.findById(6);
+
+			InMemoryZipImport importer = new InMemoryZipImport(docVo, "UTF-8");
+			importer.setNotifyUser(false);
+			importer.process(zip, parent, 1L, null);
+
+			Assert.assertTrue(importer.getErrors().toString(), importer.getErrors().isEmpty());
+			Assert.assertEquals(4, importer.getImported());
+
+			List<Folder> subs = folderDao.findByName(parent, "sub", parent.getTenantId(), true);
+			Assert.assertEquals(1, subs.size());
+			Folder sub = subs.get(0);
+			Assert.assertEquals(2, docDao.findByFolder(sub.getId(), null).size());
+
+			List<Folder> deepers = folderDao.findByName(sub, "deeper", parent.getTenantId(), true);
+			Assert.assertEquals(1, deepers.size());
+			Assert.assertEquals("c.txt", docDao.findByFolder(deepers.get(0).getId(), null).get(0).getFileName());
+		} finally {
+			FileUtil.strongDelete(zip);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.logicaldoc.core.transfer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.logicaldoc.core.AbstractCoreTCase;
+import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.core.document.DocumentHistory;
+import com.logicaldoc.core.store.Storer;
+
+import junit.framework.Assert;
+
+/**
+ * Test case for <code>ZipExport</code>
+ * 
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class ZipExportTest extends AbstractCoreTCase {
+
+	@Test
+	public void testProcessDocuments() throws PersistenceException, IOException {
+		Storer storer = (Storer) context.getBean("Storer");
+
+		DocumentHistory transaction = new DocumentHistory();
+		transaction.setUserId(1L);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZipExport export = new ZipExport();
+		export.process(new Long[] { 1L, 3L }, out, false, transaction);
+
+		Map<String, Long> entries = new HashMap<>();
+		try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			ZipEntry entry;
+			while ((entry = zis.getNextEntry()) != null)
+				entries.put(entry.getName(), IOUtils.skip(zis, Long.MAX_VALUE));
+		}
+
+		Assert.assertEquals(2, entries.size());
+		Assert.assertEquals(Long.valueOf(storer.size(1L, "1.0")), entries.get("pippo.pdf"));
+		Assert.assertEquals(Long.valueOf(storer.size(3L, "1.3")), entries.get("pluto.pdf"));
+	}
+
+	@Test
+	public void testProcessOutputError() throws PersistenceException {
+		DocumentHistory transaction = new DocumentHistory();
+		transaction.setUserId(1L);
+
+		OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Connection reset");
+			}
+		};
+
+		// An error writing the archive aborts the export
+		ZipExport export = new ZipExport();
+		try {
+			export.process(new Long[] { 1L, 3L }, out, false, transaction);
+			Assert.fail("The export should have been aborted");
+		} catch (IOException e) {
+			// All ok
+		}
+	}
+}
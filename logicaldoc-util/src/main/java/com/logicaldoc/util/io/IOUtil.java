@@ -6,10 +6,17 @@ import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.StandardCopyOption;
 
 public class IOUtil {
@@ -54,6 +61,82 @@ public class IOUtil {
 		}
 	}
 
+	/**
+	 * Writes the content of a channel, starting from its current position, in
+	 * an output stream. Only the bytes after the position get read, so a
+	 * <code>FileChannel</code> serves any range at the same cost. The bytes
+	 * are copied through a buffer, unless the output is a
+	 * <code>FileOutputStream</code>, see
+	 * {@link #write(ReadableByteChannel, WritableByteChannel, long)}.
+	 * 
+	 * @param input the channel to read
+	 * @param output the stream to write
+	 * @param length maximum number of bytes to write, a negative value means
+	 *        until the end of the channel
+	 * 
+	 * @return number of bytes actually written
+	 * 
+	 * @throws IOException error reading or writing
+	 */
+	public static long write(ReadableByteChannel input, OutputStream output, long length) throws IOException {
+		if (output instanceof FileOutputStream)
+			return write(input, ((FileOutputStream) output).getChannel(), length);
+		return write(input, Channels.newChannel(output), length);
+	}
+
+	/**
+	 * Writes the content of a channel, starting from its current position, in
+	 * another channel. When the input is a <code>FileChannel</code> and the
+	 * output a <code>FileChannel</code> or a <code>SocketChannel</code>, the
+	 * copy is done with {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+	 * that the operating system can perform without copying the bytes in the
+	 * heap. With any other output the JDK would fall back to a small buffer,
+	 * so the bytes are copied through a larger one.
+	 * 
+	 * @param input the channel to read
+	 * @param output the channel to write
+	 * @param length maximum number of bytes to write, a negative value means
+	 *        until the end of the channel
+	 * 
+	 * @return number of bytes actually written
+	 * 
+	 * @throws IOException error reading or writing
+	 */
+	public static long write(ReadableByteChannel input, WritableByteChannel output, long length)
+			throws IOException {
+		long count = 0;
+
+		if (input instanceof FileChannel && (output instanceof FileChannel || output instanceof SocketChannel)) {
+			FileChannel file = (FileChannel) input;
+			long position = file.position();
+			long available = Math.max(0L, file.size() - position);
+			long total = length < 0 ? available : Math.min(length, available);
+			while (count < total) {
+				long transferred = file.transferTo(position + count, total - count, output);
+				if (transferred <= 0)
+					break;
+				count += transferred;
+			}
+			file.position(position + count);
+			return count;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE * 6);
+		while (length < 0 || count < length) {
+			if (length >= 0 && length - count < buffer.capacity())
+				buffer.limit((int) (length - count));
+			int read = input.read(buffer);
+			if (read == -1)
+				break;
+			buffer.flip();
+			while (buffer.hasRemaining())
+				output.write(buffer);
+			buffer.clear();
+			count += read;
+		}
+		return count;
+	}
+
 	public static void write(InputStream input, File output) throws IOException {
 		java.nio.file.Files.copy(input, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
 	}
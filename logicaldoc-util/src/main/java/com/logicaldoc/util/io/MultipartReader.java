@@ -0,0 +1,362 @@
+package com.logicaldoc.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming parser of a <code>multipart/*</code> body (RFC 2046). The parts
+ * are returned one after the other and the content of each part is read
+ * straight from the underlying stream, so the body is never buffered in memory
+ * or on disk: only a window of a few kilobytes is kept to spot the boundary.
+ * The content of a part must be consumed before asking for the next one, the
+ * part not read is simply skipped.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class MultipartReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int MAX_HEADERS_SIZE = 16 * 1024;
+
+	private final InputStream in;
+
+	/**
+	 * The delimiter between the parts: CRLF--boundary
+	 */
+	private final byte[] delimiter;
+
+	private final byte[] buffer;
+
+	private int pos = 0;
+
+	private int limit = 0;
+
+	private boolean eof = false;
+
+	private boolean finished = false;
+
+	private PartInputStream current;
+
+	/**
+	 * Constructor
+	 *
+	 * @param in the body to read
+	 * @param boundary the boundary as declared in the content type
+	 */
+	public MultipartReader(InputStream in, String boundary) {
+		if (boundary == null || boundary.isEmpty())
+			throw new IllegalArgumentException("No multipart boundary");
+		this.in = in;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+
+		// The first boundary is not preceded by a line break
+		buffer[0] = '\r';
+		buffer[1] = '\n';
+		limit = 2;
+
+		// Whatever comes before the first boundary is a preamble to ignore
+		current = new PartInputStream();
+	}
+
+	/**
+	 * Extracts the boundary from a content type like
+	 * <code>multipart/form-data; boundary=----abc</code>
+	 *
+	 * @param contentType the content type header
+	 *
+	 * @return the boundary or null if not declared
+	 */
+	public static String getBoundary(String contentType) {
+		if (contentType == null)
+			return null;
+		return parseParameters(contentType).get("boundary");
+	}
+
+	/**
+	 * Moves to the next part, skipping what is left of the current one
+	 *
+	 * @return the next part or null if there are no more parts
+	 *
+	 * @throws IOException if the stream cannot be read or it is not a valid
+	 *         multipart
+	 */
+	public Part next() throws IOException {
+		if (finished)
+			return null;
+
+		// Skip what is left of the current part
+		if (current != null) {
+			current.skipAll();
+			current = null;
+		}
+
+		// Here we are at the delimiter
+		pos += delimiter.length;
+		if (!fill(2))
+			throw new IOException("Unexpected end of the multipart stream");
+		if (buffer[pos] == '-' && buffer[pos + 1] == '-') {
+			finished = true;
+			return null;
+		}
+
+		// Skip the padding and the line break after the boundary
+		String line = readLine();
+		if (!line.trim().isEmpty())
+			throw new IOException("Invalid multipart boundary line");
+
+		Map<String, String> headers = new LinkedHashMap<>();
+		int headersSize = 0;
+		while (!(line = readLine()).isEmpty()) {
+			headersSize += line.length();
+			if (headersSize > MAX_HEADERS_SIZE)
+				throw new IOException("Multipart headers too large");
+			int colon = line.indexOf(':');
+			if (colon > 0)
+				headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH),
+						line.substring(colon + 1).trim());
+		}
+
+		current = new PartInputStream();
+		return new Part(headers, current);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Makes sure that the buffer contains at least the given number of bytes
+	 * after the current position
+	 *
+	 * @return false if the end of the stream has been reached before
+	 */
+	private boolean fill(int minimum) throws IOException {
+		if (limit - pos >= minimum)
+			return true;
+
+		if (pos > 0) {
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+
+		while (limit < minimum && !eof) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read < 0)
+				eof = true;
+			else
+				limit += read;
+		}
+		return limit - pos >= minimum;
+	}
+
+	private String readLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		while (true) {
+			if (!fill(1))
+				throw new IOException("Unexpected end of the multipart stream");
+			byte b = buffer[pos++];
+			if (b == '\n')
+				break;
+			if (line.size() > MAX_HEADERS_SIZE)
+				throw new IOException("Multipart header line too long");
+			line.write(b);
+		}
+
+		byte[] bytes = line.toByteArray();
+		int length = bytes.length;
+		if (length > 0 && bytes[length - 1] == '\r')
+			length--;
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Searches the delimiter in the buffered bytes
+	 *
+	 * @return index of the delimiter or -1 if not found
+	 */
+	private int indexOfDelimiter() {
+		int last = limit - delimiter.length;
+		outer: for (int i = pos; i <= last; i++) {
+			for (int j = 0; j < delimiter.length; j++)
+				if (buffer[i + j] != delimiter[j])
+					continue outer;
+			return i;
+		}
+		return -1;
+	}
+
+	static Map<String, String> parseParameters(String header) {
+		Map<String, String> parameters = new LinkedHashMap<>();
+		int i = header.indexOf(';');
+		while (i >= 0 && i < header.length()) {
+			int eq = header.indexOf('=', i);
+			if (eq < 0)
+				break;
+			int next = header.indexOf(';', i + 1);
+			if (next >= 0 && next < eq) {
+				// A parameter without value
+				i = next;
+				continue;
+			}
+			String name = header.substring(i + 1, eq).trim().toLowerCase(Locale.ENGLISH);
+
+			StringBuilder value = new StringBuilder();
+			int j = eq + 1;
+			while (j < header.length() && header.charAt(j) == ' ')
+				j++;
+			if (j < header.length() && header.charAt(j) == '"') {
+				for (j++; j < header.length() && header.charAt(j) != '"'; j++) {
+					if (header.charAt(j) == '\\' && j + 1 < header.length())
+						j++;
+					value.append(header.charAt(j));
+				}
+				j = header.indexOf(';', j);
+			} else {
+				int end = header.indexOf(';', j);
+				value.append(header.substring(j, end < 0 ? header.length() : end).trim());
+				j = end;
+			}
+
+			parameters.put(name, value.toString());
+			i = j;
+		}
+		return parameters;
+	}
+
+	/**
+	 * A single part of the multipart
+	 */
+	public static class Part {
+
+		private final Map<String, String> headers;
+
+		private final InputStream inputStream;
+
+		private final Map<String, String> disposition;
+
+		Part(Map<String, String> headers, InputStream inputStream) {
+			this.headers = Collections.unmodifiableMap(headers);
+			this.inputStream = inputStream;
+			String contentDisposition = headers.get("content-disposition");
+			this.disposition = contentDisposition != null ? parseParameters(contentDisposition)
+					: Collections.emptyMap();
+		}
+
+		/**
+		 * Gets the headers of the part
+		 *
+		 * @return the headers, names are in lower case
+		 */
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		public String getHeader(String name) {
+			return headers.get(name.toLowerCase(Locale.ENGLISH));
+		}
+
+		/**
+		 * Gets the name of the form field
+		 *
+		 * @return the name declared in the Content-Disposition
+		 */
+		public String getName() {
+			return disposition.get("name");
+		}
+
+		public String getFileName() {
+			return disposition.get("filename");
+		}
+
+		public String getContentType() {
+			return getHeader("content-type");
+		}
+
+		/**
+		 * Gets the content of the part, valid until the next part is requested
+		 *
+		 * @return the stream of the content
+		 */
+		public InputStream getInputStream() {
+			return inputStream;
+		}
+	}
+
+	/**
+	 * Reads the content of the current part, up to the next delimiter
+	 */
+	private class PartInputStream extends InputStream {
+
+		private boolean ended = false;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int read = read(b, 0, 1);
+			return read < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (ended || current != this)
+				return -1;
+			if (len == 0)
+				return 0;
+
+			fill(delimiter.length);
+			int index = indexOfDelimiter();
+
+			int available;
+			if (index >= 0) {
+				available = index - pos;
+			} else if (eof) {
+				throw new IOException("Unexpected end of the multipart stream");
+			} else {
+				// The tail of the buffer may be the beginning of a delimiter
+				available = limit - pos - (delimiter.length - 1);
+			}
+
+			if (available == 0 && index >= 0) {
+				ended = true;
+				return -1;
+			}
+
+			int count = Math.min(len, available);
+			System.arraycopy(buffer, pos, b, off, count);
+			pos += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			int index = indexOfDelimiter();
+			if (index >= 0)
+				return index - pos;
+			return Math.max(0, limit - pos - (delimiter.length - 1));
+		}
+
+		void skipAll() throws IOException {
+			byte[] skip = new byte[8192];
+			while (read(skip, 0, skip.length) >= 0) {
+				// Discard
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			// The underlying stream is closed by the reader
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.logicaldoc.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IOUtilTest {
+
+	@Test
+	public void testWriteChannel() throws IOException {
+		byte[] content = new byte[200000];
+		for (int i = 0; i < content.length; i++)
+			content[i] = (byte) i;
+
+		File file = File.createTempFile("ioutil", ".bin");
+		File copy = File.createTempFile("ioutil", ".copy");
+		try {
+			Files.write(file.toPath(), content);
+
+			// Range from a file channel
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				channel.position(150000);
+				Assert.assertEquals(1000L, IOUtil.write(channel, out, 1000L));
+				Assert.assertEquals(151000L, channel.position());
+			}
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(content, 150000, 151000), out.toByteArray()));
+
+			// Until the end of the file
+			out = new ByteArrayOutputStream();
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				channel.position(199000);
+				Assert.assertEquals(1000L, IOUtil.write(channel, out, 5000L));
+			}
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(content, 199000, 200000), out.toByteArray()));
+
+			// From file to file
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					FileOutputStream fos = new FileOutputStream(copy)) {
+				channel.position(100000);
+				Assert.assertEquals(100000L, IOUtil.write(channel, fos, -1L));
+			}
+			Assert.assertTrue(
+					Arrays.equals(Arrays.copyOfRange(content, 100000, 200000), Files.readAllBytes(copy.toPath())));
+		} finally {
+			FileUtil.strongDelete(file);
+			FileUtil.strongDelete(copy);
+		}
+
+		// Generic channel
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(70000L, IOUtil.write(Channels.newChannel(new ByteArrayInputStream(content)), out, 70000L));
+		Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(content, 0, 70000), out.toByteArray()));
+
+		out = new ByteArrayOutputStream();
+		Assert.assertEquals(200000L, IOUtil.write(Channels.newChannel(new ByteArrayInputStream(content)), out, -1L));
+		Assert.assertTrue(Arrays.equals(content, out.toByteArray()));
+	}
+}
@@ -0,0 +1,100 @@
+package com.logicaldoc.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultipartReaderTest {
+
+	private static final String BOUNDARY = "----abc123";
+
+	@Test
+	public void testGetBoundary() {
+		Assert.assertEquals(BOUNDARY, MultipartReader.getBoundary("multipart/form-data; boundary=" + BOUNDARY));
+		Assert.assertEquals("a b", MultipartReader.getBoundary("multipart/mixed; charset=UTF-8; boundary=\"a b\""));
+		Assert.assertNull(MultipartReader.getBoundary("application/json"));
+		Assert.assertNull(MultipartReader.getBoundary(null));
+	}
+
+	@Test
+	public void testNext() throws IOException {
+		// A binary content longer than the buffer that contains pieces of the
+		// boundary
+		byte[] binary = new byte[200000];
+		for (int i = 0; i < binary.length; i++)
+			binary[i] = (byte) i;
+		byte[] trap = ("\r\n--" + BOUNDARY.substring(0, 5)).getBytes(StandardCharsets.ISO_8859_1);
+		System.arraycopy(trap, 0, binary, 65530, trap.length);
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write("preamble to ignore\r\n".getBytes(StandardCharsets.ISO_8859_1));
+		writePart(body, "form-data; name=\"document\"", "application/json",
+				"{\"fileName\":\"a.txt\"}".getBytes(StandardCharsets.UTF_8));
+		writePart(body, "form-data; name=\"content\"; filename=\"caffè.bin\"", "application/octet-stream", binary);
+		writePart(body, "form-data; name=\"skipped\"", null, "not read".getBytes(StandardCharsets.UTF_8));
+		writePart(body, "form-data; name=\"empty\"", null, new byte[0]);
+		body.write(("--" + BOUNDARY + "--\r\nepilogue").getBytes(StandardCharsets.ISO_8859_1));
+
+		// Feed the reader with small chunks, like a network stream
+		InputStream in = new ByteArrayInputStream(body.toByteArray()) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1000));
+			}
+		};
+
+		try (MultipartReader reader = new MultipartReader(in, BOUNDARY)) {
+			MultipartReader.Part part = reader.next();
+			Assert.assertEquals("document", part.getName());
+			Assert.assertNull(part.getFileName());
+			Assert.assertEquals("application/json", part.getContentType());
+			Assert.assertEquals("{\"fileName\":\"a.txt\"}",
+					IOUtils.toString(part.getInputStream(), StandardCharsets.UTF_8));
+
+			part = reader.next();
+			Assert.assertEquals("content", part.getName());
+			Assert.assertEquals("caffè.bin", part.getFileName());
+			Assert.assertTrue(Arrays.equals(binary, IOUtils.toByteArray(part.getInputStream())));
+
+			part = reader.next();
+			Assert.assertEquals("skipped", part.getName());
+
+			part = reader.next();
+			Assert.assertEquals("empty", part.getName());
+			Assert.assertEquals(-1, part.getInputStream().read());
+
+			Assert.assertNull(reader.next());
+			Assert.assertNull(reader.next());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"content\"\r\n\r\ntruncated")
+				.getBytes(StandardCharsets.ISO_8859_1));
+
+		try (MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body.toByteArray()), BOUNDARY)) {
+			IOUtils.toByteArray(reader.next().getInputStream());
+		}
+	}
+
+	private static void writePart(ByteArrayOutputStream body, String disposition, String contentType, byte[] content)
+			throws IOException {
+		StringBuilder headers = new StringBuilder("--" + BOUNDARY + "\r\n");
+		headers.append("Content-Disposition: " + disposition + "\r\n");
+		if (contentType != null)
+			headers.append("Content-Type: " + contentType + "\r\n");
+		headers.append("\r\n");
+		body.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+		body.write(content);
+		body.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+	}
+}
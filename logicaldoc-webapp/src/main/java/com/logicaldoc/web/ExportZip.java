@@ -1,10 +1,17 @@
 package com.logicaldoc.web;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -13,6 +20,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
 
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.document.Document;
@@ -25,6 +34,7 @@ import com.logicaldoc.core.folder.FolderHistory;
 import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.transfer.ZipExport;
 import com.logicaldoc.util.Context;
+import com.logicaldoc.util.io.FileUtil;
 import com.logicaldoc.web.util.ServletUtil;
 
 /**
@@ -69,49 +79,141 @@ public class ExportZip extends HttpServlet {
 				exporter.setAllLevel(true);
 			}
 
-			try (ByteArrayOutputStream bos = getZipFileOutputStream(session, folderId, docIds, exporter)) {
-				String exportName = getExportName(folderId);
+			String exportName = getExportName(folderId);
 
-				response.setContentType("application/zip");
-				response.setContentLength(bos.size());
-				response.setHeader("Content-Disposition", "attachment; filename=\"" + exportName + ".zip\"");
+			String range = request.getHeader("Range");
+			if (range != null) {
+				/*
+				 * The client is resuming an interrupted download, so the archive
+				 * is spilled in a temporary file to serve the requested range.
+				 * The archive is reproducible, so the entity tag tells if it is
+				 * still the same one. The history is recorded just once.
+				 */
+				String eTag = getETag(session, folderId, docIds, level);
+				exporter.setSaveHistory(range.replace(" ", "").startsWith("bytes=0-"));
+				File tmp = FileUtil.createTempFile("export", ".zip");
+				try {
+					try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+						export(session, folderId, docIds, exporter, os);
+					}
+					ServletUtil.downloadFileRange(request, response, tmp, exportName + ".zip", eTag);
+				} finally {
+					FileUtil.strongDelete(tmp);
+				}
+				return;
+			}
 
-				// Headers required by MS Internet Explorer
-				response.setHeader("Pragma", "public");
-				response.setHeader("Cache-Control", "must-revalidate, post-check=0,pre-check=0");
-				response.setHeader("Expires", "0");
+			response.setContentType("application/zip");
+			response.setHeader("Content-Disposition", "attachment; filename=\"" + exportName + ".zip\"");
+			response.setHeader("Accept-Ranges", "bytes");
 
-				try (OutputStream os = response.getOutputStream()) {
-					bos.flush();
-					os.write(bos.toByteArray());
-					os.flush();
-				}
+			// Headers required by MS Internet Explorer
+			response.setHeader("Pragma", "public");
+			response.setHeader("Cache-Control", "must-revalidate, post-check=0,pre-check=0");
+			response.setHeader("Expires", "0");
+
+			// The archive is streamed while it is produced
+			try (OutputStream os = response.getOutputStream()) {
+				export(session, folderId, docIds, exporter, os);
+				os.flush();
 			}
 		} catch (Throwable e) {
 			log.error(e.getMessage(), e);
 		}
 	}
 
-	private ByteArrayOutputStream getZipFileOutputStream(Session session, String folderId, ArrayList<Long> docIds,
-			ZipExport exporter) throws PersistenceException {
-		ByteArrayOutputStream bos = null;
-
-		if (docIds != null && docIds.size() > 0) {
+	private void export(Session session, String folderId, ArrayList<Long> docIds, ZipExport exporter,
+			OutputStream out) throws PersistenceException, IOException {
+		if (docIds != null && !docIds.isEmpty()) {
 			// Create the document history event
 			DocumentHistory transaction = new DocumentHistory();
 			transaction.setSessionId(session.getSid());
 			transaction.setEvent(DocumentEvent.DOWNLOADED.toString());
 			transaction.setSession(session);
 
-			bos = exporter.process(docIds.toArray(new Long[0]), false, transaction);
+			exporter.process(docIds.toArray(new Long[0]), out, false, transaction);
 		} else {
 			FolderHistory transaction = new FolderHistory();
 			transaction.setFolderId(Long.parseLong(folderId));
 			transaction.setSession(session);
 
-			bos = exporter.process(transaction, false);
+			exporter.process(transaction, out, false);
+		}
+	}
+
+	/**
+	 * Computes the entity tag of the archive. It changes when the documents
+	 * that go in the archive, their contents or the permissions may have
+	 * changed, so a download is never resumed on a different archive.
+	 * 
+	 * @param session the current session
+	 * @param folderId the exported folder, if any
+	 * @param docIds the exported documents, if any
+	 * @param level the depth of the folder export
+	 * 
+	 * @return the entity tag
+	 * 
+	 * @throws PersistenceException Error in the database
+	 */
+	@SuppressWarnings("unchecked")
+	private String getETag(Session session, String folderId, ArrayList<Long> docIds, String level)
+			throws PersistenceException {
+		DocumentDAO docDao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
+		FolderDAO folderDao = (FolderDAO) Context.get().getBean(FolderDAO.class);
+
+		StringBuilder signature = new StringBuilder(session.getUserId() + "-" + level + "-" + folderId + "-" + docIds);
+		if (docIds != null && !docIds.isEmpty()) {
+			List<? extends Collection<Long>> idSets = Collections.singletonList(docIds);
+			appendSignature(signature, docDao.queryWithIds(
+					"select count(ld_id), sum(ld_recordversion), max(ld_lastmodified) from ld_document where ld_id in ({ids0})",
+					null, idSets, new SignatureMapper(), null));
+
+			// The policies of the folders of the documents
+			appendSignature(signature, folderDao.queryWithIds(
+					"select count(*), sum(ld_folderid), sum(ld_groupid), sum(ld_download) from ld_foldergroup where ld_folderid in (select coalesce(F.ld_securityref, F.ld_id) from ld_folder F, ld_document D where D.ld_folderid = F.ld_id and D.ld_id in ({ids0}))",
+					null, idSets, new SignatureMapper(), null));
+		} else {
+			Folder folder = folderDao.findFolder(Long.parseLong(folderId));
+			String path = "/".equals(folder.getPath()) ? "" : folder.getPath();
+			Object[] args = new Object[] { folder.getTenantId(), folder.getId(), path + "/%" };
+			appendSignature(signature, docDao.queryForRowSet(
+					"select count(D.ld_id), sum(D.ld_recordversion), max(D.ld_lastmodified) from ld_document D, ld_folder F where D.ld_folderid = F.ld_id and F.ld_deleted = 0 and D.ld_deleted = 0 and D.ld_tenantid = ? and (D.ld_folderid = ? or F.ld_path like ?)",
+					args, null));
+			appendSignature(signature, folderDao.queryForRowSet(
+					"select count(ld_id), sum(ld_recordversion), sum(ld_securityref), max(ld_lastmodified) from ld_folder where ld_deleted = 0 and ld_tenantid = ? and (ld_id = ? or ld_path like ?)",
+					args, null));
+
+			// The policies of the exported folders
+			appendSignature(signature, folderDao.queryForRowSet(
+					"select count(*), sum(ld_folderid), sum(ld_groupid), sum(ld_download) from ld_foldergroup where ld_folderid in (select coalesce(ld_securityref, ld_id) from ld_folder where ld_deleted = 0 and ld_tenantid = ? and (ld_id = ? or ld_path like ?))",
+					args, null));
+		}
+
+		return "\"" + FileUtil.computeDigest(signature.toString()) + "\"";
+	}
+
+	private static void appendSignature(StringBuilder signature, SqlRowSet rs) {
+		if (rs.next())
+			for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++)
+				signature.append("/" + rs.getString(i));
+	}
+
+	private static void appendSignature(StringBuilder signature, List<String> rows) {
+		for (String row : rows)
+			signature.append(row);
+	}
+
+	/**
+	 * Concatenates the columns of a row
+	 */
+	private static class SignatureMapper implements RowMapper<String> {
+		@Override
+		public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+			StringBuilder row = new StringBuilder();
+			for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++)
+				row.append("/" + rs.getString(i));
+			return row.toString();
 		}
-		return bos;
 	}
 
 	private String getExportName(String folderId) throws PersistenceException {
@@ -1,13 +1,18 @@
 package com.logicaldoc.web.data;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -15,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.security.Session;
+import com.logicaldoc.util.Context;
 import com.logicaldoc.util.LocaleUtil;
 import com.logicaldoc.web.util.ServletUtil;
 
@@ -31,8 +37,10 @@ public abstract class AbstractDataServlet extends HttpServlet {
 	protected static Logger log = LoggerFactory.getLogger(AbstractDataServlet.class);
 
 	protected static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSXXX";
-	
-	
+
+	private static final ThreadLocal<DateFormat> dateFormat = ThreadLocal
+			.withInitial(() -> new SimpleDateFormat(DATE_FORMAT));
+
 	public AbstractDataServlet() {
 
 	}
@@ -40,10 +48,36 @@ public abstract class AbstractDataServlet extends HttpServlet {
 	protected boolean isSessionRequired() {
 		return true;
 	}
-	
+
+	/**
+	 * Gets the format of the dates, the same instance is reused by all the
+	 * requests served by the current thread
+	 * 
+	 * @return the date format
+	 */
 	protected DateFormat getDateFormat() {
-		DateFormat df = new SimpleDateFormat(DATE_FORMAT);
-		return df;
+		return dateFormat.get();
+	}
+
+	/**
+	 * Creates a writer of the records that streams into the response, in JSON
+	 * if the request specifies <b>format=json</b>, otherwise in XML
+	 * 
+	 * @param request the servlet request
+	 * @param response the servlet response
+	 * 
+	 * @return the data writer
+	 * 
+	 * @throws IOException error opening the response's writer
+	 */
+	protected DataWriter getDataWriter(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		return new DataWriter(response.getWriter(), getFormat(request));
+	}
+
+	private static DataWriter.Format getFormat(HttpServletRequest request) {
+		return "json".equalsIgnoreCase(request.getParameter("format")) ? DataWriter.Format.JSON
+				: DataWriter.Format.XML;
 	}
 	
 	/**
@@ -56,8 +90,10 @@ public abstract class AbstractDataServlet extends HttpServlet {
 	 */
 	@Override
 	protected void service(HttpServletRequest request, HttpServletResponse response) {
+		GZipResponse gzipResponse = null;
 		try {
-			response.setContentType("text/xml");
+			response.setContentType(
+					getFormat(request) == DataWriter.Format.JSON ? "application/json" : "text/xml");
 			response.setCharacterEncoding("UTF-8");
 
 			// Avoid resource caching
@@ -75,13 +111,26 @@ public abstract class AbstractDataServlet extends HttpServlet {
 
 			Session session = isSessionRequired() ? ServletUtil.validateSession(request) : null;
 
-			service(request, response, session, max, locale);
+			if (acceptsGzip(request)) {
+				gzipResponse = new GZipResponse(response);
+				service(request, gzipResponse, session, max, locale);
+				gzipResponse.finish();
+			} else {
+				service(request, response, session, max, locale);
+			}
 		} catch (NumberFormatException | PersistenceException | IOException e) {
 			log.error(e.getMessage(), e);
-			ServletUtil.sendError(response, e.getMessage());
+			if (gzipResponse == null || !gzipResponse.isCommitted())
+				ServletUtil.sendError(response, e.getMessage());
 		}
 	}
 
+	private static boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		return acceptEncoding != null && ServletUtil.accepts(acceptEncoding, "gzip")
+				&& Context.get().getProperties().getBoolean("gui.data.gzip", true);
+	}
+
 	/**
 	 * Concrete implementations of this method should build her the XML
 	 * structure to return to the client
@@ -97,4 +146,50 @@ public abstract class AbstractDataServlet extends HttpServlet {
 	 */
 	protected abstract void service(HttpServletRequest request, HttpServletResponse response, Session session,
 			Integer max, Locale locale) throws PersistenceException, IOException;
+
+	/**
+	 * A response that compresses with GZip everything is written in its
+	 * writer
+	 * 
+	 * @author Marco Meschieri - LogicalDOC
+	 * @since 8.8.4
+	 */
+	private static class GZipResponse extends HttpServletResponseWrapper {
+
+		private GZIPOutputStream gzip;
+
+		private PrintWriter writer;
+
+		public GZipResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				setHeader("Content-Encoding", "gzip");
+				addHeader("Vary", "Accept-Encoding");
+				gzip = new GZIPOutputStream(getResponse().getOutputStream(), 8192);
+				writer = new PrintWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), false);
+			}
+			return writer;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null)
+				writer.flush();
+			super.flushBuffer();
+		}
+
+		/**
+		 * Completes the compressed stream
+		 */
+		public void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+				gzip.finish();
+			}
+		}
+	}
 }
@@ -0,0 +1,294 @@
+package com.logicaldoc.web.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Streams the records of a data servlet directly into the response writer,
+ * without building intermediate strings. The output can be the XML
+ * structure read by the GUI's data sources or the equivalent JSON array.
+ * Instances are not thread-safe and must be used for a single response.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class DataWriter {
+
+	/**
+	 * Thread-safe formatter of the dates, same pattern of
+	 * {@link AbstractDataServlet#DATE_FORMAT}
+	 */
+	public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter
+			.ofPattern(AbstractDataServlet.DATE_FORMAT).withZone(ZoneId.systemDefault());
+
+	private static final String CDATA_START = "<![CDATA[";
+
+	private static final String CDATA_END = "]]>";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public enum Format {
+		XML, JSON
+	}
+
+	private final Writer out;
+
+	private final Format format;
+
+	/**
+	 * Tells if the next record or field is the first one of its container,
+	 * used to separate the JSON elements
+	 */
+	private boolean first = true;
+
+	public DataWriter(Writer out, Format format) {
+		this.out = out;
+		this.format = format;
+	}
+
+	public DataWriter(Writer out) {
+		this(out, Format.XML);
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public DataWriter startList() throws IOException {
+		out.write(format == Format.JSON ? "[" : "<list>");
+		first = true;
+		return this;
+	}
+
+	public DataWriter endList() throws IOException {
+		out.write(format == Format.JSON ? "]" : "</list>");
+		out.flush();
+		return this;
+	}
+
+	/**
+	 * Opens a new record
+	 *
+	 * @param name name of the record's element, ignored in JSON
+	 *
+	 * @return this writer
+	 *
+	 * @throws IOException error writing the output
+	 */
+	public DataWriter startRecord(String name) throws IOException {
+		if (format == Format.JSON) {
+			if (!first)
+				out.write(',');
+			out.write('{');
+		} else {
+			openTag(name);
+		}
+		first = true;
+		return this;
+	}
+
+	public DataWriter endRecord(String name) throws IOException {
+		if (format == Format.JSON)
+			out.write('}');
+		else
+			closeTag(name);
+		first = false;
+		return this;
+	}
+
+	/**
+	 * Writes a field whose value does not need to be escaped, like numbers
+	 * and booleans. Null values are written as empty elements.
+	 *
+	 * @param name name of the field
+	 * @param value the value
+	 *
+	 * @return this writer
+	 *
+	 * @throws IOException error writing the output
+	 */
+	public DataWriter field(String name, Object value) throws IOException {
+		if (format == Format.JSON) {
+			fieldName(name);
+			if (value instanceof Number || value instanceof Boolean)
+				out.write(value.toString());
+			else
+				jsonString(value);
+		} else {
+			openTag(name);
+			if (value != null)
+				xmlText(value);
+			closeTag(name);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a textual field, in XML the value is enclosed in a CDATA section.
+	 * Null values are written as empty strings.
+	 *
+	 * @param name name of the field
+	 * @param value the value
+	 *
+	 * @return this writer
+	 *
+	 * @throws IOException error writing the output
+	 */
+	public DataWriter text(String name, Object value) throws IOException {
+		if (format == Format.JSON) {
+			fieldName(name);
+			jsonString(value);
+		} else {
+			openTag(name);
+			out.write(CDATA_START);
+			if (value != null)
+				cdata(value instanceof CharSequence ? (CharSequence) value : value.toString());
+			out.write(CDATA_END);
+			closeTag(name);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a date field formatted with {@link #DATE_FORMATTER}. Null dates
+	 * are not written at all.
+	 *
+	 * @param name name of the field
+	 * @param date the date
+	 *
+	 * @return this writer
+	 *
+	 * @throws IOException error writing the output
+	 */
+	public DataWriter date(String name, Date date) throws IOException {
+		if (date == null)
+			return this;
+
+		if (format == Format.JSON) {
+			fieldName(name);
+			out.write('"');
+		} else {
+			openTag(name);
+		}
+
+		// java.sql.Date does not support toInstant()
+		DATE_FORMATTER.formatTo(Instant.ofEpochMilli(date.getTime()), out);
+
+		if (format == Format.JSON)
+			out.write('"');
+		else
+			closeTag(name);
+		return this;
+	}
+
+	private void openTag(String name) throws IOException {
+		out.write('<');
+		out.write(name);
+		out.write('>');
+	}
+
+	private void closeTag(String name) throws IOException {
+		out.write("</");
+		out.write(name);
+		out.write('>');
+	}
+
+	private void fieldName(String name) throws IOException {
+		if (!first)
+			out.write(',');
+		first = false;
+		out.write('"');
+		out.write(name);
+		out.write("\":");
+	}
+
+	/**
+	 * Writes the content of a CDATA section, a nested <code>]]&gt;</code> is
+	 * split in two sections
+	 */
+	private void cdata(CharSequence value) throws IOException {
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length - 2; i++) {
+			if (value.charAt(i) == ']' && value.charAt(i + 1) == ']' && value.charAt(i + 2) == '>') {
+				out.append(value, start, i + 2);
+				out.write(CDATA_END);
+				out.write(CDATA_START);
+				start = i + 2;
+			}
+		}
+		out.append(value, start, length);
+	}
+
+	private void xmlText(Object value) throws IOException {
+		CharSequence text = value instanceof CharSequence ? (CharSequence) value : value.toString();
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			String entity = null;
+			switch (text.charAt(i)) {
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			case '&':
+				entity = "&amp;";
+				break;
+			default:
+				break;
+			}
+			if (entity != null) {
+				out.append(text, start, i);
+				out.write(entity);
+				start = i + 1;
+			}
+		}
+		out.append(text, start, length);
+	}
+
+	private void jsonString(Object value) throws IOException {
+		out.write('"');
+		if (value != null) {
+			CharSequence text = value instanceof CharSequence ? (CharSequence) value : value.toString();
+			int start = 0;
+			int length = text.length();
+			for (int i = 0; i < length; i++) {
+				char c = text.charAt(i);
+				if (c != '"' && c != '\\' && c >= 0x20)
+					continue;
+
+				out.append(text, start, i);
+				start = i + 1;
+				switch (c) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					out.write("\\u00");
+					out.write(HEX[c >> 4]);
+					out.write(HEX[c & 0xF]);
+				}
+			}
+			out.append(text, start, length);
+		}
+		out.write('"');
+	}
+}
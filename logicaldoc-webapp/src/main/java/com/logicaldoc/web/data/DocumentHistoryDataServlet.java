@@ -1,8 +1,6 @@
 package com.logicaldoc.web.data;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.DateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +34,8 @@ public class DocumentHistoryDataServlet extends AbstractDataServlet {
 
 	private static final String EVENT = "event";
 
+	private static final String HISTORY = "history";
+
 	private static final String DOC_ID = "docId";
 
 	private static final long serialVersionUID = 1L;
@@ -47,8 +47,8 @@ public class DocumentHistoryDataServlet extends AbstractDataServlet {
 		MenuDAO mDao = (MenuDAO) Context.get().getBean(MenuDAO.class);
 		boolean showSid = mDao.isReadEnable(Menu.SESSIONS, session.getUserId());
 
-		PrintWriter writer = response.getWriter();
-		writer.write("<list>");
+		DataWriter writer = getDataWriter(request, response);
+		writer.startList();
 
 		StringBuilder query = new StringBuilder(
 				"select A.username, A.event, A.version, A.date, A.comment, A.filename, A.isNew, A.folderId, A.docId, A.path, A.sessionId, A.userId, A.reason, A.ip, A.device, A.geolocation, A.color, A.fileVersion from DocumentHistory A where 1=1 and A.deleted = 0 ");
@@ -79,39 +79,35 @@ public class DocumentHistoryDataServlet extends AbstractDataServlet {
 
 			printHistory(writer, cols, locale, showSid);
 		}
-		writer.write("</list>");
+		writer.endList();
 	}
 
-	private void printHistory(PrintWriter writer, Object[] historyRecord, Locale locale, boolean showSid) {
-		writer.print("<history>");
-		writer.print("<user><![CDATA[" + historyRecord[0] + "]]></user>");
-		writer.print("<event><![CDATA[" + I18N.message((String) historyRecord[1], locale) + "]]></event>");
-		writer.print("<version>" + historyRecord[2] + "</version>");
-
-		DateFormat df = getDateFormat();
-		writer.print("<date>" + df.format((Date) historyRecord[3]) + "</date>");
-
-		writer.print("<comment><![CDATA[" + (historyRecord[4] == null ? "" : historyRecord[4]) + "]]></comment>");
-		writer.print("<filename><![CDATA[" + (historyRecord[5] == null ? "" : historyRecord[5]) + "]]></filename>");
-		writer.print("<icon>"
-				+ FileUtil.getBaseName(IconSelector.selectIcon(FileUtil.getExtension((String) historyRecord[5])))
-				+ "</icon>");
-		writer.print("<new>" + (1 == (Integer) historyRecord[6]) + "</new>");
-		writer.print("<folderId>" + historyRecord[7] + "</folderId>");
-		writer.print("<docId>" + historyRecord[8] + "</docId>");
-		writer.print("<path><![CDATA[" + (historyRecord[9] == null ? "" : historyRecord[9]) + "]]></path>");
+	private void printHistory(DataWriter writer, Object[] historyRecord, Locale locale, boolean showSid)
+			throws IOException {
+		writer.startRecord(HISTORY);
+		writer.text("user", historyRecord[0]);
+		writer.text(EVENT, I18N.message((String) historyRecord[1], locale));
+		writer.field("version", historyRecord[2]);
+		writer.date("date", (Date) historyRecord[3]);
+		writer.text("comment", historyRecord[4]);
+		writer.text("filename", historyRecord[5]);
+		writer.field("icon",
+				FileUtil.getBaseName(IconSelector.selectIcon(FileUtil.getExtension((String) historyRecord[5]))));
+		writer.field("new", 1 == (Integer) historyRecord[6]);
+		writer.field("folderId", historyRecord[7]);
+		writer.field(DOC_ID, historyRecord[8]);
+		writer.text("path", historyRecord[9]);
 		if (showSid)
-			writer.print("<sid><![CDATA[" + (historyRecord[10] == null ? "" : historyRecord[10]) + "]]></sid>");
-		writer.print("<userId>" + historyRecord[11] + "</userId>");
-		writer.print("<reason><![CDATA[" + (historyRecord[12] == null ? "" : historyRecord[12]) + "]]></reason>");
-		writer.print("<ip><![CDATA[" + (historyRecord[13] == null ? "" : historyRecord[13]) + "]]></ip>");
-		writer.print("<device><![CDATA[" + (historyRecord[14] == null ? "" : historyRecord[14]) + "]]></device>");
-		writer.print(
-				"<geolocation><![CDATA[" + (historyRecord[15] == null ? "" : historyRecord[15]) + "]]></geolocation>");
+			writer.text("sid", historyRecord[10]);
+		writer.field("userId", historyRecord[11]);
+		writer.text("reason", historyRecord[12]);
+		writer.text("ip", historyRecord[13]);
+		writer.text("device", historyRecord[14]);
+		writer.text("geolocation", historyRecord[15]);
 		if (historyRecord[16] != null)
-			writer.write("<color><![CDATA[" + historyRecord[16] + "]]></color>");
-		writer.print("<fileVersion>" + (historyRecord[17] == null ? "" : historyRecord[17]) + "</fileVersion>");
-		writer.print("</history>");
+			writer.text("color", historyRecord[16]);
+		writer.field("fileVersion", historyRecord[17] == null ? "" : historyRecord[17]);
+		writer.endRecord(HISTORY);
 	}
 
 	private Map<String, Object> prepareQueryParams(HttpServletRequest request, StringBuilder query)
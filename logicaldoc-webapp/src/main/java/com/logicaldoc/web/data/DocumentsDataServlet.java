@@ -6,13 +6,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -47,6 +51,41 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 
 	private static final String INDEXED = "indexed";
 
+	private static final String LOWER_FILE_NAME = "lower(A.fileName)";
+
+	/**
+	 * Columns of the query to use for each field of the sort specification,
+	 * the texts are compared ignoring the case
+	 */
+	private static final Map<String, String> SORT_COLUMNS = new HashMap<>();
+
+	/**
+	 * Columns that are always valued, so they can be used for the keyset
+	 * pagination
+	 */
+	private static final Set<String> KEYSET_FIELDS = new HashSet<>(Arrays.asList("A.id", LOWER_FILE_NAME,
+			"A.fileSize", "A.lastModified", "A.date", "A.creation", "A.type", "A.published"));
+
+	static {
+		SORT_COLUMNS.put("id", "A.id");
+		SORT_COLUMNS.put("fileName", LOWER_FILE_NAME);
+		SORT_COLUMNS.put("fileSize", "A.fileSize");
+		SORT_COLUMNS.put("size", "A.fileSize");
+		SORT_COLUMNS.put("version", "A.version");
+		SORT_COLUMNS.put("fileVersion", "A.fileVersion");
+		SORT_COLUMNS.put("lastModified", "A.lastModified");
+		SORT_COLUMNS.put("date", "A.date");
+		SORT_COLUMNS.put("created", "A.creation");
+		SORT_COLUMNS.put("customId", "lower(A.customId)");
+		SORT_COLUMNS.put("type", "A.type");
+		SORT_COLUMNS.put("comment", "lower(A.comment)");
+		SORT_COLUMNS.put("workflowStatus", "lower(A.workflowStatus)");
+		SORT_COLUMNS.put("startPublishing", "A.startPublishing");
+		SORT_COLUMNS.put("stopPublishing", "A.stopPublishing");
+		SORT_COLUMNS.put("publishedStatus", "A.published");
+		SORT_COLUMNS.put("template", "lower(B.name)");
+	}
+
 	private final class ExtendedAttributeRowMapper implements RowMapper<Long> {
 		private final Map<String, Object> extAttributesValues;
 
@@ -115,7 +154,7 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 		String sql = "select ld_docid from ld_bookmark where ld_type=" + Bookmark.TYPE_DOCUMENT
 				+ " and ld_deleted = 0 and ld_userid = " + session.getUserId();
 		@SuppressWarnings("unchecked")
-		List<Long> bookmarks = (List<Long>) dao.queryForList(sql, Long.class);
+		Set<Long> bookmarks = new HashSet<>((List<Long>) dao.queryForList(sql, Long.class));
 
 		// The list of documents to be returned
 		List<Document> documentsInCurrentPage = new ArrayList<>();
@@ -155,7 +194,7 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 		writer.write("</list>");
 	}
 
-	private void printDocument(PrintWriter writer, Document document, Document hiliteDoc, List<Long> bookmarks,
+	private void printDocument(PrintWriter writer, Document document, Document hiliteDoc, Set<Long> bookmarks,
 			List<String> extendedAttributes, final Map<String, Object> extendedAttributesValues) {
 
 		writer.print("<document>");
@@ -349,19 +388,30 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 
 		String filename = getFilename(request);
 
-		retrieveExtendedAttributesValues(locale, extendedAttributes, extendedAttributesSpec, extendedAttributesValues,
-				folderId, formId);
+		List<String[]> sorting = getSorting(sort);
+		if (sorting != null) {
+			/*
+			 * Sort and paginate in the database, then load the extended
+			 * attributes of the current page only
+			 */
+			documentsInCurrentPage.addAll(executePageQuery(request, locale, extendedAttributes,
+					extendedAttributesSpec, extendedAttributesValues, user, folderId, formId, filename, sorting,
+					maxRecords, page));
+		} else {
+			retrieveExtendedAttributesValues(locale, extendedAttributes, extendedAttributesSpec,
+					extendedAttributesValues, folderId, formId, null);
 
-		/*
-		 * Execute the Query
-		 */
-		List<Document> documents = exeucuteQuey(request, extendedAttributes, extendedAttributesValues, user, folderId,
-				formId, filename);
+			/*
+			 * Execute the Query
+			 */
+			List<Document> documents = exeucuteQuey(request, extendedAttributes, extendedAttributesValues, user,
+					folderId, formId, filename);
 
-		// If a sorting is specified sort the collection of documents
-		sortDocuments(documents, sort);
+			// If a sorting is specified sort the collection of documents
+			sortDocuments(documents, sort);
 
-		takeDocumentsInCurrentPage(documents, documentsInCurrentPage, maxRecords, page);
+			takeDocumentsInCurrentPage(documents, documentsInCurrentPage, maxRecords, page);
+		}
 
 		Long hiliteDocId = getHiliteDocId(request);
 
@@ -373,6 +423,119 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 	private List<Document> exeucuteQuey(HttpServletRequest request, List<String> extendedAttributes,
 			final Map<String, Object> extendedAttributesValues, User user, Long folderId, Long formId, String filename)
 			throws PersistenceException {
+		Map<String, Object> params = new HashMap<>();
+		StringBuilder query = prepareQuery(request, folderId, formId, filename, params);
+
+		DocumentDAO docDao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
+		List<Object> records = new ArrayList<>();
+		if (isFiltered(request, folderId, formId, filename))
+			records = (List<Object>) docDao.findByQuery(query.toString(), params, null);
+
+		List<Document> documents = enrichRecords(records, extendedAttributes, extendedAttributesValues, user);
+		return documents;
+	}
+
+	/**
+	 * Executes the query retrieving just the documents in the current page,
+	 * sorted by the database. When the request specifies the <b>lastId</b>
+	 * parameter, the page starts right after that document (keyset
+	 * pagination) instead of skipping the rows of the previous pages.
+	 */
+	private List<Document> executePageQuery(HttpServletRequest request, Locale locale, List<String> extendedAttributes,
+			String extendedAttributesSpec, final Map<String, Object> extendedAttributesValues, User user,
+			Long folderId, Long formId, String filename, List<String[]> sorting, int maxRecords, int page)
+			throws PersistenceException {
+		if (!isFiltered(request, folderId, formId, filename))
+			return new ArrayList<>();
+
+		Map<String, Object> params = new HashMap<>();
+		StringBuilder query = prepareQuery(request, folderId, formId, filename, params);
+
+		/*
+		 * Users that cannot see the unpublished documents must not count them,
+		 * the aliases are checked later against the referenced documents
+		 */
+		if (!user.isMemberOf(Group.GROUP_ADMIN) && !user.isMemberOf("publisher")) {
+			query.append(" and ((A.docRef is not null and A.docRef != 0) or (A.published=1"
+					+ " and (A.startPublishing is null or A.startPublishing <= :now)"
+					+ " and (A.stopPublishing is null or A.stopPublishing > :now)))");
+			params.put("now", new Date());
+		}
+
+		DocumentDAO docDao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
+		int first = (page - 1) * maxRecords;
+		Long lastId = getLastId(request);
+		if (lastId != null && appendKeyset(query, params, sorting, lastId, docDao))
+			first = 0;
+
+		query.append(" order by ");
+		query.append(sorting.stream().map(s -> s[0] + " " + s[1]).collect(Collectors.joining(", ")));
+
+		@SuppressWarnings("unchecked")
+		List<Object> records = (List<Object>) docDao.findByQuery(query.toString(), params, first, maxRecords);
+
+		// The extended attributes of the aliases are taken from the
+		// referenced documents
+		Set<Long> ids = new HashSet<>();
+		for (Object record : records) {
+			Object[] cols = (Object[]) record;
+			if (cols[2] == null || ((Long) cols[2]).longValue() == 0L)
+				ids.add((Long) cols[0]);
+		}
+		if (!ids.isEmpty())
+			retrieveExtendedAttributesValues(locale, extendedAttributes, extendedAttributesSpec,
+					extendedAttributesValues, folderId, formId, ids);
+
+		return enrichRecords(records, extendedAttributes, extendedAttributesValues, user);
+	}
+
+	/**
+	 * Restricts the query to the documents that follow the given one in the
+	 * sorting. This is possible only if the sorting columns of that document
+	 * are all valued.
+	 * 
+	 * @return true if the restriction has been applied
+	 */
+	private boolean appendKeyset(StringBuilder query, Map<String, Object> params, List<String[]> sorting, long lastId,
+			DocumentDAO docDao) throws PersistenceException {
+		if (sorting.stream().anyMatch(s -> !KEYSET_FIELDS.contains(s[0])))
+			return false;
+
+		Map<String, Object> lastParams = new HashMap<>();
+		lastParams.put("lastId", lastId);
+		List<Object> last = docDao.findByQuery(
+				"select " + sorting.stream().map(s -> s[0]).collect(Collectors.joining(", "))
+						+ ", A.id from Document as A where A.id = :lastId",
+				lastParams, null);
+		if (last.isEmpty())
+			return false;
+		Object[] values = (Object[]) last.get(0);
+		if (Arrays.stream(values).anyMatch(v -> v == null))
+			return false;
+
+		// (c1 > v1) or (c1 = v1 and c2 > v2) or ...
+		StringBuilder keyset = new StringBuilder();
+		for (int i = 0; i < sorting.size(); i++) {
+			if (keyset.length() > 0)
+				keyset.append(" or ");
+			keyset.append("(");
+			for (int j = 0; j < i; j++)
+				keyset.append(sorting.get(j)[0] + " = :key" + j + " and ");
+			keyset.append(sorting.get(i)[0] + ("desc".equals(sorting.get(i)[1]) ? " < " : " > ") + ":key" + i);
+			keyset.append(")");
+			params.put("key" + i, values[i]);
+		}
+		query.append(" and (" + keyset + ")");
+		return true;
+	}
+
+	private boolean isFiltered(HttpServletRequest request, Long folderId, Long formId, String filename) {
+		return folderId != null || filename != null || formId != null
+				|| StringUtils.isNotEmpty(request.getParameter(INDEXED));
+	}
+
+	private StringBuilder prepareQuery(HttpServletRequest request, Long folderId, Long formId, String filename,
+			Map<String, Object> params) {
 		StringBuilder query = new StringBuilder(
 				"select A.id, A.customId, A.docRef, A.type, A.version, A.lastModified, A.date, A.publisher,"
 						+ " A.creation, A.creator, A.fileSize, A.immutable, A.indexed, A.lockUserId, A.fileName, A.status,"
@@ -388,20 +551,11 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 		if (StringUtils.isNotEmpty(request.getParameter(INDEXED)))
 			query.append(" and A.indexed=" + request.getParameter(INDEXED));
 
-		Map<String, Object> params = new HashMap<>();
 		if (filename != null) {
 			query.append(" and lower(A.fileName) like :fileName ");
 			params.put("fileName", "%" + filename.toLowerCase() + "%");
 		}
-
-		DocumentDAO docDao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
-		List<Object> records = new ArrayList<>();
-		if (folderId != null || filename != null || formId != null
-				|| StringUtils.isNotEmpty(request.getParameter(INDEXED)))
-			records = (List<Object>) docDao.findByQuery(query.toString(), params, null);
-
-		List<Document> documents = enrichRecords(records, extendedAttributes, extendedAttributesValues, user);
-		return documents;
+		return query;
 	}
 
 	private List<Document> enrichRecords(List<Object> records, List<String> extendedAttributes,
@@ -562,6 +716,36 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 			documentRecords.add(documents.get(i));
 	}
 
+	/**
+	 * Translates the sort specification into the columns of the query
+	 * 
+	 * @param sort the sort specification, eg. <code>fileName asc,id desc</code>
+	 * 
+	 * @return list of couples column-direction, null if some field cannot be
+	 *         sorted by the database
+	 */
+	private List<String[]> getSorting(String sort) {
+		List<String[]> sorting = new ArrayList<>();
+		if (StringUtils.isNotEmpty(sort)) {
+			StringTokenizer st = new StringTokenizer(sort, ",", false);
+			while (st.hasMoreElements()) {
+				String[] token = ((String) st.nextElement()).trim().split(" ");
+				String column = SORT_COLUMNS.get(token[0].trim());
+				if (column == null)
+					return null;
+				String direction = token.length > 1 && "desc".equalsIgnoreCase(token[token.length - 1].trim())
+						? "desc"
+						: "asc";
+				sorting.add(new String[] { column, direction });
+			}
+		}
+
+		// The identifier makes the order stable across the pages
+		if (sorting.stream().noneMatch(s -> "A.id".equals(s[0])))
+			sorting.add(new String[] { "A.id", "asc" });
+		return sorting;
+	}
+
 	private void sortDocuments(List<Document> documents, String sort) {
 		if (StringUtils.isNotEmpty(sort)) {
 			// make the sorting to be case insensitive (add lower
@@ -586,8 +770,8 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 	}
 
 	private void retrieveExtendedAttributesValues(Locale locale, List<String> extendedAttributes,
-			String extendedAttributesSpec, final Map<String, Object> extAttributesValues, Long folderId, Long formId)
-			throws PersistenceException {
+			String extendedAttributesSpec, final Map<String, Object> extAttributesValues, Long folderId, Long formId,
+			Set<Long> docIds) throws PersistenceException {
 		DocumentDAO dao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
 		if (extendedAttributes.isEmpty())
 			return;
@@ -597,11 +781,15 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 		StringBuilder query = new StringBuilder(
 				"select ld_docid, ld_name, ld_type, ld_stringvalue, ld_intvalue, ld_doublevalue, ld_datevalue, ld_stringvalues ");
 		query.append(" from ld_document_ext where ld_docid in (");
-		query.append("select D.ld_id from ld_document D where D.ld_deleted=0 ");
-		if (folderId != null)
-			query.append(" and D.ld_folderid=" + Long.toString(folderId));
-		if (formId != null)
-			query.append(" and D.ld_formid=" + Long.toString(formId));
+		if (docIds != null) {
+			query.append(docIds.stream().map(id -> Long.toString(id)).collect(Collectors.joining(",")));
+		} else {
+			query.append("select D.ld_id from ld_document D where D.ld_deleted=0 ");
+			if (folderId != null)
+				query.append(" and D.ld_folderid=" + Long.toString(folderId));
+			if (formId != null)
+				query.append(" and D.ld_formid=" + Long.toString(formId));
+		}
 		query.append(") and ld_name in ");
 		query.append(extendedAttributes.toString().replace("[", "('").replace("]", "')").replace(",", "','")
 				.replace(" ", ""));
@@ -664,6 +852,13 @@ public class DocumentsDataServlet extends AbstractDataServlet {
 		return hiliteDocId;
 	}
 
+	private Long getLastId(HttpServletRequest request) {
+		Long lastId = null;
+		if (StringUtils.isNotEmpty(request.getParameter("lastId")))
+			lastId = Long.parseLong(request.getParameter("lastId"));
+		return lastId;
+	}
+
 	private Integer getStatus(HttpServletRequest request) {
 		Integer status = null;
 		if (StringUtils.isNotEmpty(request.getParameter("status")))
@@ -1,8 +1,6 @@
 package com.logicaldoc.web.data;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.DateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -23,6 +21,8 @@ import com.logicaldoc.util.io.FileUtil;
 
 public class FolderHistoryDataServlet extends AbstractDataServlet {
 
+	private static final String HISTORY = "history";
+
 	private static final long serialVersionUID = 1L;
 
 	@Override
@@ -32,8 +32,8 @@ public class FolderHistoryDataServlet extends AbstractDataServlet {
 		MenuDAO mDao = (MenuDAO) Context.get().getBean(MenuDAO.class);
 		boolean showSid = mDao.isReadEnable(Menu.SESSIONS, session.getUserId());
 
-		PrintWriter writer = response.getWriter();
-		writer.write("<list>");
+		DataWriter writer = getDataWriter(request, response);
+		writer.startList();
 
 		DocumentHistoryDAO dao = (DocumentHistoryDAO) Context.get().getBean(DocumentHistoryDAO.class);
 		StringBuilder query = new StringBuilder(
@@ -53,56 +53,44 @@ public class FolderHistoryDataServlet extends AbstractDataServlet {
 
 			printHistory(writer, cols, locale, showSid);
 		}
-		writer.write("</list>");
+		writer.endList();
 	}
 
-	private void printHistory(PrintWriter writer, Object[] cols, Locale locale, boolean showSid) {
-
-		DateFormat df = getDateFormat();
-
-		writer.print("<history>");
-		writer.print("<id>" + cols[7] + "</id>");
-		writer.print("<user><![CDATA[" + (cols[0] == null ? "" : cols[0]) + "]]></user>");
-		writer.print("<event><![CDATA[" + I18N.message((String) cols[1], locale) + "]]></event>");
-		writer.print("<date>" + df.format((Date) cols[2]) + "</date>");
-		writer.print("<comment><![CDATA[" + (cols[3] == null ? "" : cols[3]) + "]]></comment>");
-		writer.print("<filename><![CDATA[" + (cols[4] == null ? "" : cols[4]) + "]]></filename>");
+	private void printHistory(DataWriter writer, Object[] cols, Locale locale, boolean showSid) throws IOException {
+		writer.startRecord(HISTORY);
+		writer.field("id", cols[7]);
+		writer.text("user", cols[0]);
+		writer.text("event", I18N.message((String) cols[1], locale));
+		writer.date("date", (Date) cols[2]);
+		writer.text("comment", cols[3]);
+		writer.text("filename", cols[4]);
 
 		printIcon(writer, cols);
 
-		writer.print("<path><![CDATA[" + (cols[5] == null ? "" : cols[5]) + "]]></path>");
+		writer.text("path", cols[5]);
 
-		printSid(writer, cols, showSid);
+		if (showSid)
+			writer.text("sid", cols[6]);
 
-		writer.print("<reason><![CDATA[" + (cols[8] == null ? "" : cols[8]) + "]]></reason>");
-		writer.print("<ip><![CDATA[" + (cols[9] == null ? "" : cols[9]) + "]]></ip>");
-		writer.print("<device><![CDATA[" + (cols[10] == null ? "" : cols[10]) + "]]></device>");
-		writer.print("<userId>" + cols[12] + "</userId>");
+		writer.text("reason", cols[8]);
+		writer.text("ip", cols[9]);
+		writer.text("device", cols[10]);
+		writer.field("userId", cols[12]);
 
-		printGeolocation(writer, cols);
-		
-		if(cols[13]!=null)
-			writer.print("<color>" + cols[12] + "</color>");	
-		
-		writer.print("</history>");
-	}
-
-	private void printGeolocation(PrintWriter writer, Object[] cols) {
 		if (cols[11] != null)
-			writer.print("<geolocation><![CDATA[" + cols[11] + "]]></geolocation>");
-	}
+			writer.text("geolocation", cols[11]);
 
-	private void printSid(PrintWriter writer, Object[] cols, boolean showSid) {
-		if (showSid)
-			writer.print("<sid><![CDATA[" + (cols[6] == null ? "" : cols[6]) + "]]></sid>");
+		if (cols[13] != null)
+			writer.field("color", cols[13]);
+
+		writer.endRecord(HISTORY);
 	}
 
-	private void printIcon(PrintWriter writer, Object[] cols) {
+	private void printIcon(DataWriter writer, Object[] cols) throws IOException {
 		if (cols[4] != null && !FileUtil.getExtension(cols[4].toString()).isEmpty())
-			writer.print(
-					"<icon>" + FileUtil.getBaseName(IconSelector.selectIcon(FileUtil.getExtension((String) cols[4])))
-							+ "</icon>");
+			writer.field("icon",
+					FileUtil.getBaseName(IconSelector.selectIcon(FileUtil.getExtension((String) cols[4]))));
 		else
-			writer.print("<icon>folder</icon>");
+			writer.field("icon", "folder");
 	}
-}
\ No newline at end of file
+}
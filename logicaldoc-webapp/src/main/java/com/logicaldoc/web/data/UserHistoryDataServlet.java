@@ -1,8 +1,6 @@
 package com.logicaldoc.web.data;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.DateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +28,8 @@ import com.logicaldoc.util.Context;
  */
 public class UserHistoryDataServlet extends AbstractDataServlet {
 
+	private static final String HISTORY = "history";
+
 	private static final long serialVersionUID = 1L;
 
 	@Override
@@ -44,10 +44,8 @@ public class UserHistoryDataServlet extends AbstractDataServlet {
 
 		List<Object> records = executeQuery(max, userId, event);
 
-		PrintWriter writer = response.getWriter();
-		writer.write("<list>");
-
-		DateFormat df = getDateFormat();
+		DataWriter writer = getDataWriter(request, response);
+		writer.startList();
 
 		/*
 		 * Iterate over the collection of user histories
@@ -55,27 +53,27 @@ public class UserHistoryDataServlet extends AbstractDataServlet {
 		for (Object gridRecord : records) {
 			Object[] cols = (Object[]) gridRecord;
 
-			writer.print("<history>");
-			writer.print("<id>" + cols[0] + "</id>");
-			writer.print("<user><![CDATA[" + cols[1] + "]]></user>");
-			writer.print("<event><![CDATA[" + I18N.message((String) cols[2], locale) + "]]></event>");
-			writer.print("<date>" + df.format((Date) cols[3]) + "</date>");
+			writer.startRecord(HISTORY);
+			writer.field("id", cols[0]);
+			writer.text("user", cols[1]);
+			writer.text("event", I18N.message((String) cols[2], locale));
+			writer.date("date", (Date) cols[3]);
 			if (cols[4] != null)
-				writer.print("<comment><![CDATA[" + cols[4] + "]]></comment>");
+				writer.text("comment", cols[4]);
 			if (cols[5] != null)
-				writer.print("<reason><![CDATA[" + cols[5] + "]]></reason>");
+				writer.text("reason", cols[5]);
 			if (cols[6] != null && showSid)
-				writer.print("<sid><![CDATA[" + cols[6] + "]]></sid>");
-			writer.print("<userId>" + cols[7] + "</userId>");
+				writer.text("sid", cols[6]);
+			writer.field("userId", cols[7]);
 			if (cols[8] != null)
-				writer.print("<ip><![CDATA[" + cols[8] + "]]></ip>");
+				writer.text("ip", cols[8]);
 			if (cols[9] != null)
-				writer.print("<device><![CDATA[" + cols[9] + "]]></device>");
+				writer.text("device", cols[9]);
 			if (cols[10] != null)
-				writer.print("<geolocation><![CDATA[" + cols[10] + "]]></geolocation>");
-			writer.print("</history>");
+				writer.text("geolocation", cols[10]);
+			writer.endRecord(HISTORY);
 		}
-		writer.write("</list>");
+		writer.endList();
 	}
 
 	private List<Object> executeQuery(Integer max, long userId, String event) throws PersistenceException {
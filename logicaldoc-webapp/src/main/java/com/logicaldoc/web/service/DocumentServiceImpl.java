@@ -759,11 +759,8 @@ public class DocumentServiceImpl extends AbstractRemoteService implements Docume
 
 			if (session != null && folder != null) {
 				FolderDAO fdao = (FolderDAO) Context.get().getBean(FolderDAO.class);
-				Set<Permission> permissions = fdao.getEnabledPermissions(doc.getFolder().getId(), session.getUserId());
-				List<String> permissionsList = new ArrayList<>();
-				for (Permission permission : permissions)
-					permissionsList.add(permission.toString());
-				folder.setPermissions(permissionsList.toArray(new String[permissionsList.size()]));
+				int permissions = fdao.getEnabledPermissionsMask(doc.getFolder().getId(), session.getUserId());
+				folder.setPermissions(Permission.toNames(permissions));
 			}
 		}
 
@@ -3,7 +3,6 @@ package com.logicaldoc.web.service;
 import java.io.File;
 import java.io.IOException;
 import java.security.AccessControlException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashSet;
@@ -385,11 +384,8 @@ public class FolderServiceImpl extends AbstractRemoteService implements FolderSe
 			throws PersistenceException {
 		if (session != null) {
 			FolderDAO dao = (FolderDAO) Context.get().getBean(FolderDAO.class);
-			Set<Permission> permissions = dao.getEnabledPermissions(folderId, session.getUserId());
-			List<String> permissionsList = new ArrayList<>();
-			for (Permission permission : permissions)
-				permissionsList.add(permission.toString());
-			guiFolder.setPermissions(permissionsList.toArray(new String[permissionsList.size()]));
+			int permissions = dao.getEnabledPermissionsMask(folderId, session.getUserId());
+			guiFolder.setPermissions(Permission.toNames(permissions));
 		}
 	}
 
@@ -1,15 +1,15 @@
 package com.logicaldoc.web.util;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -27,7 +27,6 @@ import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.hsqldb.lib.StringUtil;
 import org.jfree.util.Log;
@@ -51,6 +50,7 @@ import com.logicaldoc.core.store.Storer;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.util.MimeType;
 import com.logicaldoc.util.io.FileUtil;
+import com.logicaldoc.util.io.IOUtil;
 import com.logicaldoc.util.plugin.PluginRegistry;
 
 /**
@@ -186,12 +186,9 @@ public class ServletUtil {
 		// Add this header for compatibility with internal .NET browsers
 		response.setHeader("Content-Length", Long.toString(file.length()));
 
-		try (InputStream is = new FileInputStream(file); OutputStream os = response.getOutputStream();) {
-			int letter = 0;
-			byte[] buffer = new byte[128 * 1024];
-			while ((letter = is.read(buffer)) != -1) {
-				os.write(buffer, 0, letter);
-			}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				OutputStream os = response.getOutputStream();) {
+			IOUtil.write(channel, os, -1L);
 		}
 	}
 
@@ -568,9 +565,79 @@ public class ServletUtil {
 
 		// Add this header for compatibility with internal .NET browsers
 		response.setHeader("Content-Length", Long.toString(file.length()));
-		try (InputStream is = new BufferedInputStream(new FileInputStream(file), DEFAULT_BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				OutputStream os = response.getOutputStream();) {
+			IOUtil.write(channel, os, -1L);
+		}
+	}
+
+	/**
+	 * Sends the specified file to the response object honoring the byte range
+	 * requested by the client, so that an interrupted download can be resumed.
+	 * Only a single range is served, if more ranges are requested the whole
+	 * file is sent.
+	 * 
+	 * @param request the current request
+	 * @param response the file is written to this object
+	 * @param file file to serve
+	 * @param fileName client file name
+	 * 
+	 * @throws IOException generic I/O error
+	 */
+	public static void downloadFileRange(HttpServletRequest request, HttpServletResponse response, File file,
+			String fileName) throws IOException {
+		downloadFileRange(request, response, file, fileName, null);
+	}
+
+	/**
+	 * Sends the specified file to the response object honoring the byte range
+	 * requested by the client, like
+	 * {@link #downloadFileRange(HttpServletRequest, HttpServletResponse, File, String)}.
+	 * If an entity tag is given, it is the only validator: the file is
+	 * regenerated at each request so its date means nothing, and a range
+	 * conditioned by an If-Range header is served only if the header matches
+	 * the tag.
+	 * 
+	 * @param request the current request
+	 * @param response the file is written to this object
+	 * @param file file to serve
+	 * @param fileName client file name
+	 * @param eTag entity tag of the content, optional
+	 * 
+	 * @throws IOException generic I/O error
+	 */
+	public static void downloadFileRange(HttpServletRequest request, HttpServletResponse response, File file,
+			String fileName, String eTag) throws IOException {
+		String filename = fileName;
+		if (filename == null)
+			filename = file.getName();
+
+		long length = file.length();
+		long lastModified = eTag != null ? Long.MAX_VALUE : file.lastModified();
+		Range rangeFull = new Range(0, length - 1, length);
+		List<Range> ranges = getRanges(request, response, length, lastModified, eTag, rangeFull);
+		if (ranges == null) {
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return;
+		}
+
+		Range range = ranges.size() == 1 ? ranges.get(0) : rangeFull;
+
+		response.setContentType(MimeType.getByFilename(filename));
+		setContentDisposition(request, response, filename);
+		response.setHeader("Accept-Ranges", "bytes");
+		if (eTag != null)
+			response.setHeader("ETag", eTag);
+		response.setHeader("Content-Length", Long.toString(range.length));
+		if (range.length != length) {
+			response.setHeader(CONTENT_RANGE, "bytes " + range.start + "-" + range.end + "/" + range.total);
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT); // 206.
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
 				OutputStream os = response.getOutputStream();) {
-			IOUtils.copy(is, os);
+			channel.position(range.start);
+			IOUtil.write(channel, os, range.length);
 		}
 	}
 
@@ -765,7 +832,7 @@ public class ServletUtil {
 	 * 
 	 * @return True if the given accept header accepts the given value
 	 */
-	private static boolean accepts(String acceptHeader, String toAccept) {
+	public static boolean accepts(String acceptHeader, String toAccept) {
 		// Limit the size of the interpreted string in order to avoid DoS
 		// attacks
 		String[] acceptValues = StringUtils.left(acceptHeader, 100).split("\\s*(,|;)\\s*");
@@ -0,0 +1,56 @@
+package com.logicaldoc.web.data;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class DataWriterTest {
+
+	@Test
+	public void testXml() throws IOException {
+		Date date = new Date();
+		StringWriter out = new StringWriter();
+		DataWriter writer = new DataWriter(out);
+		writer.startList();
+		writer.startRecord("history");
+		writer.field("id", 5L);
+		writer.text("comment", "a]]>b");
+		writer.text("reason", null);
+		writer.field("name", "x<y&z");
+		writer.date("date", date);
+		writer.date("nodate", null);
+		writer.endRecord("history");
+		writer.endList();
+
+		Assert.assertEquals("<list><history><id>5</id><comment><![CDATA[a]]]]><![CDATA[>b]]></comment>"
+				+ "<reason><![CDATA[]]></reason><name>x&lt;y&amp;z</name><date>"
+				+ new SimpleDateFormat(AbstractDataServlet.DATE_FORMAT).format(date) + "</date></history></list>",
+				out.toString());
+	}
+
+	@Test
+	public void testJson() throws IOException {
+		StringWriter out = new StringWriter();
+		DataWriter writer = new DataWriter(out, DataWriter.Format.JSON);
+		writer.startList();
+		writer.startRecord("history");
+		writer.field("id", 5L);
+		writer.field("new", true);
+		writer.text("comment", "say \"hi\"\n\\");
+		writer.endRecord("history");
+		writer.startRecord("history");
+		writer.field("id", 6L);
+		writer.text("comment", null);
+		writer.text("ctrl", "\u0001");
+		writer.endRecord("history");
+		writer.endList();
+
+		Assert.assertEquals("[{\"id\":5,\"new\":true,\"comment\":\"say \\\"hi\\\"\\n\\\\\"},"
+				+ "{\"id\":6,\"comment\":\"\",\"ctrl\":\"\\u0001\"}]", out.toString());
+	}
+}
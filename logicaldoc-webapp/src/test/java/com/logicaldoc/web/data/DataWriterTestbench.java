@@ -0,0 +1,159 @@
+package com.logicaldoc.web.data;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * To manually compare the rendering of a history grid: the old implementation
+ * that concatenates the strings of each element and creates a new date format
+ * per record, against the {@link DataWriter} that streams the values into the
+ * output. The output is discarded so that only the serialization is measured.
+ *
+ * Arguments: number of rows (default 10000), number of iterations (default
+ * 100)
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class DataWriterTestbench {
+
+	public static void main(String[] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		Object[][] records = new Object[rows][];
+		for (int i = 0; i < rows; i++)
+			records[i] = new Object[] { "admin", "event.stored", "1." + i, new Date(), "comment " + i,
+					"document" + i + ".pdf", 1, 4L, (long) i, "/Default/Folder" + (i % 100), "sid-" + i, 1L,
+					i % 2 == 0 ? null : "reason " + i, "127.0.0.1", "Chrome", null, null, "1.0" };
+
+		CountingWriter out = new CountingWriter();
+
+		// Warm up
+		for (int i = 0; i < iterations / 10 + 1; i++) {
+			renderConcatenating(records, out);
+			renderStreaming(records, out);
+		}
+
+		out.count = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			renderConcatenating(records, out);
+		long concatenating = System.nanoTime() - start;
+		long concatenatingChars = out.count / iterations;
+
+		out.count = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			renderStreaming(records, out);
+		long streaming = System.nanoTime() - start;
+		long streamingChars = out.count / iterations;
+
+		System.out.println("Rows: " + rows + ", iterations: " + iterations);
+		System.out.println("concatenating: " + (concatenating / iterations / 1000000) + " ms/grid, "
+				+ concatenatingChars + " chars");
+		System.out.println("streaming:     " + (streaming / iterations / 1000000) + " ms/grid, " + streamingChars
+				+ " chars");
+	}
+
+	private static void renderConcatenating(Object[][] records, Writer out) {
+		PrintWriter writer = new PrintWriter(out);
+		writer.write("<list>");
+		for (Object[] historyRecord : records) {
+			writer.print("<history>");
+			writer.print("<user><![CDATA[" + historyRecord[0] + "]]></user>");
+			writer.print("<event><![CDATA[" + historyRecord[1] + "]]></event>");
+			writer.print("<version>" + historyRecord[2] + "</version>");
+			DateFormat df = new SimpleDateFormat(AbstractDataServlet.DATE_FORMAT);
+			writer.print("<date>" + df.format((Date) historyRecord[3]) + "</date>");
+			writer.print("<comment><![CDATA[" + (historyRecord[4] == null ? "" : historyRecord[4]) + "]]></comment>");
+			writer.print(
+					"<filename><![CDATA[" + (historyRecord[5] == null ? "" : historyRecord[5]) + "]]></filename>");
+			writer.print("<new>" + (1 == (Integer) historyRecord[6]) + "</new>");
+			writer.print("<folderId>" + historyRecord[7] + "</folderId>");
+			writer.print("<docId>" + historyRecord[8] + "</docId>");
+			writer.print("<path><![CDATA[" + (historyRecord[9] == null ? "" : historyRecord[9]) + "]]></path>");
+			writer.print("<sid><![CDATA[" + (historyRecord[10] == null ? "" : historyRecord[10]) + "]]></sid>");
+			writer.print("<userId>" + historyRecord[11] + "</userId>");
+			writer.print("<reason><![CDATA[" + (historyRecord[12] == null ? "" : historyRecord[12]) + "]]></reason>");
+			writer.print("<ip><![CDATA[" + (historyRecord[13] == null ? "" : historyRecord[13]) + "]]></ip>");
+			writer.print("<device><![CDATA[" + (historyRecord[14] == null ? "" : historyRecord[14]) + "]]></device>");
+			writer.print("<geolocation><![CDATA[" + (historyRecord[15] == null ? "" : historyRecord[15])
+					+ "]]></geolocation>");
+			writer.print("<fileVersion>" + (historyRecord[17] == null ? "" : historyRecord[17]) + "</fileVersion>");
+			writer.print("</history>");
+		}
+		writer.write("</list>");
+		writer.flush();
+	}
+
+	private static void renderStreaming(Object[][] records, Writer out) throws IOException {
+		DataWriter writer = new DataWriter(out);
+		writer.startList();
+		for (Object[] historyRecord : records) {
+			writer.startRecord("history");
+			writer.text("user", historyRecord[0]);
+			writer.text("event", historyRecord[1]);
+			writer.field("version", historyRecord[2]);
+			writer.date("date", (Date) historyRecord[3]);
+			writer.text("comment", historyRecord[4]);
+			writer.text("filename", historyRecord[5]);
+			writer.field("new", 1 == (Integer) historyRecord[6]);
+			writer.field("folderId", historyRecord[7]);
+			writer.field("docId", historyRecord[8]);
+			writer.text("path", historyRecord[9]);
+			writer.text("sid", historyRecord[10]);
+			writer.field("userId", historyRecord[11]);
+			writer.text("reason", historyRecord[12]);
+			writer.text("ip", historyRecord[13]);
+			writer.text("device", historyRecord[14]);
+			writer.text("geolocation", historyRecord[15]);
+			writer.field("fileVersion", historyRecord[17] == null ? "" : historyRecord[17]);
+			writer.endRecord("history");
+		}
+		writer.endList();
+	}
+
+	/**
+	 * Discards the output counting the written characters
+	 */
+	private static class CountingWriter extends Writer {
+
+		private long count = 0;
+
+		@Override
+		public void write(int c) {
+			count++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public Writer append(CharSequence csq, int start, int end) {
+			count += end - start;
+			return this;
+		}
+
+		@Override
+		public void flush() {
+			// Nothing to do
+		}
+
+		@Override
+		public void close() {
+			// Nothing to do
+		}
+	}
+}
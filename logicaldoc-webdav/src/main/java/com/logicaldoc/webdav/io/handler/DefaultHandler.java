@@ -2,11 +2,9 @@ package com.logicaldoc.webdav.io.handler;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.JcrConstants;
-import org.apache.jackrabbit.server.io.IOUtil;
 import org.apache.jackrabbit.server.io.PropertyExportContext;
 import org.apache.jackrabbit.server.io.PropertyImportContext;
 import org.apache.jackrabbit.webdav.DavException;
@@ -14,6 +12,7 @@ import org.apache.jackrabbit.webdav.DavResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.logicaldoc.util.io.IOUtil;
 import com.logicaldoc.webdav.context.ExportContext;
 import com.logicaldoc.webdav.context.ImportContext;
 import com.logicaldoc.webdav.exception.WebDavStorageException;
@@ -169,10 +168,9 @@ public class DefaultHandler implements IOHandler {
 
 	protected void exportData(ExportContext context, boolean isCollection, Resource resource) throws IOException,
 			WebDavStorageException {
-		try {
-			InputStream is = resourceService.streamOut(resource);
-			if (is != null)
-				IOUtil.spool(is, context.getOutputStream());
+		try (ReadableByteChannel channel = resourceService.streamOut(resource, 0L)) {
+			if (channel != null)
+				IOUtil.write(channel, context.getOutputStream(), -1L);
 		} catch (FileNotFoundException e) {
 			throw new IOException("Can't find file " + resource.getName() + "(" + resource.getID() + ")");
 		}
@@ -260,12 +258,9 @@ public class DefaultHandler implements IOHandler {
 	
 	protected void exportData(ExportContext context, boolean isCollection, Resource resource, Long left, Long rangeLength) 
 			throws IOException, WebDavStorageException {
-		try {
-			InputStream is = resourceService.streamOut(resource);
-			if (is != null) {
-				//IOUtil.spool(is, context.getOutputStream());
-				IOUtils.copyLarge(is, context.getOutputStream(), left, rangeLength);
-			}
+		try (ReadableByteChannel channel = resourceService.streamOut(resource, left)) {
+			if (channel != null)
+				IOUtil.write(channel, context.getOutputStream(), rangeLength);
 		} catch (FileNotFoundException e) {
 			throw new IOException("Can't find file " + resource.getName() + "(" + resource.getID() + ")");
 		}
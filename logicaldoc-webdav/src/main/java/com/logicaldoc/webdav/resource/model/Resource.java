@@ -59,6 +59,8 @@ public interface Resource {
 
 	public void setAddChildEnabled(boolean renameEnabled);
 
+	public void setMoveEnabled(boolean moveEnabled);
+
 	public void setLocked(boolean locked);
 
 	public void isFolder(boolean isFolder);
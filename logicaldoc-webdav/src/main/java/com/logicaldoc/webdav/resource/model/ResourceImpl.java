@@ -339,6 +339,11 @@ public class ResourceImpl implements Resource {
 		this.downloadEnabled = downloadEnabled;
 	}
 
+	@Override
+	public void setMoveEnabled(boolean moveEnabled) {
+		this.moveEnabled = moveEnabled;
+	}
+
 	@Override
 	public Long getDocRef() {
 		return this.docRef;
@@ -0,0 +1,193 @@
+package com.logicaldoc.webdav.resource.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.logicaldoc.core.security.Session;
+import com.logicaldoc.core.security.SessionListener;
+import com.logicaldoc.core.security.SessionManager;
+import com.logicaldoc.util.Context;
+import com.logicaldoc.util.config.ContextProperties;
+import com.logicaldoc.webdav.resource.model.Resource;
+
+/**
+ * Short lived cache of the resources resolved in each WebDAV session, so that
+ * the bursts of PROPFIND requests sent by the clients when they open a folder
+ * do not hit the database every time. The resources are cached by path and
+ * the listings by folder, each entry expires after <b>webdav.cache.ttl</b>
+ * seconds and each session keeps at most <b>webdav.cache.size</b> entries.
+ * The whole cache of a session is dropped when the session closes or
+ * modifies something: the writers invalidate it before and after the
+ * modification, and the values read before an invalidation are not cached.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class ResourceCache implements SessionListener {
+
+	private static final Logger log = LoggerFactory.getLogger(ResourceCache.class);
+
+	private static ResourceCache instance;
+
+	private final Map<String, SessionEntries> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Incremented at each invalidation, used to discard values read from the
+	 * database before an invalidation
+	 */
+	private final AtomicLong generation = new AtomicLong(0);
+
+	private ResourceCache() {
+	}
+
+	public static synchronized ResourceCache get() {
+		if (instance == null) {
+			instance = new ResourceCache();
+			try {
+				SessionManager.get().addListener(instance);
+			} catch (Exception e) {
+				log.warn("Cannot listen to the sessions: {}", e.getMessage());
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the current generation, to be read before querying the database
+	 * and passed to the put methods
+	 *
+	 * @return the generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Gets a cached resource
+	 *
+	 * @param sid identifier of the session
+	 * @param path normalized path of the resource
+	 *
+	 * @return the resource or null if not cached or expired
+	 */
+	public Resource getResource(String sid, String path) {
+		return (Resource) lookup(sid, "p:" + path);
+	}
+
+	public void putResource(String sid, String path, Resource resource, long generation) {
+		store(sid, "p:" + path, resource, generation);
+	}
+
+	/**
+	 * Gets the cached children of a folder
+	 *
+	 * @param sid identifier of the session
+	 * @param folderId identifier of the folder
+	 *
+	 * @return a copy of the listing or null if not cached or expired
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Resource> getChildren(String sid, long folderId) {
+		List<Resource> children = (List<Resource>) lookup(sid, "c:" + folderId);
+		return children != null ? new ArrayList<>(children) : null;
+	}
+
+	public void putChildren(String sid, long folderId, List<Resource> children, long generation) {
+		store(sid, "c:" + folderId, new ArrayList<>(children), generation);
+	}
+
+	/**
+	 * Drops all the entries of a session
+	 *
+	 * @param sid identifier of the session
+	 */
+	public void invalidate(String sid) {
+		if (sid == null)
+			return;
+		generation.incrementAndGet();
+		sessions.remove(sid);
+	}
+
+	private Object lookup(String sid, String key) {
+		if (sid == null || getTtl() <= 0)
+			return null;
+		SessionEntries entries = sessions.get(sid);
+		return entries != null ? entries.get(key) : null;
+	}
+
+	private void store(String sid, String key, Object value, long generation) {
+		long ttl = getTtl();
+		if (sid == null || value == null || ttl <= 0 || generation != this.generation.get())
+			return;
+		sessions.computeIfAbsent(sid, s -> new SessionEntries(getSize())).put(key, value,
+				System.currentTimeMillis() + ttl * 1000L);
+	}
+
+	private static long getTtl() {
+		ContextProperties config = getConfig();
+		return config != null ? config.getLong("webdav.cache.ttl", 5L) : 0L;
+	}
+
+	private static int getSize() {
+		ContextProperties config = getConfig();
+		return config != null ? config.getInt("webdav.cache.size", 5000) : 5000;
+	}
+
+	private static ContextProperties getConfig() {
+		Context context = Context.get();
+		return context != null ? context.getProperties() : null;
+	}
+
+	@Override
+	public void onSessionCreated(Session session) {
+		// Nothing to do
+	}
+
+	@Override
+	public void onSessionClosed(Object sid) {
+		sessions.remove(sid);
+	}
+
+	/**
+	 * The entries of a single session, the least recently used are evicted
+	 * when the maximum size is reached
+	 */
+	private static class SessionEntries {
+
+		private final Map<String, Object[]> entries;
+
+		SessionEntries(int maxSize) {
+			entries = new LinkedHashMap<String, Object[]>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+		synchronized Object get(String key) {
+			Object[] entry = entries.get(key);
+			if (entry == null)
+				return null;
+			if ((Long) entry[1] < System.currentTimeMillis()) {
+				entries.remove(key);
+				return null;
+			}
+			return entry[0];
+		}
+
+		synchronized void put(String key, Object value, long expiration) {
+			entries.put(key, new Object[] { value, expiration });
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.logicaldoc.webdav.resource.service;
 
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.io.Serializable;
 import java.util.List;
 
@@ -166,6 +167,17 @@ public interface ResourceService extends Serializable {
 	 */
 	public InputStream streamOut(Resource resource);
 
+	/**
+	 * Gets a channel to read a resource starting from a given byte
+	 * 
+	 * @param resource the DAV resource
+	 * @param start index of the first byte to read
+	 * 
+	 * @return the channel positioned at the first byte, it must be closed by
+	 *         the caller
+	 */
+	public ReadableByteChannel streamOut(Resource resource, long start);
+
 	/**
 	 * Deletion of a resource within logicalDOC.
 	 * 
@@ -3,11 +3,15 @@ package com.logicaldoc.webdav.resource.service;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -34,6 +38,7 @@ import com.logicaldoc.core.folder.FolderDAO;
 import com.logicaldoc.core.folder.FolderEvent;
 import com.logicaldoc.core.folder.FolderHistory;
 import com.logicaldoc.core.security.Group;
+import com.logicaldoc.core.security.Permission;
 import com.logicaldoc.core.security.Tenant;
 import com.logicaldoc.core.security.User;
 import com.logicaldoc.core.security.dao.UserDAO;
@@ -133,46 +138,87 @@ public class ResourceServiceImpl implements ResourceService {
 
 	@Override
 	public List<Resource> getChildResources(Resource parentResource) throws DavException {
-		List<Resource> resourceList = new LinkedList<>();
 		final Long folderID = Long.parseLong(parentResource.getID());
+		String sid = getSid(parentResource.getSession());
 
+		long generation = ResourceCache.get().getGeneration();
+		List<Resource> resourceList = ResourceCache.get().getChildren(sid, folderID);
+		if (resourceList != null)
+			return resourceList;
+
+		resourceList = new LinkedList<>();
 		try {
 			boolean hasAccess = isFolderAccessible(parentResource, folderID);
 
 			if (hasAccess == false)
 				return resourceList;
 
-			User user = userDAO.findById(parentResource.getRequestedPerson());
-			userDAO.initialize(user);
+			long userId = parentResource.getRequestedPerson();
+			User user = getUser(userId, parentResource.getSession());
+
+			Folder parentFolder = folderDAO.findById(folderID);
+			long rootId = folderDAO.findRoot(parentFolder.getTenantId()).getId();
 
 			// Find children visible by the current user
-			Collection<Folder> folders = folderDAO.findChildren(folderID, parentResource.getRequestedPerson());
-			if (folders != null) {
-				for (Folder currentFolder : folders) {
-					if (currentFolder.getHidden() == 0)
-						resourceList.add(marshallFolder(currentFolder, parentResource.getRequestedPerson(),
-								parentResource.getSession()));
-				}
+			List<Folder> folders = folderDAO.findChildren(folderID, userId).stream()
+					.filter(f -> f.getHidden() == 0).collect(Collectors.toList());
+
+			/*
+			 * Resolve the permissions of all the folders at once, the
+			 * documents inherit the permissions of the parent
+			 */
+			List<Folder> secured = new ArrayList<>(folders);
+			secured.add(parentFolder);
+			Map<Long, Integer> masks = folderDAO.getEnabledPermissionsMasks(secured, userId);
+
+			for (Folder currentFolder : folders) {
+				Resource resource = marshallFolder(currentFolder, userId, parentResource.getSession());
+				setPermissions(resource, currentFolder.getId() == rootId, masks.get(currentFolder.getId()));
+				resourceList.add(resource);
 			}
 
 			Collection<Document> documents = documentDAO.findByFolder(folderID, null);
-			for (Iterator<Document> iterator = documents.iterator(); iterator.hasNext();) {
-				Document document = iterator.next();
+			for (Document document : documents) {
 				try {
 					checkPublished(user, document);
 				} catch (Exception t) {
 					continue;
 				}
-				resourceList.add(marshallDocument(document, parentResource.getSession()));
+				Resource resource = marshallDocument(document, parentResource.getSession());
+				setPermissions(resource, folderID == rootId, masks.get(folderID));
+				resourceList.add(resource);
 			}
 		} catch (PersistenceException e) {
 			log.error(e.getMessage(), e);
 			throw new DavException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
 		}
 
+		ResourceCache.get().putChildren(sid, folderID, resourceList, generation);
 		return resourceList;
 	}
 
+	/**
+	 * Assigns the permissions already computed for the folder of a resource,
+	 * so the resource does not need to query them
+	 */
+	private void setPermissions(Resource resource, boolean root, int mask) {
+		if (root) {
+			resource.setWriteEnabled(false);
+			resource.setDeleteEnabled(false);
+			resource.setRenameEnabled(false);
+			resource.setAddChildEnabled(false);
+			resource.setDownloadEnabled(true);
+			resource.setMoveEnabled(true);
+		} else {
+			resource.setWriteEnabled(Permission.WRITE.match(mask));
+			resource.setDeleteEnabled(Permission.DELETE.match(mask));
+			resource.setRenameEnabled(Permission.RENAME.match(mask));
+			resource.setAddChildEnabled(Permission.ADD.match(mask));
+			resource.setDownloadEnabled(Permission.DOWNLOAD.match(mask));
+			resource.setMoveEnabled(Permission.MOVE.match(mask));
+		}
+	}
+
 	private boolean isFolderAccessible(Resource parentResource, final Long folderID)
 			throws PersistenceException {
 		//FolderDAO folderDAO = (FolderDAO) Context.get().getBean(FolderDAO.class);
@@ -200,6 +246,55 @@ public class ResourceServiceImpl implements ResourceService {
 
 		validateSession(session);
 
+		String sid = getSid(session);
+		String cachePath = normalizePath(requestPath);
+		long generation = ResourceCache.get().getGeneration();
+		Resource resource = ResourceCache.get().getResource(sid, cachePath);
+		if (resource == null)
+			resource = getCachedChild(sid, cachePath);
+		if (resource == null) {
+			resource = loadResource(requestPath, session);
+			if (resource != null)
+				ResourceCache.get().putResource(sid, cachePath, resource, generation);
+		}
+		return resource;
+	}
+
+	/**
+	 * Searches a resource in the cached listing of its parent folder
+	 */
+	private Resource getCachedChild(String sid, String path) {
+		if ("/".equals(path))
+			return null;
+
+		String parentPath = path.substring(0, path.lastIndexOf('/'));
+		Resource parent = ResourceCache.get().getResource(sid, parentPath.isEmpty() ? "/" : parentPath);
+		if (parent == null || !parent.isFolder())
+			return null;
+
+		List<Resource> children = ResourceCache.get().getChildren(sid, Long.parseLong(parent.getID()));
+		if (children == null)
+			return null;
+
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		return children.stream().filter(r -> name.equals(r.getName())).findFirst().orElse(null);
+	}
+
+	/**
+	 * Normalizes a request path to be used as cache key: <code>/store</code>
+	 * prefix and trailing slashes are removed
+	 */
+	private static String normalizePath(String requestPath) {
+		String path = requestPath == null ? "/" : requestPath.replace("/store", "");
+		if (!path.startsWith("/"))
+			path = "/" + path;
+		while (path.length() > 1 && path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+		return path;
+	}
+
+	private Resource loadResource(String requestPath, WebdavSession session) throws DavException {
+
 		long userId = 0;
 		String currentStablePath = "";
 		String name = "";
@@ -261,11 +356,10 @@ public class ResourceServiceImpl implements ResourceService {
 
 		User user;
 		try {
-			user = userDAO.findById(userId);
+			user = getUser(userId, session);
 		} catch (PersistenceException e) {
 			throw new DavException(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
 		}
-		userDAO.initialize(user);
 		checkPublished(user, document);
 
 		return marshallDocument(document, session);
@@ -337,6 +431,18 @@ public class ResourceServiceImpl implements ResourceService {
 
 	public Resource createResource(Resource parentResource, String name, boolean isCollection, ImportContext context,
 			WebdavSession session) throws DavException {
+		String sid = getSid(session);
+		ResourceCache.get().invalidate(sid);
+		try {
+			return doCreateResource(parentResource, name, isCollection, context, session);
+		} finally {
+			// Drop also what has been read during the modification
+			ResourceCache.get().invalidate(sid);
+		}
+	}
+
+	private Resource doCreateResource(Resource parentResource, String name, boolean isCollection,
+			ImportContext context, WebdavSession session) throws DavException {
 
 		validateSession(session);
 
@@ -441,6 +547,22 @@ public class ResourceServiceImpl implements ResourceService {
 		return parentFolder;
 	}
 
+	/**
+	 * Gets a user with his groups, the one of the WebDAV session is reused
+	 * when it is the same
+	 */
+	private User getUser(long userId, WebdavSession session) throws PersistenceException {
+		if (session != null && session.getObject("user") instanceof User) {
+			User user = (User) session.getObject("user");
+			if (user.getId() == userId)
+				return user;
+		}
+
+		User user = userDAO.findById(userId);
+		userDAO.initialize(user);
+		return user;
+	}
+
 	private String getSid(WebdavSession session) {
 		String sid = null;
 		if (session != null)
@@ -454,10 +576,20 @@ public class ResourceServiceImpl implements ResourceService {
 	}
 
 	public void updateResource(Resource resource, ImportContext context, WebdavSession session) throws DavException {
+		String sid = getSid(session);
+		ResourceCache.get().invalidate(sid);
+		try {
+			doUpdateResource(resource, context, session);
+		} finally {
+			// Drop also what has been read during the modification
+			ResourceCache.get().invalidate(sid);
+		}
+	}
+
+	private void doUpdateResource(Resource resource, ImportContext context, WebdavSession session) throws DavException {
 		try {
 			User user = userDAO.findById(resource.getRequestedPerson());
 			Document document = documentDAO.findById(Long.parseLong(resource.getID()));
-			String sid = getSid(session);
 
 			// verify the write permission on the parent folder
 			Resource parent = getParentResource(resource);
@@ -492,8 +624,7 @@ public class ResourceServiceImpl implements ResourceService {
 			Folder parentFolder = folderDAO.findById(Long.parseLong(parentResource.getID()));
 			Collection<Document> docs = documentDAO.findByFileNameAndParentFolderId(parentFolder.getId(), name, null,
 					parentFolder.getTenantId(), null);
-			User user = userDAO.findById(parentResource.getRequestedPerson());
-			userDAO.initialize(user);
+			User user = getUser(parentResource.getRequestedPerson(), parentResource.getSession());
 
 			if (!docs.isEmpty()) {
 				for (Document document : docs) {
@@ -518,6 +649,17 @@ public class ResourceServiceImpl implements ResourceService {
 	}
 
 	public Resource move(Resource source, Resource destination, WebdavSession session) throws DavException {
+		String sid = getSid(session);
+		ResourceCache.get().invalidate(sid);
+		try {
+			return doMove(source, destination, session);
+		} finally {
+			// Drop also what has been read during the modification
+			ResourceCache.get().invalidate(sid);
+		}
+	}
+
+	private Resource doMove(Resource source, Resource destination, WebdavSession session) throws DavException {
 		String sid = getSid(session);
 		if (source.isWorkspace()) {
 			throw new DavException(HttpServletResponse.SC_FORBIDDEN, "Cannot move a workspace");
@@ -688,6 +830,17 @@ public class ResourceServiceImpl implements ResourceService {
 	}
 
 	public void deleteResource(Resource resource, WebdavSession session) throws DavException {
+		String sid = getSid(session);
+		ResourceCache.get().invalidate(sid);
+		try {
+			doDeleteResource(resource, session);
+		} finally {
+			// Drop also what has been read during the modification
+			ResourceCache.get().invalidate(sid);
+		}
+	}
+
+	private void doDeleteResource(Resource resource, WebdavSession session) throws DavException {
 		String sid = getSid(session);
 		try {
 			Folder folder = assertResourceIsNotWorkspace(resource);
@@ -752,7 +905,17 @@ public class ResourceServiceImpl implements ResourceService {
 	public void copyResource(Resource destinationResource, Resource resource, WebdavSession session)
 			throws DavException {
 		String sid = getSid(session);
+		ResourceCache.get().invalidate(sid);
+		try {
+			doCopyResource(destinationResource, resource, session);
+		} finally {
+			// Drop also what has been read during the modification
+			ResourceCache.get().invalidate(sid);
+		}
+	}
 
+	private void doCopyResource(Resource destinationResource, Resource resource, WebdavSession session)
+			throws DavException {
 		long rootId = 0L;
 		User user = null;
 		try {
@@ -827,11 +990,9 @@ public class ResourceServiceImpl implements ResourceService {
 
 	@Override
 	public InputStream streamOut(Resource resource) {
-
 		if (!resource.isDownloadEnabled())
 			throw new DavResourceIOException("The user doesn't have the download permission");
 
-		String version = resource.getVersionLabel();
 		Document document = null;
 		try {
 			document = documentDAO.findById(Long.parseLong(resource.getID()));
@@ -844,29 +1005,61 @@ public class ResourceServiceImpl implements ResourceService {
 			return new ByteArrayInputStream(new String("not found").getBytes());
 		}
 
-		if (document.getVersion() != null && document.getVersion().equals(resource.getVersionLabel()))
-			version = null;
+		try {
+			return storer.getStream(document.getId(), getResourceToStream(document, resource));
+		} catch (IOException e) {
+			throw new DavResourceIOException(e.getMessage());
+		}
+	}
+
+	@Override
+	public ReadableByteChannel streamOut(Resource resource, long start) {
+		if (!resource.isDownloadEnabled())
+			throw new DavResourceIOException("The user doesn't have the download permission");
 
-		InputStream is = null;
+		Document document = null;
+		try {
+			document = documentDAO.findById(Long.parseLong(resource.getID()));
+		} catch (PersistenceException e1) {
+			log.error(e1.getMessage(), e1);
+			return null;
+		}
+		if (document == null) {
+			// Document not found
+			return Channels.newChannel(new ByteArrayInputStream(new String("not found").getBytes()));
+		}
 
 		try {
-			if (version == null || version.equals("")) {
-				String res = storer.getResourceName(document, null, null);
-				is = storer.getStream(document.getId(), res);
-			} else {
-				String res = storer.getResourceName(document, resource.getVersionLabel(), null);
-				is = storer.getStream(document.getId(), res);
-			}
+			return storer.getChannel(document.getId(), getResourceToStream(document, resource), start);
 		} catch (IOException e) {
 			throw new DavResourceIOException(e.getMessage());
 		}
-		return is;
+	}
+
+	private String getResourceToStream(Document document, Resource resource) {
+		String version = resource.getVersionLabel();
+		if (document.getVersion() != null && document.getVersion().equals(resource.getVersionLabel()))
+			version = null;
+
+		if (version == null || version.equals(""))
+			return storer.getResourceName(document, null, null);
+		else
+			return storer.getResourceName(document, resource.getVersionLabel(), null);
 	}
 
 	@Override
 	public void checkout(Resource resource, WebdavSession session) throws DavException {
 		String sid = getSid(session);
+		ResourceCache.get().invalidate(sid);
+		try {
+			doCheckout(resource, session);
+		} finally {
+			// Drop also what has been read during the modification
+			ResourceCache.get().invalidate(sid);
+		}
+	}
 
+	private void doCheckout(Resource resource, WebdavSession session) throws DavException {
 		User user = null;
 		try {
 			user = userDAO.findById(resource.getRequestedPerson());
@@ -948,6 +1141,16 @@ public class ResourceServiceImpl implements ResourceService {
 
 	public void uncheckout(Resource resource, WebdavSession session) {
 		String sid = getSid(session);
+		ResourceCache.get().invalidate(sid);
+		try {
+			doUncheckout(resource, session);
+		} finally {
+			// Drop also what has been read during the modification
+			ResourceCache.get().invalidate(sid);
+		}
+	}
+
+	private void doUncheckout(Resource resource, WebdavSession session) {
 		try {
 			User user = userDAO.findById(resource.getRequestedPerson());
 			// Create the document history event
@@ -51,8 +51,7 @@ import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.security.SessionManager;
-import com.logicaldoc.core.security.User;
-import com.logicaldoc.core.security.dao.UserDAO;
+import com.logicaldoc.core.security.SessionPrincipal;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.webdav.context.ExportContext;
 import com.logicaldoc.webdav.resource.DavResourceFactory;
@@ -132,11 +131,11 @@ abstract public class AbstractWebdavServlet extends HttpServlet implements DavCo
 				DavSessionImpl davSession = new DavSessionImpl();
 				davSession.setTenantId(SessionManager.get().get(session.getSid()).getTenantId());
 				davSession.putObject("sid", session.getSid());
-				UserDAO dao = (UserDAO) Context.get().getBean(UserDAO.class);
-				User user = dao.findById(session.getUserId());
-				dao.initialize(user);
+				SessionPrincipal principal = SessionManager.get().getPrincipal(session.getSid());
+				if (principal == null)
+					throw new DavException(HttpServletResponse.SC_FORBIDDEN);
 				davSession.putObject("id", session.getUserId());
-				davSession.putObject("user", user);
+				davSession.putObject("user", principal.getUser());
 
 				webdavRequest.setDavSession(davSession);
 
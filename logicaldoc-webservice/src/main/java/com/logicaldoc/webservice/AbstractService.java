@@ -21,6 +21,7 @@ import com.logicaldoc.core.security.Group;
 import com.logicaldoc.core.security.Permission;
 import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.security.SessionManager;
+import com.logicaldoc.core.security.SessionPrincipal;
 import com.logicaldoc.core.security.User;
 import com.logicaldoc.core.security.authentication.AccountNotFoundException;
 import com.logicaldoc.core.security.authentication.AuthenticationException;
@@ -28,7 +29,6 @@ import com.logicaldoc.core.security.authentication.InvalidSessionException;
 import com.logicaldoc.core.security.authorization.PermissionException;
 import com.logicaldoc.core.security.dao.GroupDAO;
 import com.logicaldoc.core.security.dao.MenuDAO;
-import com.logicaldoc.core.security.dao.UserDAO;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.util.time.DateUtil;
 import com.logicaldoc.webservice.model.WSUtil;
@@ -70,7 +70,6 @@ public class AbstractService {
 	 */
 	protected User validateSession(String sid)
 			throws WebserviceException, PersistenceException, AuthenticationException {
-		UserDAO userDao = (UserDAO) Context.get().getBean(UserDAO.class);
 		if (!validateSession) {
 			User user = new User();
 			user.setId(1L);
@@ -91,13 +90,13 @@ public class AbstractService {
 		} else {
 			SessionManager.get().renew(sid);
 		}
-		String username = SessionManager.get().get(sid).getUsername();
-		User user = userDao.findByUsername(username);
-		if (user == null)
-			throw new AccountNotFoundException(null, String.format("User %s not found", username));
-		else
-			userDao.initialize(user);
-		return user;
+
+		// The user is loaded once per session and reused until modified
+		SessionPrincipal principal = SessionManager.get().getPrincipal(sid);
+		if (principal == null)
+			throw new AccountNotFoundException(null,
+					String.format("User %s not found", SessionManager.get().get(sid).getUsername()));
+		return principal.getUser();
 	}
 
 	/**
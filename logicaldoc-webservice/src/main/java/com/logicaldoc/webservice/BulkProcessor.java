@@ -0,0 +1,317 @@
+package com.logicaldoc.webservice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.logicaldoc.core.document.DocumentManager;
+import com.logicaldoc.core.document.dao.DocumentHistoryDAO;
+import com.logicaldoc.util.Context;
+import com.logicaldoc.webservice.model.WSBulkResult;
+
+/**
+ * Executes the operations of a bulk request in chunks of
+ * <b>webservice.bulk.chunk</b> operations, collecting a result for each
+ * operation. Each chunk runs in a single transaction and its histories are
+ * written in JDBC batches when the chunk ends; if an operation of the chunk
+ * fails, the whole chunk is rolled back and its operations are executed again
+ * one by one, so that every operation gets its own outcome. The locks of the
+ * documents of a chunk are held until its transaction completes, so the other
+ * writers cannot interleave with a chunk not yet committed.<br>
+ * The operations that cannot be repeated, like the creations that consume the
+ * content of a stream, are executed as soon as they are added, each one in its
+ * own transaction together with its histories.<br>
+ * A bulk accepts at most <b>webservice.bulk.max</b> operations: the requests
+ * that know their size in advance should verify it with
+ * {@link #checkSize(int)}, while the streams receive a failure for each
+ * operation beyond the limit.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class BulkProcessor {
+
+	public static final String CREATE = "create";
+
+	public static final String UPDATE = "update";
+
+	public static final String MOVE = "move";
+
+	public static final String DELETE = "delete";
+
+	private static final Logger log = LoggerFactory.getLogger(BulkProcessor.class);
+
+	/**
+	 * A single operation of a bulk request
+	 */
+	public abstract static class Operation {
+
+		private final String name;
+
+		private final long docId;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name name of the operation, like <b>update</b>
+		 * @param docId identifier of the document, 0 if not known in advance
+		 */
+		protected Operation(String name, long docId) {
+			this.name = name;
+			this.docId = docId;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getDocId() {
+			return docId;
+		}
+
+		/**
+		 * Executes the operation
+		 *
+		 * @return identifier of the affected document
+		 *
+		 * @throws Exception if the operation cannot be completed
+		 */
+		public abstract long execute() throws Exception;
+
+		/**
+		 * Tells if the operation can be executed again after a rollback
+		 *
+		 * @return true by default
+		 */
+		public boolean isRepeatable() {
+			return true;
+		}
+	}
+
+	/**
+	 * Creates an operation that just fails, to report an invalid item of the
+	 * request in its own result
+	 *
+	 * @param name name of the operation
+	 * @param docId identifier of the document, 0 if not known
+	 * @param error the error to report
+	 *
+	 * @return the operation
+	 */
+	public static Operation failure(String name, long docId, String error) {
+		return new Operation(name, docId) {
+
+			@Override
+			public long execute() throws Exception {
+				throw new WebserviceException(error);
+			}
+
+			@Override
+			public boolean isRepeatable() {
+				return false;
+			}
+		};
+	}
+
+	private final int chunkSize;
+
+	private final int maxOperations;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final DocumentHistoryDAO historyDao;
+
+	private final DocumentManager documentManager;
+
+	private final List<Operation> chunk = new ArrayList<>();
+
+	private final List<WSBulkResult> results = new ArrayList<>();
+
+	private int index = 0;
+
+	public BulkProcessor() {
+		Context context = Context.get();
+		chunkSize = Math.max(1, context.getProperties().getInt("webservice.bulk.chunk", 100));
+		maxOperations = context.getProperties().getInt("webservice.bulk.max", 100000);
+		historyDao = (DocumentHistoryDAO) context.getBean(DocumentHistoryDAO.class);
+		documentManager = (DocumentManager) context.getBean(DocumentManager.class);
+
+		TransactionTemplate template = null;
+		try {
+			template = new TransactionTemplate((PlatformTransactionManager) context.getBean("TransactionManager"));
+		} catch (Exception e) {
+			log.debug("No transaction manager, each operation will run in its own transactions");
+		}
+		transactionTemplate = template;
+	}
+
+	/**
+	 * Verifies that a bulk of the given size can be accepted, before
+	 * executing any operation
+	 *
+	 * @param size number of operations of the request
+	 *
+	 * @throws WebserviceException if the bulk contains too many operations
+	 */
+	public void checkSize(int size) throws WebserviceException {
+		if (maxOperations > 0 && size > maxOperations)
+			throw new WebserviceException(getMaxMessage());
+	}
+
+	/**
+	 * Tells if the bulk reached the maximum number of operations, so that the
+	 * next ones will be refused
+	 *
+	 * @return true if no other operation is accepted
+	 */
+	public boolean isFull() {
+		return maxOperations > 0 && index + chunk.size() >= maxOperations;
+	}
+
+	/**
+	 * Adds an operation to the bulk, it will be executed when its chunk is
+	 * full or right now if it is not repeatable. If the bulk is full, the
+	 * operation is not executed and gets a failure result.
+	 *
+	 * @param operation the operation to add
+	 */
+	public void add(Operation operation) {
+		if (isFull()) {
+			// Preserve the order of the results
+			executeChunk();
+			results.add(new WSBulkResult(index++, operation.getName(), operation.getDocId(), getMaxMessage()));
+			return;
+		}
+
+		if (operation.isRepeatable()) {
+			chunk.add(operation);
+			if (chunk.size() >= chunkSize)
+				executeChunk();
+		} else {
+			// Preserve the order of the operations
+			executeChunk();
+			results.add(execute(operation, index++));
+		}
+	}
+
+	/**
+	 * Executes the operations still pending
+	 *
+	 * @return the results of all the operations, in the same order they were
+	 *         added
+	 */
+	public List<WSBulkResult> finish() {
+		executeChunk();
+		return results;
+	}
+
+	/**
+	 * Releases the resources of the current thread, always invoke it when the
+	 * bulk ends
+	 */
+	public void close() {
+		historyDao.discardBatch();
+	}
+
+	private void executeChunk() {
+		if (chunk.isEmpty())
+			return;
+
+		List<Operation> operations = new ArrayList<>(chunk);
+		chunk.clear();
+		int first = index;
+		index += operations.size();
+
+		if (operations.size() > 1 && transactionTemplate != null) {
+			Set<Long> docIds = operations.stream().map(Operation::getDocId).collect(Collectors.toSet());
+			try {
+				results.addAll(documentManager.executeLocked(docIds, () -> transactionTemplate.execute(status -> {
+					historyDao.startBatch();
+					try {
+						List<WSBulkResult> chunkResults = new ArrayList<>();
+						for (int i = 0; i < operations.size(); i++) {
+							Operation operation = operations.get(i);
+							chunkResults.add(new WSBulkResult(first + i, operation.getName(), invoke(operation)));
+						}
+						invokeFlushBatch();
+						return chunkResults;
+					} finally {
+						historyDao.discardBatch();
+					}
+				})));
+				return;
+			} catch (Throwable t) {
+				log.debug("Chunk of {} operations rolled back, executing them one by one: {}", operations.size(),
+						getMessage(t));
+			}
+		}
+
+		for (int i = 0; i < operations.size(); i++)
+			results.add(execute(operations.get(i), first + i));
+	}
+
+	/**
+	 * Executes a single operation in its own transaction, so its histories are
+	 * written or rolled back together with it
+	 */
+	private WSBulkResult execute(Operation operation, int position) {
+		try {
+			long docId;
+			if (transactionTemplate != null)
+				docId = transactionTemplate.execute((TransactionCallback<Long>) status -> invoke(operation));
+			else
+				docId = operation.execute();
+			return new WSBulkResult(position, operation.getName(), docId);
+		} catch (Throwable t) {
+			log.debug("Bulk operation {} {} failed: {}", position, operation.getName(), getMessage(t));
+			return new WSBulkResult(position, operation.getName(), operation.getDocId(), getMessage(t));
+		}
+	}
+
+	private static long invoke(Operation operation) {
+		try {
+			return operation.execute();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new OperationException(e);
+		}
+	}
+
+	private void invokeFlushBatch() {
+		try {
+			historyDao.flushBatch();
+		} catch (Exception e) {
+			throw new OperationException(e);
+		}
+	}
+
+	private String getMaxMessage() {
+		return String.format("A bulk request cannot contain more than %d operations", maxOperations);
+	}
+
+	private static String getMessage(Throwable t) {
+		Throwable cause = t instanceof OperationException ? t.getCause() : t;
+		return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+	}
+
+	/**
+	 * Carries a checked exception out of a transaction, so that it gets
+	 * rolled back
+	 */
+	private static class OperationException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		OperationException(Exception cause) {
+			super(cause);
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package com.logicaldoc.webservice;
 
+import java.util.Collection;
+import java.util.Date;
+
+import org.hibernate.Session;
 import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.HibernatePersistentObjectDAO;
@@ -14,6 +18,8 @@ import com.logicaldoc.core.PersistenceException;
 public class HibernateWebserviceCallDAO extends HibernatePersistentObjectDAO<WebserviceCall>
 		implements WebserviceCallDAO {
 
+	private static final int BATCH_SIZE = 100;
+
 	private HibernateWebserviceCallDAO() {
 		super(WebserviceCall.class);
 		super.log = LoggerFactory.getLogger(HibernateWebserviceCallDAO.class);
@@ -27,4 +33,28 @@ public class HibernateWebserviceCallDAO extends HibernatePersistentObjectDAO<Web
 			log.error(e.getMessage(), e);
 		}
 	}
+
+	@Override
+	public void storeAll(Collection<WebserviceCall> calls) throws PersistenceException {
+		if (!checkStoringAspect() || calls.isEmpty())
+			return;
+
+		Session session = sessionFactory.getCurrentSession();
+		Integer batchSize = session.getJdbcBatchSize();
+		session.setJdbcBatchSize(BATCH_SIZE);
+		try {
+			Date now = new Date();
+			for (WebserviceCall call : calls) {
+				call.setLastModified(now);
+				session.save(call);
+			}
+			session.flush();
+			for (WebserviceCall call : calls)
+				session.evict(call);
+		} catch (Throwable t) {
+			throw new PersistenceException(t);
+		} finally {
+			session.setJdbcBatchSize(batchSize);
+		}
+	}
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.logicaldoc.webservice;
 
+import java.util.Collection;
+
+import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.PersistentObjectDAO;
 
 /**
@@ -18,4 +21,14 @@ public interface WebserviceCallDAO extends PersistentObjectDAO<WebserviceCall> {
 	 *        old
 	 */
 	public void cleanOldCalls(int ttl);
+
+	/**
+	 * Saves several new calls in the same transaction, the inserts are sent
+	 * to the database in JDBC batches
+	 * 
+	 * @param calls the calls to save
+	 * 
+	 * @throws PersistenceException error at data layer
+	 */
+	public void storeAll(Collection<WebserviceCall> calls) throws PersistenceException;
 }
\ No newline at end of file
@@ -2,11 +2,16 @@ package com.logicaldoc.webservice;
 
 import java.io.InputStream;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,7 +44,16 @@ import com.logicaldoc.util.time.TimeDiff;
 import com.logicaldoc.util.time.TimeDiff.TimeField;
 
 /**
- * An {@link Interceptor} invoked when a webservice message has been received
+ * An {@link Interceptor} invoked when a webservice message has been received.
+ * <br>
+ * The calls are counted in memory and the counters are added to the
+ * sequences in the database every 10 minutes. When the recording is enabled,
+ * the calls are put in a bounded buffer of <b>webservice.call.buffer</b>
+ * elements, drained by a single writer that saves them in batches of
+ * <b>webservice.call.batch</b>. When the buffer is full the new calls are
+ * dropped; with <b>webservice.call.overflow</b>=<i>sample</i> only one call
+ * every <b>webservice.call.sample</b> is recorded as soon as the buffer is 80%
+ * full, so that a burst is still represented. The discarded calls are counted.
  * 
  * @author Marco Meschieri - LogicalDOC
  * @since 8.7
@@ -48,8 +62,6 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 
 	public static final String THREADPOOL_CALL_COUNTER = "WebserviceCallCounter";
 
-	public static final String THREADPOOL_CALL_STORE = "WebserviceCallStore";
-
 	private static final String WSCALL = "wscall";
 
 	public static final String WSCALL_HYPHEN = WSCALL + "-";
@@ -58,16 +70,18 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 
 	private SequenceDAO sequenceDAO;
 
+	private static final long SYNC_INTERVAL = 10 * 60 * 1000L;
+
 	/**
 	 * A cache of counters: key=countername-tenantId name value=actual total
 	 * calls
 	 */
-	private static ConcurrentHashMap<Pair<String, Long>, AtomicLong> counters = new ConcurrentHashMap<>();
+	private static Map<Pair<String, Long>, Counter> counters = new ConcurrentHashMap<>();
 
 	/**
-	 * Last time a database synchronization of the coutners has done
+	 * Last time a database synchronization of the counters has been scheduled
 	 */
-	private Date lastSync;
+	private final AtomicLong lastSync = new AtomicLong(0L);
 
 	/**
 	 * Last time the oldest calls were cleaned
@@ -76,6 +90,25 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 
 	private ContextProperties settings;
 
+	/**
+	 * The calls waiting to be saved
+	 */
+	private BlockingQueue<WebserviceCall> buffer;
+
+	private CallWriter writer;
+
+	private final LongAdder recordedCalls = new LongAdder();
+
+	private final LongAdder writtenCalls = new LongAdder();
+
+	private final LongAdder droppedCalls = new LongAdder();
+
+	private final LongAdder sampledCalls = new LongAdder();
+
+	private final LongAdder writeBatches = new LongAdder();
+
+	private final long startTime = System.currentTimeMillis();
+
 	public WebserviceInterceptor() {
 		super(Phase.RECEIVE);
 	}
@@ -170,8 +203,86 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 		if (call.getUri() != null)
 			call.setUri(maskCredentials(call.getUri()));
 
-		ThreadPools pools = (ThreadPools) Context.get().getBean(ThreadPools.class);
-		pools.schedule(new WebserviceCallStore(call), THREADPOOL_CALL_STORE, 5000);
+		enqueue(call);
+	}
+
+	/**
+	 * Puts a call in the buffer applying the overflow policy
+	 * 
+	 * @param call the call to save
+	 * 
+	 * @return true if the call has been accepted
+	 */
+	protected boolean enqueue(WebserviceCall call) {
+		recordedCalls.increment();
+		BlockingQueue<WebserviceCall> queue = getBuffer();
+
+		if ("sample".equals(settings.getProperty("webservice.call.overflow", "drop"))
+				&& queue.size() >= queue.remainingCapacity() * 4) {
+			int rate = Math.max(1, settings.getInt("webservice.call.sample", 10));
+			if (recordedCalls.sum() % rate != 0) {
+				sampledCalls.increment();
+				return false;
+			}
+		}
+
+		if (!queue.offer(call)) {
+			droppedCalls.increment();
+			return false;
+		}
+
+		if (queue.size() >= getBatchSize())
+			writer.wakeUp();
+		return true;
+	}
+
+	private synchronized BlockingQueue<WebserviceCall> getBuffer() {
+		if (buffer == null) {
+			buffer = new ArrayBlockingQueue<>(Math.max(1, settings.getInt("webservice.call.buffer", 10000)));
+			writer = new CallWriter();
+			writer.start();
+		}
+		return buffer;
+	}
+
+	private int getBatchSize() {
+		return Math.max(1, settings.getInt("webservice.call.batch", 200));
+	}
+
+	/**
+	 * Saves in the database the calls in the buffer
+	 */
+	protected void flushCalls() {
+		if (buffer == null)
+			return;
+
+		WebserviceCallDAO dao = (WebserviceCallDAO) Context.get().getBean(WebserviceCallDAO.class);
+		Date now = new Date();
+		if (lastClean == null)
+			lastClean = now;
+		if (TimeDiff.getTimeDifference(lastClean, now, TimeField.HOUR) >= 24) {
+			dao.cleanOldCalls(settings.getInt("webservice.call.ttl", 90));
+			lastClean = now;
+		}
+
+		int batchSize = getBatchSize();
+		List<WebserviceCall> batch = new ArrayList<>(batchSize);
+		while (buffer.drainTo(batch, batchSize) > 0) {
+			try {
+				dao.storeAll(batch);
+				writtenCalls.add(batch.size());
+				writeBatches.increment();
+			} catch (Throwable t) {
+				droppedCalls.add(batch.size());
+				log.warn("Unable to save {} webservice calls: {}", batch.size(), t.getMessage(), t);
+			}
+			batch.clear();
+		}
+
+		if (log.isDebugEnabled())
+			log.debug("Webservice calls: {} recorded, {} written in {} batches, {} dropped, {} sampled out, {}/s",
+					getRecordedCalls(), getWrittenCalls(), getWriteBatches(), getDroppedCalls(), getSampledCalls(),
+					getThroughput());
 	}
 
 	static String maskCredentials(String originalString) {
@@ -224,24 +335,33 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 			increaseCounter(WSCALL_HYPHEN + currentMonth, session.getTenantId());
 		}
 
-		Date now = new Date();
-		if (lastSync == null)
-			lastSync = new Date(1);
-
-		long timeSinceLastSync = ChronoUnit.MINUTES.between(lastSync.toInstant(), now.toInstant());
-		if (timeSinceLastSync >= 10) {
+		// Just one request schedules the synchronization
+		long now = System.currentTimeMillis();
+		long last = lastSync.get();
+		if (now - last >= SYNC_INTERVAL && lastSync.compareAndSet(last, now)) {
 			ThreadPools pools = (ThreadPools) Context.get().getBean(ThreadPools.class);
 			pools.schedule(new WebserviceCallCounterSync(), THREADPOOL_CALL_COUNTER, 5000);
 		}
 	}
 
-	protected void syncCounters() {
-		for (Pair<String, Long> counterPair : counters.keySet()) {
-			AtomicLong counter = counters.get(counterPair);
-			sequenceDAO.next(counterPair.getKey(), 0L, counterPair.getValue(), counter.get());
-			counter.set(0L);
+	/**
+	 * Adds to the sequences the calls counted since the last synchronization.
+	 * The calls of a counter that cannot be saved are retried the next time.
+	 */
+	protected synchronized void syncCounters() {
+		for (Map.Entry<Pair<String, Long>, Counter> entry : counters.entrySet()) {
+			Counter counter = entry.getValue();
+			long delta = counter.getDelta();
+			if (delta <= 0)
+				continue;
+
+			try {
+				sequenceDAO.next(entry.getKey().getKey(), 0L, entry.getKey().getValue(), delta);
+				counter.commit(delta);
+			} catch (Throwable t) {
+				log.warn("Unable to save the counter {}: {}", entry.getKey().getKey(), t.getMessage(), t);
+			}
 		}
-		lastSync = new Date();
 	}
 
 	public void shutdown() {
@@ -250,16 +370,64 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 		} catch (Throwable t) {
 			log.warn(t.getMessage(), t);
 		}
+
+		if (writer != null) {
+			writer.finish();
+			try {
+				flushCalls();
+			} catch (Throwable t) {
+				log.warn(t.getMessage(), t);
+			}
+		}
 	}
 
 	protected void increaseCounter(String counterName, long tenantId) {
-		Pair<String, Long> counterPair = new Pair<>(counterName, tenantId);
-		AtomicLong counter = counters.get(counterPair);
-		if (counter == null) {
-			counter = new AtomicLong(0L);
-			counters.put(counterPair, counter);
-		}
-		counter.incrementAndGet();
+		counters.computeIfAbsent(new Pair<>(counterName, tenantId), k -> new Counter()).increment();
+	}
+
+	public long getRecordedCalls() {
+		return recordedCalls.sum();
+	}
+
+	public long getWrittenCalls() {
+		return writtenCalls.sum();
+	}
+
+	/**
+	 * Gets the number of calls discarded because the buffer was full or their
+	 * save failed
+	 * 
+	 * @return number of dropped calls
+	 */
+	public long getDroppedCalls() {
+		return droppedCalls.sum();
+	}
+
+	/**
+	 * Gets the number of calls discarded by the sampling
+	 * 
+	 * @return number of sampled out calls
+	 */
+	public long getSampledCalls() {
+		return sampledCalls.sum();
+	}
+
+	public long getWriteBatches() {
+		return writeBatches.sum();
+	}
+
+	public int getPendingCalls() {
+		return buffer != null ? buffer.size() : 0;
+	}
+
+	/**
+	 * Gets the average number of recorded calls per second since the start
+	 * 
+	 * @return the throughput
+	 */
+	public double getThroughput() {
+		long elapsed = System.currentTimeMillis() - startTime;
+		return elapsed > 0 ? getRecordedCalls() * 1000D / elapsed : 0D;
 	}
 
 	static Session getSession(Message message, String payload) {
@@ -330,7 +498,6 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 		public void run() {
 			try {
 				syncCounters();
-				lastSync = new Date();
 			} catch (Throwable t) {
 				log.warn(t.getMessage(), t);
 			}
@@ -338,34 +505,80 @@ public class WebserviceInterceptor extends AbstractPhaseInterceptor<Message> {
 	}
 
 	/**
-	 * This runnable takes care of writing a call into the database
+	 * A counter of calls that remembers how many calls have already been
+	 * written in the database
 	 */
-	class WebserviceCallStore implements Runnable {
+	static class Counter {
 
-		private WebserviceCall call;
+		private final LongAdder total = new LongAdder();
 
-		public WebserviceCallStore(WebserviceCall call) {
-			super();
-			this.call = call;
+		private long synced = 0L;
+
+		void increment() {
+			total.increment();
+		}
+
+		/**
+		 * Gets the calls counted since the last commit, to be invoked by one
+		 * thread at a time
+		 */
+		long getDelta() {
+			return total.sum() - synced;
+		}
+
+		/**
+		 * Marks some calls as written in the database
+		 * 
+		 * @param delta the value returned by {@link #getDelta()}
+		 */
+		void commit(long delta) {
+			synced += delta;
+		}
+	}
+
+	/**
+	 * The single thread that saves the buffered calls
+	 */
+	class CallWriter extends Thread {
+		private volatile boolean active = true;
+
+		private CallWriter() {
+			setDaemon(true);
+			setName("WebserviceCallWriter");
 		}
 
 		@Override
 		public void run() {
-			try {
-				WebserviceCallDAO dao = (WebserviceCallDAO) Context.get().getBean(WebserviceCallDAO.class);
-				Date now = new Date();
+			while (active) {
+				synchronized (this) {
+					try {
+						if (buffer.size() < getBatchSize())
+							wait(getInterval());
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+
+				try {
+					flushCalls();
+				} catch (Throwable t) {
+					log.warn(t.getMessage(), t);
+				}
+			}
+		}
 
-				if (lastClean == null)
-					lastClean = now;
+		private long getInterval() {
+			return settings.getLong("webservice.call.interval", 1000L);
+		}
 
-				long timeSinceLastClean = TimeDiff.getTimeDifference(lastClean, now, TimeField.HOUR);
-				if (timeSinceLastClean >= 24)
-					dao.cleanOldCalls(settings.getInt("webservice.call.ttl", 90));
+		public synchronized void wakeUp() {
+			notifyAll();
+		}
 
-				dao.store(call);
-			} catch (Throwable t) {
-				log.warn(t.getMessage(), t);
-			}
+		public synchronized void finish() {
+			this.active = false;
+			notifyAll();
 		}
 	}
 
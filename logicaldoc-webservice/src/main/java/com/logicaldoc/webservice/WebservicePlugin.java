@@ -28,9 +28,13 @@ public class WebservicePlugin extends LogicalDOCPlugin {
 			pbean.setProperty("webservice.gzip", "20");
 			pbean.setProperty("webservice.call.gridRecord", "true");
 			pbean.setProperty("webservice.call.ttl", "90");
+			pbean.setProperty("webservice.call.buffer", "10000");
+			pbean.setProperty("webservice.call.batch", "200");
+			pbean.setProperty("webservice.call.overflow", "drop");
+			pbean.setProperty("webservice.call.sample", "10");
+			pbean.setProperty("webservice.bulk.chunk", "100");
+			pbean.setProperty("webservice.bulk.max", "100000");
 
-			pbean.setProperty(THREADPOOL + WebserviceInterceptor.THREADPOOL_CALL_STORE + ".max", "20");
-			pbean.setProperty(THREADPOOL + WebserviceInterceptor.THREADPOOL_CALL_STORE + ".type", "default");
 			pbean.setProperty(THREADPOOL + WebserviceInterceptor.THREADPOOL_CALL_COUNTER + ".max", "20");
 			pbean.setProperty(THREADPOOL + WebserviceInterceptor.THREADPOOL_CALL_COUNTER + ".type", "default");
 
@@ -0,0 +1,93 @@
+package com.logicaldoc.webservice.model;
+
+import javax.xml.bind.annotation.XmlType;
+
+import com.logicaldoc.webservice.doc.WSDoc;
+
+/**
+ * Web Service result of a single operation of a bulk request.
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+@XmlType(name = "WSBulkResult")
+public class WSBulkResult {
+
+	@WSDoc(description = "position of the operation in the request, starting from 0")
+	private int index;
+
+	@WSDoc(description = "the operation: <b>create</b>, <b>update</b>, <b>move</b> or <b>delete</b>")
+	private String operation;
+
+	@WSDoc(description = "identifier of the affected document, for the creations it is the new document", required = false)
+	private long docId;
+
+	@WSDoc(description = "if the operation completed successfully")
+	private boolean success;
+
+	@WSDoc(description = "the error message, when the operation failed", required = false)
+	private String error;
+
+	public WSBulkResult() {
+	}
+
+	public WSBulkResult(int index, String operation, long docId) {
+		this.index = index;
+		this.operation = operation;
+		this.docId = docId;
+		this.success = true;
+	}
+
+	public WSBulkResult(int index, String operation, long docId, String error) {
+		this.index = index;
+		this.operation = operation;
+		this.docId = docId;
+		this.success = false;
+		this.error = error;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public void setOperation(String operation) {
+		this.operation = operation;
+	}
+
+	public long getDocId() {
+		return docId;
+	}
+
+	public void setDocId(long docId) {
+		this.docId = docId;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public void setSuccess(boolean success) {
+		this.success = success;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	@Override
+	public String toString() {
+		return index + " " + operation + " " + docId + (success ? " ok" : " " + error);
+	}
+}
@@ -0,0 +1,86 @@
+package com.logicaldoc.webservice.model;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlType;
+
+import com.logicaldoc.webservice.doc.WSDoc;
+
+/**
+ * Web Service Change, an entry of the change log
+ * 
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+@XmlType(name = "WSChange")
+public class WSChange implements Serializable {
+
+	@WSDoc(documented = false)
+	private static final long serialVersionUID = 1L;
+
+	@WSDoc(description = "position in the change log, use the last one as the cursor to read the next changes")
+	private long number;
+
+	@WSDoc(description = "date of the change; format is 'yyyy-MM-dd HH:mm:ss'")
+	private String date;
+
+	@WSDoc(description = "identifier of the document or folder")
+	private long objectId;
+
+	@WSDoc(description = "kind of object: <b>0</b> = document, <b>1</b> = folder")
+	private int objectType;
+
+	@WSDoc(description = "kind of change: <b>0</b> = created, <b>1</b> = updated, <b>2</b> = deleted")
+	private int changeType;
+
+	@WSDoc(description = "the event that originated the change")
+	private String event;
+
+	public long getNumber() {
+		return number;
+	}
+
+	public void setNumber(long number) {
+		this.number = number;
+	}
+
+	public String getDate() {
+		return date;
+	}
+
+	public void setDate(String date) {
+		this.date = date;
+	}
+
+	public long getObjectId() {
+		return objectId;
+	}
+
+	public void setObjectId(long objectId) {
+		this.objectId = objectId;
+	}
+
+	public int getObjectType() {
+		return objectType;
+	}
+
+	public void setObjectType(int objectType) {
+		this.objectType = objectType;
+	}
+
+	public int getChangeType() {
+		return changeType;
+	}
+
+	public void setChangeType(int changeType) {
+		this.changeType = changeType;
+	}
+
+	public String getEvent() {
+		return event;
+	}
+
+	public void setEvent(String event) {
+		this.event = event;
+	}
+}
@@ -1,6 +1,7 @@
 package com.logicaldoc.webservice.rest;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import javax.activation.DataHandler;
@@ -9,6 +10,7 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -26,6 +28,7 @@ import com.logicaldoc.core.parser.ParseException;
 import com.logicaldoc.core.security.authentication.AuthenticationException;
 import com.logicaldoc.core.security.authorization.PermissionException;
 import com.logicaldoc.webservice.WebserviceException;
+import com.logicaldoc.webservice.model.WSBulkResult;
 import com.logicaldoc.webservice.model.WSDocument;
 import com.logicaldoc.webservice.model.WSLink;
 import com.logicaldoc.webservice.model.WSNote;
@@ -906,4 +909,104 @@ public interface DocumentService {
 	 * @throws AuthenticationException Invalid credentials  
 	 */
 	public void unsetPassword(long docId, String currentPassword) throws AuthenticationException, PermissionException, WebserviceException, PersistenceException;
-}
\ No newline at end of file
+
+	/**
+	 * Creates several documents reading a multipart body in streaming: each
+	 * document is described by a part named <b>document</b> with the JSON
+	 * metadata, followed by a part named <b>content</b> with the file
+	 * 
+	 * @param contentType the content type of the request, with the boundary
+	 * @param body the multipart body
+	 * 
+	 * @return the results of the single creations
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 * @throws IOException I/O error reading the body
+	 */
+	@POST
+	@Path("/bulkCreate")
+	@Consumes(MediaType.MULTIPART_FORM_DATA)
+	@Produces(MediaType.APPLICATION_JSON)
+	public WSBulkResult[] bulkCreate(@HeaderParam("Content-Type")
+	String contentType, InputStream body)
+			throws AuthenticationException, WebserviceException, PersistenceException, IOException;
+
+	/**
+	 * Updates several documents
+	 * 
+	 * @param documents the documents to update
+	 * 
+	 * @return the results of the single updates
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 */
+	@POST
+	@Path("/bulkUpdate")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public WSBulkResult[] bulkUpdate(WSDocument[] documents)
+			throws AuthenticationException, WebserviceException, PersistenceException;
+
+	/**
+	 * Moves several documents into the same folder
+	 * 
+	 * @param folderId identifier of the target folder
+	 * @param docIds identifiers of the documents
+	 * 
+	 * @return the results of the single moves
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 */
+	@POST
+	@Path("/bulkMove")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public WSBulkResult[] bulkMove(@QueryParam("folderId")
+	long folderId, long[] docIds) throws AuthenticationException, WebserviceException, PersistenceException;
+
+	/**
+	 * Deletes several documents
+	 * 
+	 * @param docIds identifiers of the documents
+	 * 
+	 * @return the results of the single deletions
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 */
+	@POST
+	@Path("/bulkDelete")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public WSBulkResult[] bulkDelete(long[] docIds)
+			throws AuthenticationException, WebserviceException, PersistenceException;
+
+	/**
+	 * Executes a stream of operations, one JSON object per line (NDJSON) like
+	 * <code>{"op":"move","docId":123,"folderId":456}</code>. The supported
+	 * operations are <b>update</b> (with the <b>document</b>), <b>move</b>
+	 * and <b>delete</b>.
+	 * 
+	 * @param operations the stream of operations
+	 * 
+	 * @return the results of the single operations
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 * @throws IOException I/O error reading the stream
+	 */
+	@POST
+	@Path("/bulk")
+	@Consumes("application/x-ndjson")
+	@Produces(MediaType.APPLICATION_JSON)
+	public WSBulkResult[] bulk(InputStream operations)
+			throws AuthenticationException, WebserviceException, PersistenceException, IOException;
+}
@@ -4,8 +4,10 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
+import com.logicaldoc.webservice.model.WSChange;
 import com.logicaldoc.webservice.model.WSParameter;
 import com.logicaldoc.webservice.model.WSSystemInfo;
 
@@ -52,6 +54,22 @@ public interface SystemService {
 	 */
 	@GET
 	@Path("/getLanguages")	
-	public String[] getLanguages() throws Exception;	
-	
+	public String[] getLanguages() throws Exception;
+
+	/**
+	 * Retrieves the changes recorded in the change log after a given position.
+	 * Use the number of the last change returned as the cursor for the next
+	 * call.
+	 * 
+	 * @param since number of the last change already known, 0 to read from the
+	 *        beginning
+	 * @param max maximum number of changes to return
+	 * 
+	 * @return The changes ordered by ascending number
+	 * 
+	 * @throws Exception error in the server application
+	 */
+	@GET
+	@Path("/getChanges")
+	public WSChange[] getChanges(@QueryParam("since") long since, @QueryParam("max") Integer max) throws Exception;
 }
\ No newline at end of file
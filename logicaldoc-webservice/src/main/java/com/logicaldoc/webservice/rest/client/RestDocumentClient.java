@@ -2,6 +2,7 @@ package com.logicaldoc.webservice.rest.client;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.Arrays;
 
 import javax.activation.DataHandler;
@@ -18,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.logicaldoc.webservice.model.WSBulkResult;
 import com.logicaldoc.webservice.model.WSDocument;
 import com.logicaldoc.webservice.model.WSNote;
 import com.logicaldoc.webservice.model.WSRating;
@@ -223,4 +225,37 @@ public class RestDocumentClient extends AbstractRestClient {
 		WebClient.client(proxy).accept(MediaType.APPLICATION_JSON);
 		proxy.createThumbnail(docId, fileVersion, type);
 	}
+
+	public WSBulkResult[] bulkUpdate(WSDocument[] documents) throws Exception {
+		WebClient.client(proxy).type(MediaType.APPLICATION_JSON);
+		WebClient.client(proxy).accept(MediaType.APPLICATION_JSON);
+		return proxy.bulkUpdate(documents);
+	}
+
+	public WSBulkResult[] bulkMove(long folderId, long[] docIds) throws Exception {
+		WebClient.client(proxy).type(MediaType.APPLICATION_JSON);
+		WebClient.client(proxy).accept(MediaType.APPLICATION_JSON);
+		return proxy.bulkMove(folderId, docIds);
+	}
+
+	public WSBulkResult[] bulkDelete(long[] docIds) throws Exception {
+		WebClient.client(proxy).type(MediaType.APPLICATION_JSON);
+		WebClient.client(proxy).accept(MediaType.APPLICATION_JSON);
+		return proxy.bulkDelete(docIds);
+	}
+
+	/**
+	 * Executes a stream of operations, one JSON object per line
+	 * 
+	 * @param operations the operations in NDJSON format
+	 *
+	 * @return the result of each operation
+	 * 
+	 * @throws Exception error in the server application
+	 */
+	public WSBulkResult[] bulk(InputStream operations) throws Exception {
+		WebClient.client(proxy).type("application/x-ndjson");
+		WebClient.client(proxy).accept(MediaType.APPLICATION_JSON);
+		return proxy.bulk(operations);
+	}
 }
\ No newline at end of file
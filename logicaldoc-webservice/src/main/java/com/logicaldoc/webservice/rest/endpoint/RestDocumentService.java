@@ -1,6 +1,10 @@
 package com.logicaldoc.webservice.rest.endpoint;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import javax.activation.DataHandler;
@@ -9,6 +13,7 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -24,6 +29,10 @@ import org.apache.cxf.jaxrs.ext.multipart.Multipart;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Strings;
 import com.logicaldoc.core.PersistenceException;
 import com.logicaldoc.core.document.Document;
@@ -33,7 +42,10 @@ import com.logicaldoc.core.security.User;
 import com.logicaldoc.core.security.authentication.AuthenticationException;
 import com.logicaldoc.core.security.authorization.PermissionException;
 import com.logicaldoc.util.Context;
+import com.logicaldoc.util.io.MultipartReader;
+import com.logicaldoc.webservice.BulkProcessor;
 import com.logicaldoc.webservice.WebserviceException;
+import com.logicaldoc.webservice.model.WSBulkResult;
 import com.logicaldoc.webservice.model.WSDocument;
 import com.logicaldoc.webservice.model.WSLink;
 import com.logicaldoc.webservice.model.WSNote;
@@ -878,4 +890,150 @@ public class RestDocumentService extends SoapDocumentService implements Document
 			return super.getResource(sid, doc.getId(), doc.getFileVersion(), type);
 		}
 	}
-}
\ No newline at end of file
+
+	@Override
+	@POST
+	@Path("/bulkCreate")
+	@Consumes(MediaType.MULTIPART_FORM_DATA)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Operation(summary = "Creates several documents", description = "Creates several documents reading the multipart body in streaming: each document is described by a part named 'document' with the JSON metadata followed by a part named 'content' with the file. Returns the result of each creation. &lt;br/&gt;Example: curl -u admin:admin -H ''Accept: application/json'' -X POST -F document='{\"folderId\":4,\"fileName\":\"a.txt\"}';type=application/json -F content=@a.txt -F document='{\"folderId\":4,\"fileName\":\"b.txt\"}';type=application/json -F content=@b.txt http://localhost:8080/services/rest/document/bulkCreate")
+	public WSBulkResult[] bulkCreate(@HeaderParam("Content-Type")
+	String contentType, InputStream body)
+			throws AuthenticationException, WebserviceException, PersistenceException, IOException {
+		String sid = validateSession();
+		User user = validateSession(sid);
+
+		String boundary = MultipartReader.getBoundary(contentType);
+		if (boundary == null)
+			throw new WebserviceException("Missing the multipart boundary");
+
+		ObjectMapper mapper = getMapper();
+		BulkProcessor processor = new BulkProcessor();
+		try (MultipartReader reader = new MultipartReader(body, boundary)) {
+			WSDocument document = null;
+			String error = null;
+			MultipartReader.Part part;
+			while ((part = reader.next()) != null) {
+				if ("document".equals(part.getName())) {
+					try {
+						document = mapper.readValue(part.getInputStream(), WSDocument.class);
+						error = null;
+					} catch (JsonProcessingException e) {
+						document = null;
+						error = e.getOriginalMessage();
+					}
+				} else if ("content".equals(part.getName())) {
+					if (document == null) {
+						processor.add(BulkProcessor.failure(BulkProcessor.CREATE, 0L,
+								error != null ? error : "No document metadata before the content"));
+					} else {
+						if (Strings.isNullOrEmpty(document.getFileName()))
+							document.setFileName(part.getFileName());
+						addCreation(processor, user, sid, document, part.getInputStream());
+					}
+					document = null;
+					error = null;
+				}
+			}
+			return processor.finish().toArray(new WSBulkResult[0]);
+		} finally {
+			processor.close();
+		}
+	}
+
+	@Override
+	@POST
+	@Path("/bulkUpdate")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Operation(summary = "Updates several documents", description = "Updates the metadata of several documents, the ID of each document must be specified in its WSDocument. Returns the result of each update")
+	public WSBulkResult[] bulkUpdate(
+			@Parameter(description = "Documents to update", required = true, example = "[{ \"id\": 1111111, \"folderId\": 3435433 }]")
+			WSDocument[] documents) throws AuthenticationException, WebserviceException, PersistenceException {
+		String sid = validateSession();
+		return super.bulkUpdate(sid, documents);
+	}
+
+	@Override
+	@POST
+	@Path("/bulkMove")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Operation(summary = "Moves several documents", description = "Moves several documents into the same folder. Returns the result of each move")
+	public WSBulkResult[] bulkMove(@QueryParam("folderId")
+	@Parameter(description = "Target folder ID", required = true)
+	long folderId, @Parameter(description = "IDs of the documents to move", required = true, example = "[1111111, 1111112]")
+	long[] docIds) throws AuthenticationException, WebserviceException, PersistenceException {
+		String sid = validateSession();
+		return super.bulkMove(sid, docIds, folderId);
+	}
+
+	@Override
+	@POST
+	@Path("/bulkDelete")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Operation(summary = "Deletes several documents", description = "Deletes several documents. Returns the result of each deletion")
+	public WSBulkResult[] bulkDelete(
+			@Parameter(description = "IDs of the documents to delete", required = true, example = "[1111111, 1111112]")
+			long[] docIds) throws AuthenticationException, WebserviceException, PersistenceException {
+		String sid = validateSession();
+		return super.bulkDelete(sid, docIds);
+	}
+
+	@Override
+	@POST
+	@Path("/bulk")
+	@Consumes("application/x-ndjson")
+	@Produces(MediaType.APPLICATION_JSON)
+	@Operation(summary = "Executes a stream of operations", description = "Executes a stream of operations, one JSON object per line (NDJSON). The supported operations are update, move and delete. Returns the result of each operation. &lt;br/&gt;Example of body: &lt;br/&gt;{\"op\":\"update\",\"document\":{\"id\":1111111,\"folderId\":3435433}}&lt;br/&gt;{\"op\":\"move\",\"docId\":1111112,\"folderId\":3435433}&lt;br/&gt;{\"op\":\"delete\",\"docId\":1111113}")
+	public WSBulkResult[] bulk(InputStream operations)
+			throws AuthenticationException, WebserviceException, PersistenceException, IOException {
+		String sid = validateSession();
+		User user = validateSession(sid);
+
+		ObjectMapper mapper = getMapper();
+		BulkProcessor processor = new BulkProcessor();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(operations, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty())
+					continue;
+
+				try {
+					processor.add(toOperation(user, sid, mapper.readTree(line), mapper));
+				} catch (JsonProcessingException e) {
+					processor.add(BulkProcessor.failure(null, 0L, e.getOriginalMessage()));
+				}
+			}
+			return processor.finish().toArray(new WSBulkResult[0]);
+		} finally {
+			processor.close();
+		}
+	}
+
+	private BulkProcessor.Operation toOperation(User user, String sid, JsonNode node, ObjectMapper mapper)
+			throws JsonProcessingException {
+		String operation = node.path("op").asText();
+		long docId = node.path("docId").asLong();
+		switch (operation) {
+			case BulkProcessor.UPDATE:
+				JsonNode document = node.get("document");
+				if (document == null)
+					return BulkProcessor.failure(operation, docId, "Missing the document");
+				return updateOperation(user, sid, mapper.treeToValue(document, WSDocument.class));
+			case BulkProcessor.MOVE:
+				return moveOperation(user, sid, docId, node.path("folderId").asLong());
+			case BulkProcessor.DELETE:
+				return deleteOperation(user, sid, docId);
+			default:
+				return BulkProcessor.failure(operation, docId, "Unsupported operation " + operation);
+		}
+	}
+
+	private static ObjectMapper getMapper() {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		return mapper;
+	}
+}
@@ -4,17 +4,20 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.logicaldoc.webservice.model.WSChange;
 import com.logicaldoc.webservice.model.WSParameter;
 import com.logicaldoc.webservice.model.WSSystemInfo;
 import com.logicaldoc.webservice.rest.SystemService;
 import com.logicaldoc.webservice.soap.endpoint.SoapSystemService;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 @Path("/")
@@ -50,4 +53,17 @@ public class RestSystemService extends SoapSystemService implements SystemServic
 		String sid = validateSession();
 		return super.getLanguages(sid);
 	}
-}
+
+	@Override
+	@GET
+	@Path("/getChanges")
+	@Operation(summary = "Get the changes", description = "Retrieves the changes of documents and folders recorded after a given position of the change log")
+	public WSChange[] getChanges(@QueryParam("since")
+	@Parameter(description = "Number of the last change already known, 0 to read from the beginning")
+	long since, @QueryParam("max")
+	@Parameter(description = "Maximum number of returned records")
+	Integer max) throws Exception {
+		String sid = validateSession();
+		return super.getChanges(sid, since, max);
+	}
+}
\ No newline at end of file
@@ -15,6 +15,7 @@ import com.logicaldoc.core.security.authentication.AuthenticationException;
 import com.logicaldoc.core.security.authorization.PermissionException;
 import com.logicaldoc.webservice.WebserviceException;
 import com.logicaldoc.webservice.doc.WSDoc;
+import com.logicaldoc.webservice.model.WSBulkResult;
 import com.logicaldoc.webservice.model.WSDocument;
 import com.logicaldoc.webservice.model.WSLink;
 import com.logicaldoc.webservice.model.WSNote;
@@ -1228,4 +1229,102 @@ public interface DocumentService {
 	String sid, @WSDoc(description = "the document id")
 	@WebParam(name = "docId")
 	long docId) throws AuthenticationException, WebserviceException, PersistenceException, PermissionException;
-}
\ No newline at end of file
+
+	/**
+	 * Creates several documents in a single call. The documents are processed
+	 * in order and each one gets its own result, the failure of a document
+	 * does not stop the others.
+	 * 
+	 * @param sid identifier of the session
+	 * @param documents the metadata of the documents to create
+	 * @param contents the contents of the documents, in the same order
+	 * 
+	 * @return the results of the single creations
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 */
+	@WebMethod
+	@WebResult(name = "result")
+	@WSDoc(description = "creates several documents; returns the result of each creation")
+	public WSBulkResult[] bulkCreate(@WSDoc(description = "identifier of the session", required = true)
+	@WebParam(name = "sid")
+	String sid, @WSDoc(description = "metadata of the documents to create")
+	@WebParam(name = "document")
+	WSDocument[] documents, @WSDoc(description = "raw contents of the files, in the same order of the documents")
+	@WebParam(name = "content")
+	DataHandler[] contents) throws AuthenticationException, WebserviceException, PersistenceException;
+
+	/**
+	 * Updates several documents in a single call. The documents are updated in
+	 * chunks, each one in a single transaction, and each document gets its own
+	 * result.
+	 * 
+	 * @param sid identifier of the session
+	 * @param documents the documents to update
+	 * 
+	 * @return the results of the single updates
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 */
+	@WebMethod
+	@WebResult(name = "result")
+	@WSDoc(description = "updates several documents; returns the result of each update")
+	public WSBulkResult[] bulkUpdate(@WSDoc(description = "identifier of the session", required = true)
+	@WebParam(name = "sid")
+	String sid, @WSDoc(description = "the documents to update")
+	@WebParam(name = "document")
+	WSDocument[] documents) throws AuthenticationException, WebserviceException, PersistenceException;
+
+	/**
+	 * Moves several documents into the same folder in a single call. The
+	 * documents are moved in chunks, each one in a single transaction, and
+	 * each document gets its own result.
+	 * 
+	 * @param sid identifier of the session
+	 * @param docIds identifiers of the documents
+	 * @param folderId identifier of the target folder
+	 * 
+	 * @return the results of the single moves
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 */
+	@WebMethod
+	@WebResult(name = "result")
+	@WSDoc(description = "moves several documents into the same folder; returns the result of each move")
+	public WSBulkResult[] bulkMove(@WSDoc(description = "identifier of the session", required = true)
+	@WebParam(name = "sid")
+	String sid, @WSDoc(description = "identifiers of the documents")
+	@WebParam(name = "docId")
+	long[] docIds, @WSDoc(description = "identifier of the target folder")
+	@WebParam(name = "folderId")
+	long folderId) throws AuthenticationException, WebserviceException, PersistenceException;
+
+	/**
+	 * Deletes several documents in a single call. The documents are deleted
+	 * in chunks, each one in a single transaction, and each document gets its
+	 * own result.
+	 * 
+	 * @param sid identifier of the session
+	 * @param docIds identifiers of the documents
+	 * 
+	 * @return the results of the single deletions
+	 * 
+	 * @throws PersistenceException Error in the database
+	 * @throws WebserviceException Error in the webservice
+	 * @throws AuthenticationException Invalid session
+	 */
+	@WebMethod
+	@WebResult(name = "result")
+	@WSDoc(description = "deletes several documents; returns the result of each deletion")
+	public WSBulkResult[] bulkDelete(@WSDoc(description = "identifier of the session", required = true)
+	@WebParam(name = "sid")
+	String sid, @WSDoc(description = "identifiers of the documents")
+	@WebParam(name = "docId")
+	long[] docIds) throws AuthenticationException, WebserviceException, PersistenceException;
+}
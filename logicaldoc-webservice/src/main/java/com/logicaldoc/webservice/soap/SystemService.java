@@ -6,6 +6,7 @@ import javax.jws.WebResult;
 import javax.jws.WebService;
 
 import com.logicaldoc.webservice.doc.WSDoc;
+import com.logicaldoc.webservice.model.WSChange;
 import com.logicaldoc.webservice.model.WSParameter;
 import com.logicaldoc.webservice.model.WSSystemInfo;
 
@@ -59,4 +60,29 @@ public interface SystemService {
 	public String[] getLanguages(
 			@WSDoc(description = "a session's identifier or a tenant's name") @WebParam(name = "tenantOrSid") String tenantOrSid)
 			throws Exception;
+
+	/**
+	 * Retrieves the changes recorded in the change log after a given position.
+	 * Use the number of the last change returned as the cursor for the next
+	 * call.
+	 * 
+	 * @param sid Session identifier
+	 * @param since number of the last change already known, 0 to read from the
+	 *        beginning
+	 * @param max maximum number of changes to return
+	 * 
+	 * @return The changes ordered by ascending number
+	 * 
+	 * @throws Exception error in the server application
+	 */
+	@WebResult(name = "change")
+	@WebMethod
+	@WSDoc(description = "retrieves the changes of documents and folders recorded after a given position of the change log")
+	public WSChange[] getChanges(@WSDoc(description = "identifier of the session", required = true)
+	@WebParam(name = "sid")
+	String sid, @WSDoc(description = "number of the last change already known, 0 to read from the beginning")
+	@WebParam(name = "since")
+	long since, @WSDoc(description = "max number of returned records", required = false)
+	@WebParam(name = "max")
+	Integer max) throws Exception;
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ import com.logicaldoc.core.parser.ParseException;
 import com.logicaldoc.core.security.authentication.AuthenticationException;
 import com.logicaldoc.core.security.authorization.PermissionException;
 import com.logicaldoc.webservice.WebserviceException;
+import com.logicaldoc.webservice.model.WSBulkResult;
 import com.logicaldoc.webservice.model.WSDocument;
 import com.logicaldoc.webservice.model.WSLink;
 import com.logicaldoc.webservice.model.WSNote;
@@ -358,4 +359,39 @@ public class SoapDocumentClient extends SoapClient<DocumentService> implements D
 	public WSDocument getVersion(String sid, long docId, String version) throws AuthenticationException, PermissionException, WebserviceException, PersistenceException {
 		return client.getVersion(sid, docId, version);
 	}
+
+	@Override
+	public WSBulkResult[] bulkCreate(String sid, WSDocument[] documents, DataHandler[] contents)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		return client.bulkCreate(sid, documents, contents);
+	}
+
+	public WSBulkResult[] bulkCreate(String sid, WSDocument[] documents, File[] contents)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		DataHandler[] handlers = new DataHandler[contents.length];
+		for (int i = 0; i < contents.length; i++) {
+			if (StringUtils.isEmpty(documents[i].getFileName()))
+				documents[i].setFileName(contents[i].getName());
+			handlers[i] = new DataHandler(new FileDataSource(contents[i]));
+		}
+		return bulkCreate(sid, documents, handlers);
+	}
+
+	@Override
+	public WSBulkResult[] bulkUpdate(String sid, WSDocument[] documents)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		return client.bulkUpdate(sid, documents);
+	}
+
+	@Override
+	public WSBulkResult[] bulkMove(String sid, long[] docIds, long folderId)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		return client.bulkMove(sid, docIds, folderId);
+	}
+
+	@Override
+	public WSBulkResult[] bulkDelete(String sid, long[] docIds)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		return client.bulkDelete(sid, docIds);
+	}
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.logicaldoc.webservice.soap.client;
 
 import java.io.IOException;
 
+import com.logicaldoc.webservice.model.WSChange;
 import com.logicaldoc.webservice.model.WSParameter;
 import com.logicaldoc.webservice.model.WSSystemInfo;
 import com.logicaldoc.webservice.soap.SystemService;
@@ -32,4 +33,9 @@ public class SoapSystemClient extends SoapClient<SystemService> implements Syste
 	public WSSystemInfo getInfo() throws Exception {
 		return client.getInfo();
 	}
+
+	@Override
+	public WSChange[] getChanges(String sid, long since, Integer max) throws Exception {
+		return client.getChanges(sid, since, max);
+	}
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.logicaldoc.webservice.soap.endpoint;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -60,7 +61,9 @@ import com.logicaldoc.util.MimeType;
 import com.logicaldoc.util.config.ContextProperties;
 import com.logicaldoc.util.io.FileUtil;
 import com.logicaldoc.webservice.AbstractService;
+import com.logicaldoc.webservice.BulkProcessor;
 import com.logicaldoc.webservice.WebserviceException;
+import com.logicaldoc.webservice.model.WSBulkResult;
 import com.logicaldoc.webservice.model.WSDocument;
 import com.logicaldoc.webservice.model.WSLink;
 import com.logicaldoc.webservice.model.WSNote;
@@ -97,6 +100,21 @@ public class SoapDocumentService extends AbstractService implements DocumentServ
 	public WSDocument create(String sid, WSDocument document, InputStream content)
 			throws AuthenticationException, WebserviceException, PersistenceException, PermissionException {
 		User user = validateSession(sid);
+		return createDocument(user, sid, document, content);
+	}
+
+	protected WSDocument createDocument(User user, String sid, WSDocument document, InputStream content)
+			throws WebserviceException, PersistenceException, PermissionException {
+		return createDocument(user, sid, document, content, null);
+	}
+
+	protected WSDocument createDocument(User user, String sid, WSDocument document, File content)
+			throws WebserviceException, PersistenceException, PermissionException {
+		return createDocument(user, sid, document, null, content);
+	}
+
+	private WSDocument createDocument(User user, String sid, WSDocument document, InputStream content, File file)
+			throws WebserviceException, PersistenceException, PermissionException {
 		checkWriteEnable(user, document.getFolderId());
 
 		FolderDAO fdao = (FolderDAO) Context.get().getBean(FolderDAO.class);
@@ -122,7 +140,10 @@ public class SoapDocumentService extends AbstractService implements DocumentServ
 		transaction.setUser(user);
 
 		DocumentManager documentManager = (DocumentManager) Context.get().getBean(DocumentManager.class);
-		doc = documentManager.create(content, doc, transaction);
+		if (file != null)
+			doc = documentManager.create(file, doc, transaction);
+		else
+			doc = documentManager.create(content, doc, transaction);
 		return WSUtil.toWSDocument(doc);
 	}
 
@@ -225,6 +246,11 @@ public class SoapDocumentService extends AbstractService implements DocumentServ
 	public void delete(String sid, long docId)
 			throws AuthenticationException, WebserviceException, PersistenceException, PermissionException {
 		User user = validateSession(sid);
+		deleteDocument(user, sid, docId);
+	}
+
+	private void deleteDocument(User user, String sid, long docId)
+			throws WebserviceException, PersistenceException, PermissionException {
 		DocumentDAO docDao = (DocumentDAO) Context.get().getBean(DocumentDAO.class);
 		Document doc = docDao.findById(docId);
 		checkLocked(user, doc);
@@ -452,6 +478,11 @@ public class SoapDocumentService extends AbstractService implements DocumentServ
 	public void move(String sid, long docId, long folderId)
 			throws AuthenticationException, WebserviceException, PersistenceException, PermissionException {
 		User user = validateSession(sid);
+		moveDocument(user, sid, docId, folderId);
+	}
+
+	private void moveDocument(User user, String sid, long docId, long folderId)
+			throws WebserviceException, PersistenceException, PermissionException {
 		FolderDAO fdao = (FolderDAO) Context.get().getBean(FolderDAO.class);
 		long rootId = fdao.findRoot(user.getTenantId()).getId();
 
@@ -567,13 +598,12 @@ public class SoapDocumentService extends AbstractService implements DocumentServ
 	@Override
 	public void update(String sid, WSDocument document)
 			throws AuthenticationException, PermissionException, WebserviceException, PersistenceException {
-		updateDocument(sid, document);
-	}
-
-	private void updateDocument(String sid, WSDocument document)
-			throws AuthenticationException, WebserviceException, PersistenceException, PermissionException {
 		User user = validateSession(sid);
+		updateDocument(user, sid, document);
+	}
 
+	private void updateDocument(User user, String sid, WSDocument document)
+			throws WebserviceException, PersistenceException, PermissionException {
 		Document doc = retrieveReadableDocument(document.getId(), user);
 		checkLocked(user, doc);
 		checkWriteEnable(user, doc.getFolder().getId());
@@ -600,7 +630,7 @@ public class SoapDocumentService extends AbstractService implements DocumentServ
 
 		// If the folder is different, handle the move
 		if (!document.getFolderId().equals(originalFolderId))
-			move(sid, document.getId(), document.getFolderId());
+			moveDocument(user, sid, document.getId(), document.getFolderId());
 	}
 
 	@Override
@@ -1308,4 +1338,152 @@ public class SoapDocumentService extends AbstractService implements DocumentServ
 		doc = docDao.findDocument(docId);
 		return doc;
 	}
-}
\ No newline at end of file
+
+	@Override
+	public WSBulkResult[] bulkCreate(String sid, WSDocument[] documents, DataHandler[] contents)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		User user = validateSession(sid);
+		if (contents == null || documents.length != contents.length)
+			throw new WebserviceException("The number of contents does not match the number of documents");
+
+		BulkProcessor processor = new BulkProcessor();
+		processor.checkSize(documents.length);
+		try {
+			for (int i = 0; i < documents.length; i++) {
+				try (InputStream content = contents[i].getInputStream()) {
+					addCreation(processor, user, sid, documents[i], content);
+				} catch (IOException e) {
+					processor.add(BulkProcessor.failure(BulkProcessor.CREATE, 0L, e.getMessage()));
+				}
+			}
+			return processor.finish().toArray(new WSBulkResult[0]);
+		} finally {
+			processor.close();
+		}
+	}
+
+	@Override
+	public WSBulkResult[] bulkUpdate(String sid, WSDocument[] documents)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		User user = validateSession(sid);
+		BulkProcessor processor = new BulkProcessor();
+		processor.checkSize(documents.length);
+		try {
+			for (WSDocument document : documents)
+				processor.add(updateOperation(user, sid, document));
+			return processor.finish().toArray(new WSBulkResult[0]);
+		} finally {
+			processor.close();
+		}
+	}
+
+	@Override
+	public WSBulkResult[] bulkMove(String sid, long[] docIds, long folderId)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		User user = validateSession(sid);
+		BulkProcessor processor = new BulkProcessor();
+		processor.checkSize(docIds.length);
+		try {
+			for (long docId : docIds)
+				processor.add(moveOperation(user, sid, docId, folderId));
+			return processor.finish().toArray(new WSBulkResult[0]);
+		} finally {
+			processor.close();
+		}
+	}
+
+	@Override
+	public WSBulkResult[] bulkDelete(String sid, long[] docIds)
+			throws AuthenticationException, WebserviceException, PersistenceException {
+		User user = validateSession(sid);
+		BulkProcessor processor = new BulkProcessor();
+		processor.checkSize(docIds.length);
+		try {
+			for (long docId : docIds)
+				processor.add(deleteOperation(user, sid, docId));
+			return processor.finish().toArray(new WSBulkResult[0]);
+		} finally {
+			processor.close();
+		}
+	}
+
+	/**
+	 * Adds to the bulk the creation of a document. The content is first copied
+	 * in a temporary file, so that no transaction is open while it is being
+	 * received.
+	 * 
+	 * @param processor the bulk
+	 * @param user the current user
+	 * @param sid identifier of the session
+	 * @param document metadata of the document
+	 * @param content the content, not read if the bulk is full
+	 */
+	protected void addCreation(BulkProcessor processor, User user, String sid, WSDocument document,
+			InputStream content) {
+		File file = null;
+		try {
+			// Once the bulk is full the operations are just refused
+			if (!processor.isFull()) {
+				file = FileUtil.createTempFile("bulk", "");
+				FileUtil.writeFile(content, file.getPath());
+			}
+			processor.add(createOperation(user, sid, document, file));
+		} catch (IOException e) {
+			processor.add(BulkProcessor.failure(BulkProcessor.CREATE, 0L, e.getMessage()));
+		} finally {
+			FileUtil.strongDelete(file);
+		}
+	}
+
+	/**
+	 * Prepares the creation of a document. The creation cannot be repeated,
+	 * so it is executed as soon as it is added to the bulk
+	 */
+	protected BulkProcessor.Operation createOperation(User user, String sid, WSDocument document, File content) {
+		return new BulkProcessor.Operation(BulkProcessor.CREATE, 0L) {
+
+			@Override
+			public long execute() throws Exception {
+				return createDocument(user, sid, document, content).getId();
+			}
+
+			@Override
+			public boolean isRepeatable() {
+				return false;
+			}
+		};
+	}
+
+	protected BulkProcessor.Operation updateOperation(User user, String sid, WSDocument document) {
+		return new BulkProcessor.Operation(BulkProcessor.UPDATE, document.getId()) {
+
+			@Override
+			public long execute() throws Exception {
+				updateDocument(user, sid, document);
+				return document.getId();
+			}
+		};
+	}
+
+	protected BulkProcessor.Operation moveOperation(User user, String sid, long docId, long folderId) {
+		return new BulkProcessor.Operation(BulkProcessor.MOVE, docId) {
+
+			@Override
+			public long execute() throws Exception {
+				moveDocument(user, sid, docId, folderId);
+				return docId;
+			}
+		};
+	}
+
+	protected BulkProcessor.Operation deleteOperation(User user, String sid, long docId) {
+		return new BulkProcessor.Operation(BulkProcessor.DELETE, docId) {
+
+			@Override
+			public long execute() throws Exception {
+				deleteDocument(user, sid, docId);
+				return docId;
+			}
+		};
+	}
+}
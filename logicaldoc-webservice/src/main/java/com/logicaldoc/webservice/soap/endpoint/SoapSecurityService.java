@@ -68,7 +68,7 @@ public class SoapSecurityService extends AbstractService implements SecurityServ
 		UserDAO dao = (UserDAO) Context.get().getBean(UserDAO.class);
 		if (StringUtils.isEmpty(group)) {
 			for (User usr : dao.findAll(user.getTenantId())) {
-				dao.initialize(user);
+				dao.initialize(usr);
 				if (usr.getType() != User.TYPE_SYSTEM)
 					users.add(WSUser.fromUser(usr));
 			}
@@ -77,7 +77,7 @@ public class SoapSecurityService extends AbstractService implements SecurityServ
 			Group grp = gDao.findByName(group, user.getTenantId());
 			gDao.initialize(grp);
 			for (User usr : grp.getUsers()) {
-				dao.initialize(user);
+				dao.initialize(usr);
 				if (usr.getType() != User.TYPE_SYSTEM)
 					users.add(WSUser.fromUser(usr));
 			}
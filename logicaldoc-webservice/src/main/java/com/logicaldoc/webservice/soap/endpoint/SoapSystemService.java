@@ -11,15 +11,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.logicaldoc.core.SystemInfo;
+import com.logicaldoc.core.changelog.Change;
+import com.logicaldoc.core.changelog.ChangeDAO;
 import com.logicaldoc.core.generic.Generic;
 import com.logicaldoc.core.generic.GenericDAO;
 import com.logicaldoc.core.i18n.Language;
 import com.logicaldoc.core.i18n.LanguageManager;
 import com.logicaldoc.core.security.SessionManager;
 import com.logicaldoc.core.security.Tenant;
+import com.logicaldoc.core.security.User;
 import com.logicaldoc.core.stats.StatsCollector;
 import com.logicaldoc.util.Context;
 import com.logicaldoc.webservice.AbstractService;
+import com.logicaldoc.webservice.model.WSChange;
 import com.logicaldoc.webservice.model.WSParameter;
 import com.logicaldoc.webservice.model.WSSystemInfo;
 import com.logicaldoc.webservice.soap.SystemService;
@@ -209,4 +213,27 @@ public class SoapSystemService extends AbstractService implements SystemService
 
 		return info;
 	}
-}
+
+	@Override
+	public WSChange[] getChanges(String sid, long since, Integer max) throws Exception {
+		User user = validateSession(sid);
+
+		int maxChanges = max != null && max > 0 ? max : Context.get().getProperties().getInt("cmis.maxitems", 200);
+		ChangeDAO changeDao = (ChangeDAO) Context.get().getBean(ChangeDAO.class);
+		List<Change> changes = changeDao.findAfter(user.getTenantId(), since, maxChanges);
+
+		WSChange[] wsChanges = new WSChange[changes.size()];
+		for (int i = 0; i < wsChanges.length; i++) {
+			Change change = changes.get(i);
+			WSChange wsChange = new WSChange();
+			wsChange.setNumber(change.getNumber());
+			wsChange.setDate(convertDateToString(change.getDate()));
+			wsChange.setObjectId(change.getObjectId());
+			wsChange.setObjectType(change.getObjectType());
+			wsChange.setChangeType(change.getChangeType());
+			wsChange.setEvent(change.getEvent());
+			wsChanges[i] = wsChange;
+		}
+		return wsChanges;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+package com.logicaldoc.webservice;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logicaldoc.core.document.DocumentEvent;
+import com.logicaldoc.core.document.DocumentHistory;
+import com.logicaldoc.core.document.dao.DocumentHistoryDAO;
+import com.logicaldoc.util.Context;
+import com.logicaldoc.util.config.ContextProperties;
+import com.logicaldoc.webservice.model.WSBulkResult;
+
+import junit.framework.Assert;
+
+/**
+ * Test case for {@link BulkProcessor}
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class BulkProcessorTest extends AbstractWebserviceTCase {
+
+	private DocumentHistoryDAO historyDao;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		historyDao = (DocumentHistoryDAO) context.getBean(DocumentHistoryDAO.class);
+	}
+
+	@Test
+	public void testNotRepeatable() throws Exception {
+		BulkProcessor processor = new BulkProcessor();
+		try {
+			processor.add(new Creation("created", false));
+			processor.add(new Creation("failed", true));
+
+			List<WSBulkResult> results = processor.finish();
+			Assert.assertEquals(2, results.size());
+			Assert.assertTrue(results.get(0).isSuccess());
+			Assert.assertFalse(results.get(1).isSuccess());
+		} finally {
+			processor.close();
+		}
+
+		// The history of the failed creation has been rolled back with it
+		List<DocumentHistory> histories = historyDao.findByDocIdAndEvent(1L, DocumentEvent.STORED.toString());
+		Assert.assertTrue(histories.stream().anyMatch(h -> "created".equals(h.getComment())));
+		Assert.assertFalse(histories.stream().anyMatch(h -> "failed".equals(h.getComment())));
+	}
+
+	@Test
+	public void testMaxOperations() throws Exception {
+		ContextProperties config = Context.get().getProperties();
+		String max = config.getProperty("webservice.bulk.max");
+		config.setProperty("webservice.bulk.max", "2");
+		try {
+			BulkProcessor processor = new BulkProcessor();
+			try {
+				processor.checkSize(2);
+				try {
+					processor.checkSize(3);
+					Assert.fail("A bulk too big has been accepted");
+				} catch (WebserviceException e) {
+					// All right
+				}
+
+				// The operations beyond the limit are refused
+				processor.add(new Creation("first", false));
+				processor.add(new Creation("second", false));
+				Assert.assertTrue(processor.isFull());
+				processor.add(new Creation("third", false));
+
+				List<WSBulkResult> results = processor.finish();
+				Assert.assertEquals(3, results.size());
+				Assert.assertTrue(results.get(1).isSuccess());
+				Assert.assertFalse(results.get(2).isSuccess());
+				Assert.assertEquals(2, results.get(2).getIndex());
+			} finally {
+				processor.close();
+			}
+
+			List<DocumentHistory> histories = historyDao.findByDocIdAndEvent(1L, DocumentEvent.STORED.toString());
+			Assert.assertFalse(histories.stream().anyMatch(h -> "third".equals(h.getComment())));
+		} finally {
+			if (max != null)
+				config.setProperty("webservice.bulk.max", max);
+			else
+				config.remove("webservice.bulk.max");
+		}
+	}
+
+	/**
+	 * An operation that cannot be repeated, it saves a history and then may
+	 * fail
+	 */
+	private class Creation extends BulkProcessor.Operation {
+
+		private final String comment;
+
+		private final boolean fail;
+
+		Creation(String comment, boolean fail) {
+			super(BulkProcessor.CREATE, 0L);
+			this.comment = comment;
+			this.fail = fail;
+		}
+
+		@Override
+		public long execute() throws Exception {
+			DocumentHistory history = new DocumentHistory();
+			history.setDocId(1L);
+			history.setFolderId(5L);
+			history.setEvent(DocumentEvent.STORED.toString());
+			history.setComment(comment);
+			historyDao.store(history);
+
+			if (fail)
+				throw new WebserviceException("Cannot create the document");
+			return 1L;
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return false;
+		}
+	}
+}
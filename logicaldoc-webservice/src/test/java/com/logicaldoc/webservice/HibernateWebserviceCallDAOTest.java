@@ -1,5 +1,6 @@
 package com.logicaldoc.webservice;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Before;
@@ -39,4 +40,21 @@ public class HibernateWebserviceCallDAOTest extends AbstractWebserviceTCase {
 		List<WebserviceCall> calls = dao.findAll(1L);
 		Assert.assertEquals(1, calls.size());
 	}
+
+	@Test
+	public void testStoreAll() throws PersistenceException {
+		List<WebserviceCall> calls = new ArrayList<>();
+		for (int i = 0; i < 250; i++) {
+			WebserviceCall call = new WebserviceCall();
+			call.setTenantId(1L);
+			call.setUserId(1L);
+			call.setUri("/services/Document/" + i);
+			calls.add(call);
+		}
+		dao.storeAll(calls);
+
+		Assert.assertEquals(250, dao.findAll(1L).size());
+		for (WebserviceCall call : calls)
+			Assert.assertTrue(call.getId() != 0L);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.logicaldoc.webservice;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.cxf.jaxrs.client.WebClient;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.logicaldoc.webservice.model.WSBulkResult;
+import com.logicaldoc.webservice.model.WSDocument;
+import com.logicaldoc.webservice.rest.client.RestDocumentClient;
+
+/**
+ * Compares the throughput of the single operations with the bulk operations
+ * of the REST API over the same number of documents: first creates the
+ * documents one by one and with a streamed multipart <b>/bulkCreate</b>, then
+ * moves and updates the documents created in bulk with the JSON
+ * <b>/bulkMove</b> and <b>/bulkUpdate</b> and with a single NDJSON
+ * <b>/bulk</b>.
+ *
+ * Arguments: number of documents (default 100), file to upload (default
+ * pom.xml)
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class RestBulkWorkbench {
+
+	private static final String BASE_PATH = "http://localhost:9080/services/rest/document";
+
+	private static final String USERNAME = "admin";
+
+	private static final String PASSWORD = "12345678";
+
+	private static final String BOUNDARY = "----bulkWorkbench";
+
+	private static long folderA = 4L;
+
+	private static long folderB = 5L;
+
+	private static ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		File file = new File(args.length > 1 ? args[1] : "pom.xml");
+
+		RestDocumentClient documentClient = new RestDocumentClient(BASE_PATH, USERNAME, PASSWORD);
+
+		long time = System.currentTimeMillis();
+		for (int i = 0; i < count; i++)
+			documentClient.create(newDocument("single-" + i + "-" + file.getName()), file);
+		print("create", count, time);
+
+		List<WSDocument> documents = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+			documents.add(newDocument("bulk-" + i + "-" + file.getName()));
+		time = System.currentTimeMillis();
+		WSBulkResult[] results = bulkCreate(documents, file);
+		print("bulkCreate", count, time);
+		printFailures(results);
+
+		// Go on with the documents created in bulk
+		long[] docIds = Arrays.stream(results).filter(WSBulkResult::isSuccess).mapToLong(WSBulkResult::getDocId)
+				.toArray();
+
+		time = System.currentTimeMillis();
+		results = documentClient.bulkMove(folderB, docIds);
+		printFailures(results);
+		WSDocument[] updates = new WSDocument[docIds.length];
+		for (int i = 0; i < docIds.length; i++) {
+			updates[i] = new WSDocument();
+			updates[i].setId(docIds[i]);
+			updates[i].setComment("json update");
+		}
+		results = documentClient.bulkUpdate(updates);
+		print("bulkMove + bulkUpdate", docIds.length * 2, time);
+		printFailures(results);
+
+		StringBuilder operations = new StringBuilder();
+		for (long docId : docIds) {
+			ObjectNode move = mapper.createObjectNode();
+			move.put("op", "move");
+			move.put("docId", docId);
+			move.put("folderId", folderA);
+			operations.append(mapper.writeValueAsString(move)).append('\n');
+
+			ObjectNode update = mapper.createObjectNode();
+			update.put("op", "update");
+			update.put("docId", docId);
+			update.putObject("document").put("id", docId).put("comment", "ndjson update");
+			operations.append(mapper.writeValueAsString(update)).append('\n');
+		}
+		time = System.currentTimeMillis();
+		results = documentClient
+				.bulk(new ByteArrayInputStream(operations.toString().getBytes(StandardCharsets.UTF_8)));
+		print("bulk", docIds.length * 2, time);
+		printFailures(results);
+	}
+
+	/**
+	 * Posts the documents to <b>/bulkCreate</b> in a single multipart body
+	 * that is streamed, so the contents are never held in memory
+	 */
+	private static WSBulkResult[] bulkCreate(List<WSDocument> documents, File file) {
+		List<Supplier<InputStream>> parts = new ArrayList<>();
+		for (WSDocument document : documents) {
+			parts.add(() -> {
+				try {
+					return text("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"document\"\r\n"
+							+ "Content-Type: application/json\r\n\r\n" + mapper.writeValueAsString(document)
+							+ "\r\n--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"content\"; filename=\""
+							+ document.getFileName() + "\"\r\nContent-Type: application/octet-stream\r\n\r\n");
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			parts.add(() -> {
+				try {
+					return new FileInputStream(file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			parts.add(() -> text("\r\n"));
+		}
+		parts.add(() -> text("--" + BOUNDARY + "--\r\n"));
+
+		// Open each part only when the previous one has been sent
+		Iterator<Supplier<InputStream>> partsIterator = parts.iterator();
+		InputStream body = new SequenceInputStream(new Enumeration<InputStream>() {
+			@Override
+			public boolean hasMoreElements() {
+				return partsIterator.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				return partsIterator.next().get();
+			}
+		});
+
+		WebClient client = WebClient.create(BASE_PATH, Arrays.asList(new JacksonJsonProvider()), USERNAME, PASSWORD,
+				null);
+		return client.path("bulkCreate").type(MediaType.MULTIPART_FORM_DATA + "; boundary=" + BOUNDARY)
+				.accept(MediaType.APPLICATION_JSON).post(body, WSBulkResult[].class);
+	}
+
+	private static InputStream text(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static WSDocument newDocument(String fileName) {
+		WSDocument document = new WSDocument();
+		document.setFolderId(folderA);
+		document.setFileName(fileName);
+		document.setLanguage("en");
+		return document;
+	}
+
+	private static void print(String operation, int count, long start) {
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(String.format("%s: %d operations in %d ms, %.1f ops/s", operation, count, elapsed,
+				count * 1000D / elapsed));
+	}
+
+	private static void printFailures(WSBulkResult[] results) {
+		Arrays.stream(results).filter(r -> !r.isSuccess()).forEach(r -> System.out.println("Failed: " + r));
+	}
+}
@@ -0,0 +1,112 @@
+package com.logicaldoc.webservice;
+
+import java.io.File;
+import java.util.Arrays;
+
+import javax.activation.DataHandler;
+import javax.activation.FileDataSource;
+
+import com.logicaldoc.webservice.model.WSBulkResult;
+import com.logicaldoc.webservice.model.WSDocument;
+import com.logicaldoc.webservice.soap.client.SoapAuthClient;
+import com.logicaldoc.webservice.soap.client.SoapDocumentClient;
+
+/**
+ * Compares the throughput of the single operations with the bulk operations
+ * over the same number of documents: first creates the documents one by one
+ * and in bulk, then moves and updates the documents created in bulk.
+ *
+ * Arguments: number of documents (default 100), file to upload (default
+ * pom.xml)
+ *
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class SoapBulkWorkbench extends SoapWorkbench {
+
+	private static long folderA = 4L;
+
+	private static long folderB = 5L;
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		File file = new File(args.length > 1 ? args[1] : "pom.xml");
+
+		SoapAuthClient auth = new SoapAuthClient(BASE + "/Auth");
+		SoapDocumentClient documentClient = new SoapDocumentClient(BASE + "/Document");
+
+		String sid = auth.login("admin", "12345678");
+		System.out.println("Sid: " + sid);
+
+		try {
+			long time = System.currentTimeMillis();
+			for (int i = 0; i < count; i++)
+				documentClient.create(sid, newDocument("single-" + i + "-" + file.getName()),
+						new DataHandler(new FileDataSource(file)));
+			print("create", count, time);
+
+			WSDocument[] documents = new WSDocument[count];
+			DataHandler[] contents = new DataHandler[count];
+			for (int i = 0; i < count; i++) {
+				documents[i] = newDocument("bulk-" + i + "-" + file.getName());
+				contents[i] = new DataHandler(new FileDataSource(file));
+			}
+			time = System.currentTimeMillis();
+			WSBulkResult[] results = documentClient.bulkCreate(sid, documents, contents);
+			print("bulkCreate", count, time);
+			printFailures(results);
+
+			// Go on with the documents created in bulk
+			long[] docIds = Arrays.stream(results).filter(WSBulkResult::isSuccess).mapToLong(WSBulkResult::getDocId)
+					.toArray();
+
+			time = System.currentTimeMillis();
+			for (long docId : docIds)
+				documentClient.move(sid, docId, folderB);
+			print("move", docIds.length, time);
+
+			time = System.currentTimeMillis();
+			results = documentClient.bulkMove(sid, docIds, folderA);
+			print("bulkMove", docIds.length, time);
+			printFailures(results);
+
+			documents = new WSDocument[docIds.length];
+			for (int i = 0; i < docIds.length; i++)
+				documents[i] = documentClient.getDocument(sid, docIds[i]);
+
+			time = System.currentTimeMillis();
+			for (WSDocument document : documents) {
+				document.setComment("single update");
+				documentClient.update(sid, document);
+			}
+			print("update", documents.length, time);
+
+			time = System.currentTimeMillis();
+			for (WSDocument document : documents)
+				document.setComment("bulk update");
+			results = documentClient.bulkUpdate(sid, documents);
+			print("bulkUpdate", documents.length, time);
+			printFailures(results);
+		} finally {
+			auth.logout(sid);
+		}
+	}
+
+	private static WSDocument newDocument(String fileName) {
+		WSDocument document = new WSDocument();
+		document.setFolderId(folderA);
+		document.setFileName(fileName);
+		document.setLanguage("en");
+		return document;
+	}
+
+	private static void print(String operation, int count, long start) {
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		System.out.println(String.format("%s: %d documents in %d ms, %.1f ops/s", operation, count, elapsed,
+				count * 1000D / elapsed));
+	}
+
+	private static void printFailures(WSBulkResult[] results) {
+		Arrays.stream(results).filter(r -> !r.isSuccess()).forEach(r -> System.out.println("Failed: " + r));
+	}
+}
@@ -0,0 +1,94 @@
+package com.logicaldoc.webservice;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.logicaldoc.core.PersistenceException;
+import com.logicaldoc.util.Context;
+import com.logicaldoc.util.config.ContextProperties;
+
+import junit.framework.Assert;
+
+/**
+ * Test case for {@link WebserviceInterceptor}
+ * 
+ * @author Marco Meschieri - LogicalDOC
+ * @since 8.8.4
+ */
+public class WebserviceInterceptorTest extends AbstractWebserviceTCase {
+
+	private WebserviceInterceptor interceptor;
+
+	private ContextProperties settings;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		settings = Context.get().getProperties();
+		settings.setProperty("webservice.call.buffer", "10");
+		settings.setProperty("webservice.call.batch", "100");
+		settings.setProperty("webservice.call.interval", "60000");
+		settings.setProperty("webservice.call.overflow", "drop");
+
+		interceptor = new WebserviceInterceptor();
+		interceptor.setSettings(settings);
+	}
+
+	@Test
+	public void testEnqueue() throws PersistenceException {
+		for (int i = 0; i < 15; i++) {
+			WebserviceCall call = new WebserviceCall();
+			call.setTenantId(1L);
+			interceptor.enqueue(call);
+		}
+
+		Assert.assertEquals(15, interceptor.getRecordedCalls());
+		Assert.assertEquals(5, interceptor.getDroppedCalls());
+		Assert.assertEquals(10, interceptor.getPendingCalls());
+
+		interceptor.flushCalls();
+		Assert.assertEquals(0, interceptor.getPendingCalls());
+		Assert.assertEquals(10, interceptor.getWrittenCalls());
+		Assert.assertEquals(1, interceptor.getWriteBatches());
+
+		WebserviceCallDAO dao = (WebserviceCallDAO) context.getBean(WebserviceCallDAO.class);
+		Assert.assertEquals(10, dao.findAll(1L).size());
+
+		interceptor.shutdown();
+	}
+
+	@Test
+	public void testSample() {
+		settings.setProperty("webservice.call.overflow", "sample");
+		settings.setProperty("webservice.call.sample", "2");
+
+		for (int i = 0; i < 20; i++)
+			interceptor.enqueue(new WebserviceCall());
+
+		// Once 8 calls are buffered just one out of two is accepted
+		Assert.assertEquals(20, interceptor.getRecordedCalls());
+		Assert.assertEquals(10, interceptor.getPendingCalls());
+		Assert.assertTrue(interceptor.getSampledCalls() > 0);
+		Assert.assertEquals(20, interceptor.getPendingCalls() + interceptor.getSampledCalls()
+				+ interceptor.getDroppedCalls());
+
+		interceptor.shutdown();
+	}
+
+	@Test
+	public void testCounters() {
+		WebserviceInterceptor.Counter counter = new WebserviceInterceptor.Counter();
+		for (int i = 0; i < 5; i++)
+			counter.increment();
+		Assert.assertEquals(5, counter.getDelta());
+		counter.commit(5);
+		counter.increment();
+		Assert.assertEquals(1, counter.getDelta());
+
+		// Not committed, so still to be written
+		counter.increment();
+		Assert.assertEquals(2, counter.getDelta());
+		counter.commit(2);
+		Assert.assertEquals(0, counter.getDelta());
+	}
+}
@@ -17,8 +17,11 @@ import com.logicaldoc.core.folder.FolderDAO;
 import com.logicaldoc.core.security.Session;
 import com.logicaldoc.core.security.SessionManager;
 import com.logicaldoc.core.security.Tenant;
+import com.logicaldoc.util.Context;
 import com.logicaldoc.webservice.AbstractWebserviceTCase;
+import com.logicaldoc.webservice.WebserviceException;
 import com.logicaldoc.webservice.model.WSAttribute;
+import com.logicaldoc.webservice.model.WSBulkResult;
 import com.logicaldoc.webservice.model.WSDocument;
 import com.logicaldoc.webservice.model.WSNote;
 import com.logicaldoc.webservice.model.WSRating;
@@ -338,4 +341,101 @@ public class SoapDocumentServiceTest extends AbstractWebserviceTCase {
 		Assert.assertFalse(docService.unprotect(session.getSid(), 1L, "test2222"));
 		Assert.assertTrue(docService.unprotect(session.getSid(), 1L, "test"));
 	}
+
+	@Test
+	public void testBulkMove() throws Exception {
+		// Small chunks so that a failure rolls back and replays its chunk
+		Context.get().getProperties().setProperty("webservice.bulk.chunk", "2");
+		try {
+			WSBulkResult[] results = docService.bulkMove("", new long[] { 1L, 99999L, 2L }, 80L);
+			Assert.assertEquals(3, results.length);
+			Assert.assertTrue(results[0].isSuccess());
+			Assert.assertFalse(results[1].isSuccess());
+			Assert.assertEquals(1, results[1].getIndex());
+			Assert.assertEquals(99999L, results[1].getDocId());
+			Assert.assertNotNull(results[1].getError());
+			Assert.assertTrue(results[2].isSuccess());
+		} finally {
+			Context.get().getProperties().setProperty("webservice.bulk.chunk", "100");
+		}
+
+		Document doc = docDao.findById(1);
+		Assert.assertEquals(80L, doc.getFolder().getId());
+		doc = docDao.findById(2);
+		Assert.assertEquals(80L, doc.getFolder().getId());
+	}
+
+	@Test
+	public void testBulkTooBig() throws Exception {
+		Context.get().getProperties().setProperty("webservice.bulk.max", "2");
+		try {
+			docService.bulkMove("", new long[] { 1L, 2L, 3L }, 80L);
+			Assert.fail("A bulk too big has been accepted");
+		} catch (WebserviceException e) {
+			// Nothing to do
+		} finally {
+			Context.get().getProperties().setProperty("webservice.bulk.max", "100000");
+		}
+
+		// Nothing has been moved
+		Assert.assertFalse(80L == docDao.findById(1).getFolder().getId());
+	}
+
+	@Test
+	public void testBulkUpdate() throws Exception {
+		WSDocument wsDoc = docService.getDocument("", 1);
+		wsDoc.setCustomId("bulk-1");
+		WSDocument unexisting = new WSDocument();
+		unexisting.setId(99999L);
+
+		WSBulkResult[] results = docService.bulkUpdate("", new WSDocument[] { wsDoc, unexisting });
+		Assert.assertEquals(2, results.length);
+		Assert.assertTrue(results[0].isSuccess());
+		Assert.assertFalse(results[1].isSuccess());
+
+		Document doc = docDao.findById(1);
+		Assert.assertEquals("bulk-1", doc.getCustomId());
+	}
+
+	@Test
+	public void testBulkDelete() throws Exception {
+		WSBulkResult[] results = docService.bulkDelete("", new long[] { 1L, 99999L });
+		Assert.assertEquals(2, results.length);
+		Assert.assertTrue(results[0].isSuccess());
+		Assert.assertFalse(results[1].isSuccess());
+		Assert.assertNull(docDao.findById(1));
+	}
+
+	@Test
+	public void testBulkCreate() throws Exception {
+		File file = new File("pom.xml");
+		WSDocument[] documents = new WSDocument[3];
+		for (int i = 0; i < documents.length; i++) {
+			documents[i] = new WSDocument();
+			documents[i].setFolderId(4L);
+			documents[i].setFileName("bulk" + i + ".txt");
+		}
+		// Unexisting folder
+		documents[2].setFolderId(99999L);
+
+		WSBulkResult[] results = docService.bulkCreate("", documents,
+				new DataHandler[] { new DataHandler(new FileDataSource(file)),
+						new DataHandler(new FileDataSource(file)), new DataHandler(new FileDataSource(file)) });
+		Assert.assertEquals(3, results.length);
+		Assert.assertTrue(results[0].isSuccess());
+		Assert.assertTrue(results[1].isSuccess());
+		Assert.assertFalse(results[2].isSuccess());
+
+		Document doc = docDao.findById(results[1].getDocId());
+		Assert.assertNotNull(doc);
+		Assert.assertEquals("bulk1.txt", doc.getFileName());
+		Assert.assertEquals(4L, doc.getFolder().getId());
+
+		try {
+			docService.bulkCreate("", documents, new DataHandler[0]);
+			Assert.fail("Expected an exception");
+		} catch (WebserviceException e) {
+			// Nothing to do
+		}
+	}
 }
\ No newline at end of file